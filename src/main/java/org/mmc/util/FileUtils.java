@@ -1,31 +1,52 @@
 package org.mmc.util;
 
+import org.mmc.util.file.ChunkReader;
+import org.mmc.util.file.ChunkStore;
+import org.mmc.util.file.DigestCache;
+import org.mmc.util.file.DirectoryTranscoder;
+import org.mmc.util.file.DuplicateFinder;
+import org.mmc.util.file.EncodingDetector;
+import org.mmc.util.file.FileCopier;
+import org.mmc.util.file.FileEditor;
+import org.mmc.util.file.FileHasher;
+import org.mmc.util.file.FileTailer;
+import org.mmc.util.file.FileWalker;
+import org.mmc.util.file.LineIndex;
+import org.mmc.util.file.NovelIndex;
+import org.mmc.util.file.ParallelLineReader;
+import org.mmc.util.file.TextReplacer;
+import org.mmc.util.file.Transcoder;
+
 import javax.swing.filechooser.FileSystemView;
 import java.awt.*;
 import java.awt.datatransfer.StringSelection;
 import java.io.*;
 import java.math.BigDecimal;
-import java.math.BigInteger;
 import java.net.URLEncoder;
 import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileTime;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.sql.SQLException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Stack;
 import java.util.concurrent.*;
 import java.util.function.Consumer;
-import java.util.regex.Matcher;
+import java.util.function.Predicate;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 /**
  * 描述: 文件工具类
@@ -125,31 +146,17 @@ public class FileUtils {
      * @throws Exception 异常
      */
     public static void fileMove(String from, String to) throws Exception {
-        try {
-            File dir = new File(from);
-            File[] files = dir.listFiles();
-            if (files == null) {
-                return;
-            }
-            File moveDir = new File(to);
-            if (!moveDir.exists()) {
-                moveDir.mkdirs();
-            }
-            for (File file : files) {
-                if (file.isDirectory()) {
-                    fileMove(file.getPath(), to + "\\" + file.getName());
-                    file.delete();
-                }
-                File moveFile = new File(moveDir.getPath() + "\\"
-                        + file.getName());
-                if (moveFile.exists()) {
-                    moveFile.delete();
-                }
-                file.renameTo(moveFile);
-                System.out.println(file + " 移动成功");
-            }
-        } catch (Exception e) {
-            throw e;
+        File dir = new File(from);
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        Path moveDir = Paths.get(to);
+        Files.createDirectories(moveDir);
+        for (File file : files) {
+            // 先尝试改名，跨磁盘时复制后删除；目标已存在的目录合并
+            FileCopier.move(file.toPath(), moveDir.resolve(file.getName()), null);
+            System.out.println(file + " 移动成功");
         }
     }
 
@@ -163,18 +170,9 @@ public class FileUtils {
     public static void copyFileToDir(String fromFilePath, String toPath, String fileName) {
         File file = new File(fromFilePath);
         try {
-            FileInputStream input = new FileInputStream(file);
             createDir(toPath);
             String dirFile = toPath + "/" + ("".equals(fileName) ? file.getName() : fileName);
-            int index;
-            byte[] bytes = new byte[1024];
-            FileOutputStream downloadFile = new FileOutputStream(dirFile);
-            while ((index = input.read(bytes)) != -1) {
-                downloadFile.write(bytes, 0, index);
-                downloadFile.flush();
-            }
-            downloadFile.close();
-            input.close();
+            FileCopier.copy(file.toPath(), Paths.get(dirFile), false, null);
             System.out.print("复制文件到指定目录下成功");
         } catch (IOException e) {
             e.printStackTrace();
@@ -555,10 +553,14 @@ public class FileUtils {
      * @throws FileNotFoundException .
      */
     public static void moveFile(File srcFile, File destFile) throws FileNotFoundException {
-        boolean rename = srcFile.renameTo(destFile);
-        if (!rename) {
-            copyFile(srcFile.getAbsolutePath(), destFile.getAbsolutePath());
-            deleteFile(srcFile.getAbsolutePath());
+        if (!srcFile.exists()) {
+            throw new FileNotFoundException(srcFile.getAbsolutePath());
+        }
+        try {
+            // 先尝试改名，跨磁盘时复制并校验后删除源文件
+            FileCopier.move(srcFile.toPath(), destFile.toPath(), null);
+        } catch (IOException e) {
+            e.printStackTrace();
         }
     }
 
@@ -572,8 +574,33 @@ public class FileUtils {
      */
     public static boolean copyFile(String srcFilePath, String destFilePath)
             throws FileNotFoundException {
-        InputStream inputStream = new FileInputStream(srcFilePath);
-        return writeFile(destFilePath, inputStream);
+        return copyFile(srcFilePath, destFilePath, false, null);
+    }
+
+    /**
+     * 复制文件，数据由内核直接在两个文件之间传输；大文件中断后再次复制会从断点继续
+     *
+     * @param srcFilePath  源文件路径
+     * @param destFilePath 目标文件路径
+     * @param verify       复制完成后是否按大小和 MD5 校验
+     * @param listener     进度回调，按固定间隔触发，可以为 null
+     * @return 复制成功返回 true
+     * @throws FileNotFoundException 源文件不存在
+     * @throws IllegalArgumentException 源文件和目标是同一个文件
+     */
+    public static boolean copyFile(String srcFilePath, String destFilePath, boolean verify,
+                                   FileCopier.ProgressListener listener) throws FileNotFoundException {
+        File srcFile = new File(srcFilePath);
+        if (!srcFile.isFile()) {
+            throw new FileNotFoundException(srcFilePath);
+        }
+        try {
+            FileCopier.copy(srcFile.toPath(), Paths.get(destFilePath), verify, listener);
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
     }
 
     /**
@@ -911,20 +938,8 @@ public class FileUtils {
      * @return .
      */
     public static long getFolderSize(File file) {
-        long size = 0;
-        try {
-            File[] fileList = file.listFiles();
-            for (int i = 0; i < fileList.length; i++) {
-                if (fileList[i].isDirectory()) {
-                    size = size + getFolderSize(fileList[i]);
-                } else {
-                    size = size + fileList[i].length();
-                }
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return size;
+        // 并行遍历，文件大小取自遍历时得到的属性，不再逐个查询
+        return FileWalker.size(file.toPath());
     }
 
     /**
@@ -949,32 +964,83 @@ public class FileUtils {
     }
 
     /**
+     * 获取文件的 MD5 值，需要跨调用复用结果时使用 {@link #getFileDigests(String, DigestCache, String...)}
+     *
      * @param file 文件路径
-     * @return 获取到的文件md5值
+     * @return 获取到的文件md5值，32 位小写十六进制
      */
     public static String getFileMD5(File file) {
         if (!file.exists() || !file.isFile()) {
             return null;
         }
-        MessageDigest digest = null;
-        FileInputStream in = null;
-        byte buffer[] = new byte[8192];
-        int len;
         try {
-            digest = MessageDigest.getInstance("MD5");
-            in = new FileInputStream(file);
-            while ((len = in.read(buffer)) != -1) {
-                digest.update(buffer, 0, len);
-            }
-            BigInteger bigInt = new BigInteger(1, digest.digest());
-            return bigInt.toString(16);
+            return FileHasher.hash(file.toPath(), FileHasher.MD5).get(FileHasher.MD5);
         } catch (Exception e) {
             e.printStackTrace();
             return null;
-        } finally {
-            close(in);
         }
     }
+
+    /**
+     * 读取一遍文件同时计算多种摘要
+     *
+     * @param filePath   文件路径
+     * @param algorithms 算法，如 {@link FileHasher#MD5}、{@link FileHasher#SHA1}、{@link FileHasher#SHA256}、{@link FileHasher#CRC32}
+     * @return 算法名到十六进制摘要的映射，失败返回 null
+     */
+    public static Map<String, String> getFileDigests(String filePath, String... algorithms) {
+        return getFileDigests(filePath, null, algorithms);
+    }
+
+    /**
+     * 读取一遍文件同时计算多种摘要，文件未变化（大小、修改时间相同）时直接使用调用方提供的摘要缓存
+     *
+     * @param filePath   文件路径
+     * @param cache      摘要缓存，为 null 时每次都读文件计算
+     * @param algorithms 算法
+     * @return 算法名到十六进制摘要的映射，失败返回 null
+     */
+    public static Map<String, String> getFileDigests(String filePath, DigestCache cache, String... algorithms) {
+        try {
+            Path path = Paths.get(filePath);
+            return (cache != null ? cache.get(path, algorithms) : FileHasher.hash(path, algorithms)).getDigests();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * 并行计算多个文件的摘要，失败的文件不在结果中
+     *
+     * @param filePaths  文件路径
+     * @param algorithms 算法
+     * @return 文件路径到摘要的映射，顺序与输入相同
+     */
+    public static Map<String, Map<String, String>> getFilesDigests(List<String> filePaths, String... algorithms) {
+        return getFilesDigests(filePaths, null, algorithms);
+    }
+
+    /**
+     * 并行计算多个文件的摘要，文件未变化时直接使用调用方提供的摘要缓存，失败的文件不在结果中
+     *
+     * @param filePaths  文件路径
+     * @param cache      摘要缓存，为 null 时每次都读文件计算
+     * @param algorithms 算法
+     * @return 文件路径到摘要的映射，顺序与输入相同
+     */
+    public static Map<String, Map<String, String>> getFilesDigests(List<String> filePaths, DigestCache cache, String... algorithms) {
+        List<Path> paths = new ArrayList<>(filePaths.size());
+        for (String filePath : filePaths) {
+            paths.add(Paths.get(filePath));
+        }
+        Map<Path, FileHasher.FileDigest> digests = cache != null ? cache.getAll(paths, algorithms) : FileHasher.hashAll(paths, algorithms);
+        Map<String, Map<String, String>> result = new LinkedHashMap<>();
+        for (Map.Entry<Path, FileHasher.FileDigest> entry : digests.entrySet()) {
+            result.put(entry.getKey().toString(), entry.getValue().getDigests());
+        }
+        return result;
+    }
 //==================================================================================================
 
     /**
@@ -999,17 +1065,61 @@ public class FileUtils {
      * @throws Exception 异常
      */
     public static void readDirFilesExc(String path, ReadFileNames readLines) throws Exception {
-        File file = new File(path);
-        if (file.exists() && file.isFile()) {
-            readLines.onReadLine(file.getPath(), file);
-        } else if (file.exists() && file.isDirectory()) {
-            File[] files = file.listFiles();
-            for (int i = 0; i < files.length; i++) {
-                readDirFilesExc(files[i].getPath(), readLines);
+        try (Stream<FileWalker.Entry> stream = FileWalker.walk(Paths.get(path), null, false)) {
+            Iterator<FileWalker.Entry> iterator = stream.iterator();
+            while (iterator.hasNext()) {
+                FileWalker.Entry entry = iterator.next();
+                if (entry.attributes().isRegularFile()) {
+                    File file = entry.path().toFile();
+                    readLines.onReadLine(file.getPath(), file);
+                }
             }
         }
     }
 
+    /**
+     * 惰性遍历目录下匹配 glob 的文件，子目录并行展开
+     *
+     * @param dirPath  目录路径
+     * @param glob     glob 表达式，如 "*.java"，null 表示所有文件
+     * @param parallel 是否返回并行流
+     * @return 文件路径流，用完需关闭
+     */
+    public static Stream<Path> walkFiles(String dirPath, String glob, boolean parallel) {
+        return FileWalker.files(Paths.get(dirPath), glob, parallel);
+    }
+
+
+    /**
+     * 查找目录下的重复文件：先按大小分组，再比较开头结尾各 4 KB，最后只对仍然相同的文件计算完整摘要
+     *
+     * @param dirPath 目录路径
+     * @param onGroup 每找到一组重复文件回调一次，参数为同一内容的文件路径
+     * @return 统计结果
+     */
+    public static DuplicateFinder.Summary findDuplicateFiles(String dirPath, Consumer<List<String>> onGroup) {
+        return findDuplicateFiles(dirPath, null, onGroup);
+    }
+
+    /**
+     * 查找目录下的重复文件，完整摘要经传入的摘要缓存计算，重复扫描时未变化的文件不再读取
+     *
+     * @param dirPath 目录路径
+     * @param cache   摘要缓存，null 表示直接计算
+     * @param onGroup 每找到一组重复文件回调一次，参数为同一内容的文件路径
+     * @return 统计结果
+     */
+    public static DuplicateFinder.Summary findDuplicateFiles(String dirPath, DigestCache cache, Consumer<List<String>> onGroup) {
+        DuplicateFinder.Summary summary = DuplicateFinder.find(Paths.get(dirPath), 1, cache, group -> {
+            List<String> paths = new ArrayList<>(group.size());
+            for (Path path : group) {
+                paths.add(path.toString());
+            }
+            onGroup.accept(paths);
+        });
+        System.out.println("查找重复文件完成：" + summary);
+        return summary;
+    }
 
     /**
      * 获取文件的Sha1值
@@ -1018,34 +1128,10 @@ public class FileUtils {
      * @return 返回sha1值
      */
     public static String getFileSha1(File file) {
-        FileInputStream in = null;
         try {
-            in = new FileInputStream(file);
-            MessageDigest digest = MessageDigest.getInstance("SHA-1");
-            byte[] buffer = new byte[1024 * 1024 * 10];
-
-            int len = 0;
-            while ((len = in.read(buffer)) > 0) {
-                digest.update(buffer, 0, len);
-            }
-            String sha1 = new BigInteger(1, digest.digest()).toString(16);
-            int length = 40 - sha1.length();
-            if (length > 0) {
-                for (int i = 0; i < length; i++) {
-                    sha1 = "0" + sha1;
-                }
-            }
-            return sha1;
-        } catch (IOException | NoSuchAlgorithmException e) {
+            return FileHasher.hash(file.toPath(), FileHasher.SHA1).get(FileHasher.SHA1);
+        } catch (Exception e) {
             e.printStackTrace();
-        } finally {
-            try {
-                if (in != null) {
-                    in.close();
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
         }
         return "";
     }
@@ -1072,30 +1158,16 @@ public class FileUtils {
     }
 
     /**
-     * 逐行读取
+     * 逐行读取，按文件顺序回调；大文件分段并行解码
      *
      * @param path      路径
      * @param readLines 读取行接口
      */
     public static void readTextFileLines(String path, ReadLines readLines) {
+        int[] lineIndex = {0};
         try {
-            File file = new File(path);
-            //BufferedReader是可以按行读取文件
-            FileInputStream inputStream = new FileInputStream(file);
-            BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(inputStream));
-
-            String str = null;
-            int lineIndex = 0;
-            while ((str = bufferedReader.readLine()) != null) {
-                if (readLines != null) {
-                    lineIndex++;
-                    if (readLines.onReadLine(lineIndex, str)) {
-                        break;
-                    }
-                }
-            }
-            inputStream.close();
-            bufferedReader.close();
+            ParallelLineReader.forEachLineOrdered(Paths.get(path), Charset.defaultCharset(),
+                    line -> readLines == null || !readLines.onReadLine(++lineIndex[0], line));
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -1103,25 +1175,14 @@ public class FileUtils {
 
 
     /**
-     * 获取文件总行数
+     * 获取文件总行数，并行统计换行符，不解码内容
      *
      * @param filePath 文件路径
-     * @return 文件总行数
+     * @return 文件总行数，读取失败返回-1
      */
     public static int getFlieTotalLines(String filePath) {
-        BufferedReader in = null;
         try {
-            in = new BufferedReader(new InputStreamReader(new FileInputStream(filePath)));
-            LineNumberReader reader = new LineNumberReader(in);
-            String s = reader.readLine();
-            int lines = 0;
-            while (s != null) {
-                lines++;
-                s = reader.readLine();
-            }
-            reader.close();
-            in.close();
-            return lines;
+            return (int) ParallelLineReader.countLines(Paths.get(filePath));
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -1137,17 +1198,15 @@ public class FileUtils {
      * @return 指定内容内容
      */
     public static String getSpecifyLinesContent(String filePath, int startLine, int endLine) {
-        BufferedReader br = null;
-        try {
-            br = new BufferedReader(new FileReader(new File(filePath)));
+        int start = Math.max(1, startLine);
+        if (endLine < start) {
+            return "";
+        }
+        try (BufferedReader br = openReaderAt(filePath, start)) {
             StringBuilder sb = new StringBuilder();
-            String temp = null;
-            int count = 0;
-            while ((temp = br.readLine()) != null) {
-                count++;
-                if (count >= startLine && count <= endLine) {
-                    sb.append(temp).append("\n");
-                }
+            String temp;
+            for (int count = start; count <= endLine && (temp = br.readLine()) != null; count++) {
+                sb.append(temp).append("\n");
             }
             return sb.toString();
         } catch (IOException e) {
@@ -1156,6 +1215,31 @@ public class FileUtils {
         return "获取失败";
     }
 
+    /**
+     * 打开一个从指定行开始读取的 Reader，使用默认编码：编码支持行索引时通过行索引直接定位，否则从头逐行跳过
+     *
+     * @param filePath  文件路径
+     * @param startLine 起始行号，从1开始
+     * @return Reader，用完需关闭
+     * @throws IOException 读文件失败
+     */
+    private static BufferedReader openReaderAt(String filePath, long startLine) throws IOException {
+        Charset charset = Charset.defaultCharset();
+        if (LineIndex.supports(charset)) {
+            return LineIndex.of(Paths.get(filePath)).openAt(Math.max(1, startLine) - 1, charset);
+        }
+        BufferedReader br = new BufferedReader(new InputStreamReader(Files.newInputStream(Paths.get(filePath)), charset));
+        try {
+            for (long count = 1; count < startLine && br.readLine() != null; count++) {
+                // 跳过起始行之前的行
+            }
+            return br;
+        } catch (IOException | RuntimeException e) {
+            br.close();
+            throw e;
+        }
+    }
+
     /**
      * 方法一:按行获取指定内容(至末尾)
      *
@@ -1165,13 +1249,10 @@ public class FileUtils {
      * @throws Exception .
      */
     public static String getSpecifyContent1(String filePath, int startLine) throws Exception {
-        BufferedReader br = new BufferedReader(new FileReader(new File(filePath)));
         StringBuilder sb = new StringBuilder();
-        String temp = null;
-        int count = 0;
-        while ((temp = br.readLine()) != null) {
-            count++;
-            if (count >= startLine) {
+        try (BufferedReader br = openReaderAt(filePath, startLine)) {
+            String temp;
+            while ((temp = br.readLine()) != null) {
                 sb.append(temp).append("\n");
             }
         }
@@ -1179,78 +1260,88 @@ public class FileUtils {
     }
 
     /**
-     * 替换文件内的文本信息[因为是一行一行读的,所以只能替换单词一类的字符串]
+     * 替换文件内的文本信息[按行匹配正则，所以只能替换单词一类的字符串]，没有匹配时不改写文件，保留原来的换行符
      *
      * @param path     文件路径
-     * @param olderArg 旧参数
+     * @param olderArg 旧参数（正则）
      * @param newArg   新参数
      * @throws IOException .
      */
     public static void replacetext(String path, String olderArg, String newArg) throws IOException {
-        // 读
-        File file = new File(path);
-        FileReader in = new FileReader(file);
-        BufferedReader bufIn = new BufferedReader(in);
-        // 内存流, 作为临时流
-        CharArrayWriter tempStream = new CharArrayWriter();
-        // 替换
-        String line = null;
-        while ((line = bufIn.readLine()) != null) {
-            // 替换每行中, 符合条件的字符串
-            line = line.replaceAll(olderArg, newArg);
-            // 将该行写入内存
-            tempStream.write(line);
-            // 添加换行符
-            tempStream.append(System.getProperty("line.separator"));
-        }
-        // 关闭 输入流A
-        bufIn.close();
-        // 将内存中的流 写入 文件
-        FileWriter out = new FileWriter(file);
-        tempStream.writeTo(out);
-        out.close();
-    }
-
-    /**
-     * 在文件里面的指定行插入数据[如果插入后要换行的话在插入内容的结尾加  /n ]
+        new TextReplacer(olderArg, newArg).replace(Paths.get(path), Charset.defaultCharset());
+    }
+
+    /**
+     * 一遍扫描同时替换文件内的多个字符串（按原文匹配，可以跨行），没有匹配时不改写文件
+     *
+     * @param path         文件路径
+     * @param encoding     文件编码，如 UTF-8
+     * @param replacements 要查找的字符串到替换内容的映射
+     * @return 替换的次数
+     * @throws IOException 读写失败，或文件不能按该编码解码
+     */
+    public static long replaceTexts(String path, String encoding, Map<String, String> replacements) throws IOException {
+        return new TextReplacer(replacements).replace(Paths.get(path), Charset.forName(encoding));
+    }
+
+    /**
+     * 多线程替换目录下文件内的多个字符串，没有匹配的文件不改写，不能按该编码解码的文件跳过
+     *
+     * @param dirPath      目录路径
+     * @param encoding     文件编码，如 UTF-8
+     * @param replacements 要查找的字符串到替换内容的映射
+     * @param suffixes     只处理这些后缀的文件，如 ".java"、".txt"，不传表示所有文件
+     * @return 统计结果
+     */
+    public static TextReplacer.Summary replaceTextsInDirectory(String dirPath, String encoding,
+                                                               Map<String, String> replacements, String... suffixes) {
+        TextReplacer.Summary summary = new TextReplacer(replacements).replaceTree(Paths.get(dirPath),
+                Charset.forName(encoding), path -> {
+                    if (suffixes.length == 0) {
+                        return true;
+                    }
+                    String name = path.getFileName().toString();
+                    for (String suffix : suffixes) {
+                        if (name.endsWith(suffix)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                }, Runtime.getRuntime().availableProcessors());
+        System.out.println("替换完成：" + summary);
+        return summary;
+    }
+
+    /**
+     * 在文件里面的指定行插入数据[如果插入后要换行的话在插入内容的结尾加  /n ]，行号超出文件行数时不插入
+     * [只写入插入位置之后的部分，插入位置靠近文件末尾时原地修改]
      *
      * @param filePath         文件路径
-     * @param insertLineNumber 要插入的行号
+     * @param insertLineNumber 要插入的行号，从 1 开始
      * @param lineToBeInserted 要插入的数据
      * @throws Exception IO操作引发的异常
      */
     public static void insertContentToFile(String filePath, int insertLineNumber,
                                            String lineToBeInserted) throws Exception {
-        File inFile = new File(filePath);
-        // 临时文件
-        File outFile = File.createTempFile("name", ".tmp");
-        // 输入
-        FileInputStream fis = new FileInputStream(inFile);
-        BufferedReader in = new BufferedReader(new InputStreamReader(fis));
-        // 输出
-        FileOutputStream fos = new FileOutputStream(outFile);
-        PrintWriter out = new PrintWriter(fos);
-        // 保存一行数据
-        String thisLine;
-        // 行号从1开始
-        int i = 1;
-        while ((thisLine = in.readLine()) != null) {
-            // 如果行号等于目标行，则输出要插入的数据
-            if (i == insertLineNumber) {
-                out.println(lineToBeInserted);
-            }
-            // 输出读取到的数据
-            out.println(thisLine);
-            // 行号增加
-            i++;
+        Path path = Paths.get(filePath);
+        if (insertLineNumber < 1 || insertLineNumber > LineIndex.of(path).getLineCount()) {
+            return;
         }
-        out.flush();
-        out.close();
-        in.close();
-        // 删除原始文件
-        inFile.delete();
-        // 把临时文件改名为原文件名
-        outFile.renameTo(inFile);
+        FileEditor.apply(path, Charset.defaultCharset(),
+                Collections.singletonList(FileEditor.Edit.insertLines(insertLineNumber - 1, lineToBeInserted)));
+    }
+
+    /**
+     * 批量编辑文件：一组按行或按字节的插入、删除、替换一次完成，未改动的部分直接复制，只改动末尾时原地修改
+     *
+     * @param filePath    文件路径
+     * @param charsetName 行文本的编码
+     * @param edits       编辑，位置都相对于编辑前的文件，不能重叠，行号从 0 开始
+     * @return 编辑后的文件大小
+     * @throws IOException 读写失败
+     */
+    public static long editFile(String filePath, String charsetName, List<FileEditor.Edit> edits) throws IOException {
+        return FileEditor.apply(Paths.get(filePath), Charset.forName(charsetName), edits);
     }
 
     /**
@@ -1453,50 +1544,69 @@ public class FileUtils {
     }
 
     /**
+     * 分块读取文件，不把整个文件放进内存
+     *
      * @param filePath                  文件路径
-     * @param iCaliFileReadCallBackBack 回调
+     * @param iCaliFileReadCallBackBack 回调，参数只包含本次读到的字节（最后一块可能小于 4096 字节），回调返回后数组会被复用
      */
     public static void readFileBit(String filePath, IFileReadCallBack iCaliFileReadCallBackBack) {
-        FileInputStream fis = null;
-        ByteArrayOutputStream baos = null;
+        long[] total = {0};
+        byte[] buffer = new byte[4096];
         try {
-            // 创建FileInputStream对象并指定要读取的MP4文件路径
-            fis = new FileInputStream(filePath);
-
-            // 创建ByteArrayOutputStream对象
-            baos = new ByteArrayOutputStream();
-
-            // 读取文件内容到ByteArrayOutputStream中
-            byte[] buffer = new byte[4096];
-            int bytesRead;
-            while ((bytesRead = fis.read(buffer)) != -1) {
+            ChunkReader.readBytes(Paths.get(filePath), 0, Long.MAX_VALUE, buffer.length, chunk -> {
+                int n = chunk.remaining();
+                total[0] += n;
                 if (iCaliFileReadCallBackBack != null) {
-                    iCaliFileReadCallBackBack.read(buffer);
+                    chunk.get(buffer, 0, n);
+                    iCaliFileReadCallBackBack.read(n == buffer.length ? buffer : Arrays.copyOf(buffer, n));
                 }
-                baos.write(buffer, 0, bytesRead);
-            }
-
-            // 将MP4文件内容保存在字节数组中
-            byte[] mp4Data = baos.toByteArray();
-
-            // 打印字节数组长度
-            System.out.println("MP4文件长度：" + mp4Data.length + " 字节");
+            });
+            // 打印文件长度
+            System.out.println("MP4文件长度：" + total[0] + " 字节");
         } catch (IOException e) {
             e.printStackTrace();
-        } finally {
-            try {
-                if (baos != null) {
-                    baos.close();
-                }
-                if (fis != null) {
-                    fis.close();
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
         }
     }
 
+    /**
+     * 把文件按内容分块存入去重存储，相同的块只存一份，再次存入变化不大的文件时只写入新的块
+     *
+     * @param storeDir 存储目录
+     * @param filePath 文件路径
+     * @param name     存入的名称，可以包含 / 分隔的子目录，同名时覆盖
+     * @return 统计结果
+     * @throws IOException 读写失败
+     */
+    public static ChunkStore.Summary storeFileChunks(String storeDir, String filePath, String name) throws IOException {
+        ChunkStore.Summary summary = new ChunkStore(Paths.get(storeDir)).put(Paths.get(filePath), name);
+        System.out.println("存入完成：" + summary);
+        return summary;
+    }
+
+    /**
+     * 打开去重存储中的文件，边读边还原，用完需关闭
+     *
+     * @param storeDir 存储目录
+     * @param name     存入的名称
+     * @return 输入流
+     * @throws IOException 文件不存在
+     */
+    public static InputStream openStoredFile(String storeDir, String name) throws IOException {
+        return new ChunkStore(Paths.get(storeDir)).open(name);
+    }
+
+    /**
+     * 把去重存储中的文件还原到指定路径，逐块校验后原子替换目标文件
+     *
+     * @param storeDir   存储目录
+     * @param name       存入的名称
+     * @param targetPath 目标文件路径
+     * @throws IOException 读写失败或数据损坏
+     */
+    public static void restoreStoredFile(String storeDir, String name, String targetPath) throws IOException {
+        new ChunkStore(Paths.get(storeDir)).restore(name, Paths.get(targetPath));
+    }
+
     /**
      * 解决:保存文件文件名不正确问题
      * 解决:文件名、目录名或卷标语法不正确。
@@ -1546,29 +1656,50 @@ public class FileUtils {
     }
 
     /**
-     * 获取文件编码格式
+     * 获取文件编码格式，根据文件开头 64KB 的字节统计判断（BOM、UTF-16、UTF-8 合法性、GBK 常用字区）
      *
      * @param file 文件
-     * @return 编码格式
+     * @return 编码格式，纯 ASCII 文件返回 UTF-8，读取失败返回 UTF-8
      */
     public static String getEncoding(File file) {
-        InputStream in = null;
         try {
-            in = new FileInputStream(file);
-            byte[] b = new byte[3];
-            in.read(b);
-            in.close();
-            if (b[0] == -17 && b[1] == -69 && b[2] == -65)
-                System.out.println(file.getName() + "：编码为UTF-8");
-            else
-                System.out.println(file.getName() + "：可能是GBK，也可能是其他编码");
-            return ENCODING_GBK;
+            Charset charset = EncodingDetector.detect(file.toPath());
+            if (charset.equals(StandardCharsets.US_ASCII)) {
+                return ENCODING_UTF_8;
+            }
+            return charset.name();
         } catch (Exception e) {
             e.printStackTrace();
         }
         return ENCODING_UTF_8;
     }
 
+    /**
+     * 批量转换目录下文件的编码：多线程处理，逐个文件检测编码，已是目标编码的跳过，
+     * 二进制文件（含 0 字节）和无法识别编码的文件保留原样，转换结果保留原文件权限后原子替换原文件
+     *
+     * @param dirPath        目录路径
+     * @param targetEncoding 目标编码，如 UTF-8
+     * @param suffixes       只处理这些后缀的文件，如 ".java"、".txt"，不传表示所有文件
+     * @return 统计结果，包含文件数和吞吐量
+     */
+    public static DirectoryTranscoder.Summary transcodeDirectory(String dirPath, String targetEncoding, String... suffixes) {
+        DirectoryTranscoder.Summary summary = DirectoryTranscoder.transcodeTree(Paths.get(dirPath), Charset.forName(targetEncoding), path -> {
+            if (suffixes.length == 0) {
+                return true;
+            }
+            String name = path.getFileName().toString();
+            for (String suffix : suffixes) {
+                if (name.endsWith(suffix)) {
+                    return true;
+                }
+            }
+            return false;
+        });
+        System.out.println("编码转换完成：" + summary);
+        return summary;
+    }
+
 //try {
 //            String srcDirPath = "L:\\Users\\19500\\Downloads\\test";
 //            // 转为UTF-8编码格式源码路径
@@ -1741,6 +1872,11 @@ public class FileUtils {
         if (encode == null || encode.isEmpty()) {
             encode = "UTF-8";
         }
+        Charset charset = Charset.forName(encode);
+        if (LineIndex.supports(charset)) {
+            readNovelByIndex(NovelIndex.of(Paths.get(filePath), charset), callback);
+            return;
+        }
         BufferedReader reader = new BufferedReader(new InputStreamReader(Files.newInputStream(Paths.get(filePath)), encode));
         String line;
         StringBuilder chapterContent = new StringBuilder();
@@ -1778,6 +1914,96 @@ public class FileUtils {
     }
 
 
+    /**
+     * 按章节索引逐章解码并回调，回调的标题、内容、序号和位置与逐行读取全文时相同，同一时间只保留一章的内容
+     *
+     * @param index    章节索引
+     * @param callback 回调
+     * @throws Exception 读文件失败或回调异常
+     */
+    private static void readNovelByIndex(NovelIndex index, ChapterCallback callback) throws Exception {
+        StringBuilder chapterContent = new StringBuilder();
+        String currentTitle = null;
+        int number = 0;
+        int start = 0;
+        int end;
+        // 第一个标题之前的内容并入第一章
+        appendNovelLines(chapterContent, index.readPreface());
+        for (NovelIndex.Chapter chapter : index.getChapters()) {
+            if (currentTitle != null && chapterContent.length() > 0) {
+                String content = chapterContent.toString();
+                end = start + content.length();
+                callback.onChapterFound(currentTitle, content, number, start, end);
+                number++;
+                start = end;
+                chapterContent.setLength(0);
+            }
+            currentTitle = chapter.getTitle();
+            appendNovelLines(chapterContent, index.readChapter(chapter.getIndex()));
+        }
+        if (currentTitle != null) {
+            number++;
+            String content = chapterContent.toString();
+            end = start + content.length();
+            callback.onChapterFound(currentTitle, content, number, start, end);
+        }
+    }
+
+    /**
+     * 把文本按行以 "\t行内容&lt;br/&gt;" 的格式追加到章节内容中，换行规则与 {@link BufferedReader#readLine()} 相同
+     *
+     * @param chapterContent 章节内容
+     * @param text           文本
+     */
+    private static void appendNovelLines(StringBuilder chapterContent, String text) {
+        int length = text.length();
+        int lineStart = 0;
+        while (lineStart < length) {
+            int lineEnd = lineStart;
+            while (lineEnd < length && text.charAt(lineEnd) != '\n' && text.charAt(lineEnd) != '\r') {
+                lineEnd++;
+            }
+            chapterContent.append("\t").append(text, lineStart, lineEnd).append("<br/>");
+            if (lineEnd < length && text.charAt(lineEnd) == '\r' && lineEnd + 1 < length && text.charAt(lineEnd + 1) == '\n') {
+                lineEnd++;
+            }
+            lineStart = lineEnd + 1;
+        }
+    }
+
+    /**
+     * 获取小说的章节列表（标题、字节范围、字数），首次调用时建立索引并保存在小说文件旁边，之后直接读取
+     *
+     * @param filePath 文件路径
+     * @param encode   编码，如 FileUtils.ENCODING_UTF_8、FileUtils.ENCODING_GBK
+     * @return 章节列表，失败返回空列表
+     */
+    public static List<NovelIndex.Chapter> getNovelChapters(String filePath, String encode) {
+        try {
+            return NovelIndex.of(Paths.get(filePath), Charset.forName(encode)).getChapters();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * 读取小说的某一章正文，只解码该章的字节范围
+     *
+     * @param filePath 文件路径
+     * @param encode   编码，如 FileUtils.ENCODING_UTF_8、FileUtils.ENCODING_GBK
+     * @param index    章节序号，从 0 开始
+     * @return 正文（不含标题行），失败返回 null
+     */
+    public static String readNovelChapter(String filePath, String encode, int index) {
+        try {
+            return NovelIndex.of(Paths.get(filePath), Charset.forName(encode)).readChapter(index);
+        } catch (IOException | IndexOutOfBoundsException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
     /**
      * 提取java文件变量
      *
@@ -1841,9 +2067,7 @@ public class FileUtils {
 //        Pattern pattern = Pattern.compile("第\\d+[章节回]");
 //        Pattern pattern = Pattern.compile("第.{1,8}[章节回][\\s\\n]");
 //        Pattern pattern = Pattern.compile("第[一二三四五六七八九十百千万零]+[章节回]");
-        Pattern pattern = Pattern.compile("第[一二三四五六七八九十百千万零\\d]+[章节回]");
-        Matcher matcher = pattern.matcher(line);
-        return matcher.find();
+        return NovelIndex.DEFAULT_TITLE.matcher(line).find();
     }
 
     /**
@@ -1897,6 +2121,7 @@ public class FileUtils {
 
     /**
      * 读取指定位置和指定长度的内容，并通过回调函数处理读取到的数据
+     * [每次调用分配新数组，回调可以保留；不想复制时使用 {@link #readFileBytes(String, long, long, int, ChunkReader.Handler)}]
      *
      * @param filePath 文件路径
      * @param position 读取的起始位置
@@ -1904,18 +2129,38 @@ public class FileUtils {
      * @param callback 数据回调接口
      */
     public static void readBjgFile(String filePath, long position, int length, DataCallback callback) {
-        try (RandomAccessFile file = new RandomAccessFile(filePath, "r")) {
-            file.seek(position);
-            byte[] data = new byte[length];
-            int bytesRead = file.read(data);
-            if (bytesRead != -1) {
-                callback.onDataRead(data, new String(data, 0, bytesRead), bytesRead);
+        byte[] data = new byte[length];
+        int[] bytesRead = {0};
+        try {
+            // 按块读满 length 字节，文件不够时只读到末尾
+            ChunkReader.readBytes(Paths.get(filePath), position, length, ChunkReader.DEFAULT_BUFFER_SIZE, chunk -> {
+                int n = chunk.remaining();
+                chunk.get(data, bytesRead[0], n);
+                bytesRead[0] += n;
+            });
+            if (bytesRead[0] > 0) {
+                callback.onDataRead(data, new String(data, 0, bytesRead[0]), bytesRead[0]);
             }
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * 以字节块读取文件的一段，每块是池化直接缓冲区的视图，不复制
+     *
+     * @param filePath 文件路径
+     * @param position 读取的起始位置
+     * @param length   最多读取的字节数
+     * @param bufSize  缓冲区大小，单位为字节
+     * @param handler  每块回调一次，参数在回调返回后失效
+     * @throws IOException 读取失败
+     */
+    public static void readFileBytes(String filePath, long position, long length, int bufSize,
+                                     ChunkReader.Handler<ByteBuffer> handler) throws IOException {
+        ChunkReader.readBytes(Paths.get(filePath), position, length, bufSize, handler);
+    }
+
     /**
      * 用于在读取大文件过程中发现文件夹时进行回调的接口
      */
@@ -1953,14 +2198,40 @@ public class FileUtils {
      * @throws IOException 如果读取文件失败，则抛出IOException异常
      */
     public static void readBigFile(String filePath, String charsetName, int bufSize, Callback callback) throws IOException {
-        try (RandomAccessFile raf = new RandomAccessFile(filePath, "r")) {
-            byte[] buffer = new byte[bufSize];
-            int len;
-            while ((len = raf.read(buffer)) != -1) {
-                String data = new String(buffer, 0, len, Charset.forName(charsetName));
-                callback.onDataRead(data);
-            }
-        }
+        // 同一个解码器贯穿整个文件，跨块的多字节字符不会被截断
+        ChunkReader.readChars(Paths.get(filePath), Charset.forName(charsetName), bufSize,
+                chunk -> callback.onDataRead(chunk.toString()));
+    }
+
+    /**
+     * 类似 tail -F 持续跟踪文件新增的行，所有跟踪共用一个后台线程，只读取新增的部分，
+     * 文件被轮转或截断时从头读取，文件不存在时等待创建
+     *
+     * @param filePath    文件路径
+     * @param charsetName 字符编码
+     * @param fromEnd     true 只回调之后新增的行，false 先回调现有的行
+     * @param onLine      每读到一行调用一次（不含换行符），在后台线程中调用
+     * @return 跟踪句柄，关闭后停止跟踪
+     * @throws IOException 监听文件所在目录失败
+     */
+    public static FileTailer.Follow tailFile(String filePath, String charsetName, boolean fromEnd,
+                                             Consumer<String> onLine) throws IOException {
+        return FileTailer.getDefault().follow(Paths.get(filePath), fromEnd,
+                FileTailer.lines(Charset.forName(charsetName), onLine));
+    }
+
+    /**
+     * 以字符块读取大文件，每块是复用缓冲区的视图，不生成字符串
+     *
+     * @param filePath    文件路径
+     * @param charsetName 字符编码
+     * @param bufSize     缓冲区大小，单位为字节
+     * @param handler     每块回调一次，参数在回调返回后失效
+     * @throws IOException 如果读取文件失败，则抛出IOException异常
+     */
+    public static void readBigFileChars(String filePath, String charsetName, int bufSize,
+                                        ChunkReader.Handler<CharBuffer> handler) throws IOException {
+        ChunkReader.readChars(Paths.get(filePath), Charset.forName(charsetName), bufSize, handler);
     }
 
     /**
@@ -2022,6 +2293,15 @@ public class FileUtils {
      * @throws IOException 如果文件读取失败抛出异常
      */
     public static String readLineByLineNum(String filePath, int lineNumber, String charsetName) throws IOException {
+        if (lineNumber < 1) {
+            return null;
+        }
+        Charset charset = Charset.forName(charsetName);
+        if (LineIndex.supports(charset)) {
+            // 通过行索引直接定位到该行
+            List<String> lines = LineIndex.of(Paths.get(filePath)).readLines(lineNumber - 1, 1, charset);
+            return lines.isEmpty() ? null : lines.get(0);
+        }
         try (BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(new FileInputStream(filePath), charsetName))) {
             String line;
             int currentLine = 1;
@@ -2048,6 +2328,21 @@ public class FileUtils {
         }
     }
 
+    /**
+     * 按行读文件:初始化文件路径，并定位到起始行，编码支持时通过行索引直接定位
+     *
+     * @param path      文件路径
+     * @param startLine 起始行号，从1开始
+     */
+    public static void readNextLineInit(String path, long startLine) {
+        try {
+            close(reader);
+            reader = openReaderAt(path, startLine);
+        } catch (IOException e) {
+            throw new RuntimeException("File not found: " + path, e);
+        }
+    }
+
     /**
      * @return 按行读文件, 读下一行, 掉一次读一行
      */
@@ -2379,18 +2674,9 @@ public class FileUtils {
     }
 
 
-    /**
-     * 线程数
-     */
-    private static final int THREAD_COUNT = 4;
-    /**
-     * 缓冲区大小
-     */
-    private static final int BUFFER_SIZE = 1024;
-
     /**
      *
-     * 多线程读取文件，转换文件编码格式 4线程 1Mb缓存
+     * 多线程转换文件编码格式：按换行符切段并行转码，各段直接写到输出文件的对应位置，不产生临时文件
      *
      * @param inputFile     输入文件 String input = "E:/02code/web/test.txt";
      * @param sourceCharset 源文件编码 String output = "E:/02code/web/tes1t.txt";
@@ -2399,81 +2685,7 @@ public class FileUtils {
      * @throws IOException io
      */
     public static void conversionFileEncodingFormat(File inputFile, String sourceCharset, File outputFile, String targetCharset) throws Exception {
-        long fileSize = inputFile.length();
-        long chunkSize = fileSize / THREAD_COUNT;
-
-        ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
-        List<Future<File>> futures = new ArrayList<>();
-
-        for (int i = 0; i < THREAD_COUNT; i++) {
-            long start = i * chunkSize;
-            long end = (i == THREAD_COUNT - 1) ? fileSize : (start + chunkSize);
-            futures.add(executor.submit(new FileReadTask(inputFile, start, end, i, sourceCharset, targetCharset)));
-        }
-
-        executor.shutdown();
-        executor.awaitTermination(1, TimeUnit.HOURS);
-
-        try (BufferedOutputStream bos = new BufferedOutputStream(new FileOutputStream(outputFile))) {
-            for (Future<File> future : futures) {
-                File tempFile = future.get();
-                try (BufferedInputStream bis = new BufferedInputStream(new FileInputStream(tempFile))) {
-                    byte[] buffer = new byte[BUFFER_SIZE];
-                    int bytesRead;
-                    while ((bytesRead = bis.read(buffer)) != -1) {
-                        bos.write(buffer, 0, bytesRead);
-                    }
-                }
-                tempFile.delete(); // 删除临时文件
-            }
-        }
-    }
-
-    /**
-     * 文件读取任务
-     */
-    private static class FileReadTask implements Callable<File> {
-        private final File inputFile;
-        private final long start;
-        private final long end;
-        private final int index;
-        /**
-         * 源文件编码
-         */
-        private final String sourceCharset;
-        /**
-         * 目标文件编码
-         */
-        private final String targetCharset;
-
-        public FileReadTask(File inputFile, long start, long end, int index, String sourceCharset, String targetCharset) {
-            this.inputFile = inputFile;
-            this.start = start;
-            this.end = end;
-            this.index = index;
-            this.sourceCharset = sourceCharset;
-            this.targetCharset = targetCharset;
-        }
-
-        @Override
-        public File call() throws Exception {
-            File tempFile = new File("temp_" + index + ".txt");
-            try (RandomAccessFile raf = new RandomAccessFile(inputFile, "r");
-                 BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), targetCharset))) {
-
-                raf.seek(start);
-                byte[] buffer = new byte[BUFFER_SIZE];
-                long bytesToRead = end - start;
-                while (bytesToRead > 0) {
-                    int bytesRead = raf.read(buffer, 0, (int) Math.min(buffer.length, bytesToRead));
-                    if (bytesRead == -1) break;
-                    String chunk = new String(buffer, 0, bytesRead, sourceCharset); // 假设原文件编码为 ISO_8859_1
-                    writer.write(chunk);
-                    bytesToRead -= bytesRead;
-                }
-            }
-            return tempFile;
-        }
+        Transcoder.transcode(inputFile.toPath(), Charset.forName(sourceCharset), outputFile.toPath(), Charset.forName(targetCharset));
     }
 
 
@@ -2547,26 +2759,33 @@ public class FileUtils {
             throw new IllegalArgumentException("Source directory does not exist or is not a directory: " + sourceDir);
         }
 
-        // 确保目标文件夹存在
-        Files.createDirectories(targetFolder);
-
-        try (DirectoryStream<Path> stream = Files.newDirectoryStream(sourceFolder)) {
-            for (Path entry : stream) {
-                Path targetPath = targetFolder.resolve(sourceFolder.relativize(entry));
-                if (Files.isDirectory(entry)) {
-                    // 递归复制子文件夹
-                    copyDirChildFiles2Dir(entry.toString(), targetPath.toString());
-                } else {
-                    // 复制文件
-                    Files.copy(entry, targetPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
-                }
-            }
-        } catch (IOException e) {
-            System.err.println("Failed to copy folder: " + e.getMessage());
-            throw e; // 重新抛出异常以便上层捕获
+        // 文件交给线程池并行复制
+        FileCopier.Summary summary = FileCopier.copyTree(sourceFolder, targetFolder,
+                Runtime.getRuntime().availableProcessors(), false, null);
+        if (summary.getFailed() > 0) {
+            System.err.println("Failed to copy folder: " + summary);
+            throw new IOException("复制失败 " + summary.getFailed() + " 个: " + sourceDir);
         }
     }
 
+    /**
+     * 复制目录下的所有文件及文件夹到目标位置(不包括根目录)，多线程并行复制并回调进度。
+     *
+     * @param sourceDir 源文件夹路径
+     * @param targetDir 目标文件夹路径
+     * @param verify    每个文件复制完成后是否按大小和 MD5 校验
+     * @param listener  进度回调，按固定间隔触发，可以为 null
+     * @return 统计结果
+     * @throws IOException 创建目标文件夹失败
+     */
+    public static FileCopier.Summary copyDirectory(String sourceDir, String targetDir, boolean verify,
+                                                   FileCopier.ProgressListener listener) throws IOException {
+        FileCopier.Summary summary = FileCopier.copyTree(Paths.get(sourceDir), Paths.get(targetDir),
+                Runtime.getRuntime().availableProcessors(), verify, listener);
+        System.out.println(summary);
+        return summary;
+    }
+
     /**
      * 读取文件的特定行。
      *
@@ -2579,15 +2798,8 @@ public class FileUtils {
             return null; // 行号必须是正数
         }
 
-        try (BufferedReader br = new BufferedReader(new FileReader(filePath))) {
-            String line;
-            int currentLine = 1;
-            while ((line = br.readLine()) != null) {
-                if (currentLine == lineNumber) {
-                    return line;
-                }
-                currentLine++;
-            }
+        try (BufferedReader br = openReaderAt(filePath, lineNumber)) {
+            return br.readLine();
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -2673,17 +2885,10 @@ public class FileUtils {
      */
     public static int getFileLineNum(String filePath) {
         try {
-            return (int) Files.lines(Paths.get(filePath)).count();
+            return (int) ParallelLineReader.countLines(Paths.get(filePath));
         } catch (IOException e) {
             return -1;
         }
-//        try (LineNumberReader lineNumberReader = new LineNumberReader(new FileReader(filePath))){
-//            lineNumberReader.skip(Long.MAX_VALUE);
-//            int lineNumber = lineNumberReader.getLineNumber();
-//            return lineNumber + 1;//实际上是读取换行符数量 , 所以需要+1
-//        } catch (IOException e) {
-//            return -1;
-//        }
     }
 
 
@@ -2722,19 +2927,21 @@ public class FileUtils {
         if (directory == null || !directory.isDirectory()) {
             return;
         }
-        Stack<File> stack = new Stack<>();
-        stack.push(directory);
-        while (!stack.isEmpty()) {
-            File current = stack.pop();
-            File[] files = current.listFiles();
-            if (files != null) {
-                for (File file : files) {
-                    if (file.isDirectory()) {
-                        stack.push(file);
-                    }
-                    callback.onFileFound(file);
-                }
-            }
+        try (Stream<FileWalker.Entry> stream = FileWalker.walk(directory.toPath(), null, false)) {
+            stream.forEach(entry -> callback.onFileFound(entry.path().toFile()));
+        }
+    }
+
+    /**
+     * 遍历文件夹，跳过不满足条件的子目录（整棵子树都不遍历）
+     *
+     * @param directory 目标文件夹
+     * @param descend   是否进入子目录，如 entry -> !entry.path().endsWith(".git")
+     * @param callback  文件回调接口
+     */
+    public static void traverseFiles(File directory, Predicate<FileWalker.Entry> descend, FileCallback callback) {
+        try (Stream<FileWalker.Entry> stream = FileWalker.walk(directory.toPath(), descend, false)) {
+            stream.forEach(entry -> callback.onFileFound(entry.path().toFile()));
         }
     }
 
@@ -2765,18 +2972,27 @@ public class FileUtils {
     }
 
     /**
-     * 处理大文件，使用BufferedReader逐行读取文件内容。
+     * 处理大文件，按文件顺序逐行回调；文件分段映射后并行解码，回调在调用线程执行。
      * @param filePath filePath
      * @param lineProcessor lineProcessor
      * @throws IOException IOException
      */
     public static void processLargeFile(String filePath, Consumer<String> lineProcessor) throws IOException {
-        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                lineProcessor.accept(line);
-            }
-        }
+        ParallelLineReader.forEachLineOrdered(Paths.get(filePath), Charset.defaultCharset(), line -> {
+            lineProcessor.accept(line);
+            return true;
+        });
+    }
+
+    /**
+     * 并行处理大文件，回调在多个线程上并发执行、不保证行的顺序，lineProcessor 必须线程安全。
+     * @param filePath filePath
+     * @param charset 文件编码
+     * @param lineProcessor lineProcessor
+     * @throws IOException IOException
+     */
+    public static void processLargeFileParallel(String filePath, Charset charset, Consumer<String> lineProcessor) throws IOException {
+        ParallelLineReader.forEachLine(Paths.get(filePath), charset, lineProcessor);
     }
 
     /**
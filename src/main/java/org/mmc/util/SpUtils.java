@@ -1,115 +1,162 @@
 package org.mmc.util;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
 import com.google.gson.reflect.TypeToken;
 
 import java.io.*;
 import java.lang.reflect.Type;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * SpUtils 类用于管理应用程序的偏好设置，以 JSON 文件的形式存储键值对。
  * 支持保存和读取字符串、对象，删除指定键值对，清除所有数据，检查键是否存在等操作。
- * 提供了默认实例和自定义实例的获取方法。
+ * 提供了默认实例和自定义实例的获取方法，每个文件对应一个实例。
+ * <p>
+ * 文件在实例创建时读取一次，之后的读取都直接访问内存。修改立即生效于内存，并在短暂延迟后由后台线程合并写入文件
+ * （相当于 Android SharedPreferences 的 apply）；需要确认已写入磁盘时调用 {@link #commit()}。
+ * 进程正常退出时会把尚未写入的修改写入文件。
+ * <p>
+ * 多个进程可以共享同一个偏好设置文件：写入时持有文件锁（文件名 + ".lock"），先合并其他进程写入的内容，
+ * 再写临时文件、刷到磁盘并原子改名，崩溃不会留下写了一半的文件。读取时最多每隔 {@link #CHECK_INTERVAL} 毫秒
+ * 检查一次文件的修改时间和大小，只有文件确实被其他进程修改过才重新读取。
  */
 public class SpUtils {
 
+    /**
+     * 检查文件是否被其他进程修改的最小间隔，单位：毫秒
+     */
+    public static final long CHECK_INTERVAL = 500;
     // 默认的偏好设置文件名
     private static final String DEFAULT_FILE_NAME = "app_prefs.json";
     // 默认的偏好设置文件保存的基础目录，使用用户主目录下的 MyAppPrefs 文件夹
     private static final String DEFAULT_BASE_DIR = System.getProperty("user.home") + "/MyAppPrefs/";
-    // 偏好设置文件对象
-    private static File prefsFile;
+    // 修改后延迟多久写文件，期间的其他修改合并到同一次写入，单位：毫秒
+    private static final long APPLY_DELAY = 100;
     // Gson 对象，用于 JSON 数据的序列化和反序列化
-    private static Gson gson;
-    // 默认的单例实例
-    private static SpUtils defaultInstance;
+    private static final Gson gson = new Gson();
+    // 每个偏好设置文件对应的实例，键为文件的绝对路径
+    private static final Map<String, SpUtils> instances = new ConcurrentHashMap<>();
+    // 所有实例共享的后台写文件线程，守护线程
+    private static final ScheduledExecutorService WRITER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "mmc-sp-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        // 进程退出前写入所有尚未写入的修改
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            for (SpUtils sp : instances.values()) {
+                sp.commit();
+            }
+        }, "mmc-sp-shutdown"));
+    }
 
-    // 偏好设置文件的文件名
-    private String fileName;
-    // 偏好设置文件的保存基础目录
-    private String baseDir;
+    // 偏好设置文件对象
+    private final File prefsFile;
+    // 跨进程写锁文件
+    private final File lockFile;
+    // 内存中的偏好设置，等于最近一次读到的文件内容加上尚未写入的修改，受 this 保护
+    private Map<String, String> prefsMap;
+    // 最近一次读写的文件内容，只在持有 ioLock 时访问
+    private Map<String, String> diskMap = new HashMap<>();
+    // 尚未写入文件的修改，值为 null 表示删除，受 this 保护
+    private Map<String, String> pendingChanges = new HashMap<>();
+    // 尚未写入文件的修改中是否包含清空，受 this 保护
+    private boolean pendingClear;
+    // 是否已安排后台写入，受 this 保护
+    private boolean writeScheduled;
+    // 写文件锁，保证同一文件的读写文件操作串行执行，与保护内存数据的 this 锁分开，读取不等待磁盘
+    private final ReentrantLock ioLock = new ReentrantLock();
+    // 最近一次读写后文件的修改时间，只在持有 ioLock 时修改
+    private volatile long knownModified;
+    // 最近一次读写后文件的大小，只在持有 ioLock 时修改
+    private volatile long knownLength;
+    // 上次检查文件是否变化的时间
+    private volatile long lastCheck;
 
     /**
      * 私有构造函数，用于创建 SpUtils 实例。
      *
-     * @param fileName 偏好设置文件的文件名
-     * @param baseDir  偏好设置文件的保存基础目录
+     * @param prefsFile 偏好设置文件
      */
-    private SpUtils(String fileName, String baseDir) {
-        this.fileName = fileName;
-        this.baseDir = baseDir;
+    private SpUtils(File prefsFile) {
+        this.prefsFile = prefsFile;
+        this.lockFile = new File(prefsFile.getPath() + ".lock");
         // 初始化相关资源
         init();
     }
 
     /**
      * 获取默认实例（使用默认文件名和保存路径）。
-     * 如果默认实例还未创建，则创建一个新的实例。
      *
      * @return SpUtils 的默认实例
      */
     public static SpUtils getInstance() {
-        if (defaultInstance == null) {
-            defaultInstance = new SpUtils(DEFAULT_FILE_NAME, DEFAULT_BASE_DIR);
-        }
-        return defaultInstance;
+        return getInstance(DEFAULT_FILE_NAME, DEFAULT_BASE_DIR);
     }
 
     /**
      * 获取自定义实例（允许指定文件名，使用默认保存路径）。
-     * 如果默认实例还未创建，则创建一个新的实例。
      *
      * @param fileName 偏好设置文件的文件名
-     * @return SpUtils 的自定义实例
+     * @return 该文件对应的 SpUtils 实例
      */
     public static SpUtils getInstance(String fileName) {
-        if (defaultInstance == null) {
-            defaultInstance = new SpUtils(fileName, DEFAULT_BASE_DIR);
-        }
-        return defaultInstance;
+        return getInstance(fileName, DEFAULT_BASE_DIR);
     }
 
     /**
      * 获取自定义实例（允许指定文件名和保存路径）。
-     * 如果默认实例还未创建，则创建一个新的实例。
+     * 同一文件只创建一个实例，不同文件各自独立。
      *
      * @param fileName 偏好设置文件的文件名
      * @param baseDir  偏好设置文件的保存基础目录
-     * @return SpUtils 的自定义实例
+     * @return 该文件对应的 SpUtils 实例
      */
     public static SpUtils getInstance(String fileName, String baseDir) {
-        if (defaultInstance == null) {
-            defaultInstance = new SpUtils(fileName, baseDir);
-        }
-        return defaultInstance;
+        File file = new File(baseDir, fileName).getAbsoluteFile();
+        return instances.computeIfAbsent(file.getPath(), path -> new SpUtils(file));
     }
 
     /**
-     * 初始化方法，用于创建 Gson 对象和偏好设置文件。
+     * 初始化方法，读取偏好设置文件到内存。
      * 如果文件不存在，则创建文件并写入一个空的 Map。
      */
+    @SuppressWarnings("try") // 文件锁只需在 try 块内持有，不直接使用
     private void init() {
-        // 创建 Gson 对象
-        gson = new Gson();
-        // 创建偏好设置文件对象
-        prefsFile = new File(baseDir, fileName);
-        // 检查文件是否存在
-        if (!prefsFile.exists()) {
-            // 创建文件的父目录
-            prefsFile.getParentFile().mkdirs();
-            try {
-                // 创建文件
-                prefsFile.createNewFile();
+        // 创建文件的父目录
+        prefsFile.getParentFile().mkdirs();
+        ioLock.lock();
+        try (FileChannel channel = openLockChannel(); FileLock ignored = channel.lock()) {
+            // 检查文件是否存在
+            if (!prefsFile.exists()) {
                 // 写入一个空的 Map
                 writePrefsMap(new HashMap<>());
-            } catch (IOException e) {
-                // 打印异常信息
-                e.printStackTrace();
             }
+            prefsMap = new HashMap<>(readPrefsMap());
+        } catch (IOException e) {
+            // 打印异常信息
+            e.printStackTrace();
+            prefsMap = new HashMap<>();
+        } finally {
+            ioLock.unlock();
         }
+        lastCheck = System.currentTimeMillis();
     }
 
     /**
@@ -119,12 +166,12 @@ public class SpUtils {
      * @param value 值
      */
     public void putStr(String key, String value) {
-        // 读取偏好设置的 Map
-        Map<String, String> prefsMap = readPrefsMap();
-        // 将键值对添加到 Map 中
-        prefsMap.put(key, value);
-        // 将更新后的 Map 写入文件
-        writePrefsMap(prefsMap);
+        synchronized (this) {
+            // 将键值对添加到 Map 中
+            prefsMap.put(key, value);
+            pendingChanges.put(key, value);
+        }
+        apply();
     }
 
     /**
@@ -134,10 +181,7 @@ public class SpUtils {
      * @return 保存的字符串，如果不存在返回空字符串
      */
     public String getStr(String key) {
-        // 读取偏好设置的 Map
-        Map<String, String> prefsMap = readPrefsMap();
-        // 检查 Map 是否为空或键对应的值是否为空
-        return prefsMap == null || prefsMap.get(key) == null ? "" : prefsMap.get(key);
+        return getStr(key, "");
     }
 
     /**
@@ -148,14 +192,12 @@ public class SpUtils {
      * @return 保存的字符串，如果不存在返回默认值
      */
     public String getStr(String key, String defVal) {
-        // 读取偏好设置的 Map
-        Map<String, String> prefsMap = readPrefsMap();
-        // 检查 Map 是否为空
-        if (prefsMap == null) {
-            return defVal;
+        refreshIfChanged();
+        synchronized (this) {
+            String value = prefsMap.get(key);
+            // 检查键对应的值是否为空
+            return value == null ? defVal : value;
         }
-        // 检查键对应的值是否为空
-        return prefsMap.get(key) == null ? defVal : prefsMap.get(key);
     }
 
     /**
@@ -166,14 +208,8 @@ public class SpUtils {
      * @param <T>   对象的类型
      */
     public <T> void putObj(String key, T value) {
-        // 读取偏好设置的 Map
-        Map<String, String> prefsMap = readPrefsMap();
-        // 将对象转换为 JSON 字符串
-        String json = gson.toJson(value);
-        // 将键和 JSON 字符串添加到 Map 中
-        prefsMap.put(key, json);
-        // 将更新后的 Map 写入文件
-        writePrefsMap(prefsMap);
+        // 将对象转换为 JSON 字符串，在锁外完成
+        putStr(key, gson.toJson(value));
     }
 
     /**
@@ -186,10 +222,8 @@ public class SpUtils {
      */
     public <T> T getObj(String key, Type type) {
         //type 例如 new TypeToken<User>() {}.getType()
-        // 读取偏好设置的 Map
-        Map<String, String> prefsMap = readPrefsMap();
         // 获取键对应的 JSON 字符串
-        String json = prefsMap.get(key);
+        String json = getStr(key, null);
         // 检查 JSON 字符串是否为空
         if (json == null) {
             return null;
@@ -204,24 +238,25 @@ public class SpUtils {
      * @param key 键
      */
     public void remove(String key) {
-        // 读取偏好设置的 Map
-        Map<String, String> prefsMap = readPrefsMap();
-        // 从 Map 中移除指定的键值对
-        prefsMap.remove(key);
-        // 将更新后的 Map 写入文件
-        writePrefsMap(prefsMap);
+        synchronized (this) {
+            // 从 Map 中移除指定的键值对
+            prefsMap.remove(key);
+            pendingChanges.put(key, null);
+        }
+        apply();
     }
 
     /**
      * 清除所有数据，将偏好设置的 Map 清空并写入文件。
      */
     public void clear() {
-        // 读取偏好设置的 Map
-        Map<String, String> prefsMap = readPrefsMap();
-        // 清空 Map
-        prefsMap.clear();
-        // 将更新后的 Map 写入文件
-        writePrefsMap(prefsMap);
+        synchronized (this) {
+            // 清空 Map
+            prefsMap.clear();
+            pendingChanges.clear();
+            pendingClear = true;
+        }
+        apply();
     }
 
     /**
@@ -231,28 +266,180 @@ public class SpUtils {
      * @return 是否存在，存在返回 true，不存在返回 false
      */
     public boolean contains(String key) {
-        // 读取偏好设置的 Map
-        Map<String, String> prefsMap = readPrefsMap();
-        // 检查 Map 中是否包含指定的键
-        return prefsMap.containsKey(key);
+        refreshIfChanged();
+        synchronized (this) {
+            // 检查 Map 中是否包含指定的键
+            return prefsMap.containsKey(key);
+        }
     }
 
     /**
      * 获取所有键值对。
      *
-     * @return 所有键值对组成的 Map
+     * @return 所有键值对组成的 Map 的副本
      */
     public Map<String, String> getAll() {
-        // 读取偏好设置的 Map
-        return readPrefsMap();
+        refreshIfChanged();
+        synchronized (this) {
+            return new HashMap<>(prefsMap);
+        }
+    }
+
+    /**
+     * 异步写入：安排后台线程在短暂延迟后把内存数据写入文件，延迟期间的多次修改只写一次。
+     * put/remove/clear 已自动调用，一般无需手动调用。
+     */
+    public void apply() {
+        synchronized (this) {
+            if (writeScheduled || !hasPending()) {
+                return;
+            }
+            writeScheduled = true;
+        }
+        WRITER.schedule(() -> {
+            synchronized (SpUtils.this) {
+                writeScheduled = false;
+            }
+            commit();
+        }, APPLY_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 同步写入：持有跨进程文件锁，把尚未写入的修改合并到文件的最新内容上并原子写入，返回时数据已在文件中。
+     *
+     * @return 写入成功或没有需要写入的修改返回 true，写文件失败返回 false
+     */
+    @SuppressWarnings("try") // 文件锁只需在 try 块内持有，不直接使用
+    public boolean commit() {
+        ioLock.lock();
+        try {
+            Map<String, String> changes;
+            boolean clear;
+            synchronized (this) {
+                if (!hasPending()) {
+                    return true;
+                }
+                changes = pendingChanges;
+                clear = pendingClear;
+                pendingChanges = new HashMap<>();
+                pendingClear = false;
+            }
+            try (FileChannel channel = openLockChannel(); FileLock ignored = channel.lock()) {
+                // 其他进程修改过文件时以文件的最新内容为基础，否则以上次读写的内容为基础
+                Map<String, String> base = isFileChanged() ? readPrefsMap() : diskMap;
+                Map<String, String> written = overlay(base, clear, changes);
+                writePrefsMap(written);
+                synchronized (this) {
+                    prefsMap = overlay(written, pendingClear, pendingChanges);
+                }
+                return true;
+            } catch (IOException e) {
+                // 打印异常信息
+                e.printStackTrace();
+                synchronized (this) {
+                    // 写入失败，把修改放回待写队列，之后的修改优先
+                    if (!pendingClear) {
+                        changes.putAll(pendingChanges);
+                        pendingChanges = changes;
+                        pendingClear = clear;
+                    }
+                }
+                return false;
+            }
+        } finally {
+            ioLock.unlock();
+        }
+    }
+
+    /**
+     * 距上次检查超过 CHECK_INTERVAL 时检查文件是否被其他进程修改，修改过则重新读取并叠加尚未写入的修改。
+     * 正在写文件时跳过，写入会合并文件的最新内容。
+     */
+    private void refreshIfChanged() {
+        long now = System.currentTimeMillis();
+        if (now - lastCheck < CHECK_INTERVAL || !ioLock.tryLock()) {
+            return;
+        }
+        try {
+            lastCheck = now;
+            if (!isFileChanged()) {
+                return;
+            }
+            // 文件通过原子改名替换，读取时不会读到写了一半的内容，无需文件锁
+            Map<String, String> disk = readPrefsMap();
+            synchronized (this) {
+                prefsMap = overlay(disk, pendingClear, pendingChanges);
+            }
+        } finally {
+            ioLock.unlock();
+        }
+    }
+
+    /**
+     * 判断文件自上次读写后是否被修改过。
+     *
+     * @return 修改时间或大小变化返回 true
+     */
+    private boolean isFileChanged() {
+        return prefsFile.lastModified() != knownModified || prefsFile.length() != knownLength;
+    }
+
+    /**
+     * 记录文件当前的修改时间和大小。
+     */
+    private void rememberFileState() {
+        knownModified = prefsFile.lastModified();
+        knownLength = prefsFile.length();
+    }
+
+    /**
+     * 是否有尚未写入文件的修改。调用方必须持有 this 锁。
+     *
+     * @return 有返回 true
+     */
+    private boolean hasPending() {
+        return pendingClear || !pendingChanges.isEmpty();
+    }
+
+    /**
+     * 在基础数据上叠加修改，返回新的 Map。
+     *
+     * @param base    基础数据
+     * @param clear   是否先清空
+     * @param changes 修改，值为 null 表示删除
+     * @return 叠加后的数据
+     */
+    private static Map<String, String> overlay(Map<String, String> base, boolean clear, Map<String, String> changes) {
+        Map<String, String> result = clear ? new HashMap<>() : new HashMap<>(base);
+        for (Map.Entry<String, String> e : changes.entrySet()) {
+            if (e.getValue() == null) {
+                result.remove(e.getKey());
+            } else {
+                result.put(e.getKey(), e.getValue());
+            }
+        }
+        return result;
     }
 
     /**
-     * 从文件中读取偏好设置的 Map。
+     * 打开跨进程写锁文件的通道，通过 {@link FileChannel#lock()} 加锁。
+     * 调用方必须持有 ioLock（同一进程内对同一文件只能持有一个文件锁）。
+     *
+     * @return 锁文件通道
+     * @throws IOException 打开锁文件失败
+     */
+    private FileChannel openLockChannel() throws IOException {
+        return FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * 从文件中读取偏好设置的 Map，并记录文件状态。调用方必须持有 ioLock，返回的 Map 不能修改。
      *
      * @return 偏好设置的 Map
      */
     private Map<String, String> readPrefsMap() {
+        // 先记录状态再读取，读取期间文件被替换时下次检查会再次读取
+        rememberFileState();
         try (
                 // 创建文件输入流
                 FileInputStream fis = new FileInputStream(prefsFile);
@@ -260,33 +447,44 @@ public class SpUtils {
                 InputStreamReader reader = new InputStreamReader(fis, StandardCharsets.UTF_8)
         ) {
             // 将 JSON 数据转换为 Map
-            return gson.fromJson(reader, new TypeToken<Map<String, String>>() {
+            Map<String, String> map = gson.fromJson(reader, new TypeToken<Map<String, String>>() {
             }.getType());
-        } catch (IOException e) {
+            diskMap = map == null ? new HashMap<>() : map;
+        } catch (IOException | JsonParseException e) {
             // 打印异常信息
             e.printStackTrace();
-            // 返回一个空的 Map
-            return new HashMap<>();
+            // 读取失败按空的 Map 处理
+            diskMap = new HashMap<>();
         }
+        return diskMap;
     }
 
     /**
-     * 将偏好设置的 Map 写入文件。
+     * 将偏好设置的 Map 写入文件：先写临时文件并刷到磁盘，再原子替换原文件，并记录文件状态。
+     * 调用方必须持有 ioLock 和跨进程文件锁。
      *
      * @param prefsMap 偏好设置的 Map
+     * @throws IOException 写文件失败
      */
-    private void writePrefsMap(Map<String, String> prefsMap) {
+    private void writePrefsMap(Map<String, String> prefsMap) throws IOException {
+        File temp = new File(prefsFile.getPath() + ".tmp");
         try (
                 // 创建文件输出流
-                FileOutputStream fos = new FileOutputStream(prefsFile);
+                FileOutputStream fos = new FileOutputStream(temp);
                 // 创建输出流写入器，使用 UTF-8 编码
-                OutputStreamWriter writer = new OutputStreamWriter(fos, StandardCharsets.UTF_8)
+                Writer writer = new BufferedWriter(new OutputStreamWriter(fos, StandardCharsets.UTF_8))
         ) {
             // 将 Map 转换为 JSON 数据并写入文件
             gson.toJson(prefsMap, writer);
-        } catch (IOException e) {
-            // 打印异常信息
-            e.printStackTrace();
+            writer.flush();
+            fos.getFD().sync();
+        }
+        diskMap = prefsMap;
+        try {
+            Files.move(temp.toPath(), prefsFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), prefsFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
         }
+        rememberFileState();
     }
-}
\ No newline at end of file
+}
@@ -1,11 +1,420 @@
 package org.mmc.util;
 
+import org.mmc.util.log.AsyncAppender;
+import org.mmc.util.log.Level;
+import org.mmc.util.log.LogFormatter;
+import org.mmc.util.log.OverflowPolicy;
+
 import javax.swing.filechooser.FileSystemView;
 import java.io.*;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 public class XLog {
 
+    /**
+     * 最多同时打开的日志文件数，超过时关闭最久未使用的追加器，释放其线程和文件句柄
+     */
+    private static final int MAX_APPENDERS = 16;
+    /**
+     * 每个日志文件对应的异步追加器，键为文件的绝对路径，按访问顺序排列，受自身锁保护
+     */
+    private static final Map<String, AsyncAppender> appenders = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * 异步日志队列容量
+     */
+    private static volatile int fileQueueCapacity = AsyncAppender.DEFAULT_CAPACITY;
+    /**
+     * 异步日志队列满时的处理策略
+     */
+    private static volatile OverflowPolicy fileOverflowPolicy = OverflowPolicy.BLOCK;
+    /**
+     * 日志文件超过该大小时滚动，0 表示不滚动，单位：字节
+     */
+    private static volatile long fileMaxSize = 0;
+    /**
+     * 日志文件滚动时间间隔，0 表示不滚动，单位：毫秒
+     */
+    private static volatile long fileRollInterval = 0;
+    /**
+     * 最低输出级别的序号，判断级别是否开启只需读一次该字段
+     */
+    private static volatile int minLevel = Level.DEBUG.ordinal();
+    /**
+     * 分级日志同时写入的文件路径，null 表示只输出到控制台
+     */
+    private static volatile String levelLogFile;
+
+    static {
+        // 进程退出前写完队列中的日志
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            for (AsyncAppender appender : openAppenders()) {
+                appender.close();
+            }
+        }, "mmc-log-shutdown"));
+    }
+
+    /**
+     * 设置最低输出级别，低于该级别的日志直接返回，不格式化消息
+     *
+     * @param level 最低输出级别，Level.OFF 关闭所有分级日志
+     */
+    public static void setLevel(Level level) {
+        minLevel = level.ordinal();
+    }
+
+    /**
+     * 获取最低输出级别
+     *
+     * @return 最低输出级别
+     */
+    public static Level getLevel() {
+        return Level.values()[minLevel];
+    }
+
+    /**
+     * 判断级别是否开启，消息需要额外计算时可先判断
+     *
+     * @param level 级别
+     * @return 开启返回 true
+     */
+    public static boolean isEnabled(Level level) {
+        return level.ordinal() >= minLevel;
+    }
+
+    /**
+     * 设置分级日志同时写入的文件，异步写入
+     *
+     * @param filePath 日志文件路径，null 表示只输出到控制台
+     */
+    public static void setLogFile(String filePath) {
+        levelLogFile = filePath;
+    }
+
+    /**
+     * 输出跟踪级别日志
+     *
+     * @param msg 日志信息
+     */
+    public static void trace(String msg) {
+        if (isEnabled(Level.TRACE)) {
+            log(Level.TRACE, msg, null);
+        }
+    }
+
+    /**
+     * 输出跟踪级别日志，消息中的 {} 替换为参数，只在级别开启时格式化
+     *
+     * @param format 消息模板
+     * @param arg    参数
+     */
+    public static void trace(String format, Object arg) {
+        if (isEnabled(Level.TRACE)) {
+            log(Level.TRACE, format, new Object[]{arg});
+        }
+    }
+
+    /**
+     * 输出跟踪级别日志，消息中的 {} 依次替换为参数，只在级别开启时格式化
+     *
+     * @param format 消息模板
+     * @param arg1   参数1
+     * @param arg2   参数2
+     */
+    public static void trace(String format, Object arg1, Object arg2) {
+        if (isEnabled(Level.TRACE)) {
+            log(Level.TRACE, format, new Object[]{arg1, arg2});
+        }
+    }
+
+    /**
+     * 输出跟踪级别日志，消息中的 {} 依次替换为参数，最后一个参数是异常时打印堆栈
+     *
+     * @param format 消息模板
+     * @param args   参数
+     */
+    public static void trace(String format, Object... args) {
+        if (isEnabled(Level.TRACE)) {
+            log(Level.TRACE, format, args);
+        }
+    }
+
+    /**
+     * 输出调试级别日志
+     *
+     * @param msg 日志信息
+     */
+    public static void debug(String msg) {
+        if (isEnabled(Level.DEBUG)) {
+            log(Level.DEBUG, msg, null);
+        }
+    }
+
+    /**
+     * 输出调试级别日志，消息中的 {} 替换为参数，只在级别开启时格式化
+     *
+     * @param format 消息模板
+     * @param arg    参数
+     */
+    public static void debug(String format, Object arg) {
+        if (isEnabled(Level.DEBUG)) {
+            log(Level.DEBUG, format, new Object[]{arg});
+        }
+    }
+
+    /**
+     * 输出调试级别日志，消息中的 {} 依次替换为参数，只在级别开启时格式化
+     *
+     * @param format 消息模板
+     * @param arg1   参数1
+     * @param arg2   参数2
+     */
+    public static void debug(String format, Object arg1, Object arg2) {
+        if (isEnabled(Level.DEBUG)) {
+            log(Level.DEBUG, format, new Object[]{arg1, arg2});
+        }
+    }
+
+    /**
+     * 输出调试级别日志，消息中的 {} 依次替换为参数，最后一个参数是异常时打印堆栈
+     *
+     * @param format 消息模板
+     * @param args   参数
+     */
+    public static void debug(String format, Object... args) {
+        if (isEnabled(Level.DEBUG)) {
+            log(Level.DEBUG, format, args);
+        }
+    }
+
+    /**
+     * 输出普通级别日志
+     *
+     * @param msg 日志信息
+     */
+    public static void info(String msg) {
+        if (isEnabled(Level.INFO)) {
+            log(Level.INFO, msg, null);
+        }
+    }
+
+    /**
+     * 输出普通级别日志，消息中的 {} 替换为参数，只在级别开启时格式化
+     *
+     * @param format 消息模板
+     * @param arg    参数
+     */
+    public static void info(String format, Object arg) {
+        if (isEnabled(Level.INFO)) {
+            log(Level.INFO, format, new Object[]{arg});
+        }
+    }
+
+    /**
+     * 输出普通级别日志，消息中的 {} 依次替换为参数，只在级别开启时格式化
+     *
+     * @param format 消息模板
+     * @param arg1   参数1
+     * @param arg2   参数2
+     */
+    public static void info(String format, Object arg1, Object arg2) {
+        if (isEnabled(Level.INFO)) {
+            log(Level.INFO, format, new Object[]{arg1, arg2});
+        }
+    }
+
+    /**
+     * 输出普通级别日志，消息中的 {} 依次替换为参数，最后一个参数是异常时打印堆栈
+     *
+     * @param format 消息模板
+     * @param args   参数
+     */
+    public static void info(String format, Object... args) {
+        if (isEnabled(Level.INFO)) {
+            log(Level.INFO, format, args);
+        }
+    }
+
+    /**
+     * 输出警告级别日志
+     *
+     * @param msg 日志信息
+     */
+    public static void warn(String msg) {
+        if (isEnabled(Level.WARN)) {
+            log(Level.WARN, msg, null);
+        }
+    }
+
+    /**
+     * 输出警告级别日志，消息中的 {} 替换为参数，只在级别开启时格式化
+     *
+     * @param format 消息模板
+     * @param arg    参数
+     */
+    public static void warn(String format, Object arg) {
+        if (isEnabled(Level.WARN)) {
+            log(Level.WARN, format, new Object[]{arg});
+        }
+    }
+
+    /**
+     * 输出警告级别日志，消息中的 {} 依次替换为参数，只在级别开启时格式化
+     *
+     * @param format 消息模板
+     * @param arg1   参数1
+     * @param arg2   参数2
+     */
+    public static void warn(String format, Object arg1, Object arg2) {
+        if (isEnabled(Level.WARN)) {
+            log(Level.WARN, format, new Object[]{arg1, arg2});
+        }
+    }
+
+    /**
+     * 输出警告级别日志，消息中的 {} 依次替换为参数，最后一个参数是异常时打印堆栈
+     *
+     * @param format 消息模板
+     * @param args   参数
+     */
+    public static void warn(String format, Object... args) {
+        if (isEnabled(Level.WARN)) {
+            log(Level.WARN, format, args);
+        }
+    }
+
+    /**
+     * 输出错误级别日志
+     *
+     * @param msg 日志信息
+     */
+    public static void error(String msg) {
+        if (isEnabled(Level.ERROR)) {
+            log(Level.ERROR, msg, null);
+        }
+    }
+
+    /**
+     * 输出错误级别日志，消息中的 {} 替换为参数，只在级别开启时格式化
+     *
+     * @param format 消息模板
+     * @param arg    参数
+     */
+    public static void error(String format, Object arg) {
+        if (isEnabled(Level.ERROR)) {
+            log(Level.ERROR, format, new Object[]{arg});
+        }
+    }
+
+    /**
+     * 输出错误级别日志，消息中的 {} 依次替换为参数，只在级别开启时格式化
+     *
+     * @param format 消息模板
+     * @param arg1   参数1
+     * @param arg2   参数2
+     */
+    public static void error(String format, Object arg1, Object arg2) {
+        if (isEnabled(Level.ERROR)) {
+            log(Level.ERROR, format, new Object[]{arg1, arg2});
+        }
+    }
+
+    /**
+     * 输出错误级别日志，消息中的 {} 依次替换为参数，最后一个参数是异常时打印堆栈
+     *
+     * @param format 消息模板
+     * @param args   参数
+     */
+    public static void error(String format, Object... args) {
+        if (isEnabled(Level.ERROR)) {
+            log(Level.ERROR, format, args);
+        }
+    }
+
+    /**
+     * 输出结构化日志，一行 JSON：{"time":..,"level":..,"thread":..,"msg":..,键:值,...}
+     *
+     * @param level     级别
+     * @param msg       日志信息
+     * @param keyValues 键值对，依次为 键1, 值1, 键2, 值2 ...
+     */
+    public static void event(Level level, String msg, Object... keyValues) {
+        if (!isEnabled(level)) {
+            return;
+        }
+        StringBuilder sb = LogFormatter.acquire();
+        String line;
+        try {
+            sb.append("{\"time\":\"");
+            LogFormatter.appendTimestamp(sb);
+            sb.append("\",\"level\":\"").append(level.name());
+            sb.append("\",\"thread\":");
+            LogFormatter.appendJsonString(sb, Thread.currentThread().getName());
+            sb.append(",\"msg\":");
+            LogFormatter.appendJsonString(sb, String.valueOf(msg));
+            for (int i = 0; i < keyValues.length; i += 2) {
+                sb.append(',');
+                LogFormatter.appendJsonString(sb, String.valueOf(keyValues[i]));
+                sb.append(':');
+                LogFormatter.appendJsonValue(sb, i + 1 < keyValues.length ? keyValues[i + 1] : null);
+            }
+            sb.append('}');
+            line = sb.toString();
+        } finally {
+            LogFormatter.release();
+        }
+        emit(line);
+    }
+
+    /**
+     * 格式化并输出一条分级日志：时间 级别 [线程] 消息，有异常时另起一行打印堆栈
+     *
+     * @param level  级别
+     * @param format 消息模板
+     * @param args   参数
+     */
+    private static void log(Level level, String format, Object[] args) {
+        StringBuilder sb = LogFormatter.acquire();
+        String line;
+        try {
+            LogFormatter.appendTimestamp(sb);
+            sb.append(' ').append(level.name());
+            if (level.name().length() == 4) {
+                sb.append(' ');
+            }
+            sb.append(" [").append(Thread.currentThread().getName()).append("] ");
+            Throwable tr = LogFormatter.formatMessage(sb, format, args);
+            if (tr != null) {
+                sb.append('\n').append(getStackTraceString(tr));
+                // 去掉堆栈末尾的换行，避免多出空行
+                while (sb.length() > 0 && (sb.charAt(sb.length() - 1) == '\n' || sb.charAt(sb.length() - 1) == '\r')) {
+                    sb.setLength(sb.length() - 1);
+                }
+            }
+            line = sb.toString();
+        } finally {
+            LogFormatter.release();
+        }
+        emit(line);
+    }
+
+    /**
+     * 输出到控制台，设置了日志文件时同时异步写入文件
+     *
+     * @param line 日志行
+     */
+    private static void emit(String line) {
+        System.out.println(line);
+        String path = levelLogFile;
+        if (path != null) {
+            file(path, line);
+        }
+    }
+
     /**
      * log输出到本地文件开关
      */
@@ -13,19 +422,31 @@ public class XLog {
     private static int stepNumber = 0;
 
     public static void showLogArgs(Object... args) {
+        if (!isEnabled(Level.DEBUG)) {
+            return;
+        }
         System.out.println(new Throwable().getStackTrace()[1]);
         if (args.length == 1) {
             System.out.println(args[0]);
             return;
         }
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < args.length; i++) {
-            sb.append("参数 ").append(i).append(" = [").append(args[i]).append("]");
+        StringBuilder sb = LogFormatter.acquire();
+        String line;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                sb.append("参数 ").append(i).append(" = [").append(args[i]).append("]");
+            }
+            line = sb.toString();
+        } finally {
+            LogFormatter.release();
         }
-        System.out.println(DateUtil.formatCurrentDate(DateUtil.REGEX_DATE_TIME) + "  " + sb);
+        System.out.println(DateUtil.formatCurrentDate(DateUtil.REGEX_DATE_TIME) + "  " + line);
     }
 
     public static void showLogInfo(Exception msg) {
+        if (!isEnabled(Level.ERROR)) {
+            return;
+        }
         String detilErrMsg = " " + msg + "\n详情:     " + new Throwable().getStackTrace()[1] + "";
         System.out.println("报错信息:" + detilErrMsg);
         if (!offset) {
@@ -35,6 +456,9 @@ public class XLog {
     }
 
     public static void showLogInfo(String tag, Object msg) {
+        if (!isEnabled(Level.INFO)) {
+            return;
+        }
         String commonMsg = new Throwable().getStackTrace()[1] + "\n详情:   " + tag + ": " + msg;
         System.out.println("调用位置: " + commonMsg);
         if (!offset) {
@@ -44,6 +468,9 @@ public class XLog {
     }
 
     public static void showLogInfo(String msg) {
+        if (!isEnabled(Level.INFO)) {
+            return;
+        }
         System.out.println("调用位置: " + new Throwable().getStackTrace()[1] + "\n详情:   " + msg + "");
         if (!offset) {
             return;
@@ -52,46 +479,101 @@ public class XLog {
     }
 
     /**
+     * 配置之后新打开的日志文件的异步写入参数，已打开的文件不受影响。
+     *
+     * @param capacity     队列容量
+     * @param policy       队列满时的处理策略
+     * @param maxFileSize  文件超过该大小时滚动，0 表示不按大小滚动，单位：字节
+     * @param rollInterval 滚动时间间隔，0 表示不按时间滚动，单位：毫秒
+     */
+    public static void configureFile(int capacity, OverflowPolicy policy, long maxFileSize, long rollInterval) {
+        fileQueueCapacity = capacity;
+        fileOverflowPolicy = policy;
+        fileMaxSize = maxFileSize;
+        fileRollInterval = rollInterval;
+    }
+
+    /**
+     * 写入桌面的 日志信息.log，异步写入，不阻塞调用线程
+     *
      * @param msg 日志信息
      */
     public static void file(String msg) {
-        new Thread(() -> {
-            String filePath =
-                    FileSystemView.getFileSystemView().getHomeDirectory().getAbsolutePath()
-                            + File.separator + "日志信息.log";
-            file(filePath, msg);
-        }).start();
+        file(DesktopLog.PATH, msg);
     }
 
     /**
+     * 桌面日志文件路径，第一次使用时查询一次桌面目录，之后不再查询
+     */
+    private static final class DesktopLog {
+        /**
+         * 桌面的 日志信息.log 的绝对路径
+         */
+        static final String PATH = FileSystemView.getFileSystemView().getHomeDirectory().getAbsolutePath()
+                + File.separator + "日志信息.log";
+    }
+
+    /**
+     * 追加一行日志到指定文件，放入该文件的异步队列后立即返回，由后台线程批量写入
+     *
      * @param filePath 日志文件路径
      * @param msg      日志信息
      */
     public static void file(String filePath, String msg) {
-        File file = new File(filePath);
-        BufferedWriter writer = null;
-        try {
-            if (!file.exists()) {
-                boolean mkdirs = new File(file.getParent()).mkdirs();
-                if (!file.createNewFile()) {
-                    System.out.println("创建日志文件失败");
-                }
-            }
-            writer = new BufferedWriter(
-                    new OutputStreamWriter(new FileOutputStream(file, true)));
-            writer.write(msg + "\n");
-            writer.flush();
-        } catch (IOException e) {
-            e.printStackTrace();
-        } finally {
-            if (writer != null) {
-                try {
-                    writer.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
+        String path = new File(filePath).getAbsolutePath();
+        AsyncAppender appender;
+        // 取到的追加器刚好被淘汰关闭时重新取一个
+        do {
+            appender = appender(path);
+        } while (!appender.append(msg) && appender.isClosed());
+    }
+
+    /**
+     * 获取日志文件对应的追加器，没有时创建；打开的文件超过 MAX_APPENDERS 个时关闭最久未使用的追加器
+     *
+     * @param path 日志文件的绝对路径
+     * @return 追加器
+     */
+    private static AsyncAppender appender(String path) {
+        AsyncAppender appender;
+        AsyncAppender evicted = null;
+        synchronized (appenders) {
+            appender = appenders.get(path);
+            if (appender == null) {
+                appender = new AsyncAppender(path, fileQueueCapacity, fileOverflowPolicy, fileMaxSize, fileRollInterval);
+                appenders.put(path, appender);
+                if (appenders.size() > MAX_APPENDERS) {
+                    Iterator<AsyncAppender> eldest = appenders.values().iterator();
+                    evicted = eldest.next();
+                    eldest.remove();
                 }
             }
         }
+        // 在锁外关闭，等待写完剩余日志时不阻塞其他文件的日志
+        if (evicted != null) {
+            evicted.close();
+        }
+        return appender;
+    }
+
+    /**
+     * 当前打开的追加器
+     *
+     * @return 追加器副本
+     */
+    private static List<AsyncAppender> openAppenders() {
+        synchronized (appenders) {
+            return new ArrayList<>(appenders.values());
+        }
+    }
+
+    /**
+     * 等待所有已提交的文件日志写入磁盘
+     */
+    public static void flush() {
+        for (AsyncAppender appender : openAppenders()) {
+            appender.flush();
+        }
     }
 
     /**
@@ -130,17 +612,23 @@ public class XLog {
     }
 
     public static void showStepLogInfo() {
+        if (!isEnabled(Level.DEBUG)) {
+            return;
+        }
         System.out.println(new Throwable().getStackTrace()[1] + "  步骤" + stepNumber++);
     }
 
     public static void getChild(String... args) {
+        if (!isEnabled(Level.DEBUG)) {
+            return;
+        }
         if (args.length == 1) {
             System.out.println(new Throwable().getStackTrace()[2] + args[0]);
         } else if (args.length > 1) {
             System.out.println(new Throwable().getStackTrace()[2]);
             for (int i = 0; i < args.length; i++) {
                 System.out.println("参数 " + i + " = [" + args[i] + "]");
-                file(args[i], "普通信息.txt");
+                file("普通信息.txt", args[i]);
             }
         }
     }
@@ -0,0 +1,794 @@
+package org.mmc.util.cache;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * 并发内存缓存引擎，{@link MemoryCache} 的实例化实现。
+ * <p>
+ * 读写基于 ConcurrentHashMap，读取不加锁；过期处理采用"读取时惰性过期 + 共享线程分批扫描"，
+ * 不再为每个键单独调度一个定时任务。扫描任务只弱引用引擎，忘记调用 {@link #close()} 的引擎仍可被回收，回收后任务自行取消。
+ * <p>
+ * 容量按权重限制：未指定 {@link Weigher} 时每个条目权重为1，即按条目数限制。键按哈希分到若干段，每段有自己的淘汰锁、
+ * {@link EvictionPolicy}（默认LRU）和容量份额，不同段的写入互不阻塞；超出段容量时由该段的策略选出淘汰的键，
+ * 因此淘汰顺序只在段内精确。容量较小或只传入单个策略实例时只有一段。写入和移除在段锁内更新策略状态；
+ * 读取只在段锁空闲时记录访问，锁被占用时直接丢弃这次记录，保证读取永不阻塞。
+ * <p>
+ * {@link #get(Object, CacheLoader, long)} 在未命中时加载值，同一个键的并发未命中只会触发一次加载，其余线程等待同一个结果。
+ * <p>
+ * 可以用 {@link #setOverflowTier(OffHeapCache)} 挂一个堆外溢出层：因容量被淘汰的未过期条目写入堆外层，
+ * 堆内未命中时再从堆外层取回并重新放入堆内，同一个键任意时刻只在一层中。
+ *
+ * @param <K> 键类型
+ * @param <V> 值类型
+ */
+public class CacheEngine<K, V> {
+    /**
+     * 默认最大条目数
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 1 << 20;
+    /**
+     * 默认过期扫描间隔，单位：毫秒
+     */
+    public static final long DEFAULT_SWEEP_INTERVAL = 1000;
+    /**
+     * 每次扫描最多检查的条目数，保证单次扫描耗时有上界
+     */
+    private static final int SWEEP_BATCH = 10_000;
+    /**
+     * 每段至少分到的容量，容量小于该值的两倍时不分段，保证小缓存的淘汰顺序精确
+     */
+    private static final long MIN_SEGMENT_WEIGHT = 1024;
+    /**
+     * 最大段数，按CPU核数取不小于它的2的幂，不超过该值
+     */
+    private static final int MAX_SEGMENTS = 64;
+    /**
+     * 所有缓存引擎共享的过期扫描线程，守护线程，不阻止JVM退出
+     */
+    private static final ScheduledExecutorService SWEEPER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "mmc-cache-sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 键值对集合
+     */
+    private final ConcurrentHashMap<K, Entity<V>> map = new ConcurrentHashMap<>();
+    /**
+     * 正在加载中的键，用于合并同一个键的并发加载
+     */
+    private final ConcurrentHashMap<K, CompletableFuture<V>> loading = new ConcurrentHashMap<>();
+    /**
+     * 淘汰段，键按哈希分段，段数是2的幂
+     */
+    private final Segment<K>[] segments;
+    /**
+     * 权重计算器，为null时每个条目权重为1
+     */
+    private final Weigher<? super K, ? super V> weigher;
+    /**
+     * 命中次数
+     */
+    private final LongAdder hitCount = new LongAdder();
+    /**
+     * 未命中次数
+     */
+    private final LongAdder missCount = new LongAdder();
+    /**
+     * 淘汰次数
+     */
+    private final LongAdder evictionCount = new LongAdder();
+    /**
+     * 加载失败次数，含后台刷新失败
+     */
+    private final LongAdder loadFailureCount = new LongAdder();
+    /**
+     * 周期扫描任务
+     */
+    private final ScheduledFuture<?> sweepTask;
+    /**
+     * 堆外溢出层，为null时淘汰的条目直接丢弃；只在持有键所在段的锁时读写其中的条目
+     */
+    private volatile OffHeapCache<K, V> overflow;
+    /**
+     * 扫描游标，跨多次扫描保持位置，只在 sweep 方法内访问
+     */
+    private Iterator<Map.Entry<K, Entity<V>>> sweepCursor;
+
+    /**
+     * 构造函数，使用默认最大条目数和扫描间隔。
+     */
+    public CacheEngine() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_SWEEP_INTERVAL);
+    }
+
+    /**
+     * 构造函数，使用默认扫描间隔。
+     *
+     * @param maxEntries 最大条目数
+     */
+    public CacheEngine(int maxEntries) {
+        this(maxEntries, DEFAULT_SWEEP_INTERVAL);
+    }
+
+    /**
+     * 构造函数，使用LRU策略，按条目数限制容量，容量足够大时分段。
+     *
+     * @param maxEntries    最大条目数，必须大于0
+     * @param sweepInterval 过期扫描间隔，单位：毫秒，必须大于0
+     */
+    public CacheEngine(int maxEntries, long sweepInterval) {
+        this(maxEntries, sweepInterval, EvictionPolicy::lru, null);
+    }
+
+    /**
+     * 构造函数，按条目数限制容量。
+     *
+     * @param maxEntries 最大条目数，必须大于0
+     * @param policy     淘汰策略，单个实例只能用于一段，写入全部串行；需要分段时使用带策略工厂的构造函数
+     */
+    public CacheEngine(int maxEntries, EvictionPolicy<K> policy) {
+        this(maxEntries, DEFAULT_SWEEP_INTERVAL, policy, null);
+    }
+
+    /**
+     * 构造函数，只有一段。
+     *
+     * @param maxWeight     最大总权重，weigher为null时即最大条目数，必须大于0
+     * @param sweepInterval 过期扫描间隔，单位：毫秒，必须大于0
+     * @param policy        淘汰策略，不能为null
+     * @param weigher       权重计算器，为null时每个条目权重为1
+     */
+    public CacheEngine(long maxWeight, long sweepInterval, EvictionPolicy<K> policy, Weigher<? super K, ? super V> weigher) {
+        this(maxWeight, sweepInterval, single(policy), 1, weigher);
+    }
+
+    /**
+     * 构造函数，容量足够大时按CPU核数分段，每段用工厂创建一个策略实例。
+     *
+     * @param maxWeight     最大总权重，weigher为null时即最大条目数，必须大于0
+     * @param sweepInterval 过期扫描间隔，单位：毫秒，必须大于0
+     * @param policies      淘汰策略工厂，每次调用返回一个新实例，如 {@code EvictionPolicy::lru}
+     * @param weigher       权重计算器，为null时每个条目权重为1
+     */
+    public CacheEngine(long maxWeight, long sweepInterval, Supplier<? extends EvictionPolicy<K>> policies,
+                       Weigher<? super K, ? super V> weigher) {
+        this(maxWeight, sweepInterval, policies, segmentCount(maxWeight), weigher);
+    }
+
+    /**
+     * 构造函数。
+     *
+     * @param maxWeight     最大总权重，必须大于0
+     * @param sweepInterval 过期扫描间隔，单位：毫秒，必须大于0
+     * @param policies      淘汰策略工厂，每段调用一次
+     * @param segmentCount  段数，2的幂
+     * @param weigher       权重计算器，为null时每个条目权重为1
+     */
+    @SuppressWarnings("unchecked")
+    private CacheEngine(long maxWeight, long sweepInterval, Supplier<? extends EvictionPolicy<K>> policies,
+                        int segmentCount, Weigher<? super K, ? super V> weigher) {
+        if (maxWeight <= 0) {
+            throw new IllegalArgumentException("maxWeight must be > 0: " + maxWeight);
+        }
+        if (sweepInterval <= 0) {
+            throw new IllegalArgumentException("sweepInterval must be > 0: " + sweepInterval);
+        }
+        if (policies == null) {
+            throw new IllegalArgumentException("policy must not be null");
+        }
+        this.segments = (Segment<K>[]) new Segment<?>[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            // 容量平均分到各段，余数分给前面的段，各段之和等于 maxWeight
+            long share = maxWeight / segmentCount + (i < maxWeight % segmentCount ? 1 : 0);
+            EvictionPolicy<K> policy = policies.get();
+            if (policy == null) {
+                throw new IllegalArgumentException("policy must not be null");
+            }
+            segments[i] = new Segment<>(policy, share);
+        }
+        this.weigher = weigher;
+        SweepTask task = new SweepTask(this);
+        this.sweepTask = SWEEPER.scheduleWithFixedDelay(task, sweepInterval, sweepInterval, TimeUnit.MILLISECONDS);
+        task.future = sweepTask;
+    }
+
+    /**
+     * 把单个策略实例包装成只能调用一次的工厂。
+     *
+     * @param policy 策略实例，可以为null（由构造函数报错）
+     * @param <K>    键类型
+     * @return 策略工厂
+     */
+    private static <K> Supplier<EvictionPolicy<K>> single(EvictionPolicy<K> policy) {
+        return policy == null ? null : () -> policy;
+    }
+
+    /**
+     * 按容量和CPU核数计算段数：不小于核数的2的幂，不超过 {@link #MAX_SEGMENTS}，且每段至少分到 {@link #MIN_SEGMENT_WEIGHT}。
+     *
+     * @param maxWeight 最大总权重
+     * @return 段数，2的幂
+     */
+    private static int segmentCount(long maxWeight) {
+        int target = Math.min(MAX_SEGMENTS, Runtime.getRuntime().availableProcessors());
+        int count = 1;
+        while (count < target && maxWeight / (count * 2L) >= MIN_SEGMENT_WEIGHT) {
+            count <<= 1;
+        }
+        return count;
+    }
+
+    /**
+     * 键所在的段。
+     *
+     * @param key 键
+     * @return 段
+     */
+    private Segment<K> segmentFor(Object key) {
+        int h = key.hashCode();
+        // 打散高位，与 ConcurrentHashMap 使用的低位错开
+        h ^= (h >>> 16);
+        h *= 0x9E3779B9;
+        return segments[(h >>> 16) & (segments.length - 1)];
+    }
+
+    /**
+     * 添加缓存，不设置过期时间。
+     *
+     * @param key   键
+     * @param value 值
+     */
+    public void put(K key, V value) {
+        put(key, value, 0);
+    }
+
+    /**
+     * 添加缓存，并设置过期时间。
+     *
+     * @param key    键
+     * @param value  值
+     * @param expire 过期时间，单位：毫秒， 0表示无限长
+     */
+    public void put(K key, V value, long expire) {
+        long expireAt = expire > 0 ? System.currentTimeMillis() + expire : 0;
+        Entity<V> entity = new Entity<>(value, expireAt, weigh(key, value));
+        Segment<K> segment = segmentFor(key);
+        segment.lock.lock();
+        try {
+            insert(segment, key, entity);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    /**
+     * 设置堆外溢出层，应在写入数据前设置；为null时关闭溢出，之后淘汰的条目直接丢弃。
+     *
+     * @param tier 堆外缓存，只能给一个引擎使用
+     */
+    public void setOverflowTier(OffHeapCache<K, V> tier) {
+        this.overflow = tier;
+    }
+
+    /**
+     * 计算条目权重。
+     *
+     * @param key   键
+     * @param value 值
+     * @return 权重，未指定 Weigher 时为1
+     */
+    private int weigh(K key, V value) {
+        int weight = weigher == null ? 1 : weigher.weigh(key, value);
+        if (weight < 0) {
+            throw new IllegalArgumentException("weight must be >= 0: " + weight);
+        }
+        return weight;
+    }
+
+    /**
+     * 写入实体并更新策略状态和总权重，超出容量时淘汰。调用方必须持有该段的锁。
+     *
+     * @param segment 键所在的段
+     * @param key     键
+     * @param entity  实体
+     */
+    private void insert(Segment<K> segment, K key, Entity<V> entity) {
+        Entity<V> old = map.put(key, entity);
+        if (old == null) {
+            segment.policy.recordInsert(key);
+            segment.totalWeight += entity.weight;
+            OffHeapCache<K, V> tier = overflow;
+            if (tier != null) {
+                // 堆外层中的旧值已被新值取代
+                tier.remove(key);
+            }
+        } else {
+            segment.policy.recordAccess(key);
+            segment.totalWeight += entity.weight - old.weight;
+        }
+        evictIfNeeded(segment);
+    }
+
+    /**
+     * 读取缓存，已过期的条目在读取时直接清除。
+     *
+     * @param key 键
+     * @return 缓存的值，如果键不存在或已过期则返回null
+     */
+    public V get(K key) {
+        Entity<V> entity = getEntity(key);
+        return entity == null ? null : entity.value;
+    }
+
+    /**
+     * 读取缓存，未命中时用加载器加载并写入缓存；同一个键的并发未命中共享一次加载。
+     *
+     * @param key    键
+     * @param loader 加载器
+     * @param expire 加载后写入的过期时间，单位：毫秒， 0表示无限长
+     * @return 缓存的值或加载的值，加载器返回null时返回null
+     * @throws CacheLoadException 加载器抛出受检异常，运行时异常原样抛出
+     */
+    public V get(K key, CacheLoader<? super K, ? extends V> loader, long expire) {
+        Entity<V> entity = getEntity(key);
+        if (entity != null) {
+            return entity.value;
+        }
+        return loadMissing(key, loader, expire);
+    }
+
+    /**
+     * 未命中后同步加载并等待结果，调用方已通过 {@link #getEntity(Object)} 记录过这次未命中，这里不再计数。
+     *
+     * @param key    键
+     * @param loader 加载器
+     * @param expire 加载后写入的过期时间，单位：毫秒， 0表示无限长
+     * @return 加载的值，加载器返回null时返回null
+     * @throws CacheLoadException 加载器抛出受检异常，运行时异常原样抛出
+     */
+    V loadMissing(K key, CacheLoader<? super K, ? extends V> loader, long expire) {
+        CompletableFuture<V> future = load(key, loader, expire, null);
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new CacheLoadException("load failed: " + key, cause);
+        }
+    }
+
+    /**
+     * 加载键对应的值并写入缓存，同一个键同时只有一个加载任务，已有任务时直接返回该任务。
+     *
+     * @param key      键
+     * @param loader   加载器
+     * @param expire   写入的过期时间，单位：毫秒， 0表示无限长
+     * @param executor 执行加载的线程池，为null时在当前线程执行
+     * @return 加载结果
+     */
+    CompletableFuture<V> load(K key, CacheLoader<? super K, ? extends V> loader, long expire, Executor executor) {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> existing = loading.putIfAbsent(key, future);
+        if (existing != null) {
+            return existing;
+        }
+        Runnable task = () -> {
+            try {
+                V value = loader.load(key);
+                if (value != null) {
+                    put(key, value, expire);
+                }
+                future.complete(value);
+            } catch (Throwable t) {
+                loadFailureCount.increment();
+                future.completeExceptionally(t);
+            } finally {
+                // 先写缓存再移除任务，之后到达的线程一定能读到新值
+                loading.remove(key, future);
+            }
+        };
+        if (executor == null) {
+            // 同步加载前再查一次，避免刚好错过上一次加载的结果
+            Entity<V> entity = map.get(key);
+            if (entity != null && !entity.isExpired(System.currentTimeMillis())) {
+                loading.remove(key, future);
+                future.complete(entity.value);
+                return future;
+            }
+            task.run();
+        } else {
+            try {
+                executor.execute(task);
+            } catch (RuntimeException e) {
+                loading.remove(key, future);
+                loadFailureCount.increment();
+                future.completeExceptionally(e);
+            }
+        }
+        return future;
+    }
+
+    /**
+     * 读取未过期的缓存实体，并记录命中统计和访问顺序。
+     *
+     * @param key 键
+     * @return 缓存实体，如果键不存在或已过期则返回null
+     */
+    Entity<V> getEntity(K key) {
+        Entity<V> entity = map.get(key);
+        if (entity == null) {
+            entity = overflow == null ? null : promote(key);
+            if (entity == null) {
+                missCount.increment();
+                return null;
+            }
+            hitCount.increment();
+            return entity;
+        }
+        if (entity.isExpired(System.currentTimeMillis())) {
+            // 只删除读到的这个实体，避免误删并发写入的新值
+            removeEntity(key, entity);
+            missCount.increment();
+            return null;
+        }
+        hitCount.increment();
+        // 段锁被占用时丢弃本次访问记录，读取不等待
+        Segment<K> segment = segmentFor(key);
+        if (segment.lock.tryLock()) {
+            try {
+                if (map.get(key) == entity) {
+                    segment.policy.recordAccess(key);
+                }
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        return entity;
+    }
+
+    /**
+     * 从堆外溢出层取回键对应的条目并重新放入堆内，可能因此淘汰其他条目到堆外层。
+     *
+     * @param key 键
+     * @return 取回的实体，堆外层没有或已过期时返回null
+     */
+    private Entity<V> promote(K key) {
+        OffHeapCache<K, V> tier = overflow;
+        if (tier == null) {
+            return null;
+        }
+        Segment<K> segment = segmentFor(key);
+        segment.lock.lock();
+        try {
+            Entity<V> current = map.get(key);
+            if (current != null) {
+                // 加锁前已被其他线程写入或取回
+                return current.isExpired(System.currentTimeMillis()) ? null : current;
+            }
+            Entity<V> spilled = tier.take(key);
+            if (spilled == null) {
+                return null;
+            }
+            Entity<V> entity = new Entity<>(spilled.value, spilled.expireAt, weigh(key, spilled.value));
+            insert(segment, key, entity);
+            return entity;
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    /**
+     * 清除缓存，堆外溢出层中的该键一并清除。
+     *
+     * @param key 键
+     * @return 被清除的缓存的值，如果键不存在或已过期则返回null
+     */
+    public V remove(K key) {
+        Entity<V> entity;
+        Segment<K> segment = segmentFor(key);
+        segment.lock.lock();
+        try {
+            entity = map.remove(key);
+            if (entity != null) {
+                segment.policy.recordRemove(key);
+                segment.totalWeight -= entity.weight;
+            } else if (overflow != null) {
+                entity = overflow.take(key);
+            }
+        } finally {
+            segment.lock.unlock();
+        }
+        if (entity == null || entity.isExpired(System.currentTimeMillis())) {
+            return null;
+        }
+        return entity.value;
+    }
+
+    /**
+     * 查询当前堆内缓存的键值对数量，不含堆外溢出层，可能包含已过期但尚未被扫描清除的条目。
+     *
+     * @return 缓存的键值对数量
+     */
+    public int size() {
+        return map.size();
+    }
+
+    /**
+     * 查询当前总权重，未指定 Weigher 时等于条目数。
+     *
+     * @return 总权重
+     */
+    public long weightedSize() {
+        long total = 0;
+        for (Segment<K> segment : segments) {
+            segment.lock.lock();
+            try {
+                total += segment.totalWeight;
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 获取命中、未命中、淘汰和加载失败次数的统计快照。
+     *
+     * @return 统计快照
+     */
+    public CacheStats stats() {
+        return new CacheStats(hitCount.sum(), missCount.sum(), evictionCount.sum(), loadFailureCount.sum());
+    }
+
+    /**
+     * 清空所有缓存，统计计数不清零。
+     */
+    public void clear() {
+        // 按固定顺序锁住所有段，清空期间没有写入
+        int locked = 0;
+        try {
+            for (Segment<K> segment : segments) {
+                segment.lock.lock();
+                locked++;
+            }
+            map.clear();
+            for (Segment<K> segment : segments) {
+                segment.policy.clear();
+                segment.totalWeight = 0;
+            }
+            OffHeapCache<K, V> tier = overflow;
+            if (tier != null) {
+                tier.clear();
+            }
+        } finally {
+            for (int i = locked - 1; i >= 0; i--) {
+                segments[i].lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 立即完整扫描一遍，清除所有已过期的条目。
+     */
+    public void cleanUp() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<K, Entity<V>> e : map.entrySet()) {
+            if (e.getValue().isExpired(now)) {
+                removeEntity(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    /**
+     * 停止周期扫描任务，引擎不再使用时调用，之后仍可读写但过期条目只在读取时清除。
+     */
+    public void close() {
+        sweepTask.cancel(false);
+    }
+
+    /**
+     * 分批扫描过期条目，游标跨多次调用保持位置，一轮扫完后从头开始。
+     *
+     * @param budget 本次最多检查的条目数
+     */
+    private synchronized void sweep(int budget) {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < budget; i++) {
+            if (sweepCursor == null) {
+                sweepCursor = map.entrySet().iterator();
+            }
+            if (!sweepCursor.hasNext()) {
+                // 本轮已扫完，下次从头开始
+                sweepCursor = null;
+                return;
+            }
+            Map.Entry<K, Entity<V>> e = sweepCursor.next();
+            if (e.getValue().isExpired(now)) {
+                removeEntity(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    /**
+     * 仅当键当前仍对应指定实体时移除，并同步策略状态和总权重。
+     *
+     * @param key    键
+     * @param entity 期望的实体
+     * @return 是否移除成功
+     */
+    private boolean removeEntity(K key, Entity<V> entity) {
+        Segment<K> segment = segmentFor(key);
+        segment.lock.lock();
+        try {
+            if (!map.remove(key, entity)) {
+                return false;
+            }
+            segment.policy.recordRemove(key);
+            segment.totalWeight -= entity.weight;
+            return true;
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    /**
+     * 段的总权重超出份额时按该段的策略淘汰，未过期的条目写入堆外溢出层。调用方必须持有该段的锁。
+     *
+     * @param segment 段
+     */
+    private void evictIfNeeded(Segment<K> segment) {
+        OffHeapCache<K, V> tier = overflow;
+        while (segment.totalWeight > segment.maxWeight) {
+            K victim = segment.policy.selectVictim();
+            if (victim == null) {
+                return;
+            }
+            Entity<V> entity = map.remove(victim);
+            segment.policy.recordRemove(victim);
+            if (entity != null) {
+                segment.totalWeight -= entity.weight;
+                evictionCount.increment();
+                if (tier != null && !entity.isExpired(System.currentTimeMillis())) {
+                    tier.putUntil(victim, entity.value, entity.expireAt);
+                }
+            }
+        }
+    }
+
+    /**
+     * 淘汰段：一部分键的策略状态和总权重，由段锁保护。
+     *
+     * @param <K> 键类型
+     */
+    private static final class Segment<K> {
+        /**
+         * 段锁，保护该段键在 map 中的结构修改、策略状态和总权重
+         */
+        final ReentrantLock lock = new ReentrantLock();
+        /**
+         * 淘汰策略，只在持有 lock 时访问
+         */
+        final EvictionPolicy<K> policy;
+        /**
+         * 该段的最大总权重
+         */
+        final long maxWeight;
+        /**
+         * 该段当前的总权重，只在持有 lock 时访问
+         */
+        long totalWeight;
+
+        /**
+         * 构造函数。
+         *
+         * @param policy    淘汰策略
+         * @param maxWeight 该段的最大总权重
+         */
+        Segment(EvictionPolicy<K> policy, long maxWeight) {
+            this.policy = policy;
+            this.maxWeight = maxWeight;
+        }
+    }
+
+    /**
+     * 周期扫描任务，只弱引用引擎；引擎被回收后取消自己，不让共享线程一直持有未关闭的引擎。
+     */
+    private static final class SweepTask implements Runnable {
+        /**
+         * 引擎的弱引用
+         */
+        private final WeakReference<CacheEngine<?, ?>> engine;
+        /**
+         * 本任务的调度结果，构造后由引擎设置，用于取消自己
+         */
+        volatile ScheduledFuture<?> future;
+
+        /**
+         * 构造函数。
+         *
+         * @param engine 引擎
+         */
+        SweepTask(CacheEngine<?, ?> engine) {
+            this.engine = new WeakReference<>(engine);
+        }
+
+        /**
+         * 引擎仍在时扫描一批过期条目，已被回收时取消任务。
+         */
+        @Override
+        public void run() {
+            CacheEngine<?, ?> target = engine.get();
+            if (target == null) {
+                ScheduledFuture<?> self = future;
+                if (self != null) {
+                    self.cancel(false);
+                }
+                return;
+            }
+            target.sweep(SWEEP_BATCH);
+        }
+    }
+
+    /**
+     * 缓存实体类，用于封装缓存的值和过期时间点。
+     *
+     * @param <V> 值类型
+     */
+    static class Entity<V> {
+        /**
+         * 键值对的value
+         */
+        final V value;
+        /**
+         * 过期时间点，毫秒时间戳，0表示永不过期
+         */
+        final long expireAt;
+        /**
+         * 权重
+         */
+        final int weight;
+
+        /**
+         * 构造函数，初始化Entity对象。
+         *
+         * @param value    键值对的value
+         * @param expireAt 过期时间点，0表示永不过期
+         * @param weight   权重
+         */
+        Entity(V value, long expireAt, int weight) {
+            this.value = value;
+            this.expireAt = expireAt;
+            this.weight = weight;
+        }
+
+        /**
+         * 判断是否已过期。
+         *
+         * @param now 当前毫秒时间戳
+         * @return 已过期返回true
+         */
+        boolean isExpired(long now) {
+            return expireAt > 0 && now >= expireAt;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package org.mmc.util.cache;
+
+/**
+ * 缓存加载异常，{@link CacheLoader} 抛出受检异常或等待加载被中断时抛出。
+ */
+public class CacheLoadException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+
+    /**
+     * 带有消息和异常原因参数的构造函数
+     *
+     * @param message 异常消息
+     * @param cause   异常原因
+     */
+    public CacheLoadException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,18 @@
+package org.mmc.util.cache;
+
+/**
+ * 缓存加载器，缓存未命中或需要刷新时调用，用于 {@link CacheEngine#get(Object, CacheLoader, long)} 和 {@link LoadingCache}。
+ *
+ * @param <K> 键类型
+ * @param <V> 值类型
+ */
+public interface CacheLoader<K, V> {
+    /**
+     * 加载键对应的值。
+     *
+     * @param key 键
+     * @return 值，返回null时不写入缓存
+     * @throws Exception 加载失败
+     */
+    V load(K key) throws Exception;
+}
@@ -0,0 +1,106 @@
+package org.mmc.util.cache;
+
+/**
+ * 缓存统计快照，包含命中、未命中、淘汰和加载失败次数。
+ */
+public class CacheStats {
+    /**
+     * 命中次数
+     */
+    private final long hitCount;
+    /**
+     * 未命中次数
+     */
+    private final long missCount;
+    /**
+     * 因超出容量被淘汰的条目数，不含过期清除
+     */
+    private final long evictionCount;
+    /**
+     * 加载失败次数，含后台刷新失败
+     */
+    private final long loadFailureCount;
+
+    /**
+     * 构造函数，加载失败次数为0。
+     *
+     * @param hitCount      命中次数
+     * @param missCount     未命中次数
+     * @param evictionCount 淘汰次数
+     */
+    public CacheStats(long hitCount, long missCount, long evictionCount) {
+        this(hitCount, missCount, evictionCount, 0);
+    }
+
+    /**
+     * 构造函数。
+     *
+     * @param hitCount         命中次数
+     * @param missCount        未命中次数
+     * @param evictionCount    淘汰次数
+     * @param loadFailureCount 加载失败次数
+     */
+    public CacheStats(long hitCount, long missCount, long evictionCount, long loadFailureCount) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.loadFailureCount = loadFailureCount;
+    }
+
+    /**
+     * 获取命中次数。
+     *
+     * @return 命中次数
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * 获取未命中次数。
+     *
+     * @return 未命中次数
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * 获取淘汰次数。
+     *
+     * @return 淘汰次数
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * 获取加载失败次数，含后台刷新失败。
+     *
+     * @return 加载失败次数
+     */
+    public long getLoadFailureCount() {
+        return loadFailureCount;
+    }
+
+    /**
+     * 获取命中率，没有任何请求时返回1.0。
+     *
+     * @return 命中率
+     */
+    public double hitRate() {
+        long requests = hitCount + missCount;
+        return requests == 0 ? 1.0 : (double) hitCount / requests;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{" +
+                "hitCount=" + hitCount +
+                ", missCount=" + missCount +
+                ", evictionCount=" + evictionCount +
+                ", loadFailureCount=" + loadFailureCount +
+                ", hitRate=" + String.format("%.4f", hitRate()) +
+                '}';
+    }
+}
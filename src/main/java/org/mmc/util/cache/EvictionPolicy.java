@@ -0,0 +1,76 @@
+package org.mmc.util.cache;
+
+/**
+ * 缓存淘汰策略，由 {@link CacheEngine} 在持有淘汰锁时调用，实现类无需自行保证线程安全。
+ * <p>
+ * 内置 LRU、LFU 和 W-TinyLFU 三种策略，通过静态工厂方法创建；每个策略实例只能给一个缓存引擎使用。
+ *
+ * @param <K> 键类型
+ */
+public interface EvictionPolicy<K> {
+
+    /**
+     * 记录一次读取或覆盖写入。
+     *
+     * @param key 键
+     */
+    void recordAccess(K key);
+
+    /**
+     * 记录一个新写入的键。
+     *
+     * @param key 键
+     */
+    void recordInsert(K key);
+
+    /**
+     * 记录一个被移除的键（手动删除、过期或淘汰）。
+     *
+     * @param key 键
+     */
+    void recordRemove(K key);
+
+    /**
+     * 缓存超出容量时选出下一个要淘汰的键，调用方随后会移除该键并调用 {@link #recordRemove}。
+     *
+     * @return 要淘汰的键，没有可淘汰的键时返回null
+     */
+    K selectVictim();
+
+    /**
+     * 清空策略内部状态。
+     */
+    void clear();
+
+    /**
+     * 创建最近最少使用（LRU）策略。
+     *
+     * @param <K> 键类型
+     * @return LRU策略
+     */
+    static <K> EvictionPolicy<K> lru() {
+        return new LruPolicy<>();
+    }
+
+    /**
+     * 创建最不经常使用（LFU）策略，访问次数相同时淘汰最早进入该次数的键。
+     *
+     * @param <K> 键类型
+     * @return LFU策略
+     */
+    static <K> EvictionPolicy<K> lfu() {
+        return new LfuPolicy<>();
+    }
+
+    /**
+     * 创建 W-TinyLFU 策略：新键先进入约占1%的LRU窗口区，离开窗口时与主区的淘汰候选比较近期访问频率，
+     * 频率更高者留下，适合热点明显的负载。
+     *
+     * @param expectedEntries 预计的最大条目数，用于确定频率统计表的大小
+     * @param <K>             键类型
+     * @return W-TinyLFU策略
+     */
+    static <K> EvictionPolicy<K> tinyLfu(int expectedEntries) {
+        return new TinyLfuPolicy<>(expectedEntries);
+    }
+}
@@ -0,0 +1,88 @@
+package org.mmc.util.cache;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 最不经常使用（LFU）淘汰策略，按访问次数分桶，同一次数内按进入顺序淘汰。
+ *
+ * @param <K> 键类型
+ */
+class LfuPolicy<K> implements EvictionPolicy<K> {
+    /**
+     * 每个键的访问次数
+     */
+    private final Map<K, Integer> counts = new HashMap<>();
+    /**
+     * 访问次数 -> 该次数下的键，按进入顺序排列
+     */
+    private final TreeMap<Integer, LinkedHashSet<K>> buckets = new TreeMap<>();
+
+    @Override
+    public void recordAccess(K key) {
+        Integer count = counts.get(key);
+        if (count == null) {
+            return;
+        }
+        unlink(key, count);
+        link(key, count + 1);
+    }
+
+    @Override
+    public void recordInsert(K key) {
+        Integer count = counts.get(key);
+        if (count != null) {
+            unlink(key, count);
+        }
+        link(key, 1);
+    }
+
+    @Override
+    public void recordRemove(K key) {
+        Integer count = counts.remove(key);
+        if (count != null) {
+            unlink(key, count);
+        }
+    }
+
+    @Override
+    public K selectVictim() {
+        Map.Entry<Integer, LinkedHashSet<K>> lowest = buckets.firstEntry();
+        return lowest == null ? null : lowest.getValue().iterator().next();
+    }
+
+    @Override
+    public void clear() {
+        counts.clear();
+        buckets.clear();
+    }
+
+    /**
+     * 把键放入指定次数的桶。
+     *
+     * @param key   键
+     * @param count 访问次数
+     */
+    private void link(K key, int count) {
+        counts.put(key, count);
+        buckets.computeIfAbsent(count, c -> new LinkedHashSet<>()).add(key);
+    }
+
+    /**
+     * 把键从指定次数的桶中移除，桶为空时删除桶。
+     *
+     * @param key   键
+     * @param count 访问次数
+     */
+    private void unlink(K key, int count) {
+        LinkedHashSet<K> bucket = buckets.get(count);
+        if (bucket != null) {
+            bucket.remove(key);
+            if (bucket.isEmpty()) {
+                buckets.remove(count);
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package org.mmc.util.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 自动加载缓存，在 {@link CacheEngine} 之上绑定一个 {@link CacheLoader}。
+ * <p>
+ * 未命中时同一个键的并发请求只触发一次加载；开启提前刷新后，条目在过期前 refreshAhead 毫秒内被读取时，
+ * 会在后台异步重新加载，加载完成前继续返回旧值，避免热点键过期瞬间所有请求同时回源。
+ * 后台刷新失败时保留旧值，失败计入 {@link CacheEngine#stats()} 的加载失败次数，异常可从 {@link #refresh(Object)} 返回的结果取得。
+ *
+ * @param <K> 键类型
+ * @param <V> 值类型
+ */
+public class LoadingCache<K, V> {
+    /**
+     * 默认的后台刷新线程池，守护线程，空闲线程自动回收
+     */
+    private static final ExecutorService DEFAULT_REFRESH_EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "mmc-cache-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 底层缓存引擎
+     */
+    private final CacheEngine<K, V> engine;
+    /**
+     * 加载器
+     */
+    private final CacheLoader<? super K, ? extends V> loader;
+    /**
+     * 加载后写入的过期时间，单位：毫秒， 0表示无限长
+     */
+    private final long expire;
+    /**
+     * 提前刷新时间，单位：毫秒，0表示不提前刷新
+     */
+    private final long refreshAhead;
+    /**
+     * 后台刷新线程池
+     */
+    private final Executor refreshExecutor;
+
+    /**
+     * 构造函数，不提前刷新。
+     *
+     * @param engine 底层缓存引擎
+     * @param loader 加载器
+     * @param expire 加载后写入的过期时间，单位：毫秒， 0表示无限长
+     */
+    public LoadingCache(CacheEngine<K, V> engine, CacheLoader<? super K, ? extends V> loader, long expire) {
+        this(engine, loader, expire, 0, DEFAULT_REFRESH_EXECUTOR);
+    }
+
+    /**
+     * 构造函数，使用默认的后台刷新线程池。
+     *
+     * @param engine       底层缓存引擎
+     * @param loader       加载器
+     * @param expire       加载后写入的过期时间，单位：毫秒， 0表示无限长
+     * @param refreshAhead 提前刷新时间，单位：毫秒，0表示不提前刷新，应小于expire
+     */
+    public LoadingCache(CacheEngine<K, V> engine, CacheLoader<? super K, ? extends V> loader, long expire, long refreshAhead) {
+        this(engine, loader, expire, refreshAhead, DEFAULT_REFRESH_EXECUTOR);
+    }
+
+    /**
+     * 构造函数。
+     *
+     * @param engine          底层缓存引擎
+     * @param loader          加载器
+     * @param expire          加载后写入的过期时间，单位：毫秒， 0表示无限长
+     * @param refreshAhead    提前刷新时间，单位：毫秒，0表示不提前刷新，应小于expire
+     * @param refreshExecutor 后台刷新线程池
+     */
+    public LoadingCache(CacheEngine<K, V> engine, CacheLoader<? super K, ? extends V> loader, long expire,
+                        long refreshAhead, Executor refreshExecutor) {
+        if (engine == null || loader == null || refreshExecutor == null) {
+            throw new IllegalArgumentException("engine, loader and refreshExecutor must not be null");
+        }
+        this.engine = engine;
+        this.loader = loader;
+        this.expire = expire;
+        this.refreshAhead = refreshAhead;
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    /**
+     * 读取缓存，未命中时同步加载；条目临近过期时触发后台刷新并返回当前值。
+     *
+     * @param key 键
+     * @return 缓存的值或加载的值
+     * @throws CacheLoadException 加载器抛出受检异常，运行时异常原样抛出
+     */
+    public V get(K key) {
+        CacheEngine.Entity<V> entity = engine.getEntity(key);
+        if (entity == null) {
+            // getEntity 已记录这次未命中，直接加载，不再经过 engine.get 重复计数
+            return engine.loadMissing(key, loader, expire);
+        }
+        if (refreshAhead > 0 && entity.expireAt > 0
+                && System.currentTimeMillis() >= entity.expireAt - refreshAhead) {
+            refresh(key);
+        }
+        return entity.value;
+    }
+
+    /**
+     * 读取缓存，不触发加载。
+     *
+     * @param key 键
+     * @return 缓存的值，如果键不存在或已过期则返回null
+     */
+    public V getIfPresent(K key) {
+        return engine.get(key);
+    }
+
+    /**
+     * 在后台重新加载指定键，已有加载任务时不重复加载；加载失败时保留旧值，并计入加载失败次数。
+     *
+     * @param key 键
+     * @return 加载结果，失败时以异常结束
+     */
+    public CompletableFuture<V> refresh(K key) {
+        return engine.load(key, loader, expire, refreshExecutor);
+    }
+
+    /**
+     * 直接写入缓存，使用加载时的过期时间。
+     *
+     * @param key   键
+     * @param value 值
+     */
+    public void put(K key, V value) {
+        engine.put(key, value, expire);
+    }
+
+    /**
+     * 清除缓存。
+     *
+     * @param key 键
+     */
+    public void invalidate(K key) {
+        engine.remove(key);
+    }
+
+    /**
+     * 获取底层缓存引擎。
+     *
+     * @return 缓存引擎
+     */
+    public CacheEngine<K, V> getEngine() {
+        return engine;
+    }
+}
@@ -1,44 +1,242 @@
 package org.mmc.util.cache;
 
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
 import org.mmc.util.TestUtils;
 
 import java.io.*;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * 本地缓存类，用于将数据缓存到本地文件中，并支持数据的读写、清空和过期检查等操作。
+ * <p>
+ * 持久化采用"快照 + 追加日志"：快照文件（cacheFilePath，JSON格式与旧版本兼容）保存某一时刻的完整数据，
+ * 之后的每次修改以一行JSON追加到日志文件（cacheFilePath + ".log"）。写入只修改内存并放入待写队列，
+ * 由后台线程按时间间隔或条数批量追加到日志（组提交）；日志超过阈值时在后台压缩成新快照。
+ * 启动时加载快照并重放日志，恢复最新数据。用完应调用 {@link #close()}；后台任务只弱引用缓存，未关闭的实例不再使用后
+ * 可以被回收，回收后由后台任务写完剩余修改并关闭日志；进程正常退出时由关闭钩子刷盘。
+ * 写日志失败时这批修改放回待写队列，下次刷盘重试。
+ * <p>
+ * 条目很多时可使用 {@link StorageMode#MAPPED} 映射模式：数据保存在内存映射文件（cacheFilePath + ".mmap"）中，
+ * 文件自带哈希索引，启动时只映射文件而不解析全部数据，读取时才解码对应的值；写入直接修改映射内存，由操作系统回写磁盘。
+ * 映射文件扩容或重建失败时，写入方法抛出 {@link UncheckedIOException}。
+ * <p>
+ * 每个条目可以单独设置过期时间：读取时发现过期立即删除，后台线程每次最多清理一批过期条目。
+ * 从文件加载的值先保留原始JSON，第一次读取时按 {@link #registerType(String, Type)} 注册的类型解码，
+ * 未注册时解码为 Map/List/String/Double 等基础类型（与旧版本一致）。
  */
 public class LocalCache {
-    // 用于存储缓存数据的Map，键为字符串，值为对象
-    private Map<String, Object> cacheMap;
+    /**
+     * 默认刷盘间隔，单位：毫秒
+     */
+    public static final long DEFAULT_FLUSH_INTERVAL = 1000;
+    /**
+     * 默认每攒多少条修改立即刷盘
+     */
+    public static final int DEFAULT_FLUSH_BATCH = 256;
+    /**
+     * 日志至少达到该大小才考虑压缩，单位：字节
+     */
+    private static final long MIN_COMPACT_BYTES = 1024 * 1024;
+    /**
+     * 过期扫描间隔，单位：毫秒
+     */
+    private static final long SWEEP_INTERVAL = 1000;
+    /**
+     * 每次过期扫描最多处理的条目数
+     */
+    private static final int SWEEP_BATCH = 1000;
+    /**
+     * 带过期时间的快照格式标记，没有该字段的快照是旧版本的"键 -> 值"格式
+     */
+    private static final String SNAPSHOT_FORMAT = "@format";
+    /**
+     * 日志操作：写入
+     */
+    private static final String OP_PUT = "put";
+    /**
+     * 日志操作：删除
+     */
+    private static final String OP_REMOVE = "remove";
+    /**
+     * 日志操作：清空
+     */
+    private static final String OP_CLEAR = "clear";
+    /**
+     * 所有本地缓存共享的后台写盘线程，守护线程
+     */
+    private static final ScheduledExecutorService WRITER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "mmc-local-cache-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // 尚未关闭的日志，进程退出时由关闭钩子刷盘；日志不引用缓存本身，不会让未关闭的缓存无法回收
+    private static final Set<Journal> OPEN = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    static {
+        // 进程退出前写入所有尚未关闭的缓存的待写修改
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            for (Journal journal : OPEN) {
+                journal.close();
+            }
+        }, "mmc-local-cache-shutdown"));
+    }
+
+    // 用于存储缓存数据的Map，键为字符串，值为缓存条目，受 this 保护
+    private Map<String, CacheEntry> cacheMap;
+    // 带过期时间的条目按过期时间排序，供后台分批清理，受 this 保护；条目被覆盖后旧记录在出队时跳过
+    private final PriorityQueue<ExpiryRef> expiryQueue = new PriorityQueue<>();
+    // 按键注册的值类型
+    private final Map<String, Type> types = new ConcurrentHashMap<>();
     // 缓存文件的路径
     private String cacheFilePath;
     // 缓存的过期时间，单位为毫秒
     private long cacheExpirationTime;
+    // 用于 JSON 序列化和反序列化，只创建一次
+    private final Gson gson = new Gson();
+    // 每攒多少条修改立即刷盘
+    private final int flushBatch;
+    // 追加日志，映射模式下为null
+    private final Journal journal;
+    // 是否已关闭
+    private final AtomicBoolean closed = new AtomicBoolean();
+    // 周期刷盘任务，映射模式下为null
+    private final ScheduledFuture<?> flushTask;
+    // 周期过期扫描任务
+    private final ScheduledFuture<?> sweepTask;
+    // 映射模式的底层存储，日志模式下为null
+    private final MappedStore mappedStore;
+    // 映射模式下过期扫描的起始槽，只在后台线程访问
+    private int sweepCursor;
 
     /**
-     * 构造函数，初始化缓存对象，不设置缓存过期时间。
+     * 构造函数，初始化缓存对象，不设置缓存过期时间，并从文件加载已有数据。
      *
      * @param cacheFilePath 缓存文件的路径
      */
     public LocalCache(String cacheFilePath) {
-        this.cacheMap = new HashMap<>();
-        this.cacheFilePath = cacheFilePath;
+        this(cacheFilePath, 0);
     }
 
     /**
-     * 构造函数，初始化缓存对象，并设置缓存过期时间。
+     * 构造函数，初始化缓存对象，并设置缓存过期时间，并从文件加载已有数据。
      *
      * @param cacheFilePath       缓存文件的路径
      * @param cacheExpirationTime 缓存的过期时间，单位为毫秒
      */
     public LocalCache(String cacheFilePath, long cacheExpirationTime) {
+        this(cacheFilePath, cacheExpirationTime, DEFAULT_FLUSH_INTERVAL, DEFAULT_FLUSH_BATCH);
+    }
+
+    /**
+     * 构造函数，初始化缓存对象，并从文件加载已有数据。
+     *
+     * @param cacheFilePath       缓存文件的路径
+     * @param cacheExpirationTime 缓存的过期时间，单位为毫秒
+     * @param flushInterval       刷盘间隔，单位：毫秒
+     * @param flushBatch          每攒多少条修改立即刷盘
+     */
+    public LocalCache(String cacheFilePath, long cacheExpirationTime, long flushInterval, int flushBatch) {
+        this(cacheFilePath, cacheExpirationTime, StorageMode.LOG, flushInterval, flushBatch);
+    }
+
+    /**
+     * 构造函数，初始化指定存储模式的缓存对象。
+     *
+     * @param cacheFilePath       缓存文件的路径
+     * @param cacheExpirationTime 缓存的过期时间，单位为毫秒
+     * @param mode                存储模式
+     */
+    public LocalCache(String cacheFilePath, long cacheExpirationTime, StorageMode mode) {
+        this(cacheFilePath, cacheExpirationTime, mode, DEFAULT_FLUSH_INTERVAL, DEFAULT_FLUSH_BATCH);
+    }
+
+    /**
+     * 构造函数，初始化指定存储模式的缓存对象。
+     *
+     * @param cacheFilePath       缓存文件的路径
+     * @param cacheExpirationTime 缓存的过期时间，单位为毫秒
+     * @param mode                存储模式
+     * @param flushInterval       日志模式的刷盘间隔，单位：毫秒
+     * @param flushBatch          日志模式下每攒多少条修改立即刷盘
+     */
+    private LocalCache(String cacheFilePath, long cacheExpirationTime, StorageMode mode, long flushInterval, int flushBatch) {
+        if (flushInterval <= 0 || flushBatch <= 0) {
+            throw new IllegalArgumentException("flushInterval and flushBatch must be > 0");
+        }
         this.cacheMap = new HashMap<>();
         this.cacheFilePath = cacheFilePath;
         this.cacheExpirationTime = cacheExpirationTime;
+        this.flushBatch = flushBatch;
+        if (mode == StorageMode.MAPPED) {
+            this.mappedStore = openMappedStore();
+            this.journal = null;
+            this.flushTask = null;
+        } else {
+            this.mappedStore = null;
+            this.journal = new Journal(logFile());
+            loadCacheFromFile();
+            OPEN.add(journal);
+            this.flushTask = schedule(new Maintenance(this, journal, false), flushInterval);
+        }
+        this.sweepTask = schedule(new Maintenance(this, journal, true), SWEEP_INTERVAL);
+    }
+
+    /**
+     * 在共享后台线程上周期执行维护任务。
+     *
+     * @param task     维护任务
+     * @param interval 执行间隔，单位：毫秒
+     * @return 调度结果
+     */
+    private static ScheduledFuture<?> schedule(Maintenance task, long interval) {
+        ScheduledFuture<?> future = WRITER.scheduleWithFixedDelay(task, interval, interval, TimeUnit.MILLISECONDS);
+        task.future = future;
+        return future;
+    }
+
+    /**
+     * 打开映射存储；映射文件第一次创建时，如果存在日志模式留下的快照和日志，则一次性导入。
+     *
+     * @return 映射存储
+     */
+    private MappedStore openMappedStore() {
+        File mappedFile = new File(cacheFilePath + ".mmap");
+        boolean fresh = !mappedFile.exists();
+        try {
+            MappedStore store = new MappedStore(mappedFile);
+            if (fresh && (new File(cacheFilePath).exists() || logFile().exists())) {
+                for (Map.Entry<String, CacheEntry> entry : readCacheFiles().entrySet()) {
+                    CacheEntry e = entry.getValue();
+                    store.put(entry.getKey(), encode(e.json, e.expireAt));
+                }
+            }
+            return store;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     /**
@@ -49,9 +247,11 @@ public class LocalCache {
     public static void main(String[] args) {
         // 创建一个本地缓存对象，缓存文件名为cache.json，缓存有效期为1小时（3600000毫秒）
         LocalCache cache = new LocalCache("cache.json", 3600000);
+        // 注册key3的类型，重启后从文件加载的值也会解码为Person
+        cache.registerType("key3", TestUtils.Person.class);
         // 向缓存中添加数据
         cache.put("key1", "value1");
-        cache.put("key2", "value2");
+        cache.put("key2", "value2", 60000);
         cache.put("key3", new TestUtils.Person("zhangsan", 12));
 
         // 从缓存中获取数据并打印
@@ -62,46 +262,168 @@ public class LocalCache {
 
         // 清空缓存
         cache.clearCache();
+        // 刷盘并停止后台任务
+        cache.close();
+    }
+
+    /**
+     * 注册键对应的值类型，之后从文件加载的该键的值按此类型解码。
+     *
+     * @param key  缓存的键
+     * @param type 值类型，泛型类型可用 new TypeToken&lt;List&lt;User&gt;&gt;() {}.getType()
+     */
+    public void registerType(String key, Type type) {
+        types.put(key, type);
     }
 
     /**
-     * 向缓存中添加数据，并将缓存数据保存到文件中。
+     * 向缓存中添加数据，不设置过期时间。
      *
      * @param key   缓存的键
      * @param value 缓存的值
      */
     public void put(String key, Object value) {
-        // 将键值对添加到缓存Map中
-        cacheMap.put(key, value);
-        // 保存缓存数据到文件
-        saveCacheToFile();
+        put(key, value, 0);
+    }
+
+    /**
+     * 向缓存中添加数据，并设置该条目的过期时间。日志模式下修改先进入待写队列，由后台线程批量追加到日志文件。
+     *
+     * @param key    缓存的键
+     * @param value  缓存的值
+     * @param expire 过期时间，单位：毫秒， 0表示无限长
+     * @throws UncheckedIOException 映射模式下扩容或重建映射文件失败
+     */
+    public void put(String key, Object value, long expire) {
+        long expireAt = expire > 0 ? System.currentTimeMillis() + expire : 0;
+        JsonElement json = gson.toJsonTree(value);
+        if (mappedStore != null) {
+            try {
+                mappedStore.put(key, encode(json, expireAt));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return;
+        }
+        append(new LogRecord(OP_PUT, key, json, expireAt), () -> {
+            cacheMap.put(key, new CacheEntry(value, null, expireAt));
+            if (expireAt > 0) {
+                expiryQueue.add(new ExpiryRef(key, expireAt));
+            }
+        });
     }
 
     /**
-     * 从缓存中获取数据。
+     * 从缓存中获取数据，按注册的类型解码。
      *
      * @param key 缓存的键
-     * @return 缓存的值，如果键不存在则返回null
+     * @return 缓存的值，如果键不存在或已过期则返回null
      */
     public Object get(String key) {
-        // 检查缓存Map中是否包含该键
-        if (cacheMap.containsKey(key)) {
-            // 如果包含，则返回对应的值
-            return cacheMap.get(key);
+        return get(key, types.getOrDefault(key, Object.class));
+    }
+
+    /**
+     * 从缓存中获取数据，并按指定类型解码从文件加载的值。
+     *
+     * @param key  缓存的键
+     * @param type 值类型
+     * @param <T>  值类型
+     * @return 缓存的值，如果键不存在或已过期则返回null
+     * @throws UncheckedIOException 映射模式下删除过期条目时重建映射文件失败
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key, Type type) {
+        long now = System.currentTimeMillis();
+        if (mappedStore != null) {
+            byte[] bytes = mappedStore.get(key);
+            if (bytes == null) {
+                return null;
+            }
+            if (isExpired(ByteBuffer.wrap(bytes).getLong(0), now)) {
+                try {
+                    removeMappedIfExpired(key);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return null;
+            }
+            return gson.fromJson(new String(bytes, 8, bytes.length - 8, StandardCharsets.UTF_8), type);
+        }
+        synchronized (this) {
+            CacheEntry entry = cacheMap.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (isExpired(entry.expireAt, now)) {
+                // 过期条目只从内存删除，日志重放和压缩时会按过期时间自动丢弃
+                cacheMap.remove(key);
+                return null;
+            }
+            return (T) entry.decode(gson, type);
+        }
+    }
+
+    /**
+     * 从缓存中删除数据。
+     *
+     * @param key 缓存的键
+     * @throws UncheckedIOException 映射模式下重建映射文件失败
+     */
+    public void remove(String key) {
+        if (mappedStore != null) {
+            try {
+                mappedStore.remove(key);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return;
+        }
+        append(new LogRecord(OP_REMOVE, key, null, 0), () -> cacheMap.remove(key));
+    }
+
+    /**
+     * 修改内存数据并记录一条日志，两者在同一把锁内完成，保证日志顺序与内存修改顺序一致。
+     *
+     * @param record   日志记录
+     * @param mutation 对内存数据的修改
+     */
+    private void append(LogRecord record, Runnable mutation) {
+        boolean full;
+        synchronized (this) {
+            mutation.run();
+            full = journal.add(gson.toJson(record)) >= flushBatch;
+        }
+        if (full) {
+            WRITER.execute(this::flushQuietly);
+        }
+    }
+
+    /**
+     * 把待写队列中的修改追加到日志文件，日志过大时压缩成新快照。
+     *
+     * @throws IOException 写文件失败
+     */
+    public void flush() throws IOException {
+        if (mappedStore != null) {
+            mappedStore.force();
+            return;
+        }
+        synchronized (journal.ioLock) {
+            journal.writePending();
+            File snapshot = new File(cacheFilePath);
+            if (journal.logBytes > Math.max(MIN_COMPACT_BYTES, snapshot.length())) {
+                compact();
+            }
         }
-        // 否则返回null
-        return null;
     }
 
     /**
-     * 将缓存数据保存到文件中。
+     * 后台刷盘，异常只打印不抛出。
      */
-    private void saveCacheToFile() {
-        try (Writer writer = new FileWriter(cacheFilePath)) {
-            // 创建一个Gson对象
-            Gson gson = new GsonBuilder().create();
-            // 将缓存Map中的数据以JSON格式写入文件
-            gson.toJson(cacheMap, writer);
+    private void flushQuietly() {
+        try {
+            flush();
         } catch (IOException e) {
             // 打印异常信息
             e.printStackTrace();
@@ -109,50 +431,647 @@ public class LocalCache {
     }
 
     /**
-     * 从文件中加载缓存数据。
+     * 后台分批清理过期条目，每次最多处理 SWEEP_BATCH 个。
+     */
+    private void sweepExpired() {
+        long now = System.currentTimeMillis();
+        if (mappedStore != null) {
+            List<String> expired = new ArrayList<>();
+            sweepCursor = mappedStore.scan(sweepCursor, SWEEP_BATCH, (key, bytes) -> {
+                if (isExpired(ByteBuffer.wrap(bytes).getLong(0), now)) {
+                    expired.add(key);
+                }
+            });
+            try {
+                for (String key : expired) {
+                    removeMappedIfExpired(key);
+                }
+            } catch (IOException e) {
+                // 打印异常信息，剩余的过期条目下一轮再清理
+                e.printStackTrace();
+            }
+            return;
+        }
+        synchronized (this) {
+            for (int i = 0; i < SWEEP_BATCH; i++) {
+                ExpiryRef ref = expiryQueue.peek();
+                if (ref == null || ref.expireAt > now) {
+                    return;
+                }
+                expiryQueue.poll();
+                CacheEntry entry = cacheMap.get(ref.key);
+                // 只删除过期时间与队列记录一致的条目，被覆盖过的键跳过
+                if (entry != null && entry.expireAt == ref.expireAt) {
+                    cacheMap.remove(ref.key);
+                }
+            }
+        }
+    }
+
+    /**
+     * 映射模式下，键当前的值仍已过期时才删除，避免误删并发写入的新值。
+     *
+     * @param key 缓存的键
+     * @throws IOException 重建映射文件失败
+     */
+    private void removeMappedIfExpired(String key) throws IOException {
+        long now = System.currentTimeMillis();
+        mappedStore.removeIf(key, bytes -> isExpired(ByteBuffer.wrap(bytes).getLong(0), now));
+    }
+
+    /**
+     * 压缩：在锁内复制内存数据并取出剩余的待写修改，然后在锁外把这批修改写进旧日志、切换到新日志，
+     * 再把副本写成新快照，最后删除旧日志。锁内不做磁盘读写，压缩期间的读写不会等待。
+     * 旧日志在切换时改名为 .compacting，压缩中途崩溃时启动加载会重放它，结果与压缩完成后一致。
+     * 调用方必须持有 journal.ioLock。
+     *
+     * @throws IOException 写文件失败
+     */
+    private void compact() throws IOException {
+        Map<String, CacheEntry> copy;
+        List<String> batch;
+        synchronized (this) {
+            // 副本包含的修改都进入旧日志，之后的修改都进入新日志
+            batch = journal.take();
+            copy = new HashMap<>(cacheMap);
+        }
+        journal.write(batch);
+        journal.closeWriter();
+        File compacting = compactingFile();
+        Files.move(logFile().toPath(), compacting.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        journal.logBytes = 0;
+        writeSnapshot(copy);
+        Files.deleteIfExists(compacting.toPath());
+    }
+
+    /**
+     * 把数据写成快照：先写临时文件并刷到磁盘，再原子替换快照文件。
+     * 没有带过期时间的条目时写成旧版本的"键 -> 值"格式，否则每个值附带过期时间。
+     *
+     * @param data 数据
+     * @throws IOException 写文件失败
+     */
+    private void writeSnapshot(Map<String, CacheEntry> data) throws IOException {
+        long now = System.currentTimeMillis();
+        JsonObject values = new JsonObject();
+        JsonObject entries = new JsonObject();
+        boolean hasExpiry = false;
+        for (Map.Entry<String, CacheEntry> e : data.entrySet()) {
+            CacheEntry entry = e.getValue();
+            if (isExpired(entry.expireAt, now)) {
+                continue;
+            }
+            JsonElement json = entry.toJson(gson);
+            values.add(e.getKey(), json);
+            JsonObject item = new JsonObject();
+            item.add("v", json);
+            if (entry.expireAt > 0) {
+                item.addProperty("e", entry.expireAt);
+                hasExpiry = true;
+            }
+            entries.add(e.getKey(), item);
+        }
+        JsonObject root = values;
+        if (hasExpiry) {
+            root = new JsonObject();
+            root.addProperty(SNAPSHOT_FORMAT, 2);
+            root.add("entries", entries);
+        }
+        File snapshot = new File(cacheFilePath);
+        File temp = new File(cacheFilePath + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(temp);
+             Writer writer = new BufferedWriter(new OutputStreamWriter(fos, StandardCharsets.UTF_8))) {
+            // 将缓存数据以JSON格式写入文件
+            gson.toJson(root, writer);
+            writer.flush();
+            fos.getFD().sync();
+        }
+        try {
+            Files.move(temp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * 从文件中加载缓存数据：先读快照，再依次重放压缩中的旧日志和当前日志。
+     * 尚未刷盘的修改会先写入日志，因此重新加载不会丢失内存中的修改。
      */
     public void loadCacheFromFile() {
-        try (Reader reader = new FileReader(cacheFilePath)) {
-            // 创建一个Gson对象
-            Gson gson = new Gson();
-            // 从文件中读取JSON数据并转换为Map对象
-            cacheMap = gson.fromJson(reader, Map.class);
-        } catch (FileNotFoundException e) {
-            // 文件不存在或读取错误，不做处理
-        } catch (IOException e) {
-            // 打印异常信息
-            e.printStackTrace();
+        if (mappedStore != null) {
+            // 映射模式下数据始终直接读自映射文件，无需加载
+            return;
+        }
+        synchronized (journal.ioLock) {
+            try {
+                journal.writePending();
+                journal.closeWriter();
+                Map<String, CacheEntry> data = readCacheFiles();
+                synchronized (this) {
+                    cacheMap = data;
+                    expiryQueue.clear();
+                    for (Map.Entry<String, CacheEntry> e : data.entrySet()) {
+                        if (e.getValue().expireAt > 0) {
+                            expiryQueue.add(new ExpiryRef(e.getKey(), e.getValue().expireAt));
+                        }
+                    }
+                }
+            } catch (IOException | JsonParseException e) {
+                // 打印异常信息
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * 读取快照，并依次重放压缩中的旧日志和当前日志，已过期的条目直接丢弃。值保留为原始JSON，读取时再解码。
+     *
+     * @return 最新数据
+     * @throws IOException 读文件失败
+     */
+    private Map<String, CacheEntry> readCacheFiles() throws IOException {
+        Map<String, CacheEntry> data = new HashMap<>();
+        File snapshot = new File(cacheFilePath);
+        if (snapshot.exists()) {
+            try (Reader reader = new InputStreamReader(new FileInputStream(snapshot), StandardCharsets.UTF_8)) {
+                JsonElement root = JsonParser.parseReader(reader);
+                if (root.isJsonObject()) {
+                    JsonObject object = root.getAsJsonObject();
+                    if (object.has(SNAPSHOT_FORMAT)) {
+                        for (Map.Entry<String, JsonElement> e : object.getAsJsonObject("entries").entrySet()) {
+                            JsonObject item = e.getValue().getAsJsonObject();
+                            long expireAt = item.has("e") ? item.get("e").getAsLong() : 0;
+                            data.put(e.getKey(), new CacheEntry(null, item.get("v"), expireAt));
+                        }
+                    } else {
+                        for (Map.Entry<String, JsonElement> e : object.entrySet()) {
+                            data.put(e.getKey(), new CacheEntry(null, e.getValue(), 0));
+                        }
+                    }
+                }
+            }
+        }
+        replayLog(compactingFile(), data);
+        replayLog(logFile(), data);
+        long now = System.currentTimeMillis();
+        data.values().removeIf(entry -> isExpired(entry.expireAt, now));
+        return data;
+    }
+
+    /**
+     * 按顺序重放日志文件中的修改，遇到不完整的末尾行（写入中途崩溃）时停止。
+     *
+     * @param logFile 日志文件
+     * @param data    要应用修改的数据
+     * @throws IOException 读文件失败
+     */
+    private void replayLog(File logFile, Map<String, CacheEntry> data) throws IOException {
+        if (!logFile.exists()) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(logFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                LogRecord record;
+                try {
+                    record = gson.fromJson(line, LogRecord.class);
+                } catch (JsonParseException e) {
+                    break;
+                }
+                if (record == null || record.op == null) {
+                    break;
+                }
+                switch (record.op) {
+                    case OP_PUT:
+                        data.put(record.key, new CacheEntry(null, record.value, record.expireAt));
+                        break;
+                    case OP_REMOVE:
+                        data.remove(record.key);
+                        break;
+                    case OP_CLEAR:
+                        data.clear();
+                        break;
+                    default:
+                        break;
+                }
+            }
         }
     }
 
     /**
-     * 清空缓存，并将清空后的缓存数据保存到文件中。
+     * 清空缓存，清空操作同样记录到日志中。
      */
     public void clearCache() {
-        // 清空缓存Map
-        cacheMap.clear();
-        // 保存缓存数据到文件
-        saveCacheToFile();
+        if (mappedStore != null) {
+            mappedStore.clear();
+            return;
+        }
+        append(new LogRecord(OP_CLEAR, null, null, 0), () -> {
+            cacheMap.clear();
+            expiryQueue.clear();
+        });
+    }
+
+    /**
+     * 刷盘并停止后台任务，之后的修改不会再自动写入磁盘。重复调用无效果。
+     */
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        sweepTask.cancel(false);
+        if (mappedStore != null) {
+            try {
+                mappedStore.close();
+            } catch (IOException e) {
+                // 打印异常信息
+                e.printStackTrace();
+            }
+            return;
+        }
+        flushTask.cancel(false);
+        journal.close();
     }
 
     /**
-     * 检查缓存是否过期。
+     * 检查缓存是否过期，以快照和日志中较晚的修改时间为准。
      *
      * @return 如果缓存过期则返回true，否则返回false
      */
     public boolean isCacheExpired() {
         // 创建一个File对象，指向缓存文件
-        File file = new File(cacheFilePath);
+        File file = mappedStore != null ? new File(cacheFilePath + ".mmap") : new File(cacheFilePath);
+        File log = logFile();
         // 检查文件是否存在
-        if (file.exists()) {
+        if (file.exists() || log.exists()) {
             // 获取当前时间
             long currentTime = System.currentTimeMillis();
             // 获取文件的最后修改时间
-            long lastModified = file.lastModified();
+            long lastModified = Math.max(file.lastModified(), log.lastModified());
             // 计算时间差，并判断是否超过缓存过期时间
             return (currentTime - lastModified) > cacheExpirationTime;
         }
         // 如果文件不存在，则认为缓存过期
         return true;
     }
-}
\ No newline at end of file
+
+    /**
+     * 映射模式的值编码：8字节过期时间点 + JSON的UTF-8字节。
+     *
+     * @param json     值的JSON
+     * @param expireAt 过期时间点，0表示永不过期
+     * @return 编码后的字节
+     */
+    private byte[] encode(JsonElement json, long expireAt) {
+        byte[] bytes = gson.toJson(json).getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(8 + bytes.length).putLong(expireAt).put(bytes).array();
+    }
+
+    /**
+     * 判断过期时间点是否已过。
+     *
+     * @param expireAt 过期时间点，0表示永不过期
+     * @param now      当前毫秒时间戳
+     * @return 已过期返回true
+     */
+    private static boolean isExpired(long expireAt, long now) {
+        return expireAt > 0 && now >= expireAt;
+    }
+
+    /**
+     * 获取日志文件。
+     *
+     * @return 日志文件
+     */
+    private File logFile() {
+        return new File(cacheFilePath + ".log");
+    }
+
+    /**
+     * 获取压缩中的旧日志文件。
+     *
+     * @return 旧日志文件
+     */
+    private File compactingFile() {
+        return new File(cacheFilePath + ".log.compacting");
+    }
+
+    /**
+     * 周期维护任务：刷盘或清理过期条目。只弱引用缓存，缓存被回收后写完日志中剩余的修改、关闭日志并取消自己。
+     */
+    private static final class Maintenance implements Runnable {
+        // 缓存的弱引用
+        private final WeakReference<LocalCache> cache;
+        // 缓存的日志，映射模式下为null
+        private final Journal journal;
+        // true 为过期清理，false 为刷盘
+        private final boolean sweep;
+        // 本任务的调度结果，用于取消自己
+        volatile ScheduledFuture<?> future;
+
+        /**
+         * 构造函数。
+         *
+         * @param cache   缓存
+         * @param journal 缓存的日志，映射模式下为null
+         * @param sweep   true 为过期清理，false 为刷盘
+         */
+        Maintenance(LocalCache cache, Journal journal, boolean sweep) {
+            this.cache = new WeakReference<>(cache);
+            this.journal = journal;
+            this.sweep = sweep;
+        }
+
+        /**
+         * 缓存仍在时执行维护，已被回收时收尾并取消任务。
+         */
+        @Override
+        public void run() {
+            LocalCache target = cache.get();
+            if (target == null) {
+                if (journal != null && !sweep) {
+                    journal.close();
+                }
+                ScheduledFuture<?> self = future;
+                if (self != null) {
+                    self.cancel(false);
+                }
+                return;
+            }
+            if (sweep) {
+                target.sweepExpired();
+            } else {
+                target.flushQuietly();
+            }
+        }
+    }
+
+    /**
+     * 追加日志：待写记录和日志文件的写入器。与缓存分开保存，缓存被回收后仍能写完剩余的修改。
+     * 锁的顺序：ioLock、缓存的 this、本对象。
+     */
+    private static final class Journal {
+        // 文件读写锁，保证刷盘、压缩和加载串行执行，与保护内存数据的锁分开，写入不等待磁盘
+        final Object ioLock = new Object();
+        // 日志文件
+        private final File logFile;
+        // 等待追加到日志的记录，每条是一行JSON，受 this 保护
+        private List<String> pending = new ArrayList<>();
+        // 日志文件的写入器，按需打开，只在持有 ioLock 时访问
+        private Writer logWriter;
+        // 当前日志文件大小，只在持有 ioLock 时访问
+        long logBytes;
+
+        /**
+         * 构造函数。
+         *
+         * @param logFile 日志文件
+         */
+        Journal(File logFile) {
+            this.logFile = logFile;
+        }
+
+        /**
+         * 放入一条待写记录。
+         *
+         * @param line 一行JSON
+         * @return 待写记录条数
+         */
+        synchronized int add(String line) {
+            pending.add(line);
+            return pending.size();
+        }
+
+        /**
+         * 取出全部待写记录。
+         *
+         * @return 待写记录，可能为空
+         */
+        synchronized List<String> take() {
+            List<String> batch = pending;
+            pending = new ArrayList<>();
+            return batch;
+        }
+
+        /**
+         * 取出待写记录并追加到日志文件。调用方必须持有 ioLock。
+         *
+         * @throws IOException 写文件失败
+         */
+        void writePending() throws IOException {
+            write(take());
+        }
+
+        /**
+         * 把一批记录追加到日志文件。写入失败时截掉这批已写出的部分，并把这批记录放回待写队列的最前面，
+         * 下次刷盘按原顺序重试。调用方必须持有 ioLock。
+         *
+         * @param batch 记录
+         * @throws IOException 写文件失败
+         */
+        void write(List<String> batch) throws IOException {
+            if (batch.isEmpty()) {
+                return;
+            }
+            long start = logBytes;
+            try {
+                if (logWriter == null) {
+                    logBytes = logFile.length();
+                    start = logBytes;
+                    logWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(logFile, true), StandardCharsets.UTF_8));
+                }
+                for (String line : batch) {
+                    logWriter.write(line);
+                    logWriter.write('\n');
+                    logBytes += line.getBytes(StandardCharsets.UTF_8).length + 1;
+                }
+                logWriter.flush();
+            } catch (IOException e) {
+                restore(batch, start);
+                throw e;
+            }
+        }
+
+        /**
+         * 写日志失败后恢复：关闭写入器，把日志截回这批记录之前的长度，避免留下半行让重放提前停止，
+         * 再把这批记录放回待写队列的最前面。调用方必须持有 ioLock。
+         *
+         * @param batch 写入失败的记录
+         * @param start 写入这批记录前的日志长度
+         */
+        private void restore(List<String> batch, long start) {
+            closeWriter();
+            logBytes = start;
+            if (logFile.length() > start) {
+                try (RandomAccessFile raf = new RandomAccessFile(logFile, "rw")) {
+                    raf.setLength(start);
+                } catch (IOException e) {
+                    // 打印异常信息
+                    e.printStackTrace();
+                }
+            }
+            synchronized (this) {
+                batch.addAll(pending);
+                pending = batch;
+            }
+        }
+
+        /**
+         * 关闭日志写入器。调用方必须持有 ioLock。
+         */
+        void closeWriter() {
+            if (logWriter != null) {
+                try {
+                    logWriter.close();
+                } catch (IOException e) {
+                    // 打印异常信息
+                    e.printStackTrace();
+                }
+                logWriter = null;
+            }
+        }
+
+        /**
+         * 写完待写记录并关闭写入器，不再由关闭钩子处理。
+         */
+        void close() {
+            synchronized (ioLock) {
+                try {
+                    writePending();
+                } catch (IOException e) {
+                    // 打印异常信息
+                    e.printStackTrace();
+                }
+                closeWriter();
+            }
+            OPEN.remove(this);
+        }
+    }
+
+    /**
+     * 存储模式。
+     */
+    public enum StorageMode {
+        /**
+         * 快照 + 追加日志，启动时全部加载到内存
+         */
+        LOG,
+        /**
+         * 内存映射文件 + 哈希索引，启动时只映射文件，读取时才解码
+         */
+        MAPPED
+    }
+
+    /**
+     * 缓存条目：写入的对象或从文件加载的原始JSON，以及过期时间点。
+     */
+    private static class CacheEntry {
+        // 对象值，写入的对象或已解码的值
+        Object value;
+        // 从文件加载的原始JSON，写入的对象为null
+        JsonElement json;
+        // value 是按哪个类型从 json 解码的
+        Type decodedAs;
+        // 过期时间点，毫秒时间戳，0表示永不过期
+        final long expireAt;
+
+        /**
+         * 构造函数。
+         *
+         * @param value    对象值
+         * @param json     原始JSON
+         * @param expireAt 过期时间点
+         */
+        CacheEntry(Object value, JsonElement json, long expireAt) {
+            this.value = value;
+            this.json = json;
+            this.expireAt = expireAt;
+        }
+
+        /**
+         * 获取值：写入的对象原样返回，从文件加载的JSON按类型解码一次后缓存结果。
+         *
+         * @param gson Gson
+         * @param type 值类型
+         * @return 值
+         */
+        Object decode(Gson gson, Type type) {
+            if (json != null && !type.equals(decodedAs)) {
+                value = gson.fromJson(json, type);
+                decodedAs = type;
+            }
+            return value;
+        }
+
+        /**
+         * 获取值的JSON。
+         *
+         * @param gson Gson
+         * @return JSON
+         */
+        JsonElement toJson(Gson gson) {
+            return json != null ? json : gson.toJsonTree(value);
+        }
+    }
+
+    /**
+     * 过期队列中的记录，按过期时间点排序。
+     */
+    private static class ExpiryRef implements Comparable<ExpiryRef> {
+        // 缓存的键
+        final String key;
+        // 过期时间点
+        final long expireAt;
+
+        /**
+         * 构造函数。
+         *
+         * @param key      缓存的键
+         * @param expireAt 过期时间点
+         */
+        ExpiryRef(String key, long expireAt) {
+            this.key = key;
+            this.expireAt = expireAt;
+        }
+
+        /**
+         * 按过期时间点比较。
+         *
+         * @param o 另一条记录
+         * @return 比较结果
+         */
+        @Override
+        public int compareTo(ExpiryRef o) {
+            return Long.compare(expireAt, o.expireAt);
+        }
+    }
+
+    /**
+     * 日志记录，每条记录序列化为一行JSON。
+     */
+    private static class LogRecord {
+        // 操作类型
+        String op;
+        // 缓存的键
+        String key;
+        // 缓存的值
+        JsonElement value;
+        // 过期时间点，0表示永不过期
+        long expireAt;
+
+        /**
+         * 构造函数。
+         *
+         * @param op       操作类型
+         * @param key      缓存的键
+         * @param value    缓存的值
+         * @param expireAt 过期时间点
+         */
+        LogRecord(String op, String key, JsonElement value, long expireAt) {
+            this.op = op;
+            this.key = key;
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+}
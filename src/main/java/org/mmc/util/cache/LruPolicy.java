@@ -0,0 +1,43 @@
+package org.mmc.util.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * 最近最少使用（LRU）淘汰策略，基于访问顺序的 LinkedHashMap。
+ *
+ * @param <K> 键类型
+ */
+class LruPolicy<K> implements EvictionPolicy<K> {
+    /**
+     * 按访问顺序排列的键，头部为最久未使用
+     */
+    private final LinkedHashMap<K, Boolean> order = new LinkedHashMap<>(16, 0.75f, true);
+
+    @Override
+    public void recordAccess(K key) {
+        // 访问顺序模式下 get 会把键移到尾部
+        order.get(key);
+    }
+
+    @Override
+    public void recordInsert(K key) {
+        order.put(key, Boolean.TRUE);
+    }
+
+    @Override
+    public void recordRemove(K key) {
+        order.remove(key);
+    }
+
+    @Override
+    public K selectVictim() {
+        Iterator<K> it = order.keySet().iterator();
+        return it.hasNext() ? it.next() : null;
+    }
+
+    @Override
+    public void clear() {
+        order.clear();
+    }
+}
@@ -0,0 +1,661 @@
+package org.mmc.util.cache;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+
+/**
+ * 基于内存映射文件的键值存储，{@link LocalCache} 映射模式的底层实现。
+ * <p>
+ * 文件布局：头部（32字节）+ 开放寻址哈希索引（每个槽4字节，存记录偏移）+ 追加写的数据区。
+ * 每条记录为 [键哈希 int][键长度 int][值长度 int][键 UTF-8][值字节]。索引本身也保存在文件中，
+ * 打开时只需映射文件，不需要扫描或解析任何数据；读取时按哈希定位记录并只拷出该条的值。
+ * <p>
+ * 覆盖和删除只修改索引，旧记录成为垃圾；索引过满或垃圾超过一半时原地重建。重建前把有效数据写入
+ * .rebuild 日志并刷盘，重建中途崩溃时下次打开会从日志恢复。映射文件不会缩小（Windows 下无法截断已映射的文件），
+ * 单个文件不超过2GB。
+ */
+class MappedStore implements Closeable {
+    /**
+     * 文件魔数 "MMCKV001"
+     */
+    private static final long MAGIC = 0x4D4D434B56303031L;
+    /**
+     * 重建日志结束标记 "MMCKVEND"
+     */
+    private static final long JOURNAL_END = 0x4D4D434B56454E44L;
+    /**
+     * 头部大小：魔数8 + 槽数4 + 条目数4 + 墓碑数4 + 数据区结束位置4 + 垃圾字节数4 + 保留4
+     */
+    private static final int HEADER_SIZE = 32;
+    /**
+     * 记录头大小：键哈希4 + 键长度4 + 值长度4
+     */
+    private static final int RECORD_HEADER = 12;
+    /**
+     * 初始槽数
+     */
+    private static final int INITIAL_BUCKETS = 1024;
+    /**
+     * 数据区最小预留空间
+     */
+    private static final int MIN_DATA = 64 * 1024;
+    /**
+     * 垃圾至少达到该字节数才考虑重建
+     */
+    private static final int MIN_GARBAGE = 1024 * 1024;
+    /**
+     * 空槽
+     */
+    private static final int EMPTY = 0;
+    /**
+     * 已删除的槽，查找时需要跳过继续探测
+     */
+    private static final int TOMBSTONE = -1;
+
+    /**
+     * 数据文件
+     */
+    private final File file;
+    /**
+     * 重建日志文件
+     */
+    private final File journal;
+    /**
+     * 读写锁，读取共享，写入和重建独占
+     */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    /**
+     * 数据文件
+     */
+    private final RandomAccessFile raf;
+    /**
+     * 映射的文件内容
+     */
+    private MappedByteBuffer buffer;
+    /**
+     * 槽数，2的幂
+     */
+    private int bucketCount;
+    /**
+     * 有效条目数
+     */
+    private int entryCount;
+    /**
+     * 墓碑槽数
+     */
+    private int tombstones;
+    /**
+     * 数据区结束位置
+     */
+    private int dataEnd;
+    /**
+     * 垃圾记录字节数
+     */
+    private int garbage;
+
+    /**
+     * 打开或创建存储文件。
+     *
+     * @param file 数据文件
+     * @throws IOException 文件不是映射存储格式或读写失败
+     */
+    MappedStore(File file) throws IOException {
+        this.file = file;
+        this.journal = new File(file.getPath() + ".rebuild");
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        boolean fresh = !file.exists() || file.length() < HEADER_SIZE;
+        this.raf = new RandomAccessFile(file, "rw");
+        if (fresh) {
+            format(INITIAL_BUCKETS, MIN_DATA);
+        } else {
+            map(raf.length());
+            if (buffer.getLong(0) != MAGIC) {
+                raf.close();
+                throw new IOException("not a mapped cache file: " + file);
+            }
+            bucketCount = buffer.getInt(8);
+            entryCount = buffer.getInt(12);
+            tombstones = buffer.getInt(16);
+            dataEnd = buffer.getInt(20);
+            garbage = buffer.getInt(24);
+        }
+        if (journal.exists()) {
+            recover();
+        }
+    }
+
+    /**
+     * 读取键对应的值。
+     *
+     * @param key 键
+     * @return 值字节，不存在时返回null
+     */
+    byte[] get(String key) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        lock.readLock().lock();
+        try {
+            int slot = findSlot(keyBytes, hash(key));
+            if (slot < 0) {
+                return null;
+            }
+            return readValue(slotAt(slot));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 写入键值，覆盖已有的值。
+     *
+     * @param key   键
+     * @param value 值字节
+     * @throws IOException 扩容或重建失败
+     */
+    void put(String key, byte[] value) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(key);
+        lock.writeLock().lock();
+        try {
+            if ((entryCount + tombstones + 1) * 4L > bucketCount * 3L) {
+                // 有效条目超过一半时扩容，否则只是墓碑太多，原尺寸重建即可
+                rebuild(entryCount * 2L > bucketCount ? bucketCount * 2 : bucketCount);
+            }
+            int offset = append(hash, keyBytes, value);
+            int slot = findSlot(keyBytes, hash);
+            if (slot >= 0) {
+                garbage += recordLength(slotAt(slot));
+            } else {
+                slot = -slot - 1;
+                if (slotAt(slot) == TOMBSTONE) {
+                    tombstones--;
+                }
+                entryCount++;
+            }
+            buffer.putInt(slotPosition(slot), offset);
+            writeHeader();
+            compactIfWasteful();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 删除键。
+     *
+     * @param key 键
+     * @return 是否存在该键
+     * @throws IOException 重建失败
+     */
+    boolean remove(String key) throws IOException {
+        return removeIf(key, null);
+    }
+
+    /**
+     * 当前值满足条件时删除键，判断和删除在同一把写锁内完成。
+     *
+     * @param key       键
+     * @param condition 对当前值字节的判断，为null时无条件删除
+     * @return 是否删除了该键
+     * @throws IOException 重建失败
+     */
+    boolean removeIf(String key, Predicate<byte[]> condition) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        lock.writeLock().lock();
+        try {
+            int slot = findSlot(keyBytes, hash(key));
+            if (slot < 0) {
+                return false;
+            }
+            if (condition != null && !condition.test(readValue(slotAt(slot)))) {
+                return false;
+            }
+            garbage += recordLength(slotAt(slot));
+            buffer.putInt(slotPosition(slot), TOMBSTONE);
+            entryCount--;
+            tombstones++;
+            writeHeader();
+            compactIfWasteful();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 清空所有数据，文件大小保持不变。
+     */
+    void clear() {
+        lock.writeLock().lock();
+        try {
+            clearIndex(bucketCount);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 查询有效条目数。
+     *
+     * @return 条目数
+     */
+    int size() {
+        lock.readLock().lock();
+        try {
+            return entryCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 遍历所有有效条目，遍历期间持有读锁，回调中不能修改本存储。
+     *
+     * @param action 回调，参数为键和值字节
+     */
+    void forEach(BiConsumer<String, byte[]> action) {
+        lock.readLock().lock();
+        try {
+            for (int i = 0; i < bucketCount; i++) {
+                int offset = slotAt(i);
+                if (offset != EMPTY && offset != TOMBSTONE) {
+                    action.accept(new String(readKey(offset), StandardCharsets.UTF_8), readValue(offset));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 从指定槽开始遍历一段索引，用于分批扫描，遍历期间持有读锁，回调中不能修改本存储。
+     *
+     * @param fromSlot 起始槽下标
+     * @param maxSlots 最多检查的槽数
+     * @param action   回调，参数为键和值字节
+     * @return 下次扫描的起始槽下标，扫完一轮时返回0
+     */
+    int scan(int fromSlot, int maxSlots, BiConsumer<String, byte[]> action) {
+        lock.readLock().lock();
+        try {
+            int slot = fromSlot;
+            for (int n = 0; n < maxSlots && slot < bucketCount; n++, slot++) {
+                int offset = slotAt(slot);
+                if (offset != EMPTY && offset != TOMBSTONE) {
+                    action.accept(new String(readKey(offset), StandardCharsets.UTF_8), readValue(offset));
+                }
+            }
+            return slot >= bucketCount ? 0 : slot;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 把映射内容刷到磁盘。
+     */
+    void force() {
+        lock.writeLock().lock();
+        try {
+            buffer.force();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 刷盘并关闭文件。
+     *
+     * @throws IOException 关闭失败
+     */
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            buffer.force();
+            raf.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 在数据区末尾追加一条记录，空间不足时扩大文件。调用方必须持有写锁。
+     *
+     * @param hash     键哈希
+     * @param keyBytes 键字节
+     * @param value    值字节
+     * @return 记录偏移
+     * @throws IOException 扩容失败
+     */
+    private int append(int hash, byte[] keyBytes, byte[] value) throws IOException {
+        long length = (long) RECORD_HEADER + keyBytes.length + value.length;
+        ensureCapacity(dataEnd + length);
+        int offset = dataEnd;
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.putInt(hash).putInt(keyBytes.length).putInt(value.length).put(keyBytes).put(value);
+        dataEnd += (int) length;
+        return offset;
+    }
+
+    /**
+     * 查找键所在的槽。
+     *
+     * @param keyBytes 键字节
+     * @param hash     键哈希
+     * @return 找到时返回槽下标；找不到时返回 -(可插入的槽下标 + 1)
+     */
+    private int findSlot(byte[] keyBytes, int hash) {
+        int mask = bucketCount - 1;
+        int index = hash & mask;
+        int firstTombstone = -1;
+        for (int probes = 0; probes < bucketCount; probes++) {
+            int offset = slotAt(index);
+            if (offset == EMPTY) {
+                return -(firstTombstone >= 0 ? firstTombstone : index) - 1;
+            }
+            if (offset == TOMBSTONE) {
+                if (firstTombstone < 0) {
+                    firstTombstone = index;
+                }
+            } else if (keyEquals(offset, hash, keyBytes)) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        // 负载因子保证不会走到这里，除非所有空槽都变成了墓碑
+        return -firstTombstone - 1;
+    }
+
+    /**
+     * 比较记录的键是否与给定键相同。
+     *
+     * @param offset   记录偏移
+     * @param hash     键哈希
+     * @param keyBytes 键字节
+     * @return 相同返回true
+     */
+    private boolean keyEquals(int offset, int hash, byte[] keyBytes) {
+        if (buffer.getInt(offset) != hash || buffer.getInt(offset + 4) != keyBytes.length) {
+            return false;
+        }
+        int start = offset + RECORD_HEADER;
+        for (int i = 0; i < keyBytes.length; i++) {
+            if (buffer.get(start + i) != keyBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 读取记录的键。
+     *
+     * @param offset 记录偏移
+     * @return 键字节
+     */
+    private byte[] readKey(int offset) {
+        byte[] key = new byte[buffer.getInt(offset + 4)];
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset + RECORD_HEADER);
+        view.get(key);
+        return key;
+    }
+
+    /**
+     * 读取记录的值。
+     *
+     * @param offset 记录偏移
+     * @return 值字节
+     */
+    private byte[] readValue(int offset) {
+        int keyLength = buffer.getInt(offset + 4);
+        byte[] value = new byte[buffer.getInt(offset + 8)];
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset + RECORD_HEADER + keyLength);
+        view.get(value);
+        return value;
+    }
+
+    /**
+     * 计算记录总长度。
+     *
+     * @param offset 记录偏移
+     * @return 字节数
+     */
+    private int recordLength(int offset) {
+        return RECORD_HEADER + buffer.getInt(offset + 4) + buffer.getInt(offset + 8);
+    }
+
+    /**
+     * 覆盖或删除留下的旧记录超过数据区一半时原尺寸重建，回收空间，否则反复更新同一批键会让文件一直增长。调用方必须持有写锁。
+     *
+     * @throws IOException 重建失败
+     */
+    private void compactIfWasteful() throws IOException {
+        if (garbage > MIN_GARBAGE && garbage > (dataEnd - dataStart()) / 2) {
+            rebuild(bucketCount);
+        }
+    }
+
+    /**
+     * 重建索引和数据区：有效数据先写入重建日志并刷盘，再原地重写文件，最后删除日志。调用方必须持有写锁。
+     *
+     * @param newBuckets 新的槽数
+     * @throws IOException 读写失败
+     */
+    private void rebuild(int newBuckets) throws IOException {
+        List<byte[]> keys = new ArrayList<>(entryCount);
+        List<byte[]> values = new ArrayList<>(entryCount);
+        for (int i = 0; i < bucketCount; i++) {
+            int offset = slotAt(i);
+            if (offset != EMPTY && offset != TOMBSTONE) {
+                keys.add(readKey(offset));
+                values.add(readValue(offset));
+            }
+        }
+        try (FileOutputStream fos = new FileOutputStream(journal);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+            for (int i = 0; i < keys.size(); i++) {
+                out.writeInt(keys.get(i).length);
+                out.write(keys.get(i));
+                out.writeInt(values.get(i).length);
+                out.write(values.get(i));
+            }
+            out.writeInt(-1);
+            out.writeLong(JOURNAL_END);
+            out.flush();
+            fos.getFD().sync();
+        }
+        reload(newBuckets, keys, values);
+        if (!journal.delete()) {
+            throw new IOException("failed to delete rebuild journal: " + journal);
+        }
+    }
+
+    /**
+     * 从重建日志恢复；日志不完整说明崩溃时还没开始重写文件，直接丢弃日志。
+     *
+     * @throws IOException 读写失败
+     */
+    private void recover() throws IOException {
+        List<byte[]> keys = new ArrayList<>();
+        List<byte[]> values = new ArrayList<>();
+        boolean complete = false;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journal)))) {
+            int keyLength;
+            while ((keyLength = in.readInt()) >= 0) {
+                byte[] key = new byte[keyLength];
+                in.readFully(key);
+                byte[] value = new byte[in.readInt()];
+                in.readFully(value);
+                keys.add(key);
+                values.add(value);
+            }
+            complete = in.readLong() == JOURNAL_END;
+        } catch (EOFException e) {
+            // 日志写到一半，文件尚未被改动
+        }
+        if (complete) {
+            int buckets = INITIAL_BUCKETS;
+            while (keys.size() * 4L > buckets * 3L) {
+                buckets *= 2;
+            }
+            reload(Math.max(buckets, bucketCount), keys, values);
+        }
+        if (!journal.delete()) {
+            throw new IOException("failed to delete rebuild journal: " + journal);
+        }
+    }
+
+    /**
+     * 用给定数据重写整个文件并刷盘。
+     *
+     * @param newBuckets 槽数
+     * @param keys       键
+     * @param values     值，与键一一对应
+     * @throws IOException 读写失败
+     */
+    private void reload(int newBuckets, List<byte[]> keys, List<byte[]> values) throws IOException {
+        long dataBytes = 0;
+        for (int i = 0; i < keys.size(); i++) {
+            dataBytes += RECORD_HEADER + keys.get(i).length + values.get(i).length;
+        }
+        format(newBuckets, dataBytes + MIN_DATA);
+        for (int i = 0; i < keys.size(); i++) {
+            byte[] key = keys.get(i);
+            int hash = hash(new String(key, StandardCharsets.UTF_8));
+            int offset = append(hash, key, values.get(i));
+            buffer.putInt(slotPosition(-findSlot(key, hash) - 1), offset);
+            entryCount++;
+        }
+        writeHeader();
+        buffer.force();
+    }
+
+    /**
+     * 初始化为空存储：确保文件足够大，写入头部并清空索引。
+     *
+     * @param buckets  槽数
+     * @param dataSize 数据区预留大小
+     * @throws IOException 扩容失败
+     */
+    private void format(int buckets, long dataSize) throws IOException {
+        long required = HEADER_SIZE + (long) buckets * 4 + dataSize;
+        if (buffer == null || buffer.capacity() < required) {
+            if (raf.length() < required) {
+                raf.setLength(required);
+            }
+            map(raf.length());
+        }
+        buffer.putLong(0, MAGIC);
+        clearIndex(buckets);
+    }
+
+    /**
+     * 清空索引并重置计数。
+     *
+     * @param buckets 槽数
+     */
+    private void clearIndex(int buckets) {
+        bucketCount = buckets;
+        entryCount = 0;
+        tombstones = 0;
+        garbage = 0;
+        dataEnd = dataStart();
+        for (int i = 0; i < buckets; i++) {
+            buffer.putInt(slotPosition(i), EMPTY);
+        }
+        writeHeader();
+    }
+
+    /**
+     * 确保映射区域至少有指定大小，不足时按两倍扩大文件并重新映射。
+     *
+     * @param required 需要的大小
+     * @throws IOException 超过2GB或扩容失败
+     */
+    private void ensureCapacity(long required) throws IOException {
+        if (required <= buffer.capacity()) {
+            return;
+        }
+        if (required > Integer.MAX_VALUE) {
+            throw new IOException("mapped cache file exceeds 2GB: " + file);
+        }
+        long newLength = Math.min(Integer.MAX_VALUE, Math.max(required, (long) buffer.capacity() * 2));
+        raf.setLength(newLength);
+        map(newLength);
+    }
+
+    /**
+     * 映射文件的前 length 字节。
+     *
+     * @param length 映射长度
+     * @throws IOException 映射失败
+     */
+    private void map(long length) throws IOException {
+        buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+    }
+
+    /**
+     * 把计数写入头部。
+     */
+    private void writeHeader() {
+        buffer.putInt(8, bucketCount);
+        buffer.putInt(12, entryCount);
+        buffer.putInt(16, tombstones);
+        buffer.putInt(20, dataEnd);
+        buffer.putInt(24, garbage);
+    }
+
+    /**
+     * 数据区起始位置。
+     *
+     * @return 偏移
+     */
+    private int dataStart() {
+        return HEADER_SIZE + bucketCount * 4;
+    }
+
+    /**
+     * 槽在文件中的位置。
+     *
+     * @param slot 槽下标
+     * @return 偏移
+     */
+    private int slotPosition(int slot) {
+        return HEADER_SIZE + slot * 4;
+    }
+
+    /**
+     * 读取槽的值。
+     *
+     * @param slot 槽下标
+     * @return 记录偏移、EMPTY 或 TOMBSTONE
+     */
+    private int slotAt(int slot) {
+        return buffer.getInt(slotPosition(slot));
+    }
+
+    /**
+     * 计算键哈希，打散高位。
+     *
+     * @param key 键
+     * @return 哈希
+     */
+    private static int hash(String key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+}
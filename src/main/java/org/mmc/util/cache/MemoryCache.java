@@ -1,24 +1,17 @@
 package org.mmc.util.cache;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
-
 /**
  * 简单的内存缓存工具类，用于在内存中存储和管理缓存数据，并支持数据的读写、清除和过期处理等操作。
+ * <p>
+ * 静态方法委托给一个全局的 {@link CacheEngine} 实例，需要独立容量或生命周期时可直接创建 CacheEngine。
+ * 用 {@link #setOverflowTier(long)} 挂上 {@link OffHeapCache} 后，堆内因容量淘汰的条目转存到堆外，读取时自动取回，
+ * 取回的值与存入时类型相同。
  */
 public class MemoryCache {
     /**
-     * 键值对集合，用于存储缓存数据，键为字符串，值为Entity对象
-     */
-    private final static Map<String, Entity> map = new HashMap<>();
-    /**
-     * 定时器线程池，用于清除过期缓存，使用单线程调度执行器
+     * 全局缓存引擎，键为字符串，值为任意对象
      */
-    private final static ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private final static CacheEngine<String, Object> engine = new CacheEngine<>();
 
     /**
      * 添加缓存，不设置过期时间。
@@ -26,7 +19,7 @@ public class MemoryCache {
      * @param key  键
      * @param data 值
      */
-    public synchronized static void put(String key, Object data) {
+    public static void put(String key, Object data) {
         // 调用带过期时间的put方法，过期时间设置为0表示无限长
         MemoryCache.put(key, data, 0);
     }
@@ -38,24 +31,8 @@ public class MemoryCache {
      * @param data   值
      * @param expire 过期时间，单位：毫秒， 0表示无限长
      */
-    public synchronized static void put(String key, Object data, long expire) {
-        // 清除原键值对
-        MemoryCache.remove(key);
-        // 设置过期时间
-        if (expire > 0) {
-            // 安排一个定时任务，在指定的过期时间后执行
-            Future future = executor.schedule(() -> {
-                // 过期后清除该键值对
-                synchronized (MemoryCache.class) {
-                    map.remove(key);
-                }
-            }, expire, TimeUnit.MILLISECONDS);
-            // 将键值对和定时器Future封装成Entity对象并添加到Map中
-            map.put(key, new Entity(data, future));
-        } else {
-            // 不设置过期时间，将键值对和null封装成Entity对象并添加到Map中
-            map.put(key, new Entity(data, null));
-        }
+    public static void put(String key, Object data, long expire) {
+        engine.put(key, data, expire);
     }
 
     /**
@@ -64,11 +41,26 @@ public class MemoryCache {
      * @param key 键
      * @return 缓存的值，如果键不存在则返回null
      */
-    public synchronized static <T> T get(String key) {
-        // 从Map中获取Entity对象
-        Entity entity = map.get(key);
-        // 如果Entity对象不为空，则返回其值，否则返回null
-        return entity == null ? null : (T) entity.value;
+    public static <T> T get(String key) {
+        // 值按调用方声明的类型返回，类型不符时在调用方赋值处抛出 ClassCastException
+        @SuppressWarnings("unchecked")
+        T value = (T) engine.get(key);
+        return value;
+    }
+
+    /**
+     * 读取缓存，未命中时用加载器加载并写入缓存；同一个键的并发未命中只会加载一次。
+     *
+     * @param key    键
+     * @param loader 加载器
+     * @param expire 加载后写入的过期时间，单位：毫秒， 0表示无限长
+     * @return 缓存的值或加载的值
+     */
+    public static <T> T get(String key, CacheLoader<String, ?> loader, long expire) {
+        // 值按调用方声明的类型返回，类型不符时在调用方赋值处抛出 ClassCastException
+        @SuppressWarnings("unchecked")
+        T value = (T) engine.get(key, loader, expire);
+        return value;
     }
 
     /**
@@ -77,18 +69,11 @@ public class MemoryCache {
      * @param key 键
      * @return 被清除的缓存的值，如果键不存在则返回null
      */
-    public synchronized static <T> T remove(String key) {
-        // 清除原缓存数据
-        Entity entity = map.remove(key);
-        if (entity == null) {
-            return null;
-        }
-        // 清除原键值对定时器
-        if (entity.future != null) {
-            entity.future.cancel(true);
-        }
-        // 返回被清除的缓存的值
-        return (T) entity.value;
+    public static <T> T remove(String key) {
+        // 值按调用方声明的类型返回，类型不符时在调用方赋值处抛出 ClassCastException
+        @SuppressWarnings("unchecked")
+        T value = (T) engine.remove(key);
+        return value;
     }
 
     /**
@@ -96,33 +81,37 @@ public class MemoryCache {
      *
      * @return 缓存的键值对数量
      */
-    public synchronized static int size() {
-        // 返回Map的大小
-        return map.size();
+    public static int size() {
+        return engine.size();
     }
 
     /**
-     * 缓存实体类，用于封装缓存的值和定时器Future。
+     * 设置全局缓存的堆外溢出层，使用默认分片大小和保留类型的 {@link ValueSerializer#typed()}，应在写入数据前设置。
+     *
+     * @param maxBytes 堆外内存预算，单位：字节，至少能容纳两个分片
      */
-    private static class Entity {
-        /**
-         * 键值对的value
-         */
-        public Object value;
-        /**
-         * 定时器Future
-         */
-        public Future future;
+    public static void setOverflowTier(long maxBytes) {
+        setOverflowTier(new OffHeapCache<>(maxBytes, OffHeapCache.DEFAULT_SLAB_SIZE, ValueSerializer.typed()));
+    }
 
-        /**
-         * 构造函数，初始化Entity对象。
-         *
-         * @param value  键值对的value
-         * @param future 定时器Future
-         */
-        public Entity(Object value, Future future) {
-            this.value = value;
-            this.future = future;
-        }
+    /**
+     * 设置全局缓存的堆外溢出层，应在写入数据前设置；为null时关闭溢出。
+     * 值按溢出层的 {@link ValueSerializer} 序列化，取回的对象是反序列化的副本。
+     * 缓存中的值类型各不相同，溢出层必须使用保留运行时类型的序列化器（如 {@link ValueSerializer#typed()}），
+     * 用 Object.class 构造的 Gson 序列化器取回的对象会变成 Map、Double 等，调用方强转时抛出 ClassCastException。
+     *
+     * @param tier 堆外缓存
+     */
+    public static void setOverflowTier(OffHeapCache<String, Object> tier) {
+        engine.setOverflowTier(tier);
+    }
+
+    /**
+     * 获取全局缓存的命中、未命中和淘汰次数统计。
+     *
+     * @return 统计快照
+     */
+    public static CacheStats stats() {
+        return engine.stats();
     }
-}
\ No newline at end of file
+}
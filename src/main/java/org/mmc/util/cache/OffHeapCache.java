@@ -0,0 +1,406 @@
+package org.mmc.util.cache;
+
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 堆外缓存，值序列化后存放在直接内存 ByteBuffer 分片中，堆上只保留键到存储位置的小索引，
+ * 适合存放较大的 JSON、文件分块等数据。可以单独使用，也可以用 {@link CacheEngine#setOverflowTier(OffHeapCache)}
+ * 或 {@link MemoryCache#setOverflowTier(OffHeapCache)} 挂在内存缓存后面，接收堆内因容量淘汰的条目，减少老年代占用和GC停顿。
+ * <p>
+ * 分配器把内存预算切成固定大小的分片，组成一个环：写入时在当前分片上顺序追加，分片写满后切换到下一个分片；
+ * 预算用完后回收最早写入的分片，该分片上仍有效的条目被整体淘汰（按写入顺序先进先出）。
+ * 覆盖写入和删除只修改索引，旧字节在分片回收时一并释放，因此没有碎片整理开销。
+ * <p>
+ * 读取在读锁内拷出字节，写入和分片回收在写锁内完成，序列化和反序列化都在锁外进行。
+ *
+ * @param <K> 键类型
+ * @param <V> 值类型
+ */
+public class OffHeapCache<K, V> {
+    /**
+     * 默认分片大小，4MB
+     */
+    public static final int DEFAULT_SLAB_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * 值序列化器
+     */
+    private final ValueSerializer<V> serializer;
+    /**
+     * 分片大小，单个值的序列化结果不能超过该大小
+     */
+    private final int slabSize;
+    /**
+     * 分片数量上限，由内存预算决定
+     */
+    private final int maxSlabs;
+    /**
+     * 已分配的分片，按需创建，最多 maxSlabs 个
+     */
+    private final List<ByteBuffer> slabs = new ArrayList<>();
+    /**
+     * 每个分片上写入过的键，回收分片时据此清理索引
+     */
+    private final List<List<K>> slabKeys = new ArrayList<>();
+    /**
+     * 键到存储位置的索引
+     */
+    private final Map<K, Slot> index = new HashMap<>();
+    /**
+     * 读写锁，保护索引和分片
+     */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    /**
+     * 当前写入的分片下标
+     */
+    private int current = -1;
+    /**
+     * 当前分片的写入位置
+     */
+    private int writeOffset;
+    /**
+     * 索引中有效条目的字节总数
+     */
+    private long liveBytes;
+    /**
+     * 命中次数
+     */
+    private final LongAdder hitCount = new LongAdder();
+    /**
+     * 未命中次数
+     */
+    private final LongAdder missCount = new LongAdder();
+    /**
+     * 因回收分片被淘汰的条目数
+     */
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * 构造函数，使用 Gson 序列化和默认分片大小。
+     *
+     * @param maxBytes 堆外内存预算，单位：字节
+     * @param type     值类型
+     */
+    public OffHeapCache(long maxBytes, Type type) {
+        this(maxBytes, DEFAULT_SLAB_SIZE, ValueSerializer.gson(type));
+    }
+
+    /**
+     * 构造函数。
+     *
+     * @param maxBytes   堆外内存预算，单位：字节，至少能容纳两个分片
+     * @param slabSize   分片大小，单位：字节
+     * @param serializer 值序列化器
+     */
+    public OffHeapCache(long maxBytes, int slabSize, ValueSerializer<V> serializer) {
+        if (slabSize <= 0) {
+            throw new IllegalArgumentException("slabSize must be > 0: " + slabSize);
+        }
+        if (maxBytes / slabSize < 2) {
+            throw new IllegalArgumentException("maxBytes must hold at least 2 slabs: " + maxBytes);
+        }
+        if (serializer == null) {
+            throw new IllegalArgumentException("serializer must not be null");
+        }
+        this.slabSize = slabSize;
+        this.maxSlabs = (int) Math.min(Integer.MAX_VALUE, maxBytes / slabSize);
+        this.serializer = serializer;
+    }
+
+    /**
+     * 添加缓存，不设置过期时间。
+     *
+     * @param key   键
+     * @param value 值
+     * @return 是否写入成功，序列化结果超过分片大小时返回false
+     */
+    public boolean put(K key, V value) {
+        return put(key, value, 0);
+    }
+
+    /**
+     * 添加缓存，并设置过期时间。
+     *
+     * @param key    键
+     * @param value  值
+     * @param expire 过期时间，单位：毫秒， 0表示无限长
+     * @return 是否写入成功，序列化结果超过分片大小时返回false
+     */
+    public boolean put(K key, V value, long expire) {
+        return putUntil(key, value, expire > 0 ? System.currentTimeMillis() + expire : 0);
+    }
+
+    /**
+     * 添加缓存，并指定过期时间点。
+     *
+     * @param key      键
+     * @param value    值
+     * @param expireAt 过期时间点，毫秒时间戳，0表示永不过期
+     * @return 是否写入成功，序列化结果超过分片大小时返回false
+     */
+    boolean putUntil(K key, V value, long expireAt) {
+        byte[] bytes = serializer.serialize(value);
+        if (bytes.length > slabSize) {
+            remove(key);
+            return false;
+        }
+        lock.writeLock().lock();
+        try {
+            if (current < 0 || slabSize - writeOffset < bytes.length) {
+                nextSlab();
+            }
+            ByteBuffer slab = slabs.get(current);
+            slab.position(writeOffset);
+            slab.put(bytes);
+            Slot old = index.put(key, new Slot(current, writeOffset, bytes.length, expireAt));
+            if (old != null) {
+                liveBytes -= old.length;
+            }
+            liveBytes += bytes.length;
+            slabKeys.get(current).add(key);
+            writeOffset += bytes.length;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 读取缓存。
+     *
+     * @param key 键
+     * @return 缓存的值，如果键不存在或已过期则返回null
+     */
+    public V get(K key) {
+        byte[] bytes;
+        lock.readLock().lock();
+        try {
+            Slot slot = index.get(key);
+            if (slot == null || slot.isExpired(System.currentTimeMillis())) {
+                missCount.increment();
+                return null;
+            }
+            bytes = new byte[slot.length];
+            // 用 duplicate 读取，避免并发读之间互相修改 position
+            ByteBuffer view = slabs.get(slot.slab).duplicate();
+            view.position(slot.offset);
+            view.get(bytes);
+        } finally {
+            lock.readLock().unlock();
+        }
+        hitCount.increment();
+        return serializer.deserialize(bytes);
+    }
+
+    /**
+     * 取出并删除键对应的条目，供溢出层取回时使用。
+     *
+     * @param key 键
+     * @return 值和过期时间点（权重为0，由调用方重新计算），不存在或已过期时返回null
+     */
+    CacheEngine.Entity<V> take(K key) {
+        byte[] bytes;
+        long expireAt;
+        lock.writeLock().lock();
+        try {
+            Slot slot = index.remove(key);
+            if (slot == null) {
+                missCount.increment();
+                return null;
+            }
+            liveBytes -= slot.length;
+            if (slot.isExpired(System.currentTimeMillis())) {
+                missCount.increment();
+                return null;
+            }
+            bytes = new byte[slot.length];
+            ByteBuffer view = slabs.get(slot.slab).duplicate();
+            view.position(slot.offset);
+            view.get(bytes);
+            expireAt = slot.expireAt;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        hitCount.increment();
+        return new CacheEngine.Entity<>(serializer.deserialize(bytes), expireAt, 0);
+    }
+
+    /**
+     * 清除缓存，占用的堆外字节在分片回收时释放。
+     *
+     * @param key 键
+     * @return 是否存在该键
+     */
+    public boolean remove(K key) {
+        lock.writeLock().lock();
+        try {
+            Slot old = index.remove(key);
+            if (old == null) {
+                return false;
+            }
+            liveBytes -= old.length;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 清空所有缓存，已分配的分片保留复用。
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            index.clear();
+            for (List<K> keys : slabKeys) {
+                keys.clear();
+            }
+            liveBytes = 0;
+            current = -1;
+            writeOffset = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 查询当前缓存的键值对数量，可能包含已过期但尚未回收的条目。
+     *
+     * @return 缓存的键值对数量
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return index.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 查询有效条目占用的堆外字节数。
+     *
+     * @return 字节数
+     */
+    public long liveBytes() {
+        lock.readLock().lock();
+        try {
+            return liveBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 查询已分配的堆外内存字节数，不会超过构造时的预算。
+     *
+     * @return 字节数
+     */
+    public long allocatedBytes() {
+        lock.readLock().lock();
+        try {
+            return (long) slabs.size() * slabSize;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 获取命中、未命中和淘汰次数的统计快照。
+     *
+     * @return 统计快照
+     */
+    public CacheStats stats() {
+        return new CacheStats(hitCount.sum(), missCount.sum(), evictionCount.sum());
+    }
+
+    /**
+     * 切换到下一个分片：预算未用完时分配新分片，否则回收环上最早写入的分片。调用方必须持有写锁。
+     */
+    private void nextSlab() {
+        if (slabs.size() < maxSlabs && current == slabs.size() - 1) {
+            slabs.add(ByteBuffer.allocateDirect(slabSize));
+            slabKeys.add(new ArrayList<>());
+            current = slabs.size() - 1;
+        } else {
+            current = (current + 1) % slabs.size();
+            evictSlab(current);
+        }
+        writeOffset = 0;
+    }
+
+    /**
+     * 淘汰仍指向指定分片的所有条目。调用方必须持有写锁。
+     *
+     * @param slab 分片下标
+     */
+    private void evictSlab(int slab) {
+        long now = System.currentTimeMillis();
+        List<K> keys = slabKeys.get(slab);
+        for (K key : keys) {
+            Slot slot = index.get(key);
+            if (slot != null && slot.slab == slab) {
+                index.remove(key);
+                liveBytes -= slot.length;
+                if (!slot.isExpired(now)) {
+                    evictionCount.increment();
+                }
+            }
+        }
+        keys.clear();
+    }
+
+    /**
+     * 存储位置，记录值所在的分片、偏移、长度和过期时间点。
+     */
+    private static class Slot {
+        /**
+         * 分片下标
+         */
+        final int slab;
+        /**
+         * 分片内偏移
+         */
+        final int offset;
+        /**
+         * 字节长度
+         */
+        final int length;
+        /**
+         * 过期时间点，毫秒时间戳，0表示永不过期
+         */
+        final long expireAt;
+
+        /**
+         * 构造函数。
+         *
+         * @param slab     分片下标
+         * @param offset   分片内偏移
+         * @param length   字节长度
+         * @param expireAt 过期时间点
+         */
+        Slot(int slab, int offset, int length, long expireAt) {
+            this.slab = slab;
+            this.offset = offset;
+            this.length = length;
+            this.expireAt = expireAt;
+        }
+
+        /**
+         * 判断是否已过期。
+         *
+         * @param now 当前毫秒时间戳
+         * @return 已过期返回true
+         */
+        boolean isExpired(long now) {
+            return expireAt > 0 && now >= expireAt;
+        }
+    }
+}
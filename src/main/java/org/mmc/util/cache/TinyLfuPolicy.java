@@ -0,0 +1,270 @@
+package org.mmc.util.cache;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * W-TinyLFU 淘汰策略。
+ * <p>
+ * 键分布在三个LRU区：窗口区（约1%）、主区的试用区和保护区（保护区约占主区80%）。新键进入窗口区，
+ * 窗口超出份额时，窗口中最久未使用的键移入试用区成为候选者；缓存超出容量时，候选者与试用区最久未使用的键
+ * 比较频率统计表中的近期访问次数，次数更高者留下；试用区的键再次被访问时晋升到保护区。
+ *
+ * @param <K> 键类型
+ */
+class TinyLfuPolicy<K> implements EvictionPolicy<K> {
+    /**
+     * 窗口区占总条目数的比例
+     */
+    private static final int WINDOW_PERCENT = 1;
+    /**
+     * 保护区占主区的比例
+     */
+    private static final int PROTECTED_PERCENT = 80;
+
+    /**
+     * 窗口区
+     */
+    private final LinkedHashMap<K, Boolean> window = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * 主区-试用区
+     */
+    private final LinkedHashMap<K, Boolean> probation = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * 主区-保护区
+     */
+    private final LinkedHashMap<K, Boolean> protectedArea = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * 最近一个离开窗口区的键，等待下次淘汰时与主区的淘汰候选比较
+     */
+    private K candidate;
+    /**
+     * 近期访问频率统计
+     */
+    private final FrequencySketch sketch;
+
+    /**
+     * 构造函数。
+     *
+     * @param expectedEntries 预计的最大条目数
+     */
+    TinyLfuPolicy(int expectedEntries) {
+        this.sketch = new FrequencySketch(expectedEntries);
+    }
+
+    @Override
+    public void recordAccess(K key) {
+        sketch.increment(key);
+        if (window.get(key) != null || protectedArea.get(key) != null) {
+            return;
+        }
+        if (probation.remove(key) != null) {
+            // 试用区再次命中，晋升到保护区
+            protectedArea.put(key, Boolean.TRUE);
+            int mainSize = probation.size() + protectedArea.size();
+            if (protectedArea.size() > mainSize * PROTECTED_PERCENT / 100) {
+                K demoted = eldest(protectedArea);
+                protectedArea.remove(demoted);
+                probation.put(demoted, Boolean.TRUE);
+            }
+        }
+    }
+
+    @Override
+    public void recordInsert(K key) {
+        sketch.increment(key);
+        recordRemove(key);
+        window.put(key, Boolean.TRUE);
+        if (window.size() > windowMax()) {
+            candidate = eldest(window);
+            window.remove(candidate);
+            probation.put(candidate, Boolean.TRUE);
+        }
+    }
+
+    @Override
+    public void recordRemove(K key) {
+        if (key.equals(candidate)) {
+            candidate = null;
+        }
+        if (window.remove(key) == null && probation.remove(key) == null) {
+            protectedArea.remove(key);
+        }
+    }
+
+    @Override
+    public K selectVictim() {
+        K victim = mainVictim();
+        if (victim == null) {
+            return eldest(window);
+        }
+        K pending = candidate;
+        candidate = null;
+        if (pending == null || pending.equals(victim) || probation.get(pending) == null) {
+            return victim;
+        }
+        // 候选者近期访问次数更高才准入，否则淘汰候选者自己
+        return sketch.frequency(pending) > sketch.frequency(victim) ? victim : pending;
+    }
+
+    @Override
+    public void clear() {
+        window.clear();
+        probation.clear();
+        protectedArea.clear();
+        sketch.clear();
+    }
+
+    /**
+     * 窗口区当前允许的最大条目数。
+     *
+     * @return 最大条目数，至少为1
+     */
+    private int windowMax() {
+        int total = window.size() + probation.size() + protectedArea.size();
+        return Math.max(1, total * WINDOW_PERCENT / 100);
+    }
+
+    /**
+     * 主区的淘汰候选，优先试用区。
+     *
+     * @return 候选键，主区为空时返回null
+     */
+    private K mainVictim() {
+        K victim = eldest(probation);
+        return victim != null ? victim : eldest(protectedArea);
+    }
+
+    /**
+     * 获取LRU区中最久未使用的键。
+     *
+     * @param area LRU区
+     * @param <K>  键类型
+     * @return 最久未使用的键，为空时返回null
+     */
+    private static <K> K eldest(LinkedHashMap<K, Boolean> area) {
+        Iterator<K> it = area.keySet().iterator();
+        return it.hasNext() ? it.next() : null;
+    }
+
+    /**
+     * 4位计数的 Count-Min Sketch，记录键的近期访问频率；累计增加次数达到表大小的10倍时所有计数减半，让旧热点逐渐冷却。
+     */
+    static class FrequencySketch {
+        /**
+         * 哈希种子，每个种子对应一行
+         */
+        private static final int[] SEEDS = {0x97cb3127, 0xb4a5cb1b, 0x6d2f5a43, 0x3c6ef372};
+        /**
+         * 计数上限
+         */
+        private static final int MAX_COUNT = 15;
+
+        /**
+         * 计数表
+         */
+        private final byte[] table;
+        /**
+         * 下标掩码
+         */
+        private final int mask;
+        /**
+         * 触发计数减半的增加次数
+         */
+        private final int sampleSize;
+        /**
+         * 自上次减半以来的增加次数
+         */
+        private int additions;
+
+        /**
+         * 构造函数。
+         *
+         * @param expectedEntries 预计的最大条目数
+         */
+        FrequencySketch(int expectedEntries) {
+            int size = Integer.highestOneBit(Math.max(16, Math.min(expectedEntries, 1 << 26)) - 1) << 1;
+            this.table = new byte[size * 4];
+            this.mask = size * 4 - 1;
+            this.sampleSize = size * 10;
+        }
+
+        /**
+         * 增加一次访问计数。
+         *
+         * @param key 键
+         */
+        void increment(Object key) {
+            int hash = spread(key.hashCode());
+            boolean added = false;
+            for (int seed : SEEDS) {
+                int index = indexOf(hash, seed);
+                if (table[index] < MAX_COUNT) {
+                    table[index]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        /**
+         * 估算访问频率。
+         *
+         * @param key 键
+         * @return 近期访问次数估计值，最大为15
+         */
+        int frequency(Object key) {
+            int hash = spread(key.hashCode());
+            int min = MAX_COUNT;
+            for (int seed : SEEDS) {
+                min = Math.min(min, table[indexOf(hash, seed)]);
+            }
+            return min;
+        }
+
+        /**
+         * 清空计数。
+         */
+        void clear() {
+            Arrays.fill(table, (byte) 0);
+            additions = 0;
+        }
+
+        /**
+         * 所有计数减半。
+         */
+        private void reset() {
+            for (int i = 0; i < table.length; i++) {
+                table[i] = (byte) (table[i] >>> 1);
+            }
+            additions /= 2;
+        }
+
+        /**
+         * 计算某一行的下标。
+         *
+         * @param hash 键的哈希
+         * @param seed 行种子
+         * @return 下标
+         */
+        private int indexOf(int hash, int seed) {
+            int h = (hash ^ seed) * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        /**
+         * 打散哈希值。
+         *
+         * @param h 原始哈希
+         * @return 打散后的哈希
+         */
+        private static int spread(int h) {
+            h ^= h >>> 16;
+            h *= 0x45d9f3b;
+            return h ^ (h >>> 16);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package org.mmc.util.cache;
+
+import org.mmc.util.GsonUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 保留运行时类型的序列化器，见 {@link ValueSerializer#typed()}。
+ * <p>
+ * 第一个字节是格式标记：{@link #JAVA} 表示 Java 序列化，用于实现了 {@link Serializable} 的值（包括 String、
+ * 包装类型和 JDK 集合），元素类型也一并保留；{@link #JSON} 表示类名加 JSON，用于其他值，按记录的类名反序列化。
+ * Serializable 的值中含有不可序列化的字段时退回 JSON 格式。
+ */
+final class TypedSerializer implements ValueSerializer<Object> {
+    /**
+     * 共享实例，无状态
+     */
+    static final TypedSerializer INSTANCE = new TypedSerializer();
+    /**
+     * 格式标记：Java 序列化
+     */
+    private static final byte JAVA = 'S';
+    /**
+     * 格式标记：类名 + '\n' + JSON
+     */
+    private static final byte JSON = 'J';
+
+    /**
+     * 使用 {@link #INSTANCE}
+     */
+    private TypedSerializer() {
+    }
+
+    /**
+     * 序列化值，Serializable 的值优先用 Java 序列化。
+     *
+     * @param value 值
+     * @return 带格式标记的字节
+     */
+    @Override
+    public byte[] serialize(Object value) {
+        if (value instanceof Serializable) {
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+                bytes.write(JAVA);
+                try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                    out.writeObject(value);
+                }
+                return bytes.toByteArray();
+            } catch (NotSerializableException e) {
+                // 含有不可序列化的字段，改用 JSON
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        String json = (char) JSON + value.getClass().getName() + '\n' + GsonUtils.toJson(value, value.getClass());
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 按格式标记反序列化。
+     *
+     * @param bytes 带格式标记的字节
+     * @return 与序列化前类型相同的值
+     */
+    @Override
+    public Object deserialize(byte[] bytes) {
+        if (bytes[0] == JAVA) {
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes, 1, bytes.length - 1))) {
+                return in.readObject();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (ClassNotFoundException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        String text = new String(bytes, 1, bytes.length - 1, StandardCharsets.UTF_8);
+        int newline = text.indexOf('\n');
+        try {
+            Class<?> type = Class.forName(text.substring(0, newline));
+            return GsonUtils.fromJson(text.substring(newline + 1), type);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package org.mmc.util.cache;
+
+import org.mmc.util.GsonUtils;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 值序列化器，{@link OffHeapCache} 用它在对象和堆外字节之间转换。
+ *
+ * @param <V> 值类型
+ */
+public interface ValueSerializer<V> {
+
+    /**
+     * 把值序列化为字节。
+     *
+     * @param value 值
+     * @return 字节数组
+     */
+    byte[] serialize(V value);
+
+    /**
+     * 把字节反序列化为值。
+     *
+     * @param bytes 字节数组
+     * @return 值
+     */
+    V deserialize(byte[] bytes);
+
+    /**
+     * 基于 {@link GsonUtils} 的 JSON 序列化器，UTF-8 编码。
+     *
+     * @param type 值类型，泛型类型可用 new TypeToken&lt;List&lt;User&gt;&gt;() {}.getType()
+     * @param <V>  值类型
+     * @return JSON序列化器
+     */
+    static <V> ValueSerializer<V> gson(Type type) {
+        return new ValueSerializer<V>() {
+            @Override
+            public byte[] serialize(V value) {
+                return GsonUtils.toJson(value, type).getBytes(StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public V deserialize(byte[] bytes) {
+                return GsonUtils.fromJson(new String(bytes, StandardCharsets.UTF_8), type);
+            }
+        };
+    }
+
+    /**
+     * 保留运行时类型的序列化器，适合值类型不固定的缓存（如 {@link MemoryCache} 的溢出层）。
+     * 实现了 Serializable 的值用 Java 序列化，集合的元素类型也能还原；其他值记录类名后按该类 JSON 序列化，
+     * 其中集合类型字段的元素没有类型信息，这类值需要实现 Serializable 或使用自定义序列化器。
+     * {@link #gson(Type)} 传入 Object.class 时不记录类型，整数会变成 Double、对象会变成 Map，不能用于这种场景。
+     *
+     * @return 保留类型的序列化器
+     */
+    static ValueSerializer<Object> typed() {
+        return TypedSerializer.INSTANCE;
+    }
+
+    /**
+     * 字节数组原样存取，适合文件分块等已经是字节的值。
+     *
+     * @return 字节数组序列化器
+     */
+    static ValueSerializer<byte[]> bytes() {
+        return new ValueSerializer<byte[]>() {
+            @Override
+            public byte[] serialize(byte[] value) {
+                return value;
+            }
+
+            @Override
+            public byte[] deserialize(byte[] bytes) {
+                return bytes;
+            }
+        };
+    }
+}
@@ -0,0 +1,18 @@
+package org.mmc.util.cache;
+
+/**
+ * 缓存条目权重计算器，配合 {@link CacheEngine} 的最大权重限制使用，例如按字节数限制缓存大小。
+ *
+ * @param <K> 键类型
+ * @param <V> 值类型
+ */
+public interface Weigher<K, V> {
+    /**
+     * 计算条目权重，写入时调用一次。
+     *
+     * @param key   键
+     * @param value 值
+     * @return 权重，不能为负数
+     */
+    int weigh(K key, V value);
+}
@@ -0,0 +1,321 @@
+package org.mmc.util.file;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 分块读取文件，每块以视图的形式交给调用方，不复制成新的数组或字符串。
+ * <p>
+ * 字符模式使用同一个 {@link CharsetDecoder} 解码整个文件，块末尾不完整的多字节字符留到下一块一起解码，
+ * 不会因为跨块而出现乱码；字节模式直接交出读到的 {@link ByteBuffer}。读缓冲区是直接缓冲区，不超过 1 MB 时大小向上取整为
+ * 2 的幂（至少 4 KB），放在池中复用，关闭后归还，池中缓冲区的总大小有上限；更大的缓冲区不复用。
+ * {@link #nextChars()}、{@link #nextBytes()} 返回的缓冲区在下一次调用或关闭后失效，需要保留时请自行复制。
+ * 非线程安全，一个实例只在一个线程中使用。
+ */
+public final class ChunkReader implements Closeable {
+    /**
+     * 默认缓冲区大小
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    // 最小缓冲区大小，要能放下任意编码的一个完整字符
+    private static final int MIN_BUFFER_SIZE = 16;
+    // 最小的缓冲区大小档位，2 的幂
+    private static final int MIN_POOLED_SHIFT = 12;
+    // 最大的缓冲区大小档位，更大的缓冲区不放回池中
+    private static final int MAX_POOLED_SHIFT = 20;
+    // 每个档位最多缓存的缓冲区数
+    private static final int POOL_LIMIT = 16;
+    // 池中缓冲区的总大小上限，单位：字节
+    private static final long POOL_MAX_BYTES = 16L * 1024 * 1024;
+    // 按大小档位缓存的直接缓冲区，下标为档位减 MIN_POOLED_SHIFT
+    private static final BlockingQueue<ByteBuffer>[] POOL = newPool();
+    // 池中缓冲区的总大小
+    private static final AtomicLong POOLED_BYTES = new AtomicLong();
+
+    // 文件通道
+    private final FileChannel channel;
+    // 读缓冲区（来自缓冲区池）
+    private final ByteBuffer bytes;
+    // 解码器，字节模式为 null
+    private final CharsetDecoder decoder;
+    // 解码结果，整个读取过程复用
+    private final CharBuffer chars;
+    // 下一次读取的位置和读取范围的结束位置
+    private long position;
+    private final long end;
+    // 文件已读完
+    private boolean eof;
+    // 解码器已刷新，字符已全部交出
+    private boolean finished;
+    // 已关闭
+    private boolean closed;
+
+    /**
+     * 读取整个文件。
+     *
+     * @param file       文件
+     * @param charset    编码，为 null 时只能用 {@link #nextBytes()} 读取字节
+     * @param bufferSize 缓冲区大小，单位为字节
+     * @throws IOException 打开文件失败
+     */
+    public ChunkReader(Path file, Charset charset, int bufferSize) throws IOException {
+        this(file, charset, 0, Long.MAX_VALUE, bufferSize);
+    }
+
+    /**
+     * 读取文件的一段。
+     *
+     * @param file       文件
+     * @param charset    编码，为 null 时只能用 {@link #nextBytes()} 读取字节
+     * @param position   起始位置
+     * @param length     最多读取的字节数
+     * @param bufferSize 缓冲区大小，单位为字节
+     * @throws IOException 打开文件失败
+     */
+    public ChunkReader(Path file, Charset charset, long position, long length, int bufferSize) throws IOException {
+        if (position < 0 || length < 0) {
+            throw new IllegalArgumentException("位置和长度不能为负数");
+        }
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.bytes = acquire(Math.max(MIN_BUFFER_SIZE, bufferSize));
+        this.position = position;
+        this.end = Long.MAX_VALUE - position < length ? Long.MAX_VALUE : position + length;
+        if (charset == null) {
+            this.decoder = null;
+            this.chars = null;
+        } else {
+            // 与 new String(bytes, charset) 一致，不能解码的字节替换为替换字符
+            this.decoder = charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            this.chars = CharBuffer.allocate((int) Math.ceil(bytes.capacity() * (double) decoder.maxCharsPerByte()) + 1);
+        }
+    }
+
+    /**
+     * 读取下一块字节。
+     *
+     * @return 读到的字节（position 为 0，limit 为长度），在下一次调用前有效；已读完返回 null
+     * @throws IOException 读取失败
+     */
+    public ByteBuffer nextBytes() throws IOException {
+        if (decoder != null) {
+            throw new IllegalStateException("字符模式请使用 nextChars()");
+        }
+        bytes.clear();
+        while (!eof && bytes.hasRemaining()) {
+            if (fill() <= 0) {
+                break;
+            }
+        }
+        bytes.flip();
+        return bytes.hasRemaining() ? bytes : null;
+    }
+
+    /**
+     * 读取下一块字符，块边界上不完整的字符留到下一块。
+     *
+     * @return 解码出的字符（position 为 0，limit 为长度），在下一次调用前有效；已读完返回 null
+     * @throws IOException 读取失败
+     */
+    public CharBuffer nextChars() throws IOException {
+        if (decoder == null) {
+            throw new IllegalStateException("字节模式请使用 nextBytes()");
+        }
+        chars.clear();
+        while (chars.position() == 0 && !finished) {
+            if (!eof) {
+                fill();
+            }
+            // bytes 在两次调用之间处于写模式，里面是上一次没能解码的剩余字节
+            bytes.flip();
+            CoderResult result = decoder.decode(bytes, chars, eof);
+            bytes.compact();
+            if (eof && result.isUnderflow() && decoder.flush(chars).isUnderflow()) {
+                finished = true;
+            }
+        }
+        chars.flip();
+        return chars.hasRemaining() ? chars : null;
+    }
+
+    /**
+     * 从文件读取数据追加到读缓冲区，不超过读取范围。
+     *
+     * @return 读到的字节数，已读完返回 -1
+     * @throws IOException 读取失败
+     */
+    private int fill() throws IOException {
+        long remaining = end - position;
+        if (remaining <= 0) {
+            eof = true;
+            return -1;
+        }
+        int limit = bytes.limit();
+        if (remaining < bytes.remaining()) {
+            bytes.limit(bytes.position() + (int) remaining);
+        }
+        int n = channel.read(bytes, position);
+        bytes.limit(limit);
+        if (n < 0) {
+            eof = true;
+            return -1;
+        }
+        position += n;
+        return n;
+    }
+
+    /**
+     * 下一次从文件读取的位置
+     *
+     * @return 文件位置
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * 关闭文件并归还缓冲区
+     *
+     * @throws IOException 关闭失败
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        release(bytes);
+        channel.close();
+    }
+
+    /**
+     * 创建各档位的缓冲区队列。
+     *
+     * @return 队列数组
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static BlockingQueue<ByteBuffer>[] newPool() {
+        BlockingQueue<ByteBuffer>[] pool = new BlockingQueue[MAX_POOLED_SHIFT - MIN_POOLED_SHIFT + 1];
+        for (int i = 0; i < pool.length; i++) {
+            pool[i] = new ArrayBlockingQueue<>(POOL_LIMIT);
+        }
+        return pool;
+    }
+
+    /**
+     * 大小所在的档位：不小于该大小的最小的 2 的幂的指数，至少为 MIN_POOLED_SHIFT。
+     *
+     * @param size 大小
+     * @return 档位
+     */
+    private static int shiftOf(int size) {
+        return Math.max(MIN_POOLED_SHIFT, 32 - Integer.numberOfLeadingZeros(size - 1));
+    }
+
+    /**
+     * 从缓冲区池取一个直接缓冲区，大小向上取整到档位，没有时新建；超过最大档位时按原大小新建。
+     *
+     * @param size 至少需要的大小
+     * @return 已清空的缓冲区
+     */
+    private static ByteBuffer acquire(int size) {
+        int shift = shiftOf(size);
+        if (shift > MAX_POOLED_SHIFT) {
+            // 不放回池中，不需要取整
+            return ByteBuffer.allocateDirect(size);
+        }
+        ByteBuffer buffer = POOL[shift - MIN_POOLED_SHIFT].poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(1 << shift);
+        }
+        POOLED_BYTES.addAndGet(-buffer.capacity());
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * 归还缓冲区，超过最大档位、该档位已满或池的总大小超过上限时直接丢弃。
+     *
+     * @param buffer 缓冲区
+     */
+    private static void release(ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        int shift = shiftOf(capacity);
+        if (shift > MAX_POOLED_SHIFT || POOLED_BYTES.addAndGet(capacity) > POOL_MAX_BYTES) {
+            if (shift <= MAX_POOLED_SHIFT) {
+                POOLED_BYTES.addAndGet(-capacity);
+            }
+            return;
+        }
+        if (!POOL[shift - MIN_POOLED_SHIFT].offer(buffer)) {
+            POOLED_BYTES.addAndGet(-capacity);
+        }
+    }
+
+    /**
+     * 以字符块读取整个文件。
+     *
+     * @param file       文件
+     * @param charset    编码
+     * @param bufferSize 缓冲区大小，单位为字节
+     * @param handler    每块回调一次，参数在回调返回后失效
+     * @throws IOException 读取失败或回调抛出异常
+     */
+    public static void readChars(Path file, Charset charset, int bufferSize, Handler<CharBuffer> handler) throws IOException {
+        try (ChunkReader reader = new ChunkReader(file, charset, bufferSize)) {
+            CharBuffer chunk;
+            while ((chunk = reader.nextChars()) != null) {
+                handler.onChunk(chunk);
+            }
+        }
+    }
+
+    /**
+     * 以字节块读取文件的一段。
+     *
+     * @param file       文件
+     * @param position   起始位置
+     * @param length     最多读取的字节数
+     * @param bufferSize 缓冲区大小，单位为字节
+     * @param handler    每块回调一次，参数在回调返回后失效
+     * @throws IOException 读取失败或回调抛出异常
+     */
+    public static void readBytes(Path file, long position, long length, int bufferSize,
+                                 Handler<ByteBuffer> handler) throws IOException {
+        try (ChunkReader reader = new ChunkReader(file, null, position, length, bufferSize)) {
+            ByteBuffer chunk;
+            while ((chunk = reader.nextBytes()) != null) {
+                handler.onChunk(chunk);
+            }
+        }
+    }
+
+    /**
+     * 分块回调
+     *
+     * @param <T> 块的类型，{@link CharBuffer} 或 {@link ByteBuffer}
+     */
+    @FunctionalInterface
+    public interface Handler<T> {
+        /**
+         * 读到一块数据时调用
+         *
+         * @param chunk 数据视图，回调返回后失效
+         * @throws IOException 处理失败
+         */
+        void onChunk(T chunk) throws IOException;
+    }
+}
@@ -0,0 +1,623 @@
+package org.mmc.util.file;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * 按内容分块去重存储大文件。
+ * <p>
+ * 文件用 Gear 滚动哈希按内容切分成 {@link #MIN_CHUNK} 到 {@link #MAX_CHUNK} 字节的块（平均约 78 KB），
+ * 每个块以 SHA-256 命名存放在 {@code chunks/} 下，相同的块只存一份；{@code manifests/} 下的清单记录文件由哪些块组成。
+ * 切分点只取决于附近的内容，文件中间插入或修改一段时只有附近的块变化，近似的文件和再次存入的文件只需写入新的块。
+ * 存入和还原都边读边写，不会把整个文件放进内存；读取时逐块校验 SHA-256，块损坏时抛出异常。
+ * 块和清单都先写临时文件、刷盘后原子改名；清单写入前先把本次新写的块及其所在目录刷盘，断电后清单引用的块一定完整。
+ * 同名的块已存在时只核对长度，长度不符（如旧版本断电留下的残块）时重新写入。
+ * 不同文件可以在多个线程中同时存入；{@link #gc()} 不能与存入同时进行。
+ */
+public final class ChunkStore {
+    /**
+     * 最小块大小
+     */
+    public static final int MIN_CHUNK = 16 * 1024;
+    /**
+     * 最大块大小
+     */
+    public static final int MAX_CHUNK = 256 * 1024;
+    // 切分点条件：哈希高 16 位全为 0，在最小块之后平均每 64 KB 出现一次；加上最小块并受最大块截断，平均块大小约 78 KB
+    private static final long MASK = 0xFFFFL << 48;
+    // Gear 哈希只依赖最近 64 个字节，最小块之前只需从这里开始计算
+    private static final int WINDOW = 64;
+    // 每次读取的字节数
+    private static final int BLOCK = 1024 * 1024;
+    // 清单后缀
+    private static final String MANIFEST_SUFFIX = ".json";
+    // 每个字节对应的随机数，种子固定，保证同样的内容总是切在同样的位置
+    private static final long[] GEAR = new long[256];
+    // Gson 对象，用于清单的序列化和反序列化
+    private static final Gson gson = new Gson();
+
+    static {
+        Random random = new Random(0x6D6D63L);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    // 块目录和清单目录
+    private final Path chunks;
+    private final Path manifests;
+
+    /**
+     * 打开存储目录，不存在时创建。
+     *
+     * @param root 存储根目录
+     * @throws IOException 创建目录失败
+     */
+    public ChunkStore(Path root) throws IOException {
+        this.chunks = root.resolve("chunks");
+        this.manifests = root.resolve("manifests");
+        Files.createDirectories(chunks);
+        Files.createDirectories(manifests);
+    }
+
+    /**
+     * 存入文件，已有同名清单时覆盖（旧清单独有的块由 {@link #gc()} 清理）。
+     *
+     * @param source 源文件
+     * @param name   清单名，可以包含 / 分隔的子目录
+     * @return 统计结果
+     * @throws IOException 读写失败
+     */
+    public Summary put(Path source, String name) throws IOException {
+        long begin = System.nanoTime();
+        Path manifestFile = manifestFile(name);
+        Summary summary = new Summary();
+        Manifest manifest = new Manifest();
+        MessageDigest digest = sha256();
+        // 本次写入了块的目录，写清单前统一刷盘
+        Set<Path> dirty = new HashSet<>();
+        byte[] chunk = new byte[MAX_CHUNK];
+        byte[] buffer = new byte[BLOCK];
+        int length = 0;
+        long hash = 0;
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            manifest.lastModified = Files.getLastModifiedTime(source).toMillis();
+            ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+            int n;
+            while ((n = channel.read(wrapped)) >= 0) {
+                for (int i = 0; i < n; i++) {
+                    byte b = buffer[i];
+                    chunk[length++] = b;
+                    if (length <= MIN_CHUNK - WINDOW) {
+                        continue;
+                    }
+                    hash = (hash << 1) + GEAR[b & 0xFF];
+                    if ((length >= MIN_CHUNK && (hash & MASK) == 0) || length == MAX_CHUNK) {
+                        storeChunk(chunk, length, digest, manifest, summary, dirty);
+                        length = 0;
+                        hash = 0;
+                    }
+                }
+                wrapped.clear();
+            }
+        }
+        if (length > 0) {
+            storeChunk(chunk, length, digest, manifest, summary, dirty);
+        }
+        for (Path dir : dirty) {
+            forceDirectory(dir);
+        }
+        writeManifest(manifestFile, manifest);
+        summary.elapsedNanos = System.nanoTime() - begin;
+        return summary;
+    }
+
+    /**
+     * 计算一个块的摘要并记入清单，块不存在或长度不符时写入：写临时文件、刷盘后原子改名。
+     *
+     * @param chunk    块内容
+     * @param length   块长度
+     * @param digest   摘要
+     * @param manifest 清单
+     * @param summary  统计结果
+     * @param dirty    写入了块的目录，由调用方在写清单前刷盘
+     * @throws IOException 写入失败
+     */
+    private void storeChunk(byte[] chunk, int length, MessageDigest digest, Manifest manifest,
+                            Summary summary, Set<Path> dirty) throws IOException {
+        digest.update(chunk, 0, length);
+        String hash = FileHasher.toHex(digest.digest());
+        manifest.hashes.add(hash);
+        manifest.lengths.add(length);
+        manifest.size += length;
+        summary.chunks.increment();
+        summary.bytes.add(length);
+        Path target = chunkFile(hash);
+        try {
+            if (Files.size(target) == length) {
+                return;
+            }
+        } catch (NoSuchFileException e) {
+            // 块不存在，写入
+        }
+        Path parent = target.getParent();
+        if (!Files.isDirectory(parent)) {
+            Files.createDirectories(parent);
+            dirty.add(chunks);
+        }
+        Path temp = Files.createTempFile(parent, hash, ".tmp");
+        try {
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer data = ByteBuffer.wrap(chunk, 0, length);
+                while (data.hasRemaining()) {
+                    out.write(data);
+                }
+                out.force(true);
+            }
+            // 其他线程同时写入同一个块时内容相同，直接替换
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            dirty.add(parent);
+            summary.newChunks.increment();
+            summary.newBytes.add(length);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * 把目录刷盘，使其中新建、改名的文件在断电后仍然存在；不支持打开目录的平台（如 Windows）上忽略。
+     *
+     * @param dir 目录
+     */
+    private static void forceDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // 该平台不支持对目录刷盘，改名本身的原子性不受影响
+        }
+    }
+
+    /**
+     * 打开存入的文件，边读边从块中还原，用完需关闭。
+     *
+     * @param name 清单名
+     * @return 输入流
+     * @throws IOException 清单不存在或损坏
+     */
+    public InputStream open(String name) throws IOException {
+        return new ChunkInputStream(readManifest(name));
+    }
+
+    /**
+     * 把存入的文件还原到目标路径：写临时文件，校验全部块后原子替换目标文件，并恢复修改时间。
+     *
+     * @param name   清单名
+     * @param target 目标文件
+     * @throws IOException 读写失败或块损坏
+     */
+    public void restore(String name, Path target) throws IOException {
+        Manifest manifest = readManifest(name);
+        if (target.getParent() != null) {
+            Files.createDirectories(target.getParent());
+        }
+        Path temp = target.resolveSibling(target.getFileName() + ".restoring");
+        try {
+            try (InputStream in = new ChunkInputStream(manifest);
+                 FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                         StandardOpenOption.WRITE)) {
+                byte[] buffer = new byte[BLOCK];
+                int n;
+                while ((n = in.read(buffer)) >= 0) {
+                    ByteBuffer data = ByteBuffer.wrap(buffer, 0, n);
+                    while (data.hasRemaining()) {
+                        out.write(data);
+                    }
+                }
+                out.force(true);
+            }
+            Files.setLastModifiedTime(temp, FileTime.fromMillis(manifest.lastModified));
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * 读取清单
+     *
+     * @param name 清单名
+     * @return 清单
+     * @throws IOException 清单不存在或损坏
+     */
+    public Manifest readManifest(String name) throws IOException {
+        return readManifestFile(manifestFile(name));
+    }
+
+    /**
+     * 读取清单文件
+     *
+     * @param file 清单文件
+     * @return 清单
+     * @throws IOException 清单不存在或损坏
+     */
+    private static Manifest readManifestFile(Path file) throws IOException {
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            Manifest manifest = gson.fromJson(reader, Manifest.class);
+            if (manifest == null || manifest.hashes == null || manifest.lengths == null
+                    || manifest.hashes.size() != manifest.lengths.size()) {
+                throw new IOException("清单损坏: " + file);
+            }
+            return manifest;
+        } catch (JsonParseException e) {
+            throw new IOException("清单损坏: " + file, e);
+        }
+    }
+
+    /**
+     * 删除清单（块由 {@link #gc()} 清理）
+     *
+     * @param name 清单名
+     * @return 清单存在并被删除返回 true
+     * @throws IOException 删除失败
+     */
+    public boolean delete(String name) throws IOException {
+        return Files.deleteIfExists(manifestFile(name));
+    }
+
+    /**
+     * 删除没有被任何清单引用的块，不能与存入同时进行。
+     *
+     * @return 删除的块数
+     * @throws IOException 读取清单失败
+     */
+    public long gc() throws IOException {
+        Set<String> referenced = new HashSet<>();
+        try (Stream<Path> files = FileWalker.files(manifests, null, false)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (file.getFileName().toString().endsWith(MANIFEST_SUFFIX)) {
+                    referenced.addAll(readManifestFile(file).hashes);
+                }
+            }
+        }
+        long removed = 0;
+        try (Stream<Path> files = FileWalker.files(chunks, null, false)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (!referenced.contains(file.getFileName().toString())) {
+                    Files.deleteIfExists(file);
+                    removed++;
+                }
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * 清单文件路径，清单名不能跳出清单目录
+     *
+     * @param name 清单名
+     * @return 清单文件
+     */
+    private Path manifestFile(String name) {
+        Path file = manifests.resolve(name + MANIFEST_SUFFIX).normalize();
+        if (!file.startsWith(manifests) || file.equals(manifests)) {
+            throw new IllegalArgumentException("清单名无效: " + name);
+        }
+        return file;
+    }
+
+    /**
+     * 块文件路径，按摘要前两位分目录
+     *
+     * @param hash 十六进制摘要
+     * @return 块文件
+     */
+    private Path chunkFile(String hash) {
+        return chunks.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    /**
+     * 写清单：写临时文件，刷盘后原子替换，再把清单目录刷盘
+     *
+     * @param file     清单文件
+     * @param manifest 清单
+     * @throws IOException 写入失败
+     */
+    private static void writeManifest(Path file, Manifest manifest) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                gson.toJson(manifest, writer);
+            }
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            forceDirectory(file.getParent());
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * 创建 SHA-256 摘要
+     *
+     * @return 摘要
+     */
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // 所有 JRE 都必须支持 SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 按清单依次读取块的输入流，每个块读完时校验摘要
+     */
+    private final class ChunkInputStream extends InputStream {
+        // 清单
+        private final Manifest manifest;
+        // 摘要
+        private final MessageDigest digest = sha256();
+        // 下一个块的序号
+        private int next;
+        // 当前块
+        private InputStream current;
+        // 当前块剩余的字节数
+        private long remaining;
+        // 已关闭
+        private boolean closed;
+
+        /**
+         * 构造函数
+         *
+         * @param manifest 清单
+         */
+        ChunkInputStream(Manifest manifest) {
+            this.manifest = manifest;
+        }
+
+        /**
+         * 读取一个字节
+         *
+         * @return 字节，结束返回 -1
+         * @throws IOException 读取失败或块损坏
+         */
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        /**
+         * 读取字节，不跨块
+         *
+         * @param b   目标数组
+         * @param off 起始位置
+         * @param len 最多读取的字节数
+         * @return 读到的字节数，结束返回 -1
+         * @throws IOException 读取失败或块损坏
+         */
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("流已关闭");
+            }
+            if (len == 0) {
+                return 0;
+            }
+            while (current == null || remaining == 0) {
+                if (current != null) {
+                    finishChunk();
+                }
+                if (next >= manifest.hashes.size()) {
+                    return -1;
+                }
+                openChunk();
+            }
+            int n = current.read(b, off, (int) Math.min(len, remaining));
+            if (n < 0) {
+                throw new IOException("块被截短: " + manifest.hashes.get(next - 1));
+            }
+            digest.update(b, off, n);
+            remaining -= n;
+            return n;
+        }
+
+        /**
+         * 打开下一个块
+         *
+         * @throws IOException 块不存在
+         */
+        private void openChunk() throws IOException {
+            String hash = manifest.hashes.get(next);
+            try {
+                current = Files.newInputStream(chunkFile(hash));
+            } catch (NoSuchFileException e) {
+                throw new IOException("块不存在: " + hash, e);
+            }
+            remaining = manifest.lengths.get(next);
+            next++;
+        }
+
+        /**
+         * 关闭当前块并校验摘要
+         *
+         * @throws IOException 块损坏
+         */
+        private void finishChunk() throws IOException {
+            current.close();
+            current = null;
+            String hash = manifest.hashes.get(next - 1);
+            if (!hash.equals(FileHasher.toHex(digest.digest()))) {
+                throw new IOException("块已损坏: " + hash);
+            }
+        }
+
+        /**
+         * 关闭流
+         *
+         * @throws IOException 关闭失败
+         */
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            if (current != null) {
+                current.close();
+                current = null;
+            }
+        }
+    }
+
+    /**
+     * 清单：文件由哪些块组成
+     */
+    public static final class Manifest {
+        // 文件大小
+        long size;
+        // 存入时文件的修改时间，单位：毫秒
+        long lastModified;
+        // 各块的十六进制 SHA-256
+        List<String> hashes = new ArrayList<>();
+        // 各块的长度
+        List<Integer> lengths = new ArrayList<>();
+
+        /**
+         * 文件大小
+         *
+         * @return 字节数
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * 存入时文件的修改时间
+         *
+         * @return 毫秒
+         */
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * 块数
+         *
+         * @return 块数
+         */
+        public int getChunkCount() {
+            return hashes.size();
+        }
+    }
+
+    /**
+     * 存入一个文件的统计结果
+     */
+    public static class Summary {
+        // 块数
+        final LongAdder chunks = new LongAdder();
+        // 新写入的块数
+        final LongAdder newChunks = new LongAdder();
+        // 文件字节数
+        final LongAdder bytes = new LongAdder();
+        // 新写入的字节数
+        final LongAdder newBytes = new LongAdder();
+        // 总耗时，单位：纳秒
+        volatile long elapsedNanos;
+
+        /**
+         * 块数
+         *
+         * @return 块数
+         */
+        public long getChunks() {
+            return chunks.sum();
+        }
+
+        /**
+         * 新写入的块数，其余的块已存在
+         *
+         * @return 块数
+         */
+        public long getNewChunks() {
+            return newChunks.sum();
+        }
+
+        /**
+         * 文件字节数
+         *
+         * @return 字节数
+         */
+        public long getBytes() {
+            return bytes.sum();
+        }
+
+        /**
+         * 新写入的字节数
+         *
+         * @return 字节数
+         */
+        public long getNewBytes() {
+            return newBytes.sum();
+        }
+
+        /**
+         * 总耗时，单位：毫秒
+         *
+         * @return 毫秒
+         */
+        public long getElapsedMillis() {
+            return elapsedNanos / 1_000_000;
+        }
+
+        /**
+         * 统计摘要
+         *
+         * @return 摘要
+         */
+        @Override
+        public String toString() {
+            return String.format("%.2f MB，%d 块，新写入 %d 块 %.2f MB，耗时 %d ms",
+                    getBytes() / 1024.0 / 1024.0, getChunks(), getNewChunks(), getNewBytes() / 1024.0 / 1024.0,
+                    getElapsedMillis());
+        }
+    }
+}
@@ -0,0 +1,415 @@
+package org.mmc.util.file;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 文件摘要缓存，可选持久化。
+ * <p>
+ * 以文件的绝对路径为键，记录计算时的大小、修改时间和各算法的摘要。再次查询时只读文件属性，大小和修改时间都没变
+ * 且已包含所需算法就直接返回，不再读文件；变化了或缺少算法时用 {@link FileHasher} 单次读取重新计算，
+ * 大小和修改时间没变时保留之前已算过的其他算法。最多保留指定条数的记录，超出时淘汰最久未使用的记录。
+ * <p>
+ * 只有用 {@link #DigestCache(Path, int)} 指定了索引文件才会持久化。索引是每行一条记录的 JSON 日志，
+ * 有新结果时在 {@link #SAVE_DELAY} 毫秒后由后台线程只追加新记录并刷盘；日志行数超过有效记录数的两倍时
+ * 重写成只含有效记录的新文件（临时文件刷盘后原子改名）。用完调用 {@link #close()} 写入尚未保存的结果。
+ */
+public class DigestCache implements Closeable {
+
+    /**
+     * 有新结果后延迟多久写索引文件，期间的其他结果合并到同一次写入，单位：毫秒
+     */
+    public static final long SAVE_DELAY = 1000;
+    /**
+     * 默认最多保留的记录数
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 100_000;
+    // 日志至少达到该行数才考虑重写
+    private static final int MIN_COMPACT_LINES = 1024;
+    // Gson 对象，用于索引的序列化和反序列化
+    private static final Gson gson = new Gson();
+    // 所有实例共享的后台写文件线程，守护线程
+    private static final ScheduledExecutorService WRITER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "mmc-digest-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 索引文件，不持久化时为 null
+    private final Path indexFile;
+    // 文件绝对路径到缓存记录的映射，按访问顺序排列，超出上限时淘汰最久未使用的记录，受 this 保护
+    private final LinkedHashMap<String, Record> records;
+    // 等待追加到索引文件的行，受 this 保护
+    private List<String> pending = new ArrayList<>();
+    // 是否已安排写入，受 this 保护
+    private boolean saveScheduled;
+    // 是否已关闭，受 this 保护
+    private boolean closed;
+    // 文件写锁，保证追加和重写串行执行
+    private final Object ioLock = new Object();
+    // 索引文件当前的行数，只在持有 ioLock 时访问
+    private long lines;
+
+    /**
+     * 构造只在内存中的缓存，进程退出后失效。
+     *
+     * @param maxEntries 最多保留的记录数
+     */
+    public DigestCache(int maxEntries) {
+        this(null, maxEntries);
+    }
+
+    /**
+     * 构造持久化到索引文件的缓存，读取已有的索引。
+     *
+     * @param indexFile  索引文件，为 null 时不持久化
+     * @param maxEntries 最多保留的记录数
+     */
+    public DigestCache(Path indexFile, int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be > 0");
+        }
+        this.indexFile = indexFile == null ? null : indexFile.toAbsolutePath().normalize();
+        this.records = new LinkedHashMap<String, Record>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            /**
+             * 超出上限时淘汰最久未使用的记录
+             *
+             * @param eldest 最久未使用的记录
+             * @return 是否淘汰
+             */
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Record> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        if (this.indexFile != null) {
+            load();
+        }
+    }
+
+    /**
+     * 获取文件的摘要，文件未变化时直接使用缓存。
+     *
+     * @param file       文件
+     * @param algorithms 算法，如 {@link FileHasher#MD5}
+     * @return 摘要结果，至少包含所需的算法
+     * @throws IOException 读文件失败或算法不支持
+     */
+    public FileHasher.FileDigest get(Path file, String... algorithms) throws IOException {
+        String key = file.toAbsolutePath().normalize().toString();
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        long size = attrs.size();
+        long lastModified = attrs.lastModifiedTime().toMillis();
+        Record record;
+        synchronized (this) {
+            record = records.get(key);
+        }
+        boolean unchanged = record != null && record.size == size && record.lastModified == lastModified;
+        if (unchanged && record.digests.keySet().containsAll(Arrays.asList(algorithms))) {
+            return record.toDigest();
+        }
+        FileHasher.FileDigest digest = FileHasher.hash(file, algorithms);
+        Map<String, String> merged = new LinkedHashMap<>();
+        if (unchanged && record.size == digest.getSize() && record.lastModified == digest.getLastModified()) {
+            // 文件没变，保留之前算过的其他算法
+            merged.putAll(record.digests);
+        }
+        merged.putAll(digest.getDigests());
+        Record updated = new Record(key, digest.getSize(), digest.getLastModified(), merged);
+        synchronized (this) {
+            records.put(key, updated);
+            append(updated);
+        }
+        return updated.toDigest();
+    }
+
+    /**
+     * 并行获取多个文件的摘要，文件未变化时直接使用缓存，读取失败的文件打印异常后跳过。
+     *
+     * @param files      文件
+     * @param algorithms 算法
+     * @return 文件到摘要结果的映射，顺序与输入相同
+     */
+    public Map<Path, FileHasher.FileDigest> getAll(Collection<Path> files, String... algorithms) {
+        List<Path> list = new ArrayList<>(files);
+        FileHasher.FileDigest[] digests = list.parallelStream().map(file -> {
+            try {
+                return get(file, algorithms);
+            } catch (IOException | UncheckedIOException e) {
+                // 打印异常信息
+                System.out.println("计算摘要失败: " + file);
+                e.printStackTrace();
+                return null;
+            }
+        }).toArray(FileHasher.FileDigest[]::new);
+        Map<Path, FileHasher.FileDigest> result = new LinkedHashMap<>();
+        for (int i = 0; i < digests.length; i++) {
+            if (digests[i] != null) {
+                result.put(list.get(i), digests[i]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 删除已不存在的文件的记录
+     *
+     * @return 删除的记录数
+     */
+    public int prune() {
+        List<String> keys;
+        synchronized (this) {
+            keys = new ArrayList<>(records.keySet());
+        }
+        int removed = 0;
+        for (String key : keys) {
+            if (!Files.exists(Paths.get(key), LinkOption.NOFOLLOW_LINKS)) {
+                synchronized (this) {
+                    if (records.remove(key) != null) {
+                        append(new Record(key, 0, 0, null));
+                        removed++;
+                    }
+                }
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * 缓存的记录数
+     *
+     * @return 记录数
+     */
+    public synchronized int size() {
+        return records.size();
+    }
+
+    /**
+     * 立即把尚未保存的结果追加到索引文件，日志过长时重写，写入失败时打印异常，下次保存时重试
+     */
+    public void save() {
+        if (indexFile == null) {
+            return;
+        }
+        synchronized (ioLock) {
+            List<String> batch;
+            synchronized (this) {
+                batch = pending;
+                pending = new ArrayList<>();
+            }
+            try {
+                if (!batch.isEmpty()) {
+                    appendLines(batch);
+                }
+                int live;
+                synchronized (this) {
+                    live = records.size();
+                }
+                if (lines > Math.max(MIN_COMPACT_LINES, 2L * live)) {
+                    compact();
+                }
+            } catch (IOException e) {
+                // 打印异常信息，这批记录放回待写队列最前面
+                e.printStackTrace();
+                synchronized (this) {
+                    batch.addAll(pending);
+                    pending = batch;
+                }
+            }
+        }
+    }
+
+    /**
+     * 写入尚未保存的结果，之后不再安排后台写入。重复调用无效果。
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        save();
+    }
+
+    /**
+     * 记录一条修改，并在 {@link #SAVE_DELAY} 毫秒后写入索引文件。调用方必须持有 this 锁。
+     *
+     * @param record 记录，digests 为 null 表示删除
+     */
+    private void append(Record record) {
+        if (indexFile == null) {
+            return;
+        }
+        pending.add(gson.toJson(record));
+        if (!saveScheduled && !closed) {
+            saveScheduled = true;
+            WRITER.schedule(() -> {
+                synchronized (this) {
+                    saveScheduled = false;
+                }
+                save();
+            }, SAVE_DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 把若干行追加到索引文件并刷盘。调用方必须持有 ioLock。
+     *
+     * @param batch 要追加的行
+     * @throws IOException 写文件失败
+     */
+    private void appendLines(List<String> batch) throws IOException {
+        if (indexFile.getParent() != null) {
+            Files.createDirectories(indexFile.getParent());
+        }
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            long start = channel.size();
+            try {
+                Writer writer = Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), -1);
+                for (String line : batch) {
+                    writer.write(line);
+                    writer.write('\n');
+                }
+                writer.flush();
+                channel.force(false);
+            } catch (IOException e) {
+                // 截掉写了一半的内容，避免加载时在半行处停止
+                channel.truncate(start);
+                throw e;
+            }
+        }
+        lines += batch.size();
+    }
+
+    /**
+     * 把有效记录重写成新的索引文件：写临时文件并刷盘，再原子替换。调用方必须持有 ioLock。
+     *
+     * @throws IOException 写文件失败
+     */
+    private void compact() throws IOException {
+        List<Record> copy;
+        synchronized (this) {
+            // 待写队列中的记录已在内存中，重写后不再需要追加
+            copy = new ArrayList<>(records.values());
+            pending = new ArrayList<>();
+        }
+        Path temp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Writer writer = Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), -1);
+            for (Record record : copy) {
+                writer.write(gson.toJson(record));
+                writer.write('\n');
+            }
+            writer.flush();
+            channel.force(true);
+        }
+        try {
+            Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+        lines = copy.size();
+    }
+
+    /**
+     * 按顺序重放索引文件中的记录，后面的记录覆盖前面的；遇到不完整的行（写入中途崩溃）时停止，文件不存在时从空缓存开始
+     */
+    private void load() {
+        if (!Files.isRegularFile(indexFile)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Record record;
+                try {
+                    record = gson.fromJson(line, Record.class);
+                } catch (JsonParseException e) {
+                    break;
+                }
+                if (record == null || record.path == null) {
+                    break;
+                }
+                lines++;
+                if (record.digests == null) {
+                    records.remove(record.path);
+                } else {
+                    records.put(record.path, record);
+                }
+            }
+        } catch (IOException e) {
+            // 打印异常信息
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 索引中的一条记录，每条序列化为一行 JSON。
+     */
+    private static final class Record {
+        // 文件绝对路径
+        final String path;
+        // 文件大小
+        final long size;
+        // 文件修改时间，单位：毫秒
+        final long lastModified;
+        // 算法名到十六进制摘要的映射，为 null 表示删除该路径的记录
+        final Map<String, String> digests;
+
+        /**
+         * 构造函数。
+         *
+         * @param path         文件绝对路径
+         * @param size         文件大小
+         * @param lastModified 文件修改时间
+         * @param digests      算法名到十六进制摘要的映射
+         */
+        Record(String path, long size, long lastModified, Map<String, String> digests) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.digests = digests;
+        }
+
+        /**
+         * 转为摘要结果
+         *
+         * @return 摘要结果
+         */
+        FileHasher.FileDigest toDigest() {
+            return new FileHasher.FileDigest(size, lastModified, digests);
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package org.mmc.util.file;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * 批量转换目录下文本文件的编码。
+ * <p>
+ * 遍历目录，把文件交给固定大小的线程池：每个文件先按采样统计判断编码（{@link EncodingDetector#detectText}），
+ * 二进制文件和无法识别编码的文件保留原样，已经是目标编码（或纯 ASCII 且目标编码兼容 ASCII）的文件跳过，
+ * 其余用 {@link Transcoder} 以严格模式转码到同目录的临时文件，刷到磁盘并复制原文件的权限后原子替换原文件。
+ * 采样只覆盖文件开头，判断错误或后面有非法字节时严格模式会报错，此时删除临时文件、原文件保持不变，计入无法识别编码，
+ * 不会把无法转换的字节替换成 '?' 后覆盖原文件。
+ * 结束后返回文件数、字节数和吞吐量统计。
+ */
+public final class DirectoryTranscoder {
+
+    /**
+     * 工具类不允许实例化
+     */
+    private DirectoryTranscoder() {
+    }
+
+    /**
+     * 原地转换目录下所有符合条件的文件，使用与 CPU 核数相同的线程数。
+     *
+     * @param root          根目录
+     * @param targetCharset 目标编码
+     * @param filter        文件过滤条件，null 表示所有文件
+     * @return 统计结果
+     */
+    public static Summary transcodeTree(Path root, Charset targetCharset, Predicate<Path> filter) {
+        return transcodeTree(root, null, targetCharset, filter, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * 转换目录下所有符合条件的文件。
+     *
+     * @param root          根目录
+     * @param outputRoot    输出根目录，按相同的相对路径输出，跳过的文件原样复制；null 表示原地替换
+     * @param targetCharset 目标编码
+     * @param filter        文件过滤条件，null 表示所有文件
+     * @param threads       线程数
+     * @return 统计结果
+     */
+    public static Summary transcodeTree(Path root, Path outputRoot, Charset targetCharset,
+                                        Predicate<Path> filter, int threads) {
+        Summary summary = new Summary();
+        long begin = System.nanoTime();
+        AtomicInteger threadIndex = new AtomicInteger();
+        // 队列有界，排满时由遍历线程自己执行，遍历不会堆积大量待处理任务
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 4), r -> {
+            Thread thread = new Thread(r, "mmc-transcode-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+        try (Stream<FileWalker.Entry> files = FileWalker.walk(root, null, false)) {
+            files.filter(entry -> entry.attributes().isRegularFile())
+                    .map(FileWalker.Entry::path)
+                    .filter(path -> filter == null || filter.test(path))
+                    .forEach(path -> pool.execute(() -> transcodeFile(root, outputRoot, path, targetCharset, summary)));
+        } finally {
+            pool.shutdown();
+            try {
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            summary.elapsedNanos = System.nanoTime() - begin;
+        }
+        return summary;
+    }
+
+    /**
+     * 转换单个文件并记录统计，失败时打印异常并计入失败数。
+     *
+     * @param root          根目录
+     * @param outputRoot    输出根目录，null 表示原地替换
+     * @param file          文件
+     * @param targetCharset 目标编码
+     * @param summary       统计结果
+     */
+    private static void transcodeFile(Path root, Path outputRoot, Path file, Charset targetCharset, Summary summary) {
+        try {
+            long size = Files.size(file);
+            summary.bytesIn.add(size);
+            Path target = outputRoot == null ? file : outputRoot.resolve(root.relativize(file));
+            if (outputRoot != null && target.getParent() != null) {
+                Files.createDirectories(target.getParent());
+            }
+            Charset detected = EncodingDetector.detectText(file);
+            if (detected == null) {
+                // 二进制文件或无法识别编码，转码会损坏内容，原样保留
+                if (outputRoot != null) {
+                    Files.copy(file, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+                }
+                summary.undetected.increment();
+                summary.bytesOut.add(size);
+                return;
+            }
+            if (isAlreadyTarget(detected, targetCharset)) {
+                if (outputRoot != null) {
+                    Files.copy(file, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+                summary.skipped.increment();
+                summary.bytesOut.add(size);
+                return;
+            }
+            Path temp = target.resolveSibling(target.getFileName() + ".transcoding");
+            try {
+                long written;
+                try {
+                    written = Transcoder.transcode(file, detected, temp, targetCharset, true);
+                } catch (CharacterCodingException e) {
+                    // 编码判断错误或含有非法字节，原样保留
+                    System.out.println("无法无损转换，保留原文件: " + file + "（按 " + detected + " 转换失败：" + e + "）");
+                    if (outputRoot != null) {
+                        Files.copy(file, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+                    }
+                    summary.undetected.increment();
+                    summary.bytesOut.add(size);
+                    return;
+                }
+                try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                    channel.force(true);
+                }
+                FileCopier.copyPermissions(file, temp);
+                try {
+                    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+                summary.converted.increment();
+                summary.bytesOut.add(written);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException | RuntimeException e) {
+            // 打印异常信息
+            System.out.println("转换失败: " + file);
+            e.printStackTrace();
+            summary.failed.increment();
+        }
+    }
+
+    /**
+     * 判断文件是否已经是目标编码。
+     *
+     * @param detected      检测到的编码
+     * @param targetCharset 目标编码
+     * @return 无需转换返回 true
+     */
+    private static boolean isAlreadyTarget(Charset detected, Charset targetCharset) {
+        if (detected.equals(targetCharset)) {
+            return true;
+        }
+        return detected.equals(StandardCharsets.US_ASCII) && ParallelLineReader.isAsciiCompatible(targetCharset);
+    }
+
+    /**
+     * 批量转换的统计结果。
+     */
+    public static class Summary {
+        // 转换的文件数
+        final LongAdder converted = new LongAdder();
+        // 跳过的文件数
+        final LongAdder skipped = new LongAdder();
+        // 二进制或无法识别编码而保留原样的文件数
+        final LongAdder undetected = new LongAdder();
+        // 失败的文件数
+        final LongAdder failed = new LongAdder();
+        // 读取的字节数
+        final LongAdder bytesIn = new LongAdder();
+        // 写出的字节数
+        final LongAdder bytesOut = new LongAdder();
+        // 总耗时，单位：纳秒
+        volatile long elapsedNanos;
+
+        /**
+         * 转换的文件数
+         *
+         * @return 文件数
+         */
+        public long getConverted() {
+            return converted.sum();
+        }
+
+        /**
+         * 已经是目标编码而跳过的文件数
+         *
+         * @return 文件数
+         */
+        public long getSkipped() {
+            return skipped.sum();
+        }
+
+        /**
+         * 二进制文件或无法识别编码、保留原样的文件数
+         *
+         * @return 文件数
+         */
+        public long getUndetected() {
+            return undetected.sum();
+        }
+
+        /**
+         * 失败的文件数
+         *
+         * @return 文件数
+         */
+        public long getFailed() {
+            return failed.sum();
+        }
+
+        /**
+         * 处理的文件总数
+         *
+         * @return 文件数
+         */
+        public long getFiles() {
+            return getConverted() + getSkipped() + getUndetected() + getFailed();
+        }
+
+        /**
+         * 读取的字节数
+         *
+         * @return 字节数
+         */
+        public long getBytesIn() {
+            return bytesIn.sum();
+        }
+
+        /**
+         * 总耗时，单位：毫秒
+         *
+         * @return 毫秒
+         */
+        public long getElapsedMillis() {
+            return elapsedNanos / 1_000_000;
+        }
+
+        /**
+         * 每秒处理的文件数
+         *
+         * @return 文件数/秒
+         */
+        public double filesPerSecond() {
+            return elapsedNanos == 0 ? 0 : getFiles() * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * 每秒读取的兆字节数
+         *
+         * @return MB/秒
+         */
+        public double mbPerSecond() {
+            return elapsedNanos == 0 ? 0 : getBytesIn() / 1024.0 / 1024.0 * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * 统计摘要
+         *
+         * @return 摘要
+         */
+        @Override
+        public String toString() {
+            return String.format("文件 %d 个（转换 %d，跳过 %d，非文本 %d，失败 %d），读取 %.2f MB，写出 %.2f MB，耗时 %d ms，%.1f 文件/秒，%.2f MB/秒",
+                    getFiles(), getConverted(), getSkipped(), getUndetected(), getFailed(),
+                    getBytesIn() / 1024.0 / 1024.0, bytesOut.sum() / 1024.0 / 1024.0,
+                    getElapsedMillis(), filesPerSecond(), mbPerSecond());
+        }
+    }
+}
@@ -0,0 +1,339 @@
+package org.mmc.util.file;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 分阶段查找重复文件。
+ * <p>
+ * 第一阶段并行遍历目录，只用遍历时得到的属性按大小分组，大小唯一的文件直接排除（不读任何内容）；
+ * 第二阶段对大小相同的文件读取开头和结尾各 {@link #EDGE} 字节计算摘要，再次分组排除；
+ * 第三阶段只对仍然相同的文件用 {@link FileHasher} 计算完整的 SHA-256；调用方传入 {@link DigestCache} 时经它计算，
+ * 未变化的文件直接复用其中的结果，不传时每次都重新计算，不留下任何记录。
+ * 不超过两个 {@link #EDGE} 的文件在第二阶段已读完全部内容，不再进入第三阶段。
+ * 各大小分组并行处理，每确认一组重复就立即回调，不必等全部完成。同一文件的硬链接只算一个。
+ */
+public final class DuplicateFinder {
+    /**
+     * 第二阶段读取的开头、结尾字节数
+     */
+    public static final int EDGE = 4 * 1024;
+
+    /**
+     * 工具类不允许实例化
+     */
+    private DuplicateFinder() {
+    }
+
+    /**
+     * 查找目录下的重复文件。
+     *
+     * @param root    根目录
+     * @param minSize 只比较不小于该大小的文件，小于 1 时按 1 处理（空文件不算重复）
+     * @param onGroup 每找到一组重复文件回调一次，参数为同一内容的文件，按路径排序；在多个线程上调用，但不会同时调用
+     * @return 统计结果
+     */
+    public static Summary find(Path root, long minSize, Consumer<List<Path>> onGroup) {
+        return find(root, minSize, null, onGroup);
+    }
+
+    /**
+     * 查找目录下的重复文件，完整摘要经调用方的摘要缓存计算。
+     *
+     * @param root    根目录
+     * @param minSize 只比较不小于该大小的文件，小于 1 时按 1 处理（空文件不算重复）
+     * @param cache   摘要缓存，null 表示直接计算
+     * @param onGroup 每找到一组重复文件回调一次，参数为同一内容的文件，按路径排序；在多个线程上调用，但不会同时调用
+     * @return 统计结果
+     */
+    public static Summary find(Path root, long minSize, DigestCache cache, Consumer<List<Path>> onGroup) {
+        long begin = System.nanoTime();
+        Summary summary = new Summary();
+        long min = Math.max(1, minSize);
+        // 第一阶段：按大小分组，同一文件的硬链接只保留一个
+        Map<Long, List<Path>> bySize = new ConcurrentHashMap<>();
+        Set<Object> seenKeys = ConcurrentHashMap.newKeySet();
+        try (Stream<FileWalker.Entry> stream = FileWalker.walk(root, null, true)) {
+            stream.filter(entry -> entry.attributes().isRegularFile())
+                    .forEach(entry -> {
+                        summary.files.increment();
+                        long size = entry.attributes().size();
+                        Object key = entry.attributes().fileKey();
+                        if (size < min || (key != null && !seenKeys.add(key))) {
+                            return;
+                        }
+                        bySize.computeIfAbsent(size, s -> Collections.synchronizedList(new ArrayList<>())).add(entry.path());
+                    });
+        }
+        List<Map.Entry<Long, List<Path>>> candidates = bySize.entrySet().stream()
+                .filter(entry -> entry.getValue().size() > 1)
+                .sorted(Map.Entry.<Long, List<Path>>comparingByKey().reversed())
+                .collect(Collectors.toList());
+        for (Map.Entry<Long, List<Path>> entry : candidates) {
+            summary.sameSize.add(entry.getValue().size());
+        }
+        Object callbackLock = new Object();
+        // 大文件优先，先报告能节省最多空间的重复组
+        candidates.parallelStream().forEach(entry -> {
+            long size = entry.getKey();
+            for (List<Path> byEdge : group(entry.getValue(), path -> edgeHash(path, size, summary))) {
+                summary.sameEdge.add(byEdge.size());
+                List<List<Path>> groups = size <= 2L * EDGE
+                        ? Collections.singletonList(byEdge)
+                        : group(byEdge, path -> fullHash(path, size, cache, summary));
+                for (List<Path> duplicates : groups) {
+                    Collections.sort(duplicates);
+                    summary.groups.increment();
+                    summary.duplicates.add(duplicates.size() - 1);
+                    summary.wastedBytes.add(size * (duplicates.size() - 1));
+                    synchronized (callbackLock) {
+                        onGroup.accept(duplicates);
+                    }
+                }
+            }
+        });
+        summary.elapsedNanos = System.nanoTime() - begin;
+        return summary;
+    }
+
+    /**
+     * 按摘要分组，只返回不少于两个文件的组；摘要为 null（读取失败）的文件排除。
+     *
+     * @param files  文件
+     * @param hasher 计算摘要
+     * @return 重复的组
+     */
+    private static List<List<Path>> group(List<Path> files, Function<Path, String> hasher) {
+        Map<String, List<Path>> byHash = new HashMap<>();
+        for (Path file : files) {
+            String hash = hasher.apply(file);
+            if (hash != null) {
+                byHash.computeIfAbsent(hash, h -> new ArrayList<>()).add(file);
+            }
+        }
+        List<List<Path>> groups = new ArrayList<>();
+        for (List<Path> group : byHash.values()) {
+            if (group.size() > 1) {
+                groups.add(group);
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * 读取文件开头和结尾各 {@link #EDGE} 字节（小文件读全部）计算摘要，失败时打印异常并返回 null。
+     *
+     * @param file    文件
+     * @param size    文件大小
+     * @param summary 统计结果
+     * @return 十六进制摘要
+     */
+    private static String edgeHash(Path file, long size, Summary summary) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            ByteBuffer buffer = ByteBuffer.allocate(EDGE);
+            if (size <= 2L * EDGE) {
+                readRange(channel, 0, size, buffer, digest);
+            } else {
+                readRange(channel, 0, EDGE, buffer, digest);
+                readRange(channel, size - EDGE, EDGE, buffer, digest);
+            }
+            summary.bytesRead.add(Math.min(size, 2L * EDGE));
+            return FileHasher.toHex(digest.digest());
+        } catch (IOException | NoSuchAlgorithmException e) {
+            // 打印异常信息
+            System.out.println("读取失败: " + file);
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * 读取文件的一段并更新摘要。
+     *
+     * @param channel  文件通道
+     * @param position 起始位置
+     * @param length   长度
+     * @param buffer   缓冲区
+     * @param digest   摘要
+     * @throws IOException 读文件失败
+     */
+    private static void readRange(FileChannel channel, long position, long length, ByteBuffer buffer,
+                                  MessageDigest digest) throws IOException {
+        long end = position + length;
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            int n = channel.read(buffer, position);
+            if (n < 0) {
+                // 文件在比较过程中被截短
+                break;
+            }
+            buffer.flip();
+            digest.update(buffer);
+            position += n;
+        }
+    }
+
+    /**
+     * 计算完整的 SHA-256，失败时打印异常并返回 null。
+     *
+     * @param file    文件
+     * @param size    文件大小
+     * @param cache   摘要缓存，null 表示直接计算
+     * @param summary 统计结果
+     * @return 十六进制摘要
+     */
+    private static String fullHash(Path file, long size, DigestCache cache, Summary summary) {
+        try {
+            FileHasher.FileDigest digest = cache != null
+                    ? cache.get(file, FileHasher.SHA256)
+                    : FileHasher.hash(file, FileHasher.SHA256);
+            if (digest.getSize() != size) {
+                // 文件在比较过程中被修改
+                return null;
+            }
+            summary.fullHashed.increment();
+            return digest.get(FileHasher.SHA256);
+        } catch (IOException e) {
+            // 打印异常信息
+            System.out.println("读取失败: " + file);
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * 查找重复文件的统计结果。
+     */
+    public static class Summary {
+        // 遍历到的文件数
+        final LongAdder files = new LongAdder();
+        // 大小与其他文件相同的文件数
+        final LongAdder sameSize = new LongAdder();
+        // 开头结尾也相同的文件数
+        final LongAdder sameEdge = new LongAdder();
+        // 计算完整摘要的文件数
+        final LongAdder fullHashed = new LongAdder();
+        // 第二阶段读取的字节数
+        final LongAdder bytesRead = new LongAdder();
+        // 重复组数
+        final LongAdder groups = new LongAdder();
+        // 多余的文件数（每组保留一个）
+        final LongAdder duplicates = new LongAdder();
+        // 多余文件占用的字节数
+        final LongAdder wastedBytes = new LongAdder();
+        // 总耗时，单位：纳秒
+        volatile long elapsedNanos;
+
+        /**
+         * 遍历到的文件数
+         *
+         * @return 文件数
+         */
+        public long getFiles() {
+            return files.sum();
+        }
+
+        /**
+         * 大小与其他文件相同、进入第二阶段的文件数
+         *
+         * @return 文件数
+         */
+        public long getSameSize() {
+            return sameSize.sum();
+        }
+
+        /**
+         * 开头结尾也相同、进入第三阶段的文件数
+         *
+         * @return 文件数
+         */
+        public long getSameEdge() {
+            return sameEdge.sum();
+        }
+
+        /**
+         * 实际计算（或从缓存取得）完整摘要的文件数
+         *
+         * @return 文件数
+         */
+        public long getFullHashed() {
+            return fullHashed.sum();
+        }
+
+        /**
+         * 比较开头结尾时读取的字节数
+         *
+         * @return 字节数
+         */
+        public long getBytesRead() {
+            return bytesRead.sum();
+        }
+
+        /**
+         * 重复组数
+         *
+         * @return 组数
+         */
+        public long getGroups() {
+            return groups.sum();
+        }
+
+        /**
+         * 多余的文件数，每组保留一个
+         *
+         * @return 文件数
+         */
+        public long getDuplicates() {
+            return duplicates.sum();
+        }
+
+        /**
+         * 多余文件占用的字节数
+         *
+         * @return 字节数
+         */
+        public long getWastedBytes() {
+            return wastedBytes.sum();
+        }
+
+        /**
+         * 总耗时，单位：毫秒
+         *
+         * @return 毫秒
+         */
+        public long getElapsedMillis() {
+            return elapsedNanos / 1_000_000;
+        }
+
+        /**
+         * 统计摘要
+         *
+         * @return 摘要
+         */
+        @Override
+        public String toString() {
+            return String.format("文件 %d 个，大小相同 %d，首尾相同 %d，完整摘要 %d；重复 %d 组 %d 个，可释放 %.2f MB，耗时 %d ms",
+                    getFiles(), getSameSize(), getSameEdge(), getFullHashed(), getGroups(), getDuplicates(),
+                    getWastedBytes() / 1024.0 / 1024.0, getElapsedMillis());
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package org.mmc.util.file;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 根据文件开头的采样字节统计判断文本编码，支持 UTF-8、UTF-16、GBK，纯 ASCII 单独识别。
+ * <p>
+ * 判断顺序：BOM → UTF-16 特征（大量 0 字节集中在奇数或偶数位置）→ UTF-8 多字节序列是否全部合法 →
+ * GBK 双字节是否合法且常用汉字区占多数。都不满足时按 ISO-8859-1 处理（任何字节都能解码，转码时不会丢数据）。
+ */
+public final class EncodingDetector {
+    /**
+     * 默认采样字节数
+     */
+    public static final int DEFAULT_SAMPLE = 64 * 1024;
+    /**
+     * GBK 字符编码
+     */
+    public static final Charset GBK = Charset.forName("GBK");
+    /**
+     * 带 BOM 的 UTF-16，解码时自动去掉 BOM
+     */
+    private static final Charset UTF_16 = StandardCharsets.UTF_16;
+
+    /**
+     * 工具类不允许实例化
+     */
+    private EncodingDetector() {
+    }
+
+    /**
+     * 读取文件开头 {@link #DEFAULT_SAMPLE} 字节并判断编码。
+     *
+     * @param file 文件
+     * @return 编码，纯 ASCII 返回 US-ASCII
+     * @throws IOException 读文件失败
+     */
+    public static Charset detect(Path file) throws IOException {
+        byte[] sample = new byte[DEFAULT_SAMPLE];
+        int length = readSample(file, sample);
+        return detect(sample, length, length < sample.length);
+    }
+
+    /**
+     * 判断文件是否是能识别编码的文本文件，批量转码等会改写文件的操作应使用这个方法。
+     * 含 0 字节（UTF-16 除外）的二进制文件，以及只能按 ISO-8859-1 兜底解码的文件返回 null。
+     *
+     * @param file 文件
+     * @return 编码，纯 ASCII 返回 US-ASCII；不是文本或无法识别时返回 null
+     * @throws IOException 读文件失败
+     */
+    public static Charset detectText(Path file) throws IOException {
+        byte[] sample = new byte[DEFAULT_SAMPLE];
+        int length = readSample(file, sample);
+        Charset charset = detect(sample, length, length < sample.length);
+        if (charset.equals(UTF_16) || charset.equals(StandardCharsets.UTF_16LE) || charset.equals(StandardCharsets.UTF_16BE)) {
+            return charset;
+        }
+        if (charset.equals(StandardCharsets.ISO_8859_1) || isBinary(sample, length)) {
+            return null;
+        }
+        return charset;
+    }
+
+    /**
+     * 判断采样中是否有 0 字节，文本文件（UTF-16 除外）不会出现 0 字节。
+     *
+     * @param sample 采样字节
+     * @param length 有效长度
+     * @return 有 0 字节返回 true
+     */
+    public static boolean isBinary(byte[] sample, int length) {
+        for (int i = 0; i < length; i++) {
+            if (sample[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 读取文件开头的采样字节。
+     *
+     * @param file   文件
+     * @param sample 采样缓冲区
+     * @return 读到的字节数
+     * @throws IOException 读文件失败
+     */
+    private static int readSample(Path file, byte[] sample) throws IOException {
+        int length = 0;
+        try (InputStream in = Files.newInputStream(file)) {
+            int n;
+            while (length < sample.length && (n = in.read(sample, length, sample.length - length)) > 0) {
+                length += n;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * 判断采样字节的编码。
+     *
+     * @param sample   采样字节
+     * @param length   有效长度
+     * @param complete 采样是否是完整文件；不完整时末尾被截断的多字节序列不算错误
+     * @return 编码，纯 ASCII 返回 US-ASCII
+     */
+    public static Charset detect(byte[] sample, int length, boolean complete) {
+        if (length >= 3 && (sample[0] & 0xFF) == 0xEF && (sample[1] & 0xFF) == 0xBB && (sample[2] & 0xFF) == 0xBF) {
+            return StandardCharsets.UTF_8;
+        }
+        if (length >= 2 && (((sample[0] & 0xFF) == 0xFE && (sample[1] & 0xFF) == 0xFF)
+                || ((sample[0] & 0xFF) == 0xFF && (sample[1] & 0xFF) == 0xFE))) {
+            return UTF_16;
+        }
+        Charset utf16 = detectUtf16WithoutBom(sample, length);
+        if (utf16 != null) {
+            return utf16;
+        }
+        boolean ascii = true;
+        for (int i = 0; i < length; i++) {
+            if (sample[i] < 0) {
+                ascii = false;
+                break;
+            }
+        }
+        if (ascii) {
+            return StandardCharsets.US_ASCII;
+        }
+        if (isValidUtf8(sample, length, complete)) {
+            return StandardCharsets.UTF_8;
+        }
+        if (looksLikeGbk(sample, length, complete)) {
+            return GBK;
+        }
+        return StandardCharsets.ISO_8859_1;
+    }
+
+    /**
+     * 没有 BOM 的 UTF-16：ASCII 字符编码后有一半字节是 0，且集中在偶数或奇数位置。
+     *
+     * @param sample 采样字节
+     * @param length 有效长度
+     * @return UTF-16LE/UTF-16BE，不像 UTF-16 返回 null
+     */
+    private static Charset detectUtf16WithoutBom(byte[] sample, int length) {
+        if (length < 4) {
+            return null;
+        }
+        int evenZeros = 0;
+        int oddZeros = 0;
+        for (int i = 0; i + 1 < length; i += 2) {
+            if (sample[i] == 0) {
+                evenZeros++;
+            }
+            if (sample[i + 1] == 0) {
+                oddZeros++;
+            }
+        }
+        int pairs = length / 2;
+        if (oddZeros > pairs * 0.3 && evenZeros < pairs * 0.05) {
+            return StandardCharsets.UTF_16LE;
+        }
+        if (evenZeros > pairs * 0.3 && oddZeros < pairs * 0.05) {
+            return StandardCharsets.UTF_16BE;
+        }
+        return null;
+    }
+
+    /**
+     * 检查是否是合法的 UTF-8：每个多字节序列的首字节、后续字节个数和取值范围都正确，
+     * 拒绝超长编码（E0 80-9F、F0 80-8F）、代理区（ED A0-BF）和超出 U+10FFFF 的序列（F4 90-BF）。
+     *
+     * @param sample   采样字节
+     * @param length   有效长度
+     * @param complete 采样是否是完整文件
+     * @return 合法返回 true
+     */
+    private static boolean isValidUtf8(byte[] sample, int length, boolean complete) {
+        int i = 0;
+        while (i < length) {
+            int b = sample[i] & 0xFF;
+            int trailing;
+            // 第二个字节的取值范围
+            int low = 0x80;
+            int high = 0xBF;
+            if (b < 0x80) {
+                i++;
+                continue;
+            } else if (b >= 0xC2 && b <= 0xDF) {
+                trailing = 1;
+            } else if (b >= 0xE0 && b <= 0xEF) {
+                trailing = 2;
+                if (b == 0xE0) {
+                    low = 0xA0;
+                } else if (b == 0xED) {
+                    high = 0x9F;
+                }
+            } else if (b >= 0xF0 && b <= 0xF4) {
+                trailing = 3;
+                if (b == 0xF0) {
+                    low = 0x90;
+                } else if (b == 0xF4) {
+                    high = 0x8F;
+                }
+            } else {
+                return false;
+            }
+            if (i + trailing >= length) {
+                // 序列被采样截断
+                return !complete;
+            }
+            int second = sample[i + 1] & 0xFF;
+            if (second < low || second > high) {
+                return false;
+            }
+            for (int k = 2; k <= trailing; k++) {
+                if ((sample[i + k] & 0xC0) != 0x80) {
+                    return false;
+                }
+            }
+            i += trailing + 1;
+        }
+        return true;
+    }
+
+    /**
+     * 检查是否像 GBK：所有双字节组合合法，且常用汉字区（GB2312 一二级汉字及全角符号）占多数。
+     *
+     * @param sample   采样字节
+     * @param length   有效长度
+     * @param complete 采样是否是完整文件
+     * @return 像 GBK 返回 true
+     */
+    private static boolean looksLikeGbk(byte[] sample, int length, boolean complete) {
+        int pairs = 0;
+        int common = 0;
+        int i = 0;
+        while (i < length) {
+            int b = sample[i] & 0xFF;
+            if (b < 0x80) {
+                i++;
+                continue;
+            }
+            if (b == 0x80 || b == 0xFF) {
+                return false;
+            }
+            if (i + 1 >= length) {
+                return !complete && pairs > 0 && common * 2 >= pairs;
+            }
+            int t = sample[i + 1] & 0xFF;
+            if (t < 0x40 || t == 0x7F || t == 0xFF) {
+                return false;
+            }
+            pairs++;
+            if (b >= 0xA1 && b <= 0xF7 && t >= 0xA1) {
+                common++;
+            }
+            i += 2;
+        }
+        return pairs > 0 && common * 2 >= pairs;
+    }
+}
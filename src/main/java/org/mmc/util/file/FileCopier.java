@@ -0,0 +1,608 @@
+package org.mmc.util.file;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * 文件复制、移动。
+ * <p>
+ * 单个文件用 {@link FileChannel#transferTo} 复制，数据由内核直接在两个文件之间传输（Linux 上为 sendfile/copy_file_range），不经过 Java 堆。
+ * 不小于 {@link #RESUMABLE_SIZE} 的大文件先写到 "目标文件名.part"，每复制 {@link #CHECKPOINT_BYTES} 字节刷盘并在
+ * "目标文件名.part.ckpt" 中记录已完成的字节数和源文件的大小、修改时间；中断后再次复制同一文件时，源文件没变就从记录的位置继续。
+ * 全部完成后可选按大小和 MD5 校验，再改名为目标文件。
+ * <p>
+ * 目录复制时遍历线程创建目录，文件交给固定大小的线程池并行复制。进度回调按固定间隔触发（最多每 {@link #PROGRESS_INTERVAL} 毫秒一次，
+ * 结束时再触发一次），不会每个缓冲区都回调。移动先尝试改名，跨磁盘等无法改名时复制后删除源文件。
+ */
+public final class FileCopier {
+    /**
+     * 不小于该大小的文件支持断点续传，单位：字节
+     */
+    public static final long RESUMABLE_SIZE = 64L * 1024 * 1024;
+    /**
+     * 大文件每复制多少字节记录一次断点，单位：字节
+     */
+    public static final long CHECKPOINT_BYTES = 64L * 1024 * 1024;
+    /**
+     * 进度回调的最小间隔，单位：毫秒
+     */
+    public static final long PROGRESS_INTERVAL = 200;
+    // 每次 transferTo 的最大字节数
+    private static final long TRANSFER_CHUNK = 8L * 1024 * 1024;
+    // 未完成文件的后缀
+    private static final String PART_SUFFIX = ".part";
+    // 断点文件的后缀
+    private static final String CHECKPOINT_SUFFIX = ".part.ckpt";
+
+    /**
+     * 工具类不允许实例化
+     */
+    private FileCopier() {
+    }
+
+    /**
+     * 复制单个文件，目标已存在时覆盖，目标目录不存在时自动创建。
+     *
+     * @param source   源文件
+     * @param target   目标文件
+     * @param verify   复制完成后是否按大小和 MD5 校验
+     * @param listener 进度回调，可以为 null
+     * @return 复制的字节数（续传时包含之前已完成的部分）
+     * @throws IOException 读写失败或校验不一致
+     * @throws IllegalArgumentException 源文件和目标是同一个文件
+     */
+    public static long copy(Path source, Path target, boolean verify, ProgressListener listener) throws IOException {
+        long size = Files.size(source);
+        Progress progress = new Progress(size, listener);
+        copy(source, target, verify, progress);
+        progress.finish();
+        return size;
+    }
+
+    /**
+     * 复制目录下的所有文件和子目录到目标目录（不包括源目录本身），已存在的文件覆盖，文件的修改时间保持不变。
+     * 符号链接按原样重建；不能创建符号链接时（如 Windows 普通用户）复制链接指向的文件，指向目录或失效的链接计入失败。
+     *
+     * @param source   源目录
+     * @param target   目标目录
+     * @param threads  复制线程数
+     * @param verify   每个文件复制完成后是否按大小和 MD5 校验
+     * @param listener 进度回调，总量为所有文件的字节数，可以为 null
+     * @return 统计结果
+     * @throws IOException 创建目录失败
+     */
+    public static Summary copyTree(Path source, Path target, int threads, boolean verify, ProgressListener listener) throws IOException {
+        Summary summary = new Summary();
+        long begin = System.nanoTime();
+        // 只有需要进度时才预先统计总量，只读属性，不读内容
+        Progress progress = new Progress(listener == null ? 0 : FileWalker.size(source), listener);
+        Files.createDirectories(target);
+        AtomicInteger threadIndex = new AtomicInteger();
+        // 队列有界，排满时由遍历线程自己执行，遍历不会堆积大量待复制任务
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 4), r -> {
+            Thread thread = new Thread(r, "mmc-copy-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+        List<Path[]> directories = new ArrayList<>();
+        try (Stream<FileWalker.Entry> entries = FileWalker.walk(source, null, false)) {
+            entries.forEach(entry -> {
+                Path destination = target.resolve(source.relativize(entry.path()).toString());
+                BasicFileAttributes attrs = entry.attributes();
+                if (attrs.isDirectory()) {
+                    // 父目录总是先于其中的文件返回
+                    try {
+                        Files.createDirectories(destination);
+                        directories.add(new Path[]{entry.path(), destination});
+                    } catch (IOException e) {
+                        // 打印异常信息
+                        e.printStackTrace();
+                        summary.failed.increment();
+                    }
+                } else if (attrs.isRegularFile()) {
+                    pool.execute(() -> copyTreeFile(entry.path(), destination, attrs, verify, progress, summary));
+                } else if (attrs.isSymbolicLink()) {
+                    copyTreeLink(entry.path(), destination, verify, progress, summary);
+                } else {
+                    // 管道、设备等特殊文件无法复制，计入失败，移动时不会删除源目录
+                    System.out.println("无法复制的特殊文件: " + entry.path());
+                    summary.failed.increment();
+                }
+            });
+        } finally {
+            pool.shutdown();
+            try {
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // 目录的修改时间在其中的文件复制完后才设置，否则会被创建文件改掉
+        for (int i = directories.size() - 1; i >= 0; i--) {
+            Path[] pair = directories.get(i);
+            try {
+                Files.setLastModifiedTime(pair[1], Files.getLastModifiedTime(pair[0]));
+            } catch (IOException e) {
+                // 修改时间设置失败不影响内容
+                e.printStackTrace();
+            }
+        }
+        progress.finish();
+        summary.elapsedNanos = System.nanoTime() - begin;
+        return summary;
+    }
+
+    /**
+     * 移动文件或目录：先尝试改名，无法改名（如跨磁盘）时复制后删除源文件。目标已存在时覆盖；目标是已存在的目录时合并。
+     *
+     * @param source   源文件或目录
+     * @param target   目标
+     * @param listener 进度回调，只有需要复制时才会触发，可以为 null
+     * @throws IOException 移动失败
+     */
+    public static void move(Path source, Path target, ProgressListener listener) throws IOException {
+        if (target.getParent() != null) {
+            Files.createDirectories(target.getParent());
+        }
+        boolean directory = Files.isDirectory(source, LinkOption.NOFOLLOW_LINKS);
+        if (!directory || !Files.isDirectory(target)) {
+            try {
+                Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                return;
+            } catch (AtomicMoveNotSupportedException | DirectoryNotEmptyException | FileAlreadyExistsException e) {
+                // 跨磁盘或目标是非空目录，改为复制
+            }
+        }
+        if (!directory) {
+            copy(source, target, true, listener);
+            Files.delete(source);
+            return;
+        }
+        Summary summary = copyTree(source, target, Runtime.getRuntime().availableProcessors(), true, listener);
+        if (summary.getFailed() > 0) {
+            throw new IOException("移动目录失败，" + summary.getFailed() + " 个文件未复制，源目录保留: " + source);
+        }
+        deleteTree(source);
+    }
+
+    /**
+     * 复制单个文件：小文件直接写目标，大文件写到 .part 并支持断点续传。
+     *
+     * @param source   源文件
+     * @param target   目标文件
+     * @param verify   是否校验
+     * @param progress 进度
+     * @throws IOException 读写失败或校验不一致
+     * @throws IllegalArgumentException 源文件和目标是同一个文件
+     */
+    private static void copy(Path source, Path target, boolean verify, Progress progress) throws IOException {
+        // 打开目标时会清空文件，同一个文件会丢掉源文件的内容
+        if (Files.exists(target) && Files.isSameFile(source, target)) {
+            throw new IllegalArgumentException("源文件和目标不能是同一个文件: " + source);
+        }
+        if (target.getParent() != null) {
+            Files.createDirectories(target.getParent());
+        }
+        BasicFileAttributes attrs = Files.readAttributes(source, BasicFileAttributes.class);
+        long size = attrs.size();
+        if (size < RESUMABLE_SIZE) {
+            try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                         StandardOpenOption.TRUNCATE_EXISTING)) {
+                transfer(in, out, 0, size, progress, null);
+            }
+            if (verify) {
+                verify(source, target);
+            }
+            return;
+        }
+        Path part = target.resolveSibling(target.getFileName() + PART_SUFFIX);
+        Path checkpoint = target.resolveSibling(target.getFileName() + CHECKPOINT_SUFFIX);
+        long modified = attrs.lastModifiedTime().toMillis();
+        long done = readCheckpoint(checkpoint, part, size, modified);
+        if (done > 0) {
+            progress.add(done);
+        }
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            // 丢掉断点之后可能没有写完整的部分
+            out.truncate(done);
+            transfer(in, out, done, size, progress, position -> {
+                out.force(false);
+                writeCheckpoint(checkpoint, position, size, modified);
+            });
+            out.force(false);
+        }
+        if (verify) {
+            verify(source, part);
+        }
+        try {
+            Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(part, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.deleteIfExists(checkpoint);
+    }
+
+    /**
+     * 复制目录中的一个文件并记录统计，失败时打印异常并计入失败数。
+     *
+     * @param source   源文件
+     * @param target   目标文件
+     * @param attrs    源文件属性
+     * @param verify   是否校验
+     * @param progress 进度
+     * @param summary  统计结果
+     */
+    private static void copyTreeFile(Path source, Path target, BasicFileAttributes attrs, boolean verify,
+                                     Progress progress, Summary summary) {
+        try {
+            copy(source, target, verify, progress);
+            Files.setLastModifiedTime(target, attrs.lastModifiedTime());
+            summary.files.increment();
+            summary.bytes.add(attrs.size());
+        } catch (IOException | RuntimeException e) {
+            // 打印异常信息
+            System.out.println("复制失败: " + source);
+            e.printStackTrace();
+            summary.failed.increment();
+        }
+    }
+
+    /**
+     * 复制目录中的一个符号链接并记录统计：重建指向相同位置的链接，不能创建链接时复制链接指向的文件，都不行时计入失败数。
+     *
+     * @param source   源链接
+     * @param target   目标路径
+     * @param verify   复制指向的文件时是否校验
+     * @param progress 进度
+     * @param summary  统计结果
+     */
+    private static void copyTreeLink(Path source, Path target, boolean verify, Progress progress, Summary summary) {
+        try {
+            Path link = Files.readSymbolicLink(source);
+            Files.deleteIfExists(target);
+            try {
+                Files.createSymbolicLink(target, link);
+                summary.links.increment();
+                return;
+            } catch (UnsupportedOperationException | IOException e) {
+                // 不支持或没有权限创建符号链接，改为复制链接指向的文件
+            }
+            if (!Files.isRegularFile(source)) {
+                throw new IOException("符号链接指向目录或已失效，无法复制: " + source + " -> " + link);
+            }
+            BasicFileAttributes attrs = Files.readAttributes(source, BasicFileAttributes.class);
+            copy(source, target, verify, progress);
+            Files.setLastModifiedTime(target, attrs.lastModifiedTime());
+            summary.files.increment();
+            summary.bytes.add(attrs.size());
+        } catch (IOException | RuntimeException e) {
+            // 打印异常信息
+            System.out.println("复制失败: " + source);
+            e.printStackTrace();
+            summary.failed.increment();
+        }
+    }
+
+    /**
+     * 用 transferTo 从指定位置复制到文件末尾，每 {@link #CHECKPOINT_BYTES} 字节回调一次断点。
+     *
+     * @param in         输入通道
+     * @param out        输出通道
+     * @param position   起始位置
+     * @param size       源文件大小
+     * @param progress   进度
+     * @param checkpoint 断点回调，可以为 null
+     * @throws IOException 读写失败
+     */
+    private static void transfer(FileChannel in, FileChannel out, long position, long size, Progress progress,
+                                 CheckpointAction checkpoint) throws IOException {
+        long nextCheckpoint = position + CHECKPOINT_BYTES;
+        out.position(position);
+        while (position < size) {
+            long n = in.transferTo(position, Math.min(TRANSFER_CHUNK, size - position), out);
+            if (n <= 0) {
+                throw new IOException("源文件在复制过程中被截短");
+            }
+            position += n;
+            progress.add(n);
+            if (checkpoint != null && position >= nextCheckpoint && position < size) {
+                checkpoint.save(position);
+                nextCheckpoint = position + CHECKPOINT_BYTES;
+            }
+        }
+    }
+
+    /**
+     * 按大小和 MD5 校验复制结果，两个文件并行计算。
+     *
+     * @param source 源文件
+     * @param copy   复制的文件
+     * @throws IOException 读文件失败或不一致
+     */
+    private static void verify(Path source, Path copy) throws IOException {
+        if (Files.size(source) != Files.size(copy)) {
+            throw new IOException("校验失败，大小不一致: " + copy);
+        }
+        Map<Path, FileHasher.FileDigest> digests = FileHasher.hashAll(Arrays.asList(source, copy), FileHasher.MD5);
+        FileHasher.FileDigest expected = digests.get(source);
+        FileHasher.FileDigest actual = digests.get(copy);
+        if (expected == null || actual == null) {
+            throw new IOException("校验失败，无法读取: " + copy);
+        }
+        if (!expected.get(FileHasher.MD5).equals(actual.get(FileHasher.MD5))) {
+            throw new IOException("校验失败，MD5 不一致: " + copy);
+        }
+    }
+
+    /**
+     * 读取断点：源文件大小和修改时间一致、且 .part 文件至少有这么长时才续传。
+     *
+     * @param checkpoint 断点文件
+     * @param part       未完成的文件
+     * @param size       源文件大小
+     * @param modified   源文件修改时间
+     * @return 已完成的字节数，不能续传返回 0
+     */
+    private static long readCheckpoint(Path checkpoint, Path part, long size, long modified) {
+        if (!Files.isRegularFile(checkpoint) || !Files.isRegularFile(part)) {
+            return 0;
+        }
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(checkpoint))) {
+            long done = in.readLong();
+            if (in.readLong() != size || in.readLong() != modified || done > Files.size(part) || done > size) {
+                return 0;
+            }
+            return done;
+        } catch (IOException e) {
+            // 断点损坏，从头复制
+            return 0;
+        }
+    }
+
+    /**
+     * 写断点：已完成的字节数和源文件的大小、修改时间。
+     *
+     * @param checkpoint 断点文件
+     * @param done       已完成的字节数
+     * @param size       源文件大小
+     * @param modified   源文件修改时间
+     * @throws IOException 写文件失败
+     */
+    private static void writeCheckpoint(Path checkpoint, long done, long size, long modified) throws IOException {
+        Path temp = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(temp))) {
+            out.writeLong(done);
+            out.writeLong(size);
+            out.writeLong(modified);
+        }
+        try {
+            Files.move(temp, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, checkpoint, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * 把源文件的 POSIX 权限和属主复制到目标文件，用于写临时文件再改名替换原文件的场景，避免改名后丢失权限（如可执行位）。
+     * 不支持 POSIX 属性的文件系统不处理；没有权限修改属主时保留当前属主。
+     *
+     * @param source 源文件
+     * @param target 目标文件
+     * @throws IOException 读取源文件属性或设置权限失败
+     */
+    static void copyPermissions(Path source, Path target) throws IOException {
+        PosixFileAttributeView view = Files.getFileAttributeView(target, PosixFileAttributeView.class);
+        if (view == null) {
+            return;
+        }
+        PosixFileAttributes attributes = Files.readAttributes(source, PosixFileAttributes.class);
+        try {
+            view.setOwner(attributes.owner());
+            view.setGroup(attributes.group());
+        } catch (IOException e) {
+            // 非特权用户不能把文件交给其他用户，保留当前属主
+        }
+        view.setPermissions(attributes.permissions());
+    }
+
+    /**
+     * 删除目录及其中的所有内容，子项先于目录删除。
+     *
+     * @param root 目录
+     * @throws IOException 删除失败
+     */
+    private static void deleteTree(Path root) throws IOException {
+        List<Path> directories = new ArrayList<>();
+        try (Stream<FileWalker.Entry> entries = FileWalker.walk(root, null, false)) {
+            for (FileWalker.Entry entry : (Iterable<FileWalker.Entry>) entries::iterator) {
+                if (entry.attributes().isDirectory()) {
+                    directories.add(entry.path());
+                } else {
+                    Files.delete(entry.path());
+                }
+            }
+        }
+        for (int i = directories.size() - 1; i >= 0; i--) {
+            Files.delete(directories.get(i));
+        }
+        Files.delete(root);
+    }
+
+    /**
+     * 进度回调。
+     */
+    public interface ProgressListener {
+        /**
+         * 进度更新，按固定间隔调用，结束时 done 等于 total 再调用一次
+         *
+         * @param done  已完成的字节数
+         * @param total 总字节数
+         */
+        void onProgress(long done, long total);
+    }
+
+    /**
+     * 断点回调。
+     */
+    private interface CheckpointAction {
+        /**
+         * 保存断点
+         *
+         * @param position 已完成的字节数
+         * @throws IOException 写文件失败
+         */
+        void save(long position) throws IOException;
+    }
+
+    /**
+     * 多线程累加的进度，按固定间隔回调。
+     */
+    private static final class Progress {
+        // 总字节数
+        private final long total;
+        // 回调，可以为 null
+        private final ProgressListener listener;
+        // 已完成的字节数
+        private final AtomicLong done = new AtomicLong();
+        // 下次允许回调的时间，单位：纳秒
+        private final AtomicLong nextReport = new AtomicLong(System.nanoTime());
+
+        /**
+         * 构造函数。
+         *
+         * @param total    总字节数
+         * @param listener 回调，可以为 null
+         */
+        Progress(long total, ProgressListener listener) {
+            this.total = total;
+            this.listener = listener;
+        }
+
+        /**
+         * 累加进度，距上次回调超过间隔时由当前线程回调。
+         *
+         * @param bytes 新完成的字节数
+         */
+        void add(long bytes) {
+            long current = done.addAndGet(bytes);
+            if (listener == null) {
+                return;
+            }
+            long now = System.nanoTime();
+            long next = nextReport.get();
+            if (now - next >= 0 && nextReport.compareAndSet(next, now + TimeUnit.MILLISECONDS.toNanos(PROGRESS_INTERVAL))) {
+                listener.onProgress(current, total);
+            }
+        }
+
+        /**
+         * 结束时回调最终进度
+         */
+        void finish() {
+            if (listener != null) {
+                listener.onProgress(done.get(), total);
+            }
+        }
+    }
+
+    /**
+     * 目录复制的统计结果。
+     */
+    public static class Summary {
+        // 复制成功的文件数
+        final LongAdder files = new LongAdder();
+        // 重建的符号链接数
+        final LongAdder links = new LongAdder();
+        // 复制失败的文件和目录数
+        final LongAdder failed = new LongAdder();
+        // 复制的字节数
+        final LongAdder bytes = new LongAdder();
+        // 总耗时，单位：纳秒
+        volatile long elapsedNanos;
+
+        /**
+         * 复制成功的文件数
+         *
+         * @return 文件数
+         */
+        public long getFiles() {
+            return files.sum();
+        }
+
+        /**
+         * 重建的符号链接数
+         *
+         * @return 个数
+         */
+        public long getLinks() {
+            return links.sum();
+        }
+
+        /**
+         * 复制失败的文件、目录、符号链接和特殊文件数
+         *
+         * @return 个数
+         */
+        public long getFailed() {
+            return failed.sum();
+        }
+
+        /**
+         * 复制的字节数
+         *
+         * @return 字节数
+         */
+        public long getBytes() {
+            return bytes.sum();
+        }
+
+        /**
+         * 总耗时，单位：毫秒
+         *
+         * @return 毫秒
+         */
+        public long getElapsedMillis() {
+            return elapsedNanos / 1_000_000;
+        }
+
+        /**
+         * 统计摘要
+         *
+         * @return 摘要
+         */
+        @Override
+        public String toString() {
+            double seconds = elapsedNanos / 1e9;
+            return String.format("复制文件 %d 个，符号链接 %d 个，失败 %d，共 %.2f MB，耗时 %d ms，%.2f MB/秒",
+                    getFiles(), getLinks(), getFailed(), getBytes() / 1024.0 / 1024.0, getElapsedMillis(),
+                    seconds == 0 ? 0 : getBytes() / 1024.0 / 1024.0 / seconds);
+        }
+    }
+}
@@ -0,0 +1,392 @@
+package org.mmc.util.file;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 批量编辑文件：插入、删除、替换若干行或若干字节，一次完成。
+ * <p>
+ * 所有编辑的位置都相对于编辑前的原文件，行号借助 {@link LineIndex} 换算成字节偏移，不需要逐行读取。
+ * 编辑按位置排序后一遍写出：未改动的部分用 {@link FileChannel#transferTo} 直接复制，写到同目录的临时文件，刷盘后原子替换原文件。
+ * 所有编辑都位于文件末尾 {@link #IN_PLACE_LIMIT} 字节以内时，只读出并改写这段末尾，不复制前面的内容（追加时什么都不用读）；
+ * 这种原地修改不是原子的，写到一半中断时末尾可能不完整。
+ */
+public final class FileEditor {
+    /**
+     * 原地修改的最大末尾长度，单位：字节
+     */
+    public static final long IN_PLACE_LIMIT = 4L * 1024 * 1024;
+    // 临时文件后缀
+    private static final String TEMP_SUFFIX = ".editing";
+
+    /**
+     * 工具类不允许实例化
+     */
+    private FileEditor() {
+    }
+
+    /**
+     * 应用一组编辑。
+     *
+     * @param file    文件
+     * @param charset 行编辑中文本的编码，按行编辑时换行符必须是单字节 0x0A（见 {@link LineIndex#supports}）
+     * @param edits   编辑，位置都相对于原文件，不能重叠；同一位置的插入按列表顺序
+     * @return 编辑后的文件大小
+     * @throws IOException 读写失败
+     */
+    public static long apply(Path file, Charset charset, List<Edit> edits) throws IOException {
+        long size = Files.size(file);
+        List<Range> ranges = resolve(file, charset, size, edits);
+        if (ranges.isEmpty()) {
+            return size;
+        }
+        long first = ranges.get(0).start;
+        if (size - first <= IN_PLACE_LIMIT) {
+            return applyInPlace(file, size, first, ranges);
+        }
+        return applyStreaming(file, size, ranges);
+    }
+
+    /**
+     * 把编辑换算成原文件中的字节范围，按位置排序并检查重叠。
+     *
+     * @param file    文件
+     * @param charset 编码
+     * @param size    文件大小
+     * @param edits   编辑
+     * @return 字节范围
+     * @throws IOException 读文件失败
+     */
+    private static List<Range> resolve(Path file, Charset charset, long size, List<Edit> edits) throws IOException {
+        LineIndex index = null;
+        String separator = null;
+        boolean endsWithNewline = false;
+        // 删除或替换了最后一行，以及追加到文件末尾的第一个按行插入
+        boolean lastLineEdited = false;
+        Range append = null;
+        List<Range> ranges = new ArrayList<>(edits.size());
+        for (int i = 0; i < edits.size(); i++) {
+            Edit edit = edits.get(i);
+            if (!edit.byLine) {
+                if (edit.position > size || edit.length > size - edit.position) {
+                    throw new IllegalArgumentException("编辑超出文件范围: " + edit.position + "+" + edit.length + " > " + size);
+                }
+                ranges.add(new Range(edit.position, edit.position + edit.length, edit.data, i));
+                continue;
+            }
+            if (index == null) {
+                if (!LineIndex.supports(charset)) {
+                    throw new IllegalArgumentException("按行编辑不支持该编码: " + charset);
+                }
+                index = LineIndex.of(file);
+                separator = detectSeparator(file, index);
+                endsWithNewline = size > 0 && readByte(file, size - 1) == '\n';
+            }
+            long start = index.offsetOf(edit.position);
+            long end = edit.length == 0 ? start : index.offsetOf(edit.position + edit.length);
+            byte[] data = edit.text == null ? new byte[0] : (edit.text + separator).getBytes(charset);
+            ranges.add(new Range(start, end, data, i));
+            if (end == size && start < size) {
+                lastLineEdited = true;
+            }
+            if (start == size && edit.text != null && append == null) {
+                append = ranges.get(ranges.size() - 1);
+            }
+        }
+        // 最后一行没有换行符且没有被删除或替换时，在追加的第一行之前补上换行符
+        if (append != null && size > 0 && !endsWithNewline && !lastLineEdited) {
+            byte[] prefix = separator.getBytes(charset);
+            byte[] data = new byte[prefix.length + append.data.length];
+            System.arraycopy(prefix, 0, data, 0, prefix.length);
+            System.arraycopy(append.data, 0, data, prefix.length, append.data.length);
+            ranges.set(ranges.indexOf(append), new Range(append.start, append.end, data, append.order));
+        }
+        ranges.sort(Comparator.<Range>comparingLong(range -> range.start).thenComparingInt(range -> range.order));
+        for (int i = 1; i < ranges.size(); i++) {
+            if (ranges.get(i).start < ranges.get(i - 1).end) {
+                throw new IllegalArgumentException("编辑范围重叠: " + ranges.get(i - 1).start + "-" + ranges.get(i - 1).end
+                        + " 与 " + ranges.get(i).start + "-" + ranges.get(i).end);
+            }
+        }
+        return ranges;
+    }
+
+    /**
+     * 原地修改文件末尾：读出第一个编辑之后的内容，编辑后写回并截断。
+     *
+     * @param file   文件
+     * @param size   文件大小
+     * @param first  第一个编辑的位置
+     * @param ranges 字节范围
+     * @return 编辑后的文件大小
+     * @throws IOException 读写失败
+     */
+    private static long applyInPlace(Path file, long size, long first, List<Range> ranges) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer tail = ByteBuffer.allocate((int) (size - first));
+            while (tail.hasRemaining()) {
+                if (channel.read(tail, first + tail.position()) < 0) {
+                    break;
+                }
+            }
+            byte[] original = tail.array();
+            int length = 0;
+            for (Range range : ranges) {
+                length += range.data.length - (int) (range.end - range.start);
+            }
+            ByteBuffer result = ByteBuffer.allocate(original.length + length);
+            long cursor = first;
+            for (Range range : ranges) {
+                result.put(original, (int) (cursor - first), (int) (range.start - cursor));
+                result.put(range.data);
+                cursor = range.end;
+            }
+            result.put(original, (int) (cursor - first), (int) (size - cursor));
+            result.flip();
+            long position = first;
+            while (result.hasRemaining()) {
+                position += channel.write(result, position);
+            }
+            channel.truncate(position);
+            channel.force(true);
+            return position;
+        }
+    }
+
+    /**
+     * 一遍写出到临时文件：未改动的部分用 transferTo 复制，完成后复制原文件的权限和属主，再原子替换原文件。
+     *
+     * @param file   文件
+     * @param size   文件大小
+     * @param ranges 字节范围
+     * @return 编辑后的文件大小
+     * @throws IOException 读写失败
+     */
+    private static long applyStreaming(Path file, long size, List<Range> ranges) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + TEMP_SUFFIX);
+        try {
+            long written;
+            try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                         StandardOpenOption.WRITE)) {
+                long cursor = 0;
+                for (Range range : ranges) {
+                    transfer(in, cursor, range.start - cursor, out);
+                    ByteBuffer data = ByteBuffer.wrap(range.data);
+                    while (data.hasRemaining()) {
+                        out.write(data);
+                    }
+                    cursor = range.end;
+                }
+                transfer(in, cursor, size - cursor, out);
+                out.force(true);
+                written = out.size();
+            }
+            // 临时文件按默认权限创建，替换前改成原文件的权限和属主
+            FileCopier.copyPermissions(file, temp);
+            try {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return written;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * 用 transferTo 复制一段，直到复制完指定长度。
+     *
+     * @param in       源文件
+     * @param position 起始位置
+     * @param count    长度
+     * @param out      目标
+     * @throws IOException 读写失败
+     */
+    private static void transfer(FileChannel in, long position, long count, FileChannel out) throws IOException {
+        while (count > 0) {
+            long n = in.transferTo(position, count, out);
+            if (n <= 0) {
+                throw new IOException("文件在编辑过程中被截短");
+            }
+            position += n;
+            count -= n;
+        }
+    }
+
+    /**
+     * 按第一行的结尾判断文件使用的换行符，没有换行符时使用系统换行符。
+     *
+     * @param file  文件
+     * @param index 行索引
+     * @return "\r\n" 或 "\n"
+     * @throws IOException 读文件失败
+     */
+    private static String detectSeparator(Path file, LineIndex index) throws IOException {
+        long second = index.offsetOf(1);
+        if (second == 0 || readByte(file, second - 1) != '\n') {
+            return System.lineSeparator();
+        }
+        return second >= 2 && readByte(file, second - 2) == '\r' ? "\r\n" : "\n";
+    }
+
+    /**
+     * 读取指定位置的一个字节。
+     *
+     * @param file     文件
+     * @param position 位置
+     * @return 字节，超出文件末尾返回 -1
+     * @throws IOException 读文件失败
+     */
+    private static int readByte(Path file, long position) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer one = ByteBuffer.allocate(1);
+            return channel.read(one, position) == 1 ? one.get(0) & 0xFF : -1;
+        }
+    }
+
+    /**
+     * 原文件中被替换的字节范围
+     */
+    private static final class Range {
+        // 起始位置（含）
+        final long start;
+        // 结束位置（不含）
+        final long end;
+        // 替换成的内容
+        final byte[] data;
+        // 在编辑列表中的顺序
+        final int order;
+
+        /**
+         * 构造函数
+         *
+         * @param start 起始位置
+         * @param end   结束位置
+         * @param data  替换成的内容
+         * @param order 在编辑列表中的顺序
+         */
+        Range(long start, long end, byte[] data, int order) {
+            this.start = start;
+            this.end = end;
+            this.data = data;
+            this.order = order;
+        }
+    }
+
+    /**
+     * 一个编辑。行号从 0 开始，与 {@link LineIndex} 一致；行文本会自动加上文件使用的换行符，
+     * 所以替换或追加最后一行后文件总是以换行符结尾。
+     */
+    public static final class Edit {
+        // true 按行，false 按字节
+        final boolean byLine;
+        // 起始行号或字节偏移
+        final long position;
+        // 行数或字节数
+        final long length;
+        // 按行编辑的文本，删除时为 null
+        final String text;
+        // 按字节编辑的内容
+        final byte[] data;
+
+        /**
+         * 构造函数
+         *
+         * @param byLine   是否按行
+         * @param position 起始行号或字节偏移
+         * @param length   行数或字节数
+         * @param text     按行编辑的文本
+         * @param data     按字节编辑的内容
+         */
+        private Edit(boolean byLine, long position, long length, String text, byte[] data) {
+            if (position < 0 || length < 0) {
+                throw new IllegalArgumentException("位置和长度不能为负数");
+            }
+            this.byLine = byLine;
+            this.position = position;
+            this.length = length;
+            this.text = text;
+            this.data = data;
+        }
+
+        /**
+         * 在指定行之前插入文本，行号不小于行数时追加到文件末尾
+         *
+         * @param line 行号，从 0 开始
+         * @param text 文本，可以包含多行
+         * @return 编辑
+         */
+        public static Edit insertLines(long line, String text) {
+            return new Edit(true, line, 0, text, null);
+        }
+
+        /**
+         * 删除从指定行开始的若干行
+         *
+         * @param line  行号，从 0 开始
+         * @param count 行数
+         * @return 编辑
+         */
+        public static Edit deleteLines(long line, long count) {
+            return new Edit(true, line, count, null, null);
+        }
+
+        /**
+         * 把从指定行开始的若干行替换为文本
+         *
+         * @param line  行号，从 0 开始
+         * @param count 行数
+         * @param text  文本，可以包含多行
+         * @return 编辑
+         */
+        public static Edit replaceLines(long line, long count, String text) {
+            return new Edit(true, line, count, text, null);
+        }
+
+        /**
+         * 在指定字节偏移处插入内容
+         *
+         * @param offset 字节偏移
+         * @param data   内容
+         * @return 编辑
+         */
+        public static Edit insert(long offset, byte[] data) {
+            return new Edit(false, offset, 0, null, data);
+        }
+
+        /**
+         * 删除从指定字节偏移开始的若干字节
+         *
+         * @param offset 字节偏移
+         * @param length 字节数
+         * @return 编辑
+         */
+        public static Edit delete(long offset, long length) {
+            return new Edit(false, offset, length, null, new byte[0]);
+        }
+
+        /**
+         * 把从指定字节偏移开始的若干字节替换为内容
+         *
+         * @param offset 字节偏移
+         * @param length 字节数
+         * @param data   内容
+         * @return 编辑
+         */
+        public static Edit replace(long offset, long length, byte[] data) {
+            return new Edit(false, offset, length, null, data);
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package org.mmc.util.file;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.Checksum;
+
+/**
+ * 单次读取文件同时计算多种摘要。
+ * <p>
+ * 文件只读一遍：大文件按窗口映射，每次拷贝 64 KB 到线程复用的数组，所有算法依次在这块仍在 CPU 缓存中的数据上更新；
+ * 小文件直接读到同一个数组。多个文件时按文件并行（fork/join），每个文件内部顺序计算。
+ * 摘要统一输出为定长的小写十六进制字符串，不会像 BigInteger.toString(16) 那样丢掉前导 0。
+ */
+public final class FileHasher {
+    /**
+     * MD5
+     */
+    public static final String MD5 = "MD5";
+    /**
+     * SHA-1
+     */
+    public static final String SHA1 = "SHA-1";
+    /**
+     * SHA-256
+     */
+    public static final String SHA256 = "SHA-256";
+    /**
+     * CRC32，输出 8 位十六进制
+     */
+    public static final String CRC32 = "CRC32";
+    // 每次拷贝、更新摘要的块大小
+    private static final int BLOCK = 64 * 1024;
+    // 超过该大小的文件使用内存映射读取
+    private static final long MAP_THRESHOLD = 1024 * 1024;
+    // 每次映射的窗口大小
+    private static final long MAP_WINDOW = 64L * 1024 * 1024;
+    // 十六进制字符
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    // 每个线程复用的拷贝缓冲区
+    private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> new byte[BLOCK]);
+
+    /**
+     * 工具类不允许实例化
+     */
+    private FileHasher() {
+    }
+
+    /**
+     * 读取一遍文件，计算指定的所有摘要。
+     *
+     * @param file       文件
+     * @param algorithms 算法，如 {@link #MD5}、{@link #SHA256}，也可以是 JDK 支持的其他 MessageDigest 算法名
+     * @return 摘要结果
+     * @throws IOException 读文件失败或算法不支持
+     */
+    public static FileDigest hash(Path file, String... algorithms) throws IOException {
+        Updater[] updaters = new Updater[algorithms.length];
+        for (int i = 0; i < algorithms.length; i++) {
+            updaters[i] = newUpdater(algorithms[i]);
+        }
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        byte[] buffer = BUFFER.get();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > MAP_THRESHOLD) {
+                // 按窗口映射，每次拷出一块供所有算法使用
+                for (long position = 0; position < size; position += MAP_WINDOW) {
+                    MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_WINDOW, size - position));
+                    while (window.hasRemaining()) {
+                        int length = Math.min(buffer.length, window.remaining());
+                        window.get(buffer, 0, length);
+                        update(updaters, buffer, length);
+                    }
+                }
+            } else {
+                ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+                while (channel.read(wrapped) >= 0) {
+                    if (!wrapped.hasRemaining()) {
+                        update(updaters, buffer, wrapped.position());
+                        wrapped.clear();
+                    }
+                }
+                update(updaters, buffer, wrapped.position());
+            }
+        }
+        Map<String, String> digests = new LinkedHashMap<>();
+        for (int i = 0; i < algorithms.length; i++) {
+            digests.put(algorithms[i], updaters[i].finish());
+        }
+        return new FileDigest(attrs.size(), attrs.lastModifiedTime().toMillis(), digests);
+    }
+
+    /**
+     * 并行计算多个文件的摘要，读取失败的文件打印异常后跳过。
+     *
+     * @param files      文件
+     * @param algorithms 算法
+     * @return 文件到摘要结果的映射，顺序与输入相同
+     */
+    public static Map<Path, FileDigest> hashAll(Collection<Path> files, String... algorithms) {
+        Map<Path, FileDigest> result = new LinkedHashMap<>();
+        FileDigest[] digests = files.parallelStream().map(file -> {
+            try {
+                return hash(file, algorithms);
+            } catch (IOException | UncheckedIOException e) {
+                // 打印异常信息
+                System.out.println("计算摘要失败: " + file);
+                e.printStackTrace();
+                return null;
+            }
+        }).toArray(FileDigest[]::new);
+        int i = 0;
+        for (Path file : files) {
+            if (digests[i] != null) {
+                result.put(file, digests[i]);
+            }
+            i++;
+        }
+        return result;
+    }
+
+    /**
+     * 字节数组转为定长的小写十六进制字符串。
+     *
+     * @param bytes 字节数组
+     * @return 十六进制字符串，长度为字节数的两倍
+     */
+    public static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0x0F];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0x0F];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * 用同一块数据更新所有算法。
+     *
+     * @param updaters 算法
+     * @param buffer   数据
+     * @param length   有效长度
+     */
+    private static void update(Updater[] updaters, byte[] buffer, int length) {
+        if (length == 0) {
+            return;
+        }
+        for (Updater updater : updaters) {
+            updater.update(buffer, length);
+        }
+    }
+
+    /**
+     * 按算法名创建摘要计算器。
+     *
+     * @param algorithm 算法名
+     * @return 摘要计算器
+     * @throws IOException 算法不支持
+     */
+    private static Updater newUpdater(String algorithm) throws IOException {
+        if (CRC32.equalsIgnoreCase(algorithm)) {
+            // 常量 CRC32 与类同名，这里写全类名
+            Checksum checksum = new java.util.zip.CRC32();
+            return new Updater() {
+                @Override
+                public void update(byte[] buffer, int length) {
+                    checksum.update(buffer, 0, length);
+                }
+
+                @Override
+                public String finish() {
+                    return String.format("%08x", checksum.getValue());
+                }
+            };
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance(algorithm);
+            return new Updater() {
+                @Override
+                public void update(byte[] buffer, int length) {
+                    digest.update(buffer, 0, length);
+                }
+
+                @Override
+                public String finish() {
+                    return toHex(digest.digest());
+                }
+            };
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("不支持的摘要算法: " + algorithm, e);
+        }
+    }
+
+    /**
+     * 摘要计算器，统一 MessageDigest 和 Checksum 的用法。
+     */
+    private interface Updater {
+        /**
+         * 更新数据
+         *
+         * @param buffer 数据
+         * @param length 有效长度
+         */
+        void update(byte[] buffer, int length);
+
+        /**
+         * 结束计算
+         *
+         * @return 十六进制摘要
+         */
+        String finish();
+    }
+
+    /**
+     * 一个文件的摘要结果，同时记录计算时文件的大小和修改时间，用于判断缓存是否仍然有效。
+     */
+    public static final class FileDigest {
+        // 文件大小
+        private final long size;
+        // 文件修改时间，单位：毫秒
+        private final long lastModified;
+        // 算法名到十六进制摘要的映射
+        private final Map<String, String> digests;
+
+        /**
+         * 构造函数。
+         *
+         * @param size         文件大小
+         * @param lastModified 文件修改时间
+         * @param digests      算法名到十六进制摘要的映射
+         */
+        public FileDigest(long size, long lastModified, Map<String, String> digests) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.digests = Collections.unmodifiableMap(new LinkedHashMap<>(digests));
+        }
+
+        /**
+         * 计算时的文件大小
+         *
+         * @return 字节数
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * 计算时的文件修改时间
+         *
+         * @return 毫秒
+         */
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * 获取指定算法的摘要
+         *
+         * @param algorithm 算法名
+         * @return 十六进制摘要，未计算该算法返回 null
+         */
+        public String get(String algorithm) {
+            return digests.get(algorithm);
+        }
+
+        /**
+         * 所有摘要
+         *
+         * @return 算法名到十六进制摘要的映射，不可修改
+         */
+        public Map<String, String> getDigests() {
+            return digests;
+        }
+
+        /**
+         * 是否包含所有指定的算法
+         *
+         * @param algorithms 算法名
+         * @return 都包含返回 true
+         */
+        public boolean containsAll(String... algorithms) {
+            for (String algorithm : algorithms) {
+                if (!digests.containsKey(algorithm)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * 摘要字符串
+         *
+         * @return 摘要
+         */
+        @Override
+        public String toString() {
+            return digests.toString();
+        }
+    }
+}
@@ -0,0 +1,429 @@
+package org.mmc.util.file;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 类似 tail -F 持续跟踪文件新增的内容。
+ * <p>
+ * 所有被跟踪的文件共用一个 {@link WatchService} 和一个后台线程：收到目录事件后再等待 {@link #BATCH_DELAY} 毫秒合并连续的事件，
+ * 然后对有变化的文件按记录的位置用 {@link FileChannel} 只读取新增的字节；另外每 {@link #POLL_INTERVAL} 毫秒检查一次全部文件，
+ * 补上文件系统没有报告的变化。文件被替换（轮转）或变小（截断）时从头开始读取，文件被删除后等待重新创建。
+ * 每次读取后都会关闭文件，不妨碍其他程序轮转、删除日志。回调都在后台线程中执行，不要在回调中长时间阻塞。
+ */
+public final class FileTailer {
+    /**
+     * 合并连续事件的等待时间，单位：毫秒
+     */
+    public static final long BATCH_DELAY = 50;
+    /**
+     * 检查全部文件的间隔，持续有事件时也按时检查，单位：毫秒
+     */
+    public static final long POLL_INTERVAL = 500;
+    // 每次读取的字节数
+    private static final int BLOCK = 64 * 1024;
+    // 默认实例
+    private static volatile FileTailer defaultInstance;
+
+    // 目录监听
+    private final WatchService watcher;
+    // 目录到监听 key
+    private final Map<Path, WatchKey> keys = new ConcurrentHashMap<>();
+    // 目录到该目录下被跟踪的文件
+    private final Map<Path, Set<Follow>> follows = new ConcurrentHashMap<>();
+    // 读缓冲区，只在后台线程使用
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BLOCK);
+
+    /**
+     * 创建监听并启动后台线程
+     *
+     * @throws IOException 创建 WatchService 失败
+     */
+    private FileTailer() throws IOException {
+        watcher = FileSystems.getDefault().newWatchService();
+        Thread thread = new Thread(this::run, "mmc-tail");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 获取共用的实例，第一次调用时启动后台线程
+     *
+     * @return 实例
+     * @throws IOException 创建 WatchService 失败
+     */
+    public static FileTailer getDefault() throws IOException {
+        FileTailer tailer = defaultInstance;
+        if (tailer == null) {
+            synchronized (FileTailer.class) {
+                tailer = defaultInstance;
+                if (tailer == null) {
+                    tailer = new FileTailer();
+                    defaultInstance = tailer;
+                }
+            }
+        }
+        return tailer;
+    }
+
+    /**
+     * 开始跟踪文件，文件不存在时等待它被创建。
+     *
+     * @param file     文件
+     * @param fromEnd  true 只读取之后新增的内容，false 从头读取现有内容
+     * @param listener 回调
+     * @return 跟踪句柄，关闭后停止跟踪
+     * @throws IOException 监听所在目录失败
+     */
+    public Follow follow(Path file, boolean fromEnd, Listener listener) throws IOException {
+        Path absolute = file.toAbsolutePath().normalize();
+        Path dir = absolute.getParent();
+        Follow follow = new Follow(absolute, listener);
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(absolute, BasicFileAttributes.class);
+            follow.identity = identity(attributes);
+            follow.position = fromEnd ? attributes.size() : 0;
+        } catch (NoSuchFileException e) {
+            // 还不存在，创建后从头读取
+            follow.position = 0;
+        }
+        synchronized (keys) {
+            if (!keys.containsKey(dir)) {
+                keys.put(dir, dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE));
+            }
+            follows.computeIfAbsent(dir, d -> new CopyOnWriteArraySet<>()).add(follow);
+        }
+        return follow;
+    }
+
+    /**
+     * 停止跟踪，目录下没有其他被跟踪的文件时取消目录监听
+     *
+     * @param follow 跟踪句柄
+     */
+    private void unfollow(Follow follow) {
+        Path dir = follow.file.getParent();
+        synchronized (keys) {
+            Set<Follow> set = follows.get(dir);
+            if (set == null || !set.remove(follow) || !set.isEmpty()) {
+                return;
+            }
+            follows.remove(dir);
+            WatchKey key = keys.remove(dir);
+            if (key != null) {
+                key.cancel();
+            }
+        }
+    }
+
+    /**
+     * 后台线程：等待事件，合并一段时间内的事件后读取有变化的文件；距上次检查全部文件超过 {@link #POLL_INTERVAL} 时
+     * 再检查全部文件，不论这段时间内是否有事件
+     */
+    private void run() {
+        long interval = TimeUnit.MILLISECONDS.toNanos(POLL_INTERVAL);
+        long nextFullCheck = System.nanoTime() + interval;
+        while (true) {
+            Set<Follow> dirty = new LinkedHashSet<>();
+            try {
+                WatchKey key = watcher.poll(Math.max(0, nextFullCheck - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (key != null) {
+                    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(BATCH_DELAY);
+                    while (key != null) {
+                        collect(key, dirty);
+                        long wait = deadline - System.nanoTime();
+                        key = wait > 0 ? watcher.poll(wait, TimeUnit.NANOSECONDS) : watcher.poll();
+                    }
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            long now = System.nanoTime();
+            if (now - nextFullCheck >= 0) {
+                // 事件不断时也定时补查，避免某个文件的变化一直没有被报告
+                for (Set<Follow> set : follows.values()) {
+                    dirty.addAll(set);
+                }
+                nextFullCheck = now + interval;
+            }
+            for (Follow follow : dirty) {
+                try {
+                    follow.check();
+                } catch (Exception e) {
+                    // 打印异常信息，继续跟踪其他文件
+                    System.out.println("跟踪文件失败: " + follow.file);
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * 把一个 key 上的事件对应的文件加入待检查集合
+     *
+     * @param key   监听 key
+     * @param dirty 待检查的文件
+     */
+    private void collect(WatchKey key, Set<Follow> dirty) {
+        Path dir = (Path) key.watchable();
+        Set<Follow> set = follows.get(dir);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (set == null) {
+                continue;
+            }
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // 事件丢失，检查目录下全部文件
+                dirty.addAll(set);
+                continue;
+            }
+            Path name = (Path) event.context();
+            for (Follow follow : set) {
+                if (follow.file.getFileName().equals(name)) {
+                    dirty.add(follow);
+                }
+            }
+        }
+        key.reset();
+    }
+
+    /**
+     * 文件身份：优先用 fileKey（inode 等），没有时用创建时间，用于判断文件是否被替换
+     *
+     * @param attributes 文件属性
+     * @return 身份
+     */
+    private static Object identity(BasicFileAttributes attributes) {
+        Object key = attributes.fileKey();
+        return key != null ? key : attributes.creationTime();
+    }
+
+    /**
+     * 一个被跟踪的文件
+     */
+    public final class Follow implements Closeable {
+        // 文件
+        private final Path file;
+        // 回调
+        private final Listener listener;
+        // 已读取到的位置，只在后台线程修改
+        private long position;
+        // 上次读取时文件的身份，文件不存在时为 null
+        private Object identity;
+        // 已关闭
+        private volatile boolean closed;
+
+        /**
+         * 构造函数
+         *
+         * @param file     文件
+         * @param listener 回调
+         */
+        private Follow(Path file, Listener listener) {
+            this.file = file;
+            this.listener = listener;
+        }
+
+        /**
+         * 检查文件：被替换或截断时从头读取，然后读取新增的字节
+         *
+         * @throws IOException 读取失败
+         */
+        private void check() throws IOException {
+            if (closed) {
+                return;
+            }
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                // 被删除或正在轮转，等待重新创建
+                return;
+            }
+            Object current = identity(attributes);
+            if (identity != null && !identity.equals(current)) {
+                position = 0;
+                listener.onReset(true);
+            } else if (attributes.size() < position) {
+                position = 0;
+                listener.onReset(false);
+            }
+            identity = current;
+            if (attributes.size() == position) {
+                return;
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                while (!closed) {
+                    buffer.clear();
+                    int n = channel.read(buffer, position);
+                    if (n <= 0) {
+                        break;
+                    }
+                    position += n;
+                    buffer.flip();
+                    listener.onData(buffer);
+                }
+            } catch (NoSuchFileException e) {
+                // 读取前被删除
+            }
+        }
+
+        /**
+         * 已读取到的文件位置
+         *
+         * @return 位置
+         */
+        public long getPosition() {
+            return position;
+        }
+
+        /**
+         * 被跟踪的文件
+         *
+         * @return 文件
+         */
+        public Path getFile() {
+            return file;
+        }
+
+        /**
+         * 停止跟踪
+         */
+        @Override
+        public void close() {
+            closed = true;
+            unfollow(this);
+        }
+    }
+
+    /**
+     * 跟踪回调，在后台线程中调用
+     */
+    public interface Listener {
+        /**
+         * 读到新增的字节
+         *
+         * @param data 新增的字节，回调返回后失效
+         */
+        void onData(ByteBuffer data);
+
+        /**
+         * 文件被替换或截断，之后从新文件的开头读取
+         *
+         * @param rotated true 表示文件被替换（轮转），false 表示文件被截断
+         */
+        default void onReset(boolean rotated) {
+        }
+    }
+
+    /**
+     * 创建按行回调的 {@link Listener}：跨块的字符和行会拼接完整，只回调以换行符结束的行（不含换行符），
+     * 文件被替换或截断时丢弃未结束的行。
+     *
+     * @param charset 编码
+     * @param onLine  每读到一行调用一次
+     * @return 回调
+     */
+    public static Listener lines(Charset charset, Consumer<String> onLine) {
+        return new LineListener(charset, onLine);
+    }
+
+    /**
+     * 按行回调：解码器在块之间保留不完整的字符，未结束的行保留到下一块
+     */
+    private static final class LineListener implements Listener {
+        // 解码器
+        private final CharsetDecoder decoder;
+        // 行回调
+        private final Consumer<String> onLine;
+        // 解码结果
+        private final CharBuffer chars;
+        // 上一块剩下的不完整字节
+        private final ByteBuffer leftover = ByteBuffer.allocate(16);
+        // 未结束的行
+        private final StringBuilder line = new StringBuilder();
+
+        /**
+         * 构造函数
+         *
+         * @param charset 编码
+         * @param onLine  行回调
+         */
+        LineListener(Charset charset, Consumer<String> onLine) {
+            this.decoder = charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            this.onLine = onLine;
+            this.chars = CharBuffer.allocate((int) Math.ceil((BLOCK + leftover.capacity()) * (double) decoder.maxCharsPerByte()) + 1);
+        }
+
+        /**
+         * 解码新增的字节并回调完整的行
+         *
+         * @param data 新增的字节
+         */
+        @Override
+        public void onData(ByteBuffer data) {
+            chars.clear();
+            // 先补全上一块末尾不完整的字符
+            while (leftover.position() > 0 && data.hasRemaining()) {
+                leftover.put(data.get());
+                leftover.flip();
+                decoder.decode(leftover, chars, false);
+                leftover.compact();
+            }
+            decoder.decode(data, chars, false);
+            leftover.put(data);
+            chars.flip();
+            while (chars.hasRemaining()) {
+                char c = chars.get();
+                if (c == '\n') {
+                    int length = line.length();
+                    if (length > 0 && line.charAt(length - 1) == '\r') {
+                        line.setLength(length - 1);
+                    }
+                    onLine.accept(line.toString());
+                    line.setLength(0);
+                } else {
+                    line.append(c);
+                }
+            }
+        }
+
+        /**
+         * 文件被替换或截断，丢弃未结束的内容
+         *
+         * @param rotated 是否被替换
+         */
+        @Override
+        public void onReset(boolean rotated) {
+            decoder.reset();
+            leftover.clear();
+            line.setLength(0);
+        }
+    }
+}
@@ -0,0 +1,359 @@
+package org.mmc.util.file;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 基于 NIO 的目录遍历，返回惰性的 {@link Stream}。
+ * <p>
+ * 每个目录用深度为 1 的 {@link Files#walkFileTree} 列出，目录项的 {@link BasicFileAttributes} 随遍历一起取得
+ * （Windows 上直接来自目录读取结果，不再单独查询），之后判断类型、大小都复用它。子目录在列出时就经过 descend 条件，
+ * 不满足的整棵子树直接跳过。并行流会把尚未展开的子目录分给 fork/join 的其他线程，只剩一个目录时先展开它再分，
+ * 整棵树按子树并行遍历；单个目录中的文件很多时也会分给多个线程。
+ * 根目录本身是符号链接时跟随到它指向的目录，其下的符号链接都不跟随，不会因链接成环而死循环。
+ */
+public final class FileWalker {
+
+    /**
+     * 工具类不允许实例化
+     */
+    private FileWalker() {
+    }
+
+    /**
+     * 遍历目录下所有文件和子目录（不含根目录本身）；根是文件时只返回它自己。根是符号链接时跟随，
+     * 指向目录就遍历该目录，断开的链接作为链接本身返回。
+     *
+     * @param root     根目录
+     * @param descend  是否进入子目录，返回 false 的子目录整棵跳过（子目录本身仍会返回），null 表示全部进入
+     * @param parallel 是否返回并行流
+     * @return 惰性流，用完需关闭或消费完
+     */
+    public static Stream<Entry> walk(Path root, Predicate<Entry> descend, boolean parallel) {
+        List<Path> dirs = new ArrayList<>();
+        List<Entry> first = new ArrayList<>();
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(root, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            if (attrs.isSymbolicLink()) {
+                BasicFileAttributes target = linkTarget(root);
+                if (target != null && target.isDirectory()) {
+                    // walkFileTree 不跟随起点的链接，链接指向的目录在这里列出，子项的路径仍在链接之下
+                    first.addAll(listLinked(root));
+                } else {
+                    first.add(new Entry(root, target != null ? target : attrs));
+                }
+            } else if (attrs.isDirectory()) {
+                dirs.add(root);
+            } else {
+                first.add(new Entry(root, attrs));
+            }
+        } catch (IOException e) {
+            // 根目录不存在或不可读时返回空流
+            return Stream.empty();
+        }
+        WalkSpliterator spliterator = new WalkSpliterator(new ArrayDeque<>(dirs), descend);
+        spliterator.accept(first);
+        return StreamSupport.stream(spliterator, parallel);
+    }
+
+    /**
+     * 读取符号链接指向的文件的属性。
+     *
+     * @param link 符号链接
+     * @return 属性，链接断开或不可读时返回 null
+     */
+    private static BasicFileAttributes linkTarget(Path link) {
+        try {
+            return Files.readAttributes(link, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 列出符号链接指向的目录的直接子项，子项本身不跟随链接，列出失败时打印异常并返回已取得的部分。
+     *
+     * @param link 指向目录的符号链接
+     * @return 子项
+     */
+    private static List<Entry> listLinked(Path link) {
+        List<Entry> entries = new ArrayList<>();
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(link)) {
+            for (Path child : children) {
+                try {
+                    entries.add(new Entry(child, Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS)));
+                } catch (IOException e) {
+                    // 打印异常信息，跳过无法访问的项
+                    e.printStackTrace();
+                }
+            }
+        } catch (IOException e) {
+            // 打印异常信息
+            e.printStackTrace();
+        }
+        return entries;
+    }
+
+    /**
+     * 遍历目录下文件名或相对路径匹配 glob 的普通文件。
+     *
+     * @param root     根目录
+     * @param glob     glob 表达式，不含 '/' 时匹配文件名（如 "*.java"），否则匹配相对根目录的路径（如 "src/**&#47;*.java"）
+     * @param parallel 是否返回并行流
+     * @return 惰性流
+     */
+    public static Stream<Path> files(Path root, String glob, boolean parallel) {
+        Predicate<Entry> matcher = glob == null ? entry -> true : glob(root, glob);
+        return walk(root, null, parallel)
+                .filter(entry -> entry.attributes().isRegularFile())
+                .filter(matcher)
+                .map(Entry::path);
+    }
+
+    /**
+     * 并行统计目录下所有普通文件的总大小，大小取自遍历时得到的属性。
+     *
+     * @param root 根目录
+     * @return 字节数
+     */
+    public static long size(Path root) {
+        try (Stream<Entry> stream = walk(root, null, true)) {
+            return stream.filter(entry -> entry.attributes().isRegularFile())
+                    .mapToLong(entry -> entry.attributes().size())
+                    .sum();
+        }
+    }
+
+    /**
+     * 并行统计目录下的普通文件个数。
+     *
+     * @param root 根目录
+     * @return 文件个数
+     */
+    public static long count(Path root) {
+        try (Stream<Entry> stream = walk(root, null, true)) {
+            return stream.filter(entry -> entry.attributes().isRegularFile()).count();
+        }
+    }
+
+    /**
+     * 创建 glob 匹配条件。
+     *
+     * @param root 根目录，用于计算相对路径
+     * @param glob glob 表达式，不含 '/' 时匹配文件名，否则匹配相对根目录的路径
+     * @return 匹配条件
+     */
+    public static Predicate<Entry> glob(Path root, String glob) {
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        if (glob.indexOf('/') < 0) {
+            return entry -> {
+                Path name = entry.path().getFileName();
+                return name != null && matcher.matches(name);
+            };
+        }
+        return entry -> matcher.matches(root.relativize(entry.path()));
+    }
+
+    /**
+     * 列出目录的直接子项及其属性，列出失败时打印异常并返回已取得的部分。
+     *
+     * @param dir 目录
+     * @return 子项
+     */
+    static List<Entry> list(Path dir) {
+        List<Entry> entries = new ArrayList<>();
+        try {
+            Files.walkFileTree(dir, EnumSet.noneOf(FileVisitOption.class), 1, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    entries.add(new Entry(file, attrs));
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    // 打印异常信息，跳过无法访问的项
+                    exc.printStackTrace();
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            // 打印异常信息
+            e.printStackTrace();
+        }
+        return entries;
+    }
+
+    /**
+     * 目录项：路径及遍历时取得的属性。
+     */
+    public static final class Entry {
+        // 路径
+        private final Path path;
+        // 属性
+        private final BasicFileAttributes attributes;
+
+        /**
+         * 构造函数。
+         *
+         * @param path       路径
+         * @param attributes 属性
+         */
+        Entry(Path path, BasicFileAttributes attributes) {
+            this.path = path;
+            this.attributes = attributes;
+        }
+
+        /**
+         * 路径
+         *
+         * @return 路径
+         */
+        public Path path() {
+            return path;
+        }
+
+        /**
+         * 遍历时取得的属性，除根以外不跟随符号链接
+         *
+         * @return 属性
+         */
+        public BasicFileAttributes attributes() {
+            return attributes;
+        }
+
+        /**
+         * 路径字符串
+         *
+         * @return 路径字符串
+         */
+        @Override
+        public String toString() {
+            return path.toString();
+        }
+    }
+
+    /**
+     * 深度优先遍历的分割迭代器：目录列出时就把要进入的子目录压入栈中，分割时把一半子目录交给新的迭代器。
+     */
+    private static final class WalkSpliterator implements Spliterator<Entry> {
+        /**
+         * 没有待展开的目录时，当前目录剩余的子项超过该数量才继续分割
+         */
+        private static final int SPLIT_ENTRIES = 1024;
+
+        // 待展开的目录
+        private final Deque<Path> dirs;
+        // 是否进入子目录
+        private final Predicate<Entry> descend;
+        // 当前目录中尚未返回的子项
+        private Spliterator<Entry> current = Spliterators.emptySpliterator();
+
+        /**
+         * 构造函数。
+         *
+         * @param dirs    待展开的目录
+         * @param descend 是否进入子目录，null 表示全部进入
+         */
+        WalkSpliterator(Deque<Path> dirs, Predicate<Entry> descend) {
+            this.dirs = dirs;
+            this.descend = descend;
+        }
+
+        /**
+         * 把一批子项设为当前要返回的子项，其中要进入的子目录压入栈中。
+         *
+         * @param entries 子项
+         */
+        void accept(List<Entry> entries) {
+            for (Entry entry : entries) {
+                if (entry.attributes.isDirectory() && (descend == null || descend.test(entry))) {
+                    dirs.push(entry.path);
+                }
+            }
+            current = entries.spliterator();
+        }
+
+        /**
+         * 返回下一个目录项，当前目录返回完后展开下一个待展开的目录。
+         *
+         * @param action 处理
+         * @return 还有目录项返回 true
+         */
+        @Override
+        public boolean tryAdvance(Consumer<? super Entry> action) {
+            while (!current.tryAdvance(action)) {
+                Path dir = dirs.poll();
+                if (dir == null) {
+                    return false;
+                }
+                accept(list(dir));
+            }
+            return true;
+        }
+
+        /**
+         * 把一半待展开的目录分给新的迭代器；只剩一个目录且当前子项已返回完时先展开它再分，
+         * 没有待展开的目录时把当前目录中较多的剩余子项分出一半。
+         *
+         * @return 新的迭代器，无法分割返回 null
+         */
+        @Override
+        public Spliterator<Entry> trySplit() {
+            if (dirs.size() == 1 && current.estimateSize() == 0) {
+                // 遍历刚开始时只有根目录，不展开就永远分不出去
+                accept(list(dirs.poll()));
+            }
+            int pending = dirs.size();
+            if (pending == 0) {
+                return current.estimateSize() > SPLIT_ENTRIES ? current.trySplit() : null;
+            }
+            Deque<Path> half = new ArrayDeque<>();
+            int take = Math.max(1, pending / 2);
+            for (int i = 0; i < take; i++) {
+                half.add(dirs.pollLast());
+            }
+            return new WalkSpliterator(half, descend);
+        }
+
+        /**
+         * 大小未知
+         *
+         * @return Long.MAX_VALUE
+         */
+        @Override
+        public long estimateSize() {
+            return Long.MAX_VALUE;
+        }
+
+        /**
+         * 特征：元素非空且不重复
+         *
+         * @return 特征值
+         */
+        @Override
+        public int characteristics() {
+            return NONNULL | DISTINCT;
+        }
+    }
+}
@@ -0,0 +1,521 @@
+package org.mmc.util.file;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+
+/**
+ * 稀疏的行偏移索引，用于按行号随机读取大文件。
+ * <p>
+ * 每隔约 {@link #STRIDE} 行记录一个检查点（行号和该行开头的字节偏移）。建立索引时文件按换行符切段并行扫描，
+ * 每段从段首开始每 {@link #STRIDE} 行记一个检查点，各段的行号再加上前面各段的行数，只数换行字节，不解码字符串。
+ * 读取第 n 行时二分查找不超过 n 的最近检查点，从它的偏移开始最多跳过 {@link #STRIDE} 行即可到达。
+ * <p>
+ * 不小于 {@link #MIN_PERSIST_SIZE} 的文件，索引保存在文件旁边（文件名 + {@link #SUFFIX}），记录建立时的文件大小和修改时间；
+ * 更小的文件重新扫描很快，只保留在内存中。大小和修改时间都没变时直接使用；文件变大且最后一个检查点到已索引末尾的内容
+ * 校验和没变时视为追加，只从最后一个检查点扫描新增部分；其他变化都重新建立。
+ * 内存中最多保留最近使用的 {@link #MAX_INSTANCES} 个文件的索引。
+ * 只支持换行符是单字节 0x0A 的编码（UTF-8、GBK 等），与 {@link ParallelLineReader} 相同。
+ */
+public final class LineIndex {
+    /**
+     * 检查点间隔行数
+     */
+    public static final int STRIDE = 1024;
+    /**
+     * 索引文件后缀
+     */
+    public static final String SUFFIX = ".lidx";
+    /**
+     * 文件小于该大小时不写索引文件，单位：字节
+     */
+    public static final long MIN_PERSIST_SIZE = 1024 * 1024;
+    /**
+     * 内存中最多保留的索引个数
+     */
+    public static final int MAX_INSTANCES = 64;
+    // 索引文件的魔数和版本
+    private static final int MAGIC = 0x4C494458;
+    private static final int VERSION = 3;
+    // 每段最大字节数
+    private static final long MAX_CHUNK = 64L * 1024 * 1024;
+    // 扫描时批量复制的块大小
+    private static final int BLOCK = 64 * 1024;
+    // 最近使用的索引，键为文件的绝对路径，按访问顺序淘汰，访问时锁住自身
+    private static final Map<Path, LineIndex> instances = new LinkedHashMap<Path, LineIndex>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, LineIndex> eldest) {
+            return size() > MAX_INSTANCES;
+        }
+    };
+
+    // 被索引的文件
+    private final Path file;
+    // 索引文件
+    private final Path indexFile;
+    // 检查点的行号（从 0 开始）和字节偏移，按行号递增
+    private long[] lines = new long[16];
+    private long[] offsets = new long[16];
+    // 检查点个数
+    private int points;
+    // 已索引的字节数，等于最后一个换行符之后的位置
+    private long indexedLength;
+    // 已索引部分的换行符个数
+    private long newlines;
+    // 最后一个检查点到已索引末尾的内容的 CRC32，用于判断文件是否只是追加
+    private long tailChecksum;
+    // 建立索引时的文件大小和修改时间
+    private long fileSize = -1;
+    private long lastModified = -1;
+
+    /**
+     * 构造函数。
+     *
+     * @param file 被索引的文件
+     */
+    private LineIndex(Path file) {
+        this.file = file;
+        this.indexFile = file.resolveSibling(file.getFileName() + SUFFIX);
+    }
+
+    /**
+     * 获取文件的行索引：优先使用内存中或磁盘上的索引，文件有变化时重建。
+     *
+     * @param file 文件
+     * @return 最新的行索引
+     * @throws IOException 读文件失败
+     */
+    public static LineIndex of(Path file) throws IOException {
+        Path key = file.toAbsolutePath().normalize();
+        LineIndex index;
+        synchronized (instances) {
+            index = instances.get(key);
+        }
+        if (index == null) {
+            // 读索引文件不占用全局锁，同时创建时保留先放入的
+            LineIndex created = new LineIndex(key);
+            created.load();
+            synchronized (instances) {
+                index = instances.putIfAbsent(key, created);
+                if (index == null) {
+                    index = created;
+                }
+            }
+        }
+        index.refresh();
+        return index;
+    }
+
+    /**
+     * 判断编码能否使用行索引：换行符编码为单字节 0x0A。
+     *
+     * @param charset 编码
+     * @return 能使用返回 true
+     */
+    public static boolean supports(Charset charset) {
+        return ParallelLineReader.isAsciiCompatible(charset);
+    }
+
+    /**
+     * 文件的行数，最后一行没有换行符时也算一行。
+     *
+     * @return 行数
+     */
+    public synchronized long getLineCount() {
+        return fileSize > indexedLength ? newlines + 1 : newlines;
+    }
+
+    /**
+     * 打开一个从指定行开始读取的 Reader，用完需关闭。
+     *
+     * @param line    行号，从 0 开始；超过行数时 Reader 直接读到文件末尾
+     * @param charset 编码，换行符必须是单字节 0x0A
+     * @return Reader
+     * @throws IOException 读文件失败
+     */
+    public BufferedReader openAt(long line, Charset charset) throws IOException {
+        if (!supports(charset)) {
+            throw new IOException("行索引不支持该编码: " + charset);
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            channel.position(offsetOf(channel, line));
+            return new BufferedReader(new InputStreamReader(Channels.newInputStream(channel), charset));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 读取从指定行开始的若干行。
+     *
+     * @param line    行号，从 0 开始
+     * @param count   行数
+     * @param charset 编码，换行符必须是单字节 0x0A
+     * @return 行，超出文件末尾时少于 count 行
+     * @throws IOException 读文件失败
+     */
+    public List<String> readLines(long line, int count, Charset charset) throws IOException {
+        List<String> result = new ArrayList<>(Math.min(count, STRIDE));
+        try (BufferedReader reader = openAt(line, charset)) {
+            String text;
+            while (result.size() < count && (text = reader.readLine()) != null) {
+                result.add(text);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 计算指定行开头的字节偏移：从最近的检查点开始跳过剩余的行。
+     *
+     * @param line 行号，从 0 开始
+     * @return 字节偏移，超过行数时返回文件大小
+     * @throws IOException 读文件失败
+     */
+    public long offsetOf(long line) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return offsetOf(channel, line);
+        }
+    }
+
+    /**
+     * 计算指定行开头的字节偏移。
+     *
+     * @param channel 文件通道
+     * @param line    行号，从 0 开始
+     * @return 字节偏移，超过行数时返回文件大小
+     * @throws IOException 读文件失败
+     */
+    private long offsetOf(FileChannel channel, long line) throws IOException {
+        long start;
+        long skip;
+        synchronized (this) {
+            int i = Arrays.binarySearch(lines, 0, points, line);
+            if (i < 0) {
+                i = -i - 2;
+            }
+            if (i < 0) {
+                start = 0;
+                skip = line;
+            } else {
+                start = offsets[i];
+                skip = line - lines[i];
+            }
+        }
+        if (skip == 0) {
+            return start;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(BLOCK);
+        long position = start;
+        while (true) {
+            buffer.clear();
+            int n = channel.read(buffer, position);
+            if (n <= 0) {
+                return channel.size();
+            }
+            for (int k = 0; k < n; k++) {
+                if (buffer.get(k) == '\n' && --skip == 0) {
+                    return position + k + 1;
+                }
+            }
+            position += n;
+        }
+    }
+
+    /**
+     * 按文件当前的大小和修改时间检查索引：都没变直接返回；文件只是追加时去掉最后一个检查点，从它开始扫描新增部分，
+     * 保持检查点间隔；否则重建。追加的判断只校验最后一个检查点之后的内容，更早的部分被原地改写且文件变大时不会发现。
+     *
+     * @throws IOException 读文件失败
+     */
+    private synchronized void refresh() throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        long size = attrs.size();
+        long modified = attrs.lastModifiedTime().toMillis();
+        if (size == fileSize && modified == lastModified) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (isAppended(channel, size)) {
+                points--;
+                newlines = lines[points];
+                indexedLength = offsets[points];
+            } else {
+                points = 0;
+                indexedLength = 0;
+                newlines = 0;
+            }
+            scan(channel, size);
+            tailChecksum = points > 0 ? checksum(channel, offsets[points - 1], indexedLength) : 0;
+        }
+        fileSize = size;
+        lastModified = modified;
+        save();
+    }
+
+    /**
+     * 判断文件是否只在末尾追加了内容：文件变大，且最后一个检查点到已索引末尾的内容没变。
+     *
+     * @param channel 文件通道
+     * @param size    文件当前大小
+     * @return 只是追加返回 true
+     * @throws IOException 读文件失败
+     */
+    private boolean isAppended(FileChannel channel, long size) throws IOException {
+        if (fileSize < 0 || size <= fileSize || points == 0) {
+            return false;
+        }
+        return checksum(channel, offsets[points - 1], indexedLength) == tailChecksum;
+    }
+
+    /**
+     * 计算一段内容的 CRC32。
+     *
+     * @param channel 文件通道
+     * @param start   起始位置
+     * @param end     结束位置
+     * @return 校验和
+     * @throws IOException 读文件失败
+     */
+    private static long checksum(FileChannel channel, long start, long end) throws IOException {
+        CRC32 crc = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocate(BLOCK);
+        long position = start;
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(BLOCK, end - position));
+            int n = channel.read(buffer, position);
+            if (n <= 0) {
+                break;
+            }
+            buffer.flip();
+            crc.update(buffer);
+            position += n;
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * 从已索引的位置并行扫描到指定大小，追加检查点。
+     *
+     * @param channel 文件通道
+     * @param size    扫描到的位置
+     * @throws IOException 读文件失败
+     */
+    private void scan(FileChannel channel, long size) throws IOException {
+        if (indexedLength >= size) {
+            return;
+        }
+        long[] bounds = ParallelLineReader.split(channel, indexedLength, ParallelLineReader.chunkSize(size - indexedLength, MAX_CHUNK));
+        Chunk[] chunks;
+        try {
+            chunks = IntStream.range(0, bounds.length - 1).parallel()
+                    .mapToObj(i -> scanChunk(channel, bounds[i], Math.min(bounds[i + 1], size)))
+                    .toArray(Chunk[]::new);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        for (Chunk chunk : chunks) {
+            for (int i = 0; i < chunk.points; i++) {
+                addPoint(newlines + chunk.lines[i], chunk.offsets[i]);
+            }
+            newlines += chunk.newlines;
+            if (chunk.lastLineStart >= 0) {
+                indexedLength = chunk.lastLineStart;
+            }
+        }
+    }
+
+    /**
+     * 扫描一段：统计换行符，段首起每 {@link #STRIDE} 行记录一个检查点。
+     *
+     * @param channel 文件通道
+     * @param start   起始位置，是某一行的开头
+     * @param end     结束位置
+     * @return 扫描结果
+     */
+    private static Chunk scanChunk(FileChannel channel, long start, long end) {
+        Chunk chunk = new Chunk();
+        if (start >= end) {
+            return chunk;
+        }
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            byte[] block = new byte[BLOCK];
+            chunk.add(0, start);
+            long position = start;
+            while (buffer.hasRemaining()) {
+                int n = Math.min(BLOCK, buffer.remaining());
+                buffer.get(block, 0, n);
+                for (int i = 0; i < n; i++) {
+                    if (block[i] == '\n') {
+                        chunk.newlines++;
+                        long next = position + i + 1;
+                        chunk.lastLineStart = next;
+                        if (chunk.newlines % STRIDE == 0 && next < end) {
+                            chunk.add(chunk.newlines, next);
+                        }
+                    }
+                }
+                position += n;
+            }
+            if (chunk.newlines == 0) {
+                // 没有完整的行，这一段留到下次
+                chunk.points = 0;
+            }
+            return chunk;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 追加一个检查点
+     *
+     * @param line   行号
+     * @param offset 字节偏移
+     */
+    private void addPoint(long line, long offset) {
+        if (points > 0 && lines[points - 1] == line) {
+            return;
+        }
+        if (points == lines.length) {
+            lines = Arrays.copyOf(lines, points * 2);
+            offsets = Arrays.copyOf(offsets, points * 2);
+        }
+        lines[points] = line;
+        offsets[points] = offset;
+        points++;
+    }
+
+    /**
+     * 读取磁盘上的索引，不存在或格式不对时忽略
+     */
+    private synchronized void load() {
+        if (!Files.isRegularFile(indexFile)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != STRIDE) {
+                return;
+            }
+            long size = in.readLong();
+            long modified = in.readLong();
+            long length = in.readLong();
+            long count = in.readLong();
+            long checksum = in.readLong();
+            int n = in.readInt();
+            long[] loadedLines = new long[Math.max(16, n)];
+            long[] loadedOffsets = new long[Math.max(16, n)];
+            for (int i = 0; i < n; i++) {
+                loadedLines[i] = in.readLong();
+                loadedOffsets[i] = in.readLong();
+            }
+            lines = loadedLines;
+            offsets = loadedOffsets;
+            points = n;
+            fileSize = size;
+            lastModified = modified;
+            indexedLength = length;
+            newlines = count;
+            tailChecksum = checksum;
+        } catch (IOException e) {
+            // 打印异常信息，重新建立索引
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 把索引写到文件旁边：先写临时文件再原子改名；目录不可写时只保留内存中的索引。
+     * 文件小于 {@link #MIN_PERSIST_SIZE} 时不写，并删掉以前留下的索引文件。
+     */
+    private void save() {
+        Path temp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        try {
+            if (fileSize < MIN_PERSIST_SIZE) {
+                Files.deleteIfExists(indexFile);
+                return;
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(STRIDE);
+                out.writeLong(fileSize);
+                out.writeLong(lastModified);
+                out.writeLong(indexedLength);
+                out.writeLong(newlines);
+                out.writeLong(tailChecksum);
+                out.writeInt(points);
+                for (int i = 0; i < points; i++) {
+                    out.writeLong(lines[i]);
+                    out.writeLong(offsets[i]);
+                }
+            }
+            try {
+                Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            // 打印异常信息
+            System.out.println("保存行索引失败: " + indexFile);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 一段的扫描结果，行号相对于段首。
+     */
+    private static final class Chunk {
+        // 检查点的行号和偏移
+        long[] lines = new long[16];
+        long[] offsets = new long[16];
+        // 检查点个数
+        int points;
+        // 换行符个数
+        long newlines;
+        // 最后一个换行符之后的位置，没有换行符为 -1
+        long lastLineStart = -1;
+
+        /**
+         * 追加一个检查点
+         *
+         * @param line   行号
+         * @param offset 字节偏移
+         */
+        void add(long line, long offset) {
+            if (points == lines.length) {
+                lines = Arrays.copyOf(lines, points * 2);
+                offsets = Arrays.copyOf(offsets, points * 2);
+            }
+            lines[points] = line;
+            offsets[points] = offset;
+            points++;
+        }
+    }
+}
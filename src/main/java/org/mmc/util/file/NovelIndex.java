@@ -0,0 +1,641 @@
+package org.mmc.util.file;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+/**
+ * 小说章节索引：记录每章标题、字节范围和字符数，按需只解码某一章。
+ * <p>
+ * 建立索引时文件按换行符切段并行扫描，每行先在字节上查找"第"字的编码，找不到直接跳过，找到才解码该行并用预编译的正则判断是否为标题；
+ * 各段同时统计标题之间文本的字符数（解码后丢弃，不保留字符串）。索引保存在文件旁边（文件名 + {@link #SUFFIX}），
+ * 文件大小、修改时间、编码和标题规则都没变时直接读取，不再扫描。读取某一章时只映射并解码该章的字节范围。
+ * <p>
+ * 内存中最多保留最近使用的 {@link #MAX_INSTANCES} 个索引；文件变化后再次获取时丢弃旧索引，换成新建的索引。
+ * <p>
+ * 只支持换行符是单字节 0x0A 的编码（UTF-8、GBK 等）。
+ */
+public final class NovelIndex {
+    /**
+     * 默认的章节标题规则：第X章、第X节、第X回，X 为中文数字或阿拉伯数字
+     */
+    public static final Pattern DEFAULT_TITLE = Pattern.compile("第[一二三四五六七八九十百千万零\\d]+[章节回]");
+    /**
+     * 索引文件后缀
+     */
+    public static final String SUFFIX = ".nidx";
+    /**
+     * 内存中最多保留的索引个数
+     */
+    public static final int MAX_INSTANCES = 64;
+    // 索引文件的魔数和版本
+    private static final int MAGIC = 0x4E494458;
+    private static final int VERSION = 1;
+    // 每段最大字节数
+    private static final long MAX_CHUNK = 64L * 1024 * 1024;
+    // 统计字符数时每次解码的字符数
+    private static final int DECODE_BLOCK = 8192;
+    // 最近使用的索引，键为文件的绝对路径、编码和标题规则，按访问顺序淘汰，访问时锁住自身
+    private static final Map<String, NovelIndex> instances = new LinkedHashMap<String, NovelIndex>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, NovelIndex> eldest) {
+            return size() > MAX_INSTANCES;
+        }
+    };
+
+    // 小说文件
+    private final Path file;
+    // 编码
+    private final Charset charset;
+    // 标题规则
+    private final Pattern titlePattern;
+    // 建立索引时的文件大小和修改时间，-1 表示还没有建立
+    private volatile long fileSize = -1;
+    private volatile long lastModified = -1;
+    // 第一个标题之前的内容的字节数和字符数
+    private long prefaceEnd;
+    private long prefaceChars;
+    // 章节
+    private List<Chapter> chapters = Collections.emptyList();
+
+    /**
+     * 构造函数。
+     *
+     * @param file         小说文件
+     * @param charset      编码
+     * @param titlePattern 标题规则
+     */
+    private NovelIndex(Path file, Charset charset, Pattern titlePattern) {
+        this.file = file;
+        this.charset = charset;
+        this.titlePattern = titlePattern;
+    }
+
+    /**
+     * 获取小说的章节索引，使用默认的标题规则。
+     *
+     * @param file    小说文件
+     * @param charset 编码
+     * @return 最新的章节索引
+     * @throws IOException 读文件失败或编码不支持
+     */
+    public static NovelIndex of(Path file, Charset charset) throws IOException {
+        return of(file, charset, DEFAULT_TITLE);
+    }
+
+    /**
+     * 获取小说的章节索引：优先使用内存中或磁盘上的索引，文件有变化时重新建立。
+     *
+     * @param file         小说文件
+     * @param charset      编码，换行符必须是单字节 0x0A
+     * @param titlePattern 标题规则，在整行中查找
+     * @return 最新的章节索引
+     * @throws IOException 读文件失败或编码不支持
+     */
+    public static NovelIndex of(Path file, Charset charset, Pattern titlePattern) throws IOException {
+        if (!ParallelLineReader.isAsciiCompatible(charset)) {
+            throw new IOException("章节索引不支持该编码: " + charset);
+        }
+        Path path = file.toAbsolutePath().normalize();
+        String key = path + "|" + charset.name() + "|" + titlePattern.pattern();
+        BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+        NovelIndex index;
+        synchronized (instances) {
+            index = instances.get(key);
+            // 文件变化后丢弃旧索引，之前取得旧索引的调用方不受影响
+            if (index == null || index.isStale(attrs.size(), attrs.lastModifiedTime().toMillis())) {
+                index = new NovelIndex(path, charset, titlePattern);
+                instances.put(key, index);
+            }
+        }
+        // 在全局锁外读取或建立索引，同一个索引的并发调用在 refresh 上等待
+        index.refresh();
+        return index;
+    }
+
+    /**
+     * 判断索引是否与文件当前的大小和修改时间不一致，还没有建立的索引不算过期。
+     *
+     * @param size     文件当前大小
+     * @param modified 文件当前修改时间
+     * @return 不一致返回 true
+     */
+    private boolean isStale(long size, long modified) {
+        long indexedSize = fileSize;
+        return indexedSize >= 0 && (indexedSize != size || lastModified != modified);
+    }
+
+    /**
+     * 章节列表，按文件顺序
+     *
+     * @return 章节，不可修改
+     */
+    public synchronized List<Chapter> getChapters() {
+        return chapters;
+    }
+
+    /**
+     * 第一个标题之前的内容（书名、简介等）的字节数
+     *
+     * @return 字节数
+     */
+    public synchronized long getPrefaceEnd() {
+        return prefaceEnd;
+    }
+
+    /**
+     * 读取第一个标题之前的内容
+     *
+     * @return 内容，没有时为空字符串
+     * @throws IOException 读文件失败
+     */
+    public String readPreface() throws IOException {
+        return decodeRange(0, getPrefaceEnd());
+    }
+
+    /**
+     * 读取某一章的正文（不含标题行），只映射并解码该章的字节范围。
+     *
+     * @param index 章节序号，从 0 开始
+     * @return 正文，保留原来的换行符
+     * @throws IOException 读文件失败
+     */
+    public String readChapter(int index) throws IOException {
+        Chapter chapter = getChapters().get(index);
+        return decodeRange(chapter.bodyStart, chapter.end);
+    }
+
+    /**
+     * 映射并解码一段字节。
+     *
+     * @param start 起始位置
+     * @param end   结束位置
+     * @return 文本
+     * @throws IOException 读文件失败
+     */
+    private String decodeRange(long start, long end) throws IOException {
+        if (end <= start) {
+            return "";
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            CharsetDecoder decoder = charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            return decoder.decode(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start)).toString();
+        }
+    }
+
+    /**
+     * 按文件当前的大小和修改时间检查索引，变化时重新建立并保存。
+     *
+     * @throws IOException 读文件失败
+     */
+    private synchronized void refresh() throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        long size = attrs.size();
+        long modified = attrs.lastModifiedTime().toMillis();
+        if (size == fileSize && modified == lastModified) {
+            return;
+        }
+        if (fileSize < 0 && load(size, modified)) {
+            return;
+        }
+        build(size);
+        // 先写修改时间，fileSize 不小于 0 表示已经建立
+        lastModified = modified;
+        fileSize = size;
+        save();
+    }
+
+    /**
+     * 并行扫描全文，建立章节列表。
+     *
+     * @param size 文件大小
+     * @throws IOException 读文件失败
+     */
+    private void build(long size) throws IOException {
+        Segment[] segments;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long[] bounds = ParallelLineReader.split(channel, ParallelLineReader.chunkSize(size, MAX_CHUNK));
+            byte[] marker = titlePattern == DEFAULT_TITLE ? "第".getBytes(charset) : null;
+            try {
+                segments = IntStream.range(0, bounds.length - 1).parallel()
+                        .mapToObj(i -> scanSegment(channel, bounds[i], Math.min(bounds[i + 1], size), marker))
+                        .toArray(Segment[]::new);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+        // 合并各段：标题之间的字符数跨段累加
+        List<Chapter> result = new ArrayList<>();
+        long preface = 0;
+        long pendingChars = 0;
+        String title = null;
+        long titleStart = 0;
+        long bodyStart = 0;
+        for (Segment segment : segments) {
+            pendingChars += segment.pieceChars.get(0);
+            for (int i = 0; i < segment.titles.size(); i++) {
+                if (title == null) {
+                    preface = pendingChars;
+                } else {
+                    result.add(new Chapter(result.size(), title, titleStart, bodyStart, segment.titleStarts.get(i), pendingChars));
+                }
+                title = segment.titles.get(i);
+                titleStart = segment.titleStarts.get(i);
+                bodyStart = segment.bodyStarts.get(i);
+                pendingChars = segment.pieceChars.get(i + 1);
+            }
+        }
+        if (title == null) {
+            prefaceEnd = size;
+            prefaceChars = pendingChars;
+        } else {
+            result.add(new Chapter(result.size(), title, titleStart, bodyStart, size, pendingChars));
+            prefaceEnd = result.get(0).start;
+            prefaceChars = preface;
+        }
+        chapters = Collections.unmodifiableList(result);
+    }
+
+    /**
+     * 扫描一段：找出其中的标题行，并统计各标题之间文本的字符数。
+     *
+     * @param channel 文件通道
+     * @param start   起始位置，是某一行的开头
+     * @param end     结束位置
+     * @param marker  标题必须包含的字节，null 表示每行都用正则判断
+     * @return 扫描结果
+     */
+    private Segment scanSegment(FileChannel channel, long start, long end, byte[] marker) {
+        Segment segment = new Segment();
+        if (start >= end) {
+            segment.pieceChars.add(0L);
+            return segment;
+        }
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            int length = buffer.limit();
+            CharCounter counter = new CharCounter(charset);
+            int pieceStart = 0;
+            int lineStart = 0;
+            while (lineStart < length) {
+                int lineEnd = lineStart;
+                while (lineEnd < length && buffer.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+                int next = Math.min(length, lineEnd + 1);
+                if (marker == null || contains(buffer, lineStart, lineEnd, marker)) {
+                    String line = decodeLine(buffer, lineStart, lineEnd);
+                    if (titlePattern.matcher(line).find()) {
+                        segment.pieceChars.add(counter.count(buffer, pieceStart, lineStart));
+                        segment.titles.add(line);
+                        segment.titleStarts.add(start + lineStart);
+                        segment.bodyStarts.add(start + next);
+                        pieceStart = next;
+                    }
+                }
+                lineStart = next;
+            }
+            segment.pieceChars.add(counter.count(buffer, pieceStart, length));
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 判断一行的字节中是否包含指定的字节序列。
+     *
+     * @param buffer 数据
+     * @param from   行起始位置
+     * @param to     行结束位置（不含换行符）
+     * @param marker 字节序列
+     * @return 包含返回 true
+     */
+    private static boolean contains(ByteBuffer buffer, int from, int to, byte[] marker) {
+        byte first = marker[0];
+        for (int i = from; i <= to - marker.length; i++) {
+            if (buffer.get(i) != first) {
+                continue;
+            }
+            int k = 1;
+            while (k < marker.length && buffer.get(i + k) == marker[k]) {
+                k++;
+            }
+            if (k == marker.length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 解码一行，去掉行尾的 '\r'。
+     *
+     * @param buffer 数据
+     * @param from   行起始位置
+     * @param to     行结束位置（不含换行符）
+     * @return 行
+     */
+    private String decodeLine(ByteBuffer buffer, int from, int to) {
+        if (to > from && buffer.get(to - 1) == '\r') {
+            to--;
+        }
+        byte[] bytes = new byte[to - from];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(from + i);
+        }
+        return new String(bytes, charset);
+    }
+
+    /**
+     * 读取磁盘上的索引，文件大小、修改时间、编码、标题规则都一致时才使用。
+     *
+     * @param size     文件当前大小
+     * @param modified 文件当前修改时间
+     * @return 使用了磁盘上的索引返回 true
+     */
+    private boolean load(long size, long modified) {
+        Path indexFile = indexFile();
+        if (!Files.isRegularFile(indexFile)) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != size || in.readLong() != modified
+                    || !in.readUTF().equals(charset.name()) || !in.readUTF().equals(titlePattern.pattern())) {
+                return false;
+            }
+            long loadedPrefaceEnd = in.readLong();
+            long loadedPrefaceChars = in.readLong();
+            int count = in.readInt();
+            List<Chapter> loaded = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                loaded.add(new Chapter(i, in.readUTF(), in.readLong(), in.readLong(), in.readLong(), in.readLong()));
+            }
+            prefaceEnd = loadedPrefaceEnd;
+            prefaceChars = loadedPrefaceChars;
+            chapters = Collections.unmodifiableList(loaded);
+            lastModified = modified;
+            fileSize = size;
+            return true;
+        } catch (IOException e) {
+            // 打印异常信息，重新建立索引
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * 把索引写到文件旁边：先写临时文件再原子改名；目录不可写时只保留内存中的索引
+     */
+    private void save() {
+        Path indexFile = indexFile();
+        Path temp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(fileSize);
+                out.writeLong(lastModified);
+                out.writeUTF(charset.name());
+                out.writeUTF(titlePattern.pattern());
+                out.writeLong(prefaceEnd);
+                out.writeLong(prefaceChars);
+                out.writeInt(chapters.size());
+                for (Chapter chapter : chapters) {
+                    out.writeUTF(chapter.title);
+                    out.writeLong(chapter.start);
+                    out.writeLong(chapter.bodyStart);
+                    out.writeLong(chapter.end);
+                    out.writeLong(chapter.chars);
+                }
+            }
+            try {
+                Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            // 打印异常信息
+            System.out.println("保存章节索引失败: " + indexFile);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 索引文件路径
+     *
+     * @return 小说文件名 + {@link #SUFFIX}
+     */
+    private Path indexFile() {
+        return file.resolveSibling(file.getFileName() + SUFFIX);
+    }
+
+    /**
+     * 一章的索引信息。
+     */
+    public static final class Chapter {
+        // 序号，从 0 开始
+        private final int index;
+        // 标题行（去掉换行符）
+        private final String title;
+        // 标题行开头的字节位置
+        private final long start;
+        // 正文开头的字节位置
+        private final long bodyStart;
+        // 正文结束的字节位置（不含），即下一章标题行的开头或文件末尾
+        private final long end;
+        // 正文的字符数（UTF-16 字符，含换行符）
+        private final long chars;
+
+        /**
+         * 构造函数。
+         *
+         * @param index     序号
+         * @param title     标题行
+         * @param start     标题行开头的字节位置
+         * @param bodyStart 正文开头的字节位置
+         * @param end       正文结束的字节位置
+         * @param chars     正文的字符数
+         */
+        Chapter(int index, String title, long start, long bodyStart, long end, long chars) {
+            this.index = index;
+            this.title = title;
+            this.start = start;
+            this.bodyStart = bodyStart;
+            this.end = end;
+            this.chars = chars;
+        }
+
+        /**
+         * 序号，从 0 开始
+         *
+         * @return 序号
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * 标题行
+         *
+         * @return 标题
+         */
+        public String getTitle() {
+            return title;
+        }
+
+        /**
+         * 标题行开头的字节位置
+         *
+         * @return 字节位置
+         */
+        public long getStart() {
+            return start;
+        }
+
+        /**
+         * 正文开头的字节位置
+         *
+         * @return 字节位置
+         */
+        public long getBodyStart() {
+            return bodyStart;
+        }
+
+        /**
+         * 正文结束的字节位置（不含）
+         *
+         * @return 字节位置
+         */
+        public long getEnd() {
+            return end;
+        }
+
+        /**
+         * 正文的字符数
+         *
+         * @return 字符数
+         */
+        public long getChars() {
+            return chars;
+        }
+
+        /**
+         * 章节描述
+         *
+         * @return 描述
+         */
+        @Override
+        public String toString() {
+            return index + " " + title + " [" + start + ", " + end + ") " + chars + " 字";
+        }
+    }
+
+    /**
+     * 一段的扫描结果，pieceChars 比 titles 多一个：第一个是段首到第一个标题之间的字符数，之后是每个标题之后的字符数。
+     */
+    private static final class Segment {
+        // 标题行
+        final List<String> titles = new ArrayList<>();
+        // 标题行开头的字节位置
+        final List<Long> titleStarts = new ArrayList<>();
+        // 正文开头的字节位置
+        final List<Long> bodyStarts = new ArrayList<>();
+        // 各部分文本的字符数
+        final List<Long> pieceChars = new ArrayList<>();
+    }
+
+    /**
+     * 统计一段字节解码后的字符数，复用解码缓冲区，不生成字符串。
+     */
+    private static final class CharCounter {
+        // 解码器
+        private final CharsetDecoder decoder;
+        // 解码缓冲区
+        private final CharBuffer chars = CharBuffer.allocate(DECODE_BLOCK);
+
+        /**
+         * 构造函数。
+         *
+         * @param charset 编码
+         */
+        CharCounter(Charset charset) {
+            this.decoder = charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+
+        /**
+         * 统计字符数。
+         *
+         * @param buffer 数据
+         * @param from   起始位置
+         * @param to     结束位置
+         * @return 字符数
+         */
+        long count(ByteBuffer buffer, int from, int to) {
+            if (to <= from) {
+                return 0;
+            }
+            ByteBuffer in = buffer.duplicate();
+            in.limit(to);
+            in.position(from);
+            decoder.reset();
+            long total = 0;
+            while (true) {
+                chars.clear();
+                CoderResult result = decoder.decode(in, chars, true);
+                total += chars.position();
+                if (result.isUnderflow()) {
+                    break;
+                }
+                if (result.isError()) {
+                    throwUnchecked(result);
+                }
+            }
+            chars.clear();
+            decoder.flush(chars);
+            return total + chars.position();
+        }
+
+        /**
+         * REPLACE 模式下不会发生解码错误，发生时转为运行时异常。
+         *
+         * @param result 解码结果
+         */
+        private static void throwUnchecked(CoderResult result) {
+            try {
+                result.throwException();
+            } catch (CharacterCodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,521 @@
+package org.mmc.util.file;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * 并行按行读取大文件。
+ * <p>
+ * 把文件按字节切成若干段，每段的边界对齐到换行符之后，各段用 {@link FileChannel#map} 映射后在 fork/join 线程上拆分、解码。
+ * 无序模式下各线程直接回调，适合线程安全的统计处理；有序模式下各段并行解码，调用线程按文件顺序回调，
+ * 同时只保留有限个段的解码结果。统计行数只数换行字节，不解码字符串。
+ * <p>
+ * 换行按 '\n' 切分，行尾的 '\r' 会被去掉。只有 UTF-8、GBK、ISO-8859-1 等"换行符是单字节 0x0A 且不会出现在多字节字符中"的编码能并行，
+ * UTF-16 等编码自动退化为单线程 {@link BufferedReader}。
+ */
+public final class ParallelLineReader {
+    /**
+     * 每段最小字节数，文件很小时不拆分
+     */
+    private static final long MIN_CHUNK = 1024 * 1024;
+    /**
+     * 无序模式每段最大字节数，单次映射不能超过 2GB
+     */
+    private static final long MAX_CHUNK = 256L * 1024 * 1024;
+    /**
+     * 有序模式每段最大字节数，限制等待回调的解码结果占用的内存
+     */
+    private static final long MAX_ORDERED_CHUNK = 16L * 1024 * 1024;
+    /**
+     * 从映射内存批量复制到堆数组的块大小
+     */
+    private static final int BLOCK = 64 * 1024;
+
+    /**
+     * 工具类不允许实例化
+     */
+    private ParallelLineReader() {
+    }
+
+    /**
+     * 统计文件行数：并行数换行字节，最后一行没有换行符时也算一行，与 {@link BufferedReader#readLine()} 的行数一致（'\r' 单独换行的文件除外）。
+     *
+     * @param file 文件
+     * @return 行数
+     * @throws IOException 读文件失败
+     */
+    public static long countLines(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0) {
+                return 0;
+            }
+            long[] bounds = split(channel, chunkSize(size, MAX_CHUNK));
+            long lines = invoke(new CountTask(channel, bounds, 0, bounds.length - 1));
+            ByteBuffer last = ByteBuffer.allocate(1);
+            channel.read(last, size - 1);
+            return last.get(0) == '\n' ? lines : lines + 1;
+        }
+    }
+
+    /**
+     * 并行读取每一行，回调在 fork/join 线程上并发执行、不保证顺序，consumer 必须线程安全。
+     *
+     * @param file     文件
+     * @param charset  编码
+     * @param consumer 行处理
+     * @throws IOException 读文件失败
+     */
+    public static void forEachLine(Path file, Charset charset, Consumer<String> consumer) throws IOException {
+        if (!isAsciiCompatible(charset)) {
+            forEachLineSequential(file, charset, line -> {
+                consumer.accept(line);
+                return true;
+            });
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0) {
+                return;
+            }
+            long[] bounds = split(channel, chunkSize(size, MAX_CHUNK));
+            invoke(new LineTask(channel, bounds, 0, bounds.length - 1, charset, consumer));
+        }
+    }
+
+    /**
+     * 按文件顺序读取每一行：各段并行解码，回调在调用线程上按顺序执行。
+     *
+     * @param file    文件
+     * @param charset 编码
+     * @param action  行处理，返回 false 时停止读取
+     * @throws IOException 读文件失败
+     */
+    public static void forEachLineOrdered(Path file, Charset charset, Predicate<String> action) throws IOException {
+        if (!isAsciiCompatible(charset)) {
+            forEachLineSequential(file, charset, action);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0) {
+                return;
+            }
+            long[] bounds = split(channel, chunkSize(size, MAX_ORDERED_CHUNK));
+            int segments = bounds.length - 1;
+            int window = ForkJoinPool.commonPool().getParallelism() * 2;
+            Deque<ForkJoinTask<List<String>>> inFlight = new ArrayDeque<>();
+            int next = 0;
+            try {
+                while (next < segments || !inFlight.isEmpty()) {
+                    // 保持最多 window 个段在并行解码
+                    while (next < segments && inFlight.size() < window) {
+                        int index = next++;
+                        inFlight.add(ForkJoinPool.commonPool().submit(
+                                () -> decodeSegment(channel, bounds[index], bounds[index + 1], charset)));
+                    }
+                    for (String line : join(inFlight.poll())) {
+                        if (!action.test(line)) {
+                            return;
+                        }
+                    }
+                }
+            } finally {
+                for (ForkJoinTask<List<String>> task : inFlight) {
+                    task.cancel(false);
+                }
+            }
+        }
+    }
+
+    /**
+     * 单线程按行读取，用于不能按换行字节拆分的编码。
+     *
+     * @param file    文件
+     * @param charset 编码
+     * @param action  行处理，返回 false 时停止读取
+     * @throws IOException 读文件失败
+     */
+    private static void forEachLineSequential(Path file, Charset charset, Predicate<String> action) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(Files.newInputStream(file), charset))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!action.test(line)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 判断编码能否按换行字节拆分：'\n' 编码为单字节 0x0A。
+     *
+     * @param charset 编码
+     * @return 能拆分返回 true
+     */
+    static boolean isAsciiCompatible(Charset charset) {
+        if (charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.ISO_8859_1)
+                || charset.equals(StandardCharsets.US_ASCII)) {
+            return true;
+        }
+        if (!charset.canEncode()) {
+            return false;
+        }
+        byte[] newline = "\n".getBytes(charset);
+        byte[] letter = "a".getBytes(charset);
+        return newline.length == 1 && newline[0] == '\n' && letter.length == 1 && letter[0] == 'a';
+    }
+
+    /**
+     * 计算每段大小：让每个线程分到约 4 段，便于负载均衡。
+     *
+     * @param size 文件大小
+     * @param max  每段最大字节数
+     * @return 每段字节数
+     */
+    static long chunkSize(long size, long max) {
+        long perTask = size / (ForkJoinPool.commonPool().getParallelism() * 4L);
+        return Math.max(MIN_CHUNK, Math.min(max, perTask));
+    }
+
+    /**
+     * 按大致大小切分文件，每个切分点向后移到下一个换行符之后。
+     *
+     * @param channel   文件通道
+     * @param chunkSize 每段大致字节数
+     * @return 切分点，第一个为 0，最后一个为文件大小
+     * @throws IOException 读文件失败
+     */
+    static long[] split(FileChannel channel, long chunkSize) throws IOException {
+        return split(channel, 0, chunkSize);
+    }
+
+    /**
+     * 从指定的行起始位置开始按大致大小切分文件，每个切分点向后移到下一个换行符之后。
+     *
+     * @param channel   文件通道
+     * @param start     起始位置，必须是某一行的开头
+     * @param chunkSize 每段大致字节数
+     * @return 切分点，第一个为 start，最后一个为文件大小
+     * @throws IOException 读文件失败
+     */
+    static long[] split(FileChannel channel, long start, long chunkSize) throws IOException {
+        long size = channel.size();
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(start);
+        ByteBuffer probe = ByteBuffer.allocate(8192);
+        long position = start + chunkSize;
+        while (position < size) {
+            long boundary = nextLineStart(channel, position, probe);
+            if (boundary >= size) {
+                break;
+            }
+            bounds.add(boundary);
+            position = boundary + chunkSize;
+        }
+        bounds.add(size);
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * 从指定位置向后查找第一个换行符，返回它之后的位置。
+     *
+     * @param channel  文件通道
+     * @param position 起始位置
+     * @param probe    读缓冲区
+     * @return 下一行的起始位置，找不到时返回文件大小
+     * @throws IOException 读文件失败
+     */
+    private static long nextLineStart(FileChannel channel, long position, ByteBuffer probe) throws IOException {
+        long size = channel.size();
+        while (position < size) {
+            probe.clear();
+            int n = channel.read(probe, position);
+            if (n <= 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                if (probe.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += n;
+        }
+        return size;
+    }
+
+    /**
+     * 映射并解码一段，返回其中的所有行。
+     *
+     * @param channel 文件通道
+     * @param start   起始位置
+     * @param end     结束位置
+     * @param charset 编码
+     * @return 行
+     * @throws IOException 映射失败
+     */
+    private static List<String> decodeSegment(FileChannel channel, long start, long end, Charset charset) throws IOException {
+        List<String> lines = new ArrayList<>();
+        splitLines(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start), charset, lines::add);
+        return lines;
+    }
+
+    /**
+     * 把映射内存按 '\n' 拆成行并解码，行尾的 '\r' 去掉；跨越复制块的行先拼接再解码。
+     *
+     * @param buffer  映射内存
+     * @param charset 编码
+     * @param sink    行处理
+     */
+    static void splitLines(MappedByteBuffer buffer, Charset charset, Consumer<String> sink) {
+        byte[] block = new byte[BLOCK];
+        byte[] carry = new byte[256];
+        int carryLen = 0;
+        while (buffer.hasRemaining()) {
+            int n = Math.min(BLOCK, buffer.remaining());
+            buffer.get(block, 0, n);
+            int start = 0;
+            for (int i = 0; i < n; i++) {
+                if (block[i] != '\n') {
+                    continue;
+                }
+                if (carryLen == 0) {
+                    sink.accept(decode(block, start, i - start, charset));
+                } else {
+                    carry = append(carry, carryLen, block, start, i - start);
+                    carryLen += i - start;
+                    sink.accept(decode(carry, 0, carryLen, charset));
+                    carryLen = 0;
+                }
+                start = i + 1;
+            }
+            if (start < n) {
+                carry = append(carry, carryLen, block, start, n - start);
+                carryLen += n - start;
+            }
+        }
+        if (carryLen > 0) {
+            sink.accept(decode(carry, 0, carryLen, charset));
+        }
+    }
+
+    /**
+     * 把字节追加到可扩容的数组。
+     *
+     * @param target    目标数组
+     * @param targetLen 目标已用长度
+     * @param src       源数组
+     * @param offset    源起始位置
+     * @param length    长度
+     * @return 追加后的数组，可能是新数组
+     */
+    private static byte[] append(byte[] target, int targetLen, byte[] src, int offset, int length) {
+        if (targetLen + length > target.length) {
+            target = Arrays.copyOf(target, Math.max(target.length * 2, targetLen + length));
+        }
+        System.arraycopy(src, offset, target, targetLen, length);
+        return target;
+    }
+
+    /**
+     * 解码一行，去掉行尾的 '\r'。
+     *
+     * @param bytes   字节数组
+     * @param offset  起始位置
+     * @param length  长度
+     * @param charset 编码
+     * @return 行
+     */
+    private static String decode(byte[] bytes, int offset, int length, Charset charset) {
+        if (length > 0 && bytes[offset + length - 1] == '\r') {
+            length--;
+        }
+        return new String(bytes, offset, length, charset);
+    }
+
+    /**
+     * 在公共 fork/join 线程池执行任务，把任务中的 IO 异常还原为 IOException。
+     *
+     * @param task 任务
+     * @param <T>  结果类型
+     * @return 结果
+     * @throws IOException 任务中的 IO 异常
+     */
+    private static <T> T invoke(ForkJoinTask<T> task) throws IOException {
+        try {
+            return ForkJoinPool.commonPool().invoke(task);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * 等待任务结果，把任务中的 IO 异常还原为 IOException。
+     *
+     * @param task 任务
+     * @param <T>  结果类型
+     * @return 结果
+     * @throws IOException 任务中的 IO 异常
+     */
+    private static <T> T join(ForkJoinTask<T> task) throws IOException {
+        try {
+            return task.join();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (RuntimeException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 分段统计换行字节数的任务，段数大于 1 时二分递归。
+     */
+    private static class CountTask extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        // 文件通道
+        private final FileChannel channel;
+        // 切分点
+        private final long[] bounds;
+        // 负责的段范围 [from, to)
+        private final int from;
+        private final int to;
+
+        /**
+         * 构造函数。
+         *
+         * @param channel 文件通道
+         * @param bounds  切分点
+         * @param from    起始段
+         * @param to      结束段（不含）
+         */
+        CountTask(FileChannel channel, long[] bounds, int from, int to) {
+            this.channel = channel;
+            this.bounds = bounds;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * 统计负责的段中的换行字节数。
+         *
+         * @return 换行字节数
+         */
+        @Override
+        protected Long compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                CountTask left = new CountTask(channel, bounds, from, mid);
+                left.fork();
+                long right = new CountTask(channel, bounds, mid, to).compute();
+                return left.join() + right;
+            }
+            try {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, bounds[from], bounds[to] - bounds[from]);
+                byte[] block = new byte[BLOCK];
+                long count = 0;
+                while (buffer.hasRemaining()) {
+                    int n = Math.min(BLOCK, buffer.remaining());
+                    buffer.get(block, 0, n);
+                    for (int i = 0; i < n; i++) {
+                        if (block[i] == '\n') {
+                            count++;
+                        }
+                    }
+                }
+                return count;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * 分段拆行并回调的任务，段数大于 1 时二分递归。
+     */
+    private static class LineTask extends RecursiveTask<Void> {
+        private static final long serialVersionUID = 1L;
+
+        // 文件通道
+        private final FileChannel channel;
+        // 切分点
+        private final long[] bounds;
+        // 负责的段范围 [from, to)
+        private final int from;
+        private final int to;
+        // 编码
+        private final Charset charset;
+        // 行处理
+        private final Consumer<String> consumer;
+
+        /**
+         * 构造函数。
+         *
+         * @param channel  文件通道
+         * @param bounds   切分点
+         * @param from     起始段
+         * @param to       结束段（不含）
+         * @param charset  编码
+         * @param consumer 行处理
+         */
+        LineTask(FileChannel channel, long[] bounds, int from, int to, Charset charset, Consumer<String> consumer) {
+            this.channel = channel;
+            this.bounds = bounds;
+            this.from = from;
+            this.to = to;
+            this.charset = charset;
+            this.consumer = consumer;
+        }
+
+        /**
+         * 拆分负责的段并回调每一行。
+         *
+         * @return null
+         */
+        @Override
+        protected Void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                LineTask left = new LineTask(channel, bounds, from, mid, charset, consumer);
+                left.fork();
+                new LineTask(channel, bounds, mid, to, charset, consumer).compute();
+                left.join();
+                return null;
+            }
+            try {
+                splitLines(channel.map(FileChannel.MapMode.READ_ONLY, bounds[from], bounds[to] - bounds[from]), charset, consumer);
+                return null;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,630 @@
+package org.mmc.util.file;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * 流式查找替换文件内容，创建时编译一次，可在多个线程、多个文件上重复使用。
+ * <p>
+ * 文本模式把所有要查找的字符串建成一个 Aho-Corasick 自动机，一遍扫描同时查找全部字符串，非重叠、最左最长匹配，
+ * 可以跨行；正则模式按行匹配（保留原来的换行符）。每个文件先只读扫描，找到第一处匹配就停止，没有匹配的文件不写；
+ * 有匹配时边读边写到同目录的临时文件，刷盘并复制原文件的权限和属主后原子替换原文件，内存占用与文件大小无关。
+ * 不能按指定编码解码的文件（如二进制文件）跳过，不会被改写。
+ */
+public final class TextReplacer {
+    // 每次读取的字符数
+    private static final int BLOCK = 64 * 1024;
+    // 临时文件后缀
+    private static final String TEMP_SUFFIX = ".replacing";
+
+    // 文本模式：要查找的字符串和对应的替换内容
+    private final String[] targets;
+    private final String[] replacements;
+    // 自动机：每个状态的子节点字符（有序）和子状态、失败指针、深度、以该状态结尾的最长匹配（-1 表示没有）
+    private final char[][] keys;
+    private final int[][] children;
+    private final int[] fail;
+    private final int[] depth;
+    private final int[] match;
+    // 正则模式：正则和替换内容
+    private final Pattern pattern;
+    private final String replacement;
+
+    /**
+     * 文本模式：同时查找替换多个字符串。
+     *
+     * @param replacements 要查找的字符串到替换内容的映射，查找的字符串不能为空
+     */
+    public TextReplacer(Map<String, String> replacements) {
+        this.targets = new String[replacements.size()];
+        this.replacements = new String[replacements.size()];
+        int i = 0;
+        for (Map.Entry<String, String> entry : replacements.entrySet()) {
+            if (entry.getKey() == null || entry.getKey().isEmpty()) {
+                throw new IllegalArgumentException("要查找的字符串不能为空");
+            }
+            targets[i] = entry.getKey();
+            this.replacements[i] = entry.getValue() == null ? "" : entry.getValue();
+            i++;
+        }
+        // 建 trie
+        List<StringBuilder> nodeKeys = new ArrayList<>();
+        List<List<Integer>> nodeChildren = new ArrayList<>();
+        List<Integer> nodeDepth = new ArrayList<>();
+        List<Integer> nodeMatch = new ArrayList<>();
+        nodeKeys.add(new StringBuilder());
+        nodeChildren.add(new ArrayList<>());
+        nodeDepth.add(0);
+        nodeMatch.add(-1);
+        for (int p = 0; p < targets.length; p++) {
+            int state = 0;
+            for (char c : targets[p].toCharArray()) {
+                int k = nodeKeys.get(state).indexOf(String.valueOf(c));
+                if (k >= 0) {
+                    state = nodeChildren.get(state).get(k);
+                } else {
+                    int created = nodeKeys.size();
+                    nodeKeys.add(new StringBuilder());
+                    nodeChildren.add(new ArrayList<>());
+                    nodeDepth.add(nodeDepth.get(state) + 1);
+                    nodeMatch.add(-1);
+                    nodeKeys.get(state).append(c);
+                    nodeChildren.get(state).add(created);
+                    state = created;
+                }
+            }
+            nodeMatch.set(state, p);
+        }
+        int size = nodeKeys.size();
+        keys = new char[size][];
+        children = new int[size][];
+        fail = new int[size];
+        depth = new int[size];
+        match = new int[size];
+        for (int s = 0; s < size; s++) {
+            // 子节点按字符排序，查找时二分
+            char[] chars = nodeKeys.get(s).toString().toCharArray();
+            Integer[] order = new Integer[chars.length];
+            for (int k = 0; k < order.length; k++) {
+                order[k] = k;
+            }
+            Arrays.sort(order, (a, b) -> Character.compare(chars[a], chars[b]));
+            keys[s] = new char[chars.length];
+            children[s] = new int[chars.length];
+            for (int k = 0; k < order.length; k++) {
+                keys[s][k] = chars[order[k]];
+                children[s][k] = nodeChildren.get(s).get(order[k]);
+            }
+            depth[s] = nodeDepth.get(s);
+            match[s] = nodeMatch.get(s);
+        }
+        // 按层计算失败指针，没有自身匹配的状态继承失败指针上的最长匹配
+        int[] queue = new int[size];
+        int head = 0;
+        int tail = 0;
+        for (int child : children[0]) {
+            fail[child] = 0;
+            queue[tail++] = child;
+        }
+        while (head < tail) {
+            int s = queue[head++];
+            for (int k = 0; k < keys[s].length; k++) {
+                int child = children[s][k];
+                fail[child] = step(fail[s], keys[s][k]);
+                if (match[child] < 0) {
+                    match[child] = match[fail[child]];
+                }
+                queue[tail++] = child;
+            }
+        }
+        this.pattern = null;
+        this.replacement = null;
+    }
+
+    /**
+     * 正则模式：按行查找替换，正则只编译一次。
+     *
+     * @param regex       正则，不能跨行
+     * @param replacement 替换内容，可以用 $1 引用分组
+     */
+    public TextReplacer(String regex, String replacement) {
+        this.pattern = Pattern.compile(regex);
+        this.replacement = replacement;
+        this.targets = null;
+        this.replacements = null;
+        this.keys = null;
+        this.children = null;
+        this.fail = null;
+        this.depth = null;
+        this.match = null;
+    }
+
+    /**
+     * 创建只有一组查找替换的文本模式
+     *
+     * @param target      要查找的字符串
+     * @param replacement 替换内容
+     * @return 替换器
+     */
+    public static TextReplacer literal(String target, String replacement) {
+        Map<String, String> map = new LinkedHashMap<>();
+        map.put(target, replacement);
+        return new TextReplacer(map);
+    }
+
+    /**
+     * 替换文件内容：没有匹配时不写文件；有匹配时写临时文件后原子替换。
+     *
+     * @param file    文件
+     * @param charset 编码
+     * @return 替换的次数，0 表示文件没有改动
+     * @throws IOException 读写失败，或文件不能按该编码解码
+     */
+    public long replace(Path file, Charset charset) throws IOException {
+        // 先只读扫描，找到第一处匹配就停止
+        try (Reader in = open(file, charset)) {
+            if (!find(in)) {
+                return 0;
+            }
+        }
+        Path temp = file.resolveSibling(file.getFileName() + TEMP_SUFFIX);
+        try {
+            long count;
+            try (Reader in = open(file, charset);
+                 Writer out = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(temp), charset), BLOCK)) {
+                count = pattern == null ? replaceLiterals(in, out) : replaceLines(in, out);
+            }
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            // 临时文件按默认权限创建，替换前改成原文件的权限和属主
+            FileCopier.copyPermissions(file, temp);
+            try {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return count;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * 替换目录下所有符合条件的文件，文件交给线程池并行处理。
+     *
+     * @param root    根目录
+     * @param charset 编码
+     * @param filter  文件过滤条件，null 表示所有文件
+     * @param threads 线程数
+     * @return 统计结果
+     */
+    public Summary replaceTree(Path root, Charset charset, Predicate<Path> filter, int threads) {
+        Summary summary = new Summary();
+        long begin = System.nanoTime();
+        AtomicInteger threadIndex = new AtomicInteger();
+        // 队列有界，排满时由遍历线程自己执行，遍历不会堆积大量待处理任务
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 4), r -> {
+            Thread thread = new Thread(r, "mmc-replace-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+        try (Stream<FileWalker.Entry> files = FileWalker.walk(root, null, false)) {
+            files.filter(entry -> entry.attributes().isRegularFile())
+                    .map(FileWalker.Entry::path)
+                    .filter(path -> !path.getFileName().toString().endsWith(TEMP_SUFFIX))
+                    .filter(path -> filter == null || filter.test(path))
+                    .forEach(path -> pool.execute(() -> replaceTreeFile(path, charset, summary)));
+        } finally {
+            pool.shutdown();
+            try {
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            summary.elapsedNanos = System.nanoTime() - begin;
+        }
+        return summary;
+    }
+
+    /**
+     * 替换目录中的一个文件并记录统计，无法解码的文件计为跳过，其他失败打印异常并计入失败数。
+     *
+     * @param file    文件
+     * @param charset 编码
+     * @param summary 统计结果
+     */
+    private void replaceTreeFile(Path file, Charset charset, Summary summary) {
+        try {
+            long count = replace(file, charset);
+            summary.files.increment();
+            if (count > 0) {
+                summary.changed.increment();
+                summary.replacements.add(count);
+            }
+        } catch (CharacterCodingException e) {
+            summary.skipped.increment();
+        } catch (IOException | RuntimeException e) {
+            // 打印异常信息
+            System.out.println("替换失败: " + file);
+            e.printStackTrace();
+            summary.failed.increment();
+        }
+    }
+
+    /**
+     * 打开文件，遇到不能解码的字节时抛出 {@link CharacterCodingException}。
+     *
+     * @param file    文件
+     * @param charset 编码
+     * @return Reader
+     * @throws IOException 打开失败
+     */
+    private static Reader open(Path file, Charset charset) throws IOException {
+        return new InputStreamReader(Files.newInputStream(file), charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT));
+    }
+
+    /**
+     * 只读扫描，判断是否有匹配。
+     *
+     * @param in 输入
+     * @return 找到匹配返回 true
+     * @throws IOException 读取失败
+     */
+    private boolean find(Reader in) throws IOException {
+        if (pattern != null) {
+            LineSplitter lines = new LineSplitter(in);
+            while (lines.next()) {
+                if (pattern.matcher(lines.line).find()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        char[] buffer = new char[BLOCK];
+        int state = 0;
+        int n;
+        while ((n = in.read(buffer)) >= 0) {
+            for (int i = 0; i < n; i++) {
+                state = step(state, buffer[i]);
+                if (match[state] >= 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 文本模式流式替换：非重叠、最左最长匹配。
+     * <p>
+     * 在位置 i 处自动机的深度为 d 时，之后找到的匹配起点都不小于 i + 1 - d，所以当前候选匹配的起点小于它时就可以确定；
+     * 确定后输出候选之前的文本和替换内容，并从匹配之后重新扫描。未确定的字符最多保留最长查找字符串的长度。
+     *
+     * @param in  输入
+     * @param out 输出
+     * @return 替换的次数
+     * @throws IOException 读写失败
+     */
+    private long replaceLiterals(Reader in, Writer out) throws IOException {
+        char[] buffer = new char[BLOCK];
+        StringBuilder pending = new StringBuilder();
+        // pending 中 [0, emitted) 已输出，scan 为下一个要扫描的位置
+        int emitted = 0;
+        int scan = 0;
+        int state = 0;
+        // 当前候选匹配，bestTarget 为 -1 表示没有
+        int bestTarget = -1;
+        int bestStart = 0;
+        int bestEnd = 0;
+        long count = 0;
+        boolean eof = false;
+        while (!eof) {
+            int n = in.read(buffer);
+            if (n < 0) {
+                eof = true;
+            } else {
+                pending.append(buffer, 0, n);
+            }
+            while (true) {
+                while (scan < pending.length()) {
+                    state = step(state, pending.charAt(scan));
+                    scan++;
+                    int found = match[state];
+                    if (found >= 0) {
+                        int start = scan - targets[found].length();
+                        if (bestTarget < 0 || start <= bestStart) {
+                            bestTarget = found;
+                            bestStart = start;
+                            bestEnd = scan;
+                        }
+                    }
+                    if (bestTarget >= 0 && bestStart < scan - depth[state]) {
+                        writeRange(out, pending, emitted, bestStart, buffer);
+                        out.write(replacements[bestTarget]);
+                        count++;
+                        emitted = bestEnd;
+                        scan = bestEnd;
+                        state = 0;
+                        bestTarget = -1;
+                    }
+                }
+                if (!eof || bestTarget < 0) {
+                    break;
+                }
+                // 输入结束，剩下的候选直接确定
+                writeRange(out, pending, emitted, bestStart, buffer);
+                out.write(replacements[bestTarget]);
+                count++;
+                emitted = bestEnd;
+                scan = bestEnd;
+                state = 0;
+                bestTarget = -1;
+            }
+            // 输出不可能再属于任何匹配的部分
+            int safe = eof ? pending.length() : scan - depth[state];
+            if (bestTarget >= 0) {
+                safe = Math.min(safe, bestStart);
+            }
+            if (safe > emitted) {
+                writeRange(out, pending, emitted, safe, buffer);
+                emitted = safe;
+            }
+            if (emitted >= BLOCK) {
+                pending.delete(0, emitted);
+                scan -= emitted;
+                bestStart -= emitted;
+                bestEnd -= emitted;
+                emitted = 0;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 正则模式按行替换，保留每行原来的换行符。
+     *
+     * @param in  输入
+     * @param out 输出
+     * @return 替换的次数
+     * @throws IOException 读写失败
+     */
+    private long replaceLines(Reader in, Writer out) throws IOException {
+        LineSplitter lines = new LineSplitter(in);
+        StringBuffer replaced = new StringBuffer();
+        long count = 0;
+        while (lines.next()) {
+            Matcher matcher = pattern.matcher(lines.line);
+            if (matcher.find()) {
+                replaced.setLength(0);
+                do {
+                    matcher.appendReplacement(replaced, replacement);
+                    count++;
+                } while (matcher.find());
+                matcher.appendTail(replaced);
+                out.append(replaced);
+            } else {
+                out.append(lines.line);
+            }
+            out.write(lines.terminator);
+        }
+        return count;
+    }
+
+    /**
+     * 输出 StringBuilder 的一段，经由复用的字符数组，不生成字符串。
+     *
+     * @param out     输出
+     * @param text    文本
+     * @param from    起始位置
+     * @param to      结束位置
+     * @param scratch 复用的字符数组
+     * @throws IOException 写入失败
+     */
+    private static void writeRange(Writer out, StringBuilder text, int from, int to, char[] scratch) throws IOException {
+        while (from < to) {
+            int n = Math.min(scratch.length, to - from);
+            text.getChars(from, from + n, scratch, 0);
+            out.write(scratch, 0, n);
+            from += n;
+        }
+    }
+
+    /**
+     * 自动机转移：沿失败指针回退直到有对应的子节点。
+     *
+     * @param state 当前状态
+     * @param c     字符
+     * @return 下一个状态
+     */
+    private int step(int state, char c) {
+        while (true) {
+            int k = Arrays.binarySearch(keys[state], c);
+            if (k >= 0) {
+                return children[state][k];
+            }
+            if (state == 0) {
+                return 0;
+            }
+            state = fail[state];
+        }
+    }
+
+    /**
+     * 按行读取，保留每行的换行符（"\n" 或 "\r\n"，最后一行可能没有）。
+     */
+    private static final class LineSplitter {
+        // 输入
+        private final Reader in;
+        // 读缓冲区
+        private final char[] buffer = new char[BLOCK];
+        // 缓冲区中的有效范围
+        private int position;
+        private int limit;
+        // 当前行（不含换行符）
+        final StringBuilder line = new StringBuilder();
+        // 当前行的换行符
+        String terminator = "";
+
+        /**
+         * 构造函数。
+         *
+         * @param in 输入
+         */
+        LineSplitter(Reader in) {
+            this.in = in;
+        }
+
+        /**
+         * 读取下一行。
+         *
+         * @return 读到返回 true，已到末尾返回 false
+         * @throws IOException 读取失败
+         */
+        boolean next() throws IOException {
+            line.setLength(0);
+            boolean any = false;
+            while (true) {
+                if (position >= limit) {
+                    limit = in.read(buffer);
+                    position = 0;
+                    if (limit < 0) {
+                        limit = 0;
+                        terminator = "";
+                        return any;
+                    }
+                }
+                any = true;
+                int start = position;
+                while (position < limit && buffer[position] != '\n') {
+                    position++;
+                }
+                line.append(buffer, start, position - start);
+                if (position < limit) {
+                    position++;
+                    int length = line.length();
+                    if (length > 0 && line.charAt(length - 1) == '\r') {
+                        line.setLength(length - 1);
+                        terminator = "\r\n";
+                    } else {
+                        terminator = "\n";
+                    }
+                    return true;
+                }
+            }
+        }
+    }
+
+    /**
+     * 目录替换的统计结果。
+     */
+    public static class Summary {
+        // 处理的文件数
+        final LongAdder files = new LongAdder();
+        // 改动的文件数
+        final LongAdder changed = new LongAdder();
+        // 替换的次数
+        final LongAdder replacements = new LongAdder();
+        // 无法解码而跳过的文件数
+        final LongAdder skipped = new LongAdder();
+        // 失败的文件数
+        final LongAdder failed = new LongAdder();
+        // 总耗时，单位：纳秒
+        volatile long elapsedNanos;
+
+        /**
+         * 处理的文件数
+         *
+         * @return 文件数
+         */
+        public long getFiles() {
+            return files.sum();
+        }
+
+        /**
+         * 改动的文件数
+         *
+         * @return 文件数
+         */
+        public long getChanged() {
+            return changed.sum();
+        }
+
+        /**
+         * 替换的次数
+         *
+         * @return 次数
+         */
+        public long getReplacements() {
+            return replacements.sum();
+        }
+
+        /**
+         * 无法按指定编码解码而跳过的文件数
+         *
+         * @return 文件数
+         */
+        public long getSkipped() {
+            return skipped.sum();
+        }
+
+        /**
+         * 失败的文件数
+         *
+         * @return 文件数
+         */
+        public long getFailed() {
+            return failed.sum();
+        }
+
+        /**
+         * 总耗时，单位：毫秒
+         *
+         * @return 毫秒
+         */
+        public long getElapsedMillis() {
+            return elapsedNanos / 1_000_000;
+        }
+
+        /**
+         * 统计摘要
+         *
+         * @return 摘要
+         */
+        @Override
+        public String toString() {
+            return String.format("文件 %d 个，改动 %d 个，替换 %d 处，跳过 %d，失败 %d，耗时 %d ms",
+                    getFiles(), getChanged(), getReplacements(), getSkipped(), getFailed(), getElapsedMillis());
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package org.mmc.util.file;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 并行转换文件编码。
+ * <p>
+ * 输入按换行符之后的位置切段（换行字节不会出现在多字节字符中间，因此不会切开字符），各段映射后在 fork/join 线程上用
+ * {@link CharsetDecoder}/{@link CharsetEncoder} 转码。第 i 段的输出位置等于前 i 段输出长度之和，前面的段转码完成即可确定，
+ * 各段随后用 {@link FileChannel#write(ByteBuffer, long)} 直接写到输出文件的对应位置，不产生临时文件、不再二次拷贝。
+ * 同时转码中的段数有上限，内存占用与文件大小无关。
+ * <p>
+ * 非法字节默认按 {@link CodingErrorAction#REPLACE} 替换，与 new String(bytes, charset) 一致；结果与单线程整体转码逐字节相同。
+ * 严格模式下遇到非法字节或无法编码的字符抛出 {@link CharacterCodingException}，输出文件内容不完整，由调用方删除。
+ * 源编码不能按换行字节切分（如 UTF-16），或目标编码每次编码都会写入 BOM（如 "UTF-16"）时，改为单线程顺序转码：
+ * 整个文件共用一个解码器和编码器，经固定大小的缓冲区边读边写，内存占用同样与文件大小无关。
+ * 输入和输出不能是同一个文件。
+ */
+public final class Transcoder {
+    /**
+     * 每段最大字节数
+     */
+    private static final long MAX_CHUNK = 8L * 1024 * 1024;
+    /**
+     * 顺序转码时的缓冲区大小
+     */
+    private static final int STREAM_BUFFER = 64 * 1024;
+
+    /**
+     * 工具类不允许实例化
+     */
+    private Transcoder() {
+    }
+
+    /**
+     * 转换文件编码，输出文件已存在时覆盖。
+     *
+     * @param input         输入文件
+     * @param sourceCharset 源编码
+     * @param output        输出文件
+     * @param targetCharset 目标编码
+     * @return 输出的字节数
+     * @throws IOException              读写文件失败
+     * @throws IllegalArgumentException 输入和输出是同一个文件
+     */
+    public static long transcode(Path input, Charset sourceCharset, Path output, Charset targetCharset) throws IOException {
+        return transcode(input, sourceCharset, output, targetCharset, false);
+    }
+
+    /**
+     * 转换文件编码，输出文件已存在时覆盖。
+     *
+     * @param input         输入文件
+     * @param sourceCharset 源编码
+     * @param output        输出文件
+     * @param targetCharset 目标编码
+     * @param strict        true 时遇到非法字节或无法编码的字符抛出异常，false 时替换
+     * @return 输出的字节数
+     * @throws CharacterCodingException 严格模式下输入不是合法的源编码，或含有目标编码无法表示的字符
+     * @throws IOException              读写文件失败
+     * @throws IllegalArgumentException 输入和输出是同一个文件
+     */
+    public static long transcode(Path input, Charset sourceCharset, Path output, Charset targetCharset,
+                                 boolean strict) throws IOException {
+        CodingErrorAction action = strict ? CodingErrorAction.REPORT : CodingErrorAction.REPLACE;
+        // 打开输出时会清空文件，同一个文件会丢掉尚未读取的内容
+        if (Files.exists(output) && Files.isSameFile(input, output)) {
+            throw new IllegalArgumentException("输入和输出不能是同一个文件: " + input);
+        }
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            if (size == 0) {
+                return 0;
+            }
+            if (!ParallelLineReader.isAsciiCompatible(sourceCharset) || encoderWritesPrefix(targetCharset)) {
+                return transcodeSequential(in, sourceCharset, out, targetCharset, action);
+            }
+            long[] bounds = ParallelLineReader.split(in, ParallelLineReader.chunkSize(size, MAX_CHUNK));
+            return transcodeChunks(in, bounds, sourceCharset, out, targetCharset, action);
+        }
+    }
+
+    /**
+     * 并行转码各段，并按前面各段的输出长度确定写入位置。
+     *
+     * @param in            输入通道
+     * @param bounds        切分点
+     * @param sourceCharset 源编码
+     * @param out           输出通道
+     * @param targetCharset 目标编码
+     * @param action        非法输入的处理方式
+     * @return 输出的字节数
+     * @throws IOException 读写文件失败，或 REPORT 模式下遇到非法输入
+     */
+    private static long transcodeChunks(FileChannel in, long[] bounds, Charset sourceCharset,
+                                        FileChannel out, Charset targetCharset, CodingErrorAction action) throws IOException {
+        Semaphore permits = new Semaphore(ForkJoinPool.commonPool().getParallelism() * 2);
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
+        // 下一段的输出位置
+        CompletableFuture<Long> offset = CompletableFuture.completedFuture(0L);
+        try {
+            for (int i = 0; i < bounds.length - 1; i++) {
+                permits.acquire();
+                long start = bounds[i];
+                long end = bounds[i + 1];
+                CompletableFuture<ByteBuffer> encoded = CompletableFuture.supplyAsync(
+                        () -> encodeChunk(in, start, end, sourceCharset, targetCharset, action), ForkJoinPool.commonPool());
+                CompletableFuture<Void> write = encoded.thenCombineAsync(offset, (buffer, position) -> {
+                    writeFully(out, buffer, position);
+                    return null;
+                }, ForkJoinPool.commonPool());
+                write.whenComplete((v, e) -> permits.release());
+                writes.add(write);
+                offset = offset.thenCombine(encoded, (position, buffer) -> position + buffer.limit());
+            }
+            CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0])).join();
+            return offset.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("转码被中断", e);
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 单线程顺序转码：共用一个解码器和编码器，按固定大小的缓冲区读入、解码、编码并顺序写出。
+     *
+     * @param in            输入通道
+     * @param sourceCharset 源编码
+     * @param out           输出通道，从开头写
+     * @param targetCharset 目标编码
+     * @param action        非法输入的处理方式
+     * @return 输出的字节数
+     * @throws IOException 读写文件失败，或 REPORT 模式下遇到非法输入
+     */
+    private static long transcodeSequential(FileChannel in, Charset sourceCharset, FileChannel out, Charset targetCharset,
+                                            CodingErrorAction action) throws IOException {
+        CharsetDecoder decoder = newDecoder(sourceCharset, action);
+        CharsetEncoder encoder = newEncoder(targetCharset, action);
+        ByteBuffer bytes = ByteBuffer.allocate(STREAM_BUFFER);
+        CharBuffer chars = CharBuffer.allocate(STREAM_BUFFER);
+        ByteBuffer encoded = ByteBuffer.allocate(STREAM_BUFFER);
+        long written = 0;
+        boolean eof = false;
+        CoderResult result;
+        do {
+            if (!eof && in.read(bytes) < 0) {
+                eof = true;
+            }
+            // 解码当前读到的字节，字符缓冲区满时先编码写出再继续
+            bytes.flip();
+            result = decoder.decode(bytes, chars, eof);
+            if (result.isError()) {
+                result.throwException();
+            }
+            bytes.compact();
+            chars.flip();
+            written += encode(encoder, chars, false, encoded, out);
+            chars.compact();
+        } while (!eof || result.isOverflow());
+        // 写出解码器和编码器中剩余的内容
+        while (decoder.flush(chars).isOverflow()) {
+            chars.flip();
+            written += encode(encoder, chars, false, encoded, out);
+            chars.compact();
+        }
+        chars.flip();
+        written += encode(encoder, chars, true, encoded, out);
+        while (encoder.flush(encoded).isOverflow()) {
+            written += drain(encoded, out);
+        }
+        return written + drain(encoded, out);
+    }
+
+    /**
+     * 编码字符缓冲区中的内容并写出，输出缓冲区满时先写出再继续；不完整的代理对留在字符缓冲区中。
+     *
+     * @param encoder    编码器
+     * @param chars      待编码字符，读模式
+     * @param endOfInput 是否为最后的输入
+     * @param encoded    输出缓冲区，写模式，返回时已清空
+     * @param out        输出通道
+     * @return 写出的字节数
+     * @throws IOException 写文件失败，或 REPORT 模式下遇到无法编码的字符
+     */
+    private static long encode(CharsetEncoder encoder, CharBuffer chars, boolean endOfInput,
+                               ByteBuffer encoded, FileChannel out) throws IOException {
+        long written = 0;
+        CoderResult result;
+        while ((result = encoder.encode(chars, encoded, endOfInput)).isOverflow()) {
+            written += drain(encoded, out);
+        }
+        if (result.isError()) {
+            result.throwException();
+        }
+        return written + drain(encoded, out);
+    }
+
+    /**
+     * 把输出缓冲区中的内容顺序写出并清空缓冲区。
+     *
+     * @param encoded 输出缓冲区，写模式
+     * @param out     输出通道
+     * @return 写出的字节数
+     * @throws IOException 写文件失败
+     */
+    private static int drain(ByteBuffer encoded, FileChannel out) throws IOException {
+        encoded.flip();
+        int length = encoded.remaining();
+        while (encoded.hasRemaining()) {
+            out.write(encoded);
+        }
+        encoded.clear();
+        return length;
+    }
+
+    /**
+     * 映射一段输入并转码到新的缓冲区。
+     *
+     * @param in            输入通道
+     * @param start         起始位置
+     * @param end           结束位置
+     * @param sourceCharset 源编码
+     * @param targetCharset 目标编码
+     * @param action        非法输入的处理方式
+     * @return 转码结果，position 为 0，limit 为长度
+     */
+    private static ByteBuffer encodeChunk(FileChannel in, long start, long end, Charset sourceCharset, Charset targetCharset,
+                                          CodingErrorAction action) {
+        try {
+            CharsetDecoder decoder = newDecoder(sourceCharset, action);
+            CharsetEncoder encoder = newEncoder(targetCharset, action);
+            CharBuffer chars = decoder.decode(in.map(FileChannel.MapMode.READ_ONLY, start, end - start));
+            return encoder.encode(chars);
+        } catch (IOException e) {
+            // 包括 REPORT 模式下的 CharacterCodingException
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 创建解码器。
+     *
+     * @param charset 编码
+     * @param action  非法输入的处理方式
+     * @return 解码器
+     */
+    private static CharsetDecoder newDecoder(Charset charset, CodingErrorAction action) {
+        return charset.newDecoder()
+                .onMalformedInput(action)
+                .onUnmappableCharacter(action);
+    }
+
+    /**
+     * 创建编码器。
+     *
+     * @param charset 编码
+     * @param action  无法编码的字符的处理方式
+     * @return 编码器
+     */
+    private static CharsetEncoder newEncoder(Charset charset, CodingErrorAction action) {
+        return charset.newEncoder()
+                .onMalformedInput(action)
+                .onUnmappableCharacter(action);
+    }
+
+    /**
+     * 把缓冲区写到输出文件的指定位置。
+     *
+     * @param out      输出通道
+     * @param buffer   数据
+     * @param position 写入位置
+     */
+    private static void writeFully(FileChannel out, ByteBuffer buffer, long position) {
+        try {
+            ByteBuffer data = buffer.duplicate();
+            while (data.hasRemaining()) {
+                position += out.write(data, position);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 判断编码器是否在每次编码的开头写入额外字节（如 BOM），这类编码不能分段编码后拼接。
+     *
+     * @param charset 编码
+     * @return 会写入前缀返回 true
+     */
+    static boolean encoderWritesPrefix(Charset charset) {
+        if (!charset.canEncode()) {
+            return true;
+        }
+        return "aa".getBytes(charset).length != 2 * "a".getBytes(charset).length;
+    }
+}
@@ -0,0 +1,393 @@
+package org.mmc.util.log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 异步批量文件日志追加器。
+ * <p>
+ * 业务线程只把日志行放入有界无锁队列（{@link MpscRingBuffer}），由一个后台线程批量取出，
+ * 编码到复用的缓冲区后写入始终打开的 {@link FileChannel}。队列满时按 {@link OverflowPolicy} 阻塞、丢弃或采样。
+ * 文件超过指定大小或到达指定时间间隔时滚动：当前文件改名为 "文件名.yyyyMMdd-HHmmss"，再新建文件继续写；
+ * 改名失败时继续写当前文件，稍后再试。写文件失败时未写出的数据留在缓冲区，重新打开文件后重试，
+ * 缓冲区被积压的数据占满时新的日志计入丢弃条数。
+ */
+public class AsyncAppender implements Closeable {
+    /**
+     * 默认队列容量
+     */
+    public static final int DEFAULT_CAPACITY = 8192;
+    /**
+     * 采样策略下队列压力大时每多少条保留一条
+     */
+    private static final int SAMPLE_RATE = 10;
+    /**
+     * 写缓冲区大小，单位：字节
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+    /**
+     * 后台线程空闲时的最长休眠时间，单位：纳秒
+     */
+    private static final long IDLE_PARK = 100_000_000L;
+    /**
+     * 阻塞策略下等待空位的休眠时间，单位：纳秒
+     */
+    private static final long BLOCK_PARK = 50_000L;
+    /**
+     * 滚动改名失败后多久再试，单位：毫秒
+     */
+    private static final long ROLL_RETRY = 1000;
+
+    // 日志文件路径
+    private final File file;
+    // 日志队列
+    private final MpscRingBuffer<String> queue;
+    // 队列满时的处理策略
+    private final OverflowPolicy policy;
+    // 文件超过该大小时滚动，0 表示不按大小滚动，单位：字节
+    private final long maxFileSize;
+    // 滚动时间间隔，0 表示不按时间滚动，单位：毫秒
+    private final long rollInterval;
+    // 后台写文件线程
+    private final Thread writer;
+    // 丢弃的日志条数
+    private final LongAdder dropped = new LongAdder();
+    // 采样计数
+    private final AtomicLong sampleCounter = new AtomicLong();
+    // 已写入文件的日志条数（按出队位置计），供 flush 等待
+    private volatile long written;
+    // 后台线程是否在休眠，生产者据此决定是否唤醒
+    private volatile boolean waiting;
+    // 是否已关闭
+    private volatile boolean closed;
+
+    // 以下字段只在后台线程访问
+    // 写缓冲区
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    // 当前文件通道
+    private FileChannel channel;
+    // 当前文件大小
+    private long fileSize;
+    // 下一次按时间滚动的时间点
+    private long nextRollAt;
+    // 已经写入提示的丢弃条数
+    private long reportedDropped;
+    // 滚动改名失败后，在该时间点之前不再尝试滚动
+    private long rollRetryAt;
+    // 上一次写文件是否失败，连续失败时只打印第一次的异常
+    private boolean failing;
+
+    /**
+     * 构造函数，使用默认容量、阻塞策略，不滚动文件。
+     *
+     * @param filePath 日志文件路径
+     */
+    public AsyncAppender(String filePath) {
+        this(filePath, DEFAULT_CAPACITY, OverflowPolicy.BLOCK, 0, 0);
+    }
+
+    /**
+     * 构造函数，启动后台写文件线程。
+     *
+     * @param filePath     日志文件路径
+     * @param capacity     队列容量，向上取整为 2 的幂
+     * @param policy       队列满时的处理策略
+     * @param maxFileSize  文件超过该大小时滚动，0 表示不按大小滚动，单位：字节
+     * @param rollInterval 滚动时间间隔，0 表示不按时间滚动，单位：毫秒
+     */
+    public AsyncAppender(String filePath, int capacity, OverflowPolicy policy, long maxFileSize, long rollInterval) {
+        this.file = new File(filePath).getAbsoluteFile();
+        this.queue = new MpscRingBuffer<>(capacity);
+        this.policy = policy;
+        this.maxFileSize = maxFileSize;
+        this.rollInterval = rollInterval;
+        this.nextRollAt = rollInterval > 0 ? System.currentTimeMillis() + rollInterval : Long.MAX_VALUE;
+        this.writer = new Thread(this::runWriter, "mmc-log-writer-" + file.getName());
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * 追加一行日志，不等待写盘。
+     *
+     * @param line 日志内容，写入时自动追加换行
+     * @return 放入队列返回 true，被丢弃或已关闭返回 false
+     */
+    public boolean append(String line) {
+        if (closed) {
+            return false;
+        }
+        boolean accepted;
+        switch (policy) {
+            case DROP:
+                accepted = queue.offer(line);
+                break;
+            case SAMPLE:
+                // 队列压力大时每 SAMPLE_RATE 条保留一条
+                accepted = (queue.size() < queue.capacity() / 4 * 3
+                        || sampleCounter.getAndIncrement() % SAMPLE_RATE == 0) && queue.offer(line);
+                break;
+            default:
+                accepted = offerBlocking(line);
+                break;
+        }
+        if (!accepted) {
+            dropped.increment();
+            return false;
+        }
+        if (waiting) {
+            LockSupport.unpark(writer);
+        }
+        return true;
+    }
+
+    /**
+     * 阻塞直到放入队列或追加器关闭。
+     *
+     * @param line 日志内容
+     * @return 放入队列返回 true
+     */
+    private boolean offerBlocking(String line) {
+        while (!queue.offer(line)) {
+            if (closed) {
+                return false;
+            }
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(this, BLOCK_PARK);
+        }
+        return true;
+    }
+
+    /**
+     * 等待调用前已放入队列的日志全部写入文件。
+     */
+    public void flush() {
+        long target = queue.produced();
+        while (written < target && writer.isAlive()) {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(this, BLOCK_PARK);
+        }
+    }
+
+    /**
+     * 丢弃的日志条数。
+     *
+     * @return 丢弃条数
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * 是否已关闭。
+     *
+     * @return 已调用 close 返回 true
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * 写完队列中剩余的日志后关闭文件，之后的 append 返回 false。
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 后台线程主循环：批量取出日志写入文件，队列为空时休眠，关闭后写完剩余日志再退出。
+     */
+    private void runWriter() {
+        try {
+            while (true) {
+                if (drain() > 0) {
+                    continue;
+                }
+                if (closed) {
+                    // 关闭标记之后可能还有生产者刚放入的日志
+                    if (drain() == 0) {
+                        break;
+                    }
+                    continue;
+                }
+                waiting = true;
+                if (queue.size() == 0) {
+                    LockSupport.parkNanos(this, IDLE_PARK);
+                }
+                waiting = false;
+            }
+        } finally {
+            closeChannel();
+        }
+    }
+
+    /**
+     * 取出队列中当前所有日志并写入文件。
+     *
+     * @return 写入的条数
+     */
+    private int drain() {
+        int count = 0;
+        String line;
+        while ((line = queue.poll()) != null) {
+            put(line.getBytes(StandardCharsets.UTF_8));
+            count++;
+        }
+        long droppedNow = dropped.sum();
+        // 写文件恢复后再写丢弃提示，避免提示本身也被丢弃
+        if (droppedNow != reportedDropped && !failing) {
+            put(("丢弃日志 " + (droppedNow - reportedDropped) + " 条").getBytes(StandardCharsets.UTF_8));
+            reportedDropped = droppedNow;
+        }
+        if (buffer.position() > 0) {
+            writeBuffer();
+        }
+        written = queue.consumed();
+        return count;
+    }
+
+    /**
+     * 把一行日志放入写缓冲区，缓冲区放不下时先写文件；超过缓冲区大小的行直接写文件。
+     * 之前写失败的数据仍占着缓冲区、放不下这一行时丢弃这一行。
+     *
+     * @param bytes 日志内容的 UTF-8 字节，不含换行
+     */
+    private void put(byte[] bytes) {
+        if (buffer.remaining() < bytes.length + 1) {
+            writeBuffer();
+        }
+        if (bytes.length + 1 > buffer.capacity()) {
+            ByteBuffer large = ByteBuffer.allocate(bytes.length + 1);
+            large.put(bytes).put((byte) '\n').flip();
+            if (buffer.position() > 0 || !write(large)) {
+                // 积压的数据还没写出，超长行不保留
+                dropped.increment();
+            }
+            return;
+        }
+        if (buffer.remaining() < bytes.length + 1) {
+            dropped.increment();
+            return;
+        }
+        buffer.put(bytes).put((byte) '\n');
+    }
+
+    /**
+     * 把写缓冲区写入文件，写失败时未写出的部分留在缓冲区开头，下次再写。
+     */
+    private void writeBuffer() {
+        buffer.flip();
+        write(buffer);
+        buffer.compact();
+    }
+
+    /**
+     * 写入文件，写之前检查是否需要滚动。写失败时关闭文件，未写出的部分留在 data 中，下次重新打开文件后重试。
+     *
+     * @param data 数据
+     * @return 全部写出返回 true
+     */
+    private boolean write(ByteBuffer data) {
+        try {
+            rollIfNeeded(data.remaining());
+            while (data.hasRemaining()) {
+                fileSize += channel.write(data);
+            }
+            failing = false;
+            return true;
+        } catch (IOException e) {
+            if (!failing) {
+                // 打印异常信息，连续失败时不重复打印
+                e.printStackTrace();
+                failing = true;
+            }
+            closeChannel();
+            return false;
+        }
+    }
+
+    /**
+     * 按需打开文件；文件写入后会超过大小限制或到达滚动时间时，把当前文件改名并切换到新文件。
+     *
+     * @param incoming 即将写入的字节数
+     * @throws IOException 打开文件失败
+     */
+    private void rollIfNeeded(int incoming) throws IOException {
+        if (channel == null) {
+            openChannel();
+        }
+        long now = System.currentTimeMillis();
+        boolean bySize = maxFileSize > 0 && fileSize > 0 && fileSize + incoming > maxFileSize;
+        boolean byTime = now >= nextRollAt;
+        if ((!bySize && !byTime) || now < rollRetryAt) {
+            return;
+        }
+        if (byTime) {
+            nextRollAt = now + rollInterval;
+        }
+        if (fileSize == 0) {
+            return;
+        }
+        closeChannel();
+        String base = file.getPath() + "." + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date(now));
+        File rolled = new File(base);
+        for (int i = 1; rolled.exists(); i++) {
+            rolled = new File(base + "-" + i);
+        }
+        try {
+            Files.move(file.toPath(), rolled.toPath());
+        } catch (IOException e) {
+            // 打印异常信息，改名失败时这批日志继续写入当前文件，稍后再尝试滚动
+            e.printStackTrace();
+            rollRetryAt = now + ROLL_RETRY;
+        }
+        openChannel();
+    }
+
+    /**
+     * 以追加方式打开日志文件，必要时创建父目录。
+     *
+     * @throws IOException 打开失败
+     */
+    private void openChannel() throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        fileSize = channel.size();
+    }
+
+    /**
+     * 关闭当前文件通道。
+     */
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // 打印异常信息
+                e.printStackTrace();
+            }
+            channel = null;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package org.mmc.util.log;
+
+/**
+ * 日志级别，从低到高排列，低于当前级别的日志不输出。
+ */
+public enum Level {
+    /**
+     * 最详细的跟踪信息
+     */
+    TRACE,
+    /**
+     * 调试信息
+     */
+    DEBUG,
+    /**
+     * 普通信息
+     */
+    INFO,
+    /**
+     * 警告
+     */
+    WARN,
+    /**
+     * 错误
+     */
+    ERROR,
+    /**
+     * 关闭所有日志
+     */
+    OFF
+}
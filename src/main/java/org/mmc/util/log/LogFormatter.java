@@ -0,0 +1,243 @@
+package org.mmc.util.log;
+
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * 日志格式化工具：线程复用的 StringBuilder、按秒缓存的时间戳、"{}" 占位符替换和 JSON 转义。
+ * 所有方法都追加到调用方传入的 StringBuilder，避免产生中间字符串。
+ */
+public final class LogFormatter {
+    /**
+     * 复用的 StringBuilder 超过该容量时丢弃，避免一条超长日志让线程一直占用大块内存
+     */
+    private static final int MAX_RETAINED_CAPACITY = 8 * 1024;
+    /**
+     * 每个线程复用的 StringBuilder 及其嵌套深度
+     */
+    private static final ThreadLocal<BuilderSlot> BUILDER = ThreadLocal.withInitial(BuilderSlot::new);
+    /**
+     * 每个线程缓存的时间戳，同一秒内只格式化一次
+     */
+    private static final ThreadLocal<TimestampCache> TIMESTAMP = ThreadLocal.withInitial(TimestampCache::new);
+    /**
+     * JSON 转义用的十六进制字符
+     */
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * 工具类不允许实例化
+     */
+    private LogFormatter() {
+    }
+
+    /**
+     * 获取当前线程复用的 StringBuilder，已清空，用完必须在 finally 中调用 {@link #release()}。
+     * 格式化参数时又记录日志（如参数的 toString 中打日志）会嵌套调用，嵌套的调用得到新建的 StringBuilder，
+     * 不会清掉外层正在拼接的内容。
+     *
+     * @return StringBuilder
+     */
+    public static StringBuilder acquire() {
+        BuilderSlot slot = BUILDER.get();
+        if (slot.depth++ > 0) {
+            return new StringBuilder(256);
+        }
+        if (slot.builder.capacity() > MAX_RETAINED_CAPACITY) {
+            slot.builder = new StringBuilder(256);
+        }
+        slot.builder.setLength(0);
+        return slot.builder;
+    }
+
+    /**
+     * 归还 {@link #acquire()} 取得的 StringBuilder，与 acquire 一一对应。
+     */
+    public static void release() {
+        BuilderSlot slot = BUILDER.get();
+        if (slot.depth > 0) {
+            slot.depth--;
+        }
+    }
+
+    /**
+     * 追加当前时间，格式 yyyy-MM-dd HH:mm:ss.SSS。
+     *
+     * @param sb 目标
+     */
+    public static void appendTimestamp(StringBuilder sb) {
+        long now = System.currentTimeMillis();
+        sb.append(TIMESTAMP.get().format(now)).append('.');
+        int millis = (int) (now % 1000);
+        if (millis < 100) {
+            sb.append('0');
+        }
+        if (millis < 10) {
+            sb.append('0');
+        }
+        sb.append(millis);
+    }
+
+    /**
+     * 把 format 中的 "{}" 依次替换为参数追加到 sb，"\\{}" 输出字面量 "{}"。
+     * 最后一个参数是未被占位符使用的 Throwable 时不输出，而是返回给调用方打印堆栈。
+     *
+     * @param sb     目标
+     * @param format 消息模板
+     * @param args   参数，可以为 null
+     * @return 需要打印堆栈的异常，没有返回 null
+     */
+    public static Throwable formatMessage(StringBuilder sb, String format, Object[] args) {
+        if (format == null) {
+            sb.append("null");
+            return lastThrowable(args, 0);
+        }
+        if (args == null || args.length == 0) {
+            sb.append(format);
+            return null;
+        }
+        int argIndex = 0;
+        int start = 0;
+        int length = format.length();
+        while (argIndex < args.length) {
+            int brace = format.indexOf("{}", start);
+            if (brace < 0) {
+                break;
+            }
+            if (brace > 0 && format.charAt(brace - 1) == '\\') {
+                sb.append(format, start, brace - 1).append("{}");
+                start = brace + 2;
+                continue;
+            }
+            sb.append(format, start, brace);
+            appendValue(sb, args[argIndex++]);
+            start = brace + 2;
+        }
+        sb.append(format, start, length);
+        return lastThrowable(args, argIndex);
+    }
+
+    /**
+     * 最后一个参数是 Throwable 且没有被占位符使用时返回它。
+     *
+     * @param args     参数
+     * @param consumed 已使用的参数个数
+     * @return 异常或 null
+     */
+    private static Throwable lastThrowable(Object[] args, int consumed) {
+        if (args != null && args.length > consumed && args[args.length - 1] instanceof Throwable) {
+            return (Throwable) args[args.length - 1];
+        }
+        return null;
+    }
+
+    /**
+     * 追加参数的字符串形式，数组展开显示。
+     *
+     * @param sb    目标
+     * @param value 参数
+     */
+    private static void appendValue(StringBuilder sb, Object value) {
+        if (value instanceof Object[]) {
+            sb.append(Arrays.deepToString((Object[]) value));
+        } else {
+            sb.append(value);
+        }
+    }
+
+    /**
+     * 追加带引号的 JSON 字符串，转义引号、反斜杠和控制字符。
+     *
+     * @param sb    目标
+     * @param value 字符串
+     */
+    public static void appendJsonString(StringBuilder sb, String value) {
+        sb.append('"');
+        for (int i = 0, n = value.length(); i < n; i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+                    } else {
+                        sb.append(c);
+                    }
+                    break;
+            }
+        }
+        sb.append('"');
+    }
+
+    /**
+     * 追加 JSON 值：null、布尔和有限数字原样输出，其他类型按字符串输出。
+     *
+     * @param sb    目标
+     * @param value 值
+     */
+    public static void appendJsonValue(StringBuilder sb, Object value) {
+        if (value == null) {
+            sb.append("null");
+        } else if (value instanceof Boolean
+                || value instanceof Integer || value instanceof Long
+                || value instanceof Short || value instanceof Byte) {
+            sb.append(value);
+        } else if (value instanceof Number && Double.isFinite(((Number) value).doubleValue())) {
+            sb.append(value);
+        } else {
+            appendJsonString(sb, String.valueOf(value));
+        }
+    }
+
+    /**
+     * 线程复用的 StringBuilder 和当前嵌套深度，只在所属线程访问。
+     */
+    private static final class BuilderSlot {
+        // 复用的 StringBuilder
+        StringBuilder builder = new StringBuilder(256);
+        // 已 acquire 未 release 的次数
+        int depth;
+    }
+
+    /**
+     * 按秒缓存格式化结果的时间戳格式化器，只在所属线程使用。
+     */
+    private static class TimestampCache {
+        // 日期格式
+        private final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        // 缓存对应的秒数
+        private long second = Long.MIN_VALUE;
+        // 缓存的格式化结果
+        private String text;
+
+        /**
+         * 格式化到秒，同一秒内返回缓存结果。
+         *
+         * @param millis 毫秒时间戳
+         * @return 格式化结果
+         */
+        String format(long millis) {
+            long s = millis / 1000;
+            if (s != second) {
+                text = format.format(new Date(millis));
+                second = s;
+            }
+            return text;
+        }
+    }
+}
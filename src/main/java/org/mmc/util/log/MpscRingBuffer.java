@@ -0,0 +1,132 @@
+package org.mmc.util.log;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 有界无锁多生产者单消费者环形队列。
+ * <p>
+ * 每个槽有一个序号：序号等于写入位置时可写，等于写入位置 + 1 时可读。生产者通过 CAS 抢占写入位置，
+ * 写入元素后发布序号；唯一的消费者按顺序读取并把序号推进一圈。入队不分配任何对象。
+ *
+ * @param <E> 元素类型
+ */
+final class MpscRingBuffer<E> {
+    // 容量减一，容量是 2 的幂
+    private final int mask;
+    // 元素数组，通过序号的 volatile 读写保证可见性
+    private final Object[] buffer;
+    // 每个槽的序号
+    private final AtomicLongArray sequences;
+    // 下一个写入位置，生产者竞争
+    private final AtomicLong tail = new AtomicLong();
+    // 下一个读取位置，只有消费者写
+    private volatile long head;
+
+    /**
+     * 构造函数，容量向上取整为 2 的幂。
+     *
+     * @param capacity 容量
+     */
+    MpscRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be > 0");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.mask = size - 1;
+        this.buffer = new Object[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * 入队，可以被多个线程同时调用。
+     *
+     * @param e 元素
+     * @return 成功返回 true，队列已满返回 false
+     */
+    boolean offer(E e) {
+        long pos = tail.get();
+        while (true) {
+            int index = (int) (pos & mask);
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    buffer[index] = e;
+                    // 发布：序号的 volatile 写保证消费者看到元素
+                    sequences.set(index, pos + 1);
+                    return true;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                // 该槽还没被消费者读走，队列已满
+                return false;
+            } else {
+                // 其他生产者已抢占该位置
+                pos = tail.get();
+            }
+        }
+    }
+
+    /**
+     * 出队，只能由唯一的消费者线程调用。
+     *
+     * @return 元素，队列为空（或下一个元素还在写入中）返回 null
+     */
+    @SuppressWarnings("unchecked")
+    E poll() {
+        long pos = head;
+        int index = (int) (pos & mask);
+        if (sequences.get(index) != pos + 1) {
+            return null;
+        }
+        E e = (E) buffer[index];
+        buffer[index] = null;
+        // 释放该槽供下一圈写入
+        sequences.set(index, pos + mask + 1);
+        head = pos + 1;
+        return e;
+    }
+
+    /**
+     * 当前元素个数的近似值。
+     *
+     * @return 元素个数
+     */
+    int size() {
+        long size = tail.get() - head;
+        return (int) Math.max(0, Math.min(size, mask + 1));
+    }
+
+    /**
+     * 队列容量。
+     *
+     * @return 容量
+     */
+    int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * 已抢占的写入位置总数，即入队成功的元素总数（包含正在写入的）。
+     *
+     * @return 入队总数
+     */
+    long produced() {
+        return tail.get();
+    }
+
+    /**
+     * 已出队的元素总数。
+     *
+     * @return 出队总数
+     */
+    long consumed() {
+        return head;
+    }
+}
@@ -0,0 +1,19 @@
+package org.mmc.util.log;
+
+/**
+ * 异步日志队列满时的处理策略。
+ */
+public enum OverflowPolicy {
+    /**
+     * 阻塞等待队列有空位，不丢日志，写盘跟不上时会拖慢业务线程
+     */
+    BLOCK,
+    /**
+     * 队列满时直接丢弃新日志
+     */
+    DROP,
+    /**
+     * 队列超过四分之三时按比例采样保留，队列满时丢弃
+     */
+    SAMPLE
+}
@@ -0,0 +1,190 @@
+package org.mmc.util.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 内存缓存并发压测，对比旧实现（全局锁 + 每个键一个定时Future）与 {@link CacheEngine} 在 1、8、32 线程下的吞吐量。
+ * <p>
+ * 运行 main 方法即可，读写比例 9:1，写入时带过期时间。
+ */
+public class MemoryCacheBenchmark {
+    /**
+     * 键空间大小
+     */
+    private static final int KEY_SPACE = 100_000;
+    /**
+     * 每轮压测时长，单位：毫秒
+     */
+    private static final long DURATION = 2000;
+    /**
+     * 写入的过期时间，单位：毫秒
+     */
+    private static final long EXPIRE = 60_000;
+    /**
+     * 预先生成的键，避免压测过程中拼接字符串
+     */
+    private static final String[] KEYS = new String[KEY_SPACE];
+
+    static {
+        for (int i = 0; i < KEY_SPACE; i++) {
+            KEYS[i] = "key" + i;
+        }
+    }
+
+    /**
+     * 主方法，依次压测旧实现与新实现。
+     *
+     * @param args 命令行参数
+     * @throws InterruptedException 线程被中断
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int[] threadCounts = {1, 8, 32};
+        System.out.printf("%-8s %16s %16s%n", "threads", "legacy ops/s", "engine ops/s");
+        for (int threads : threadCounts) {
+            LegacyCache legacy = new LegacyCache();
+            long legacyOps = run(threads, legacy::put, legacy::get);
+            legacy.shutdown();
+
+            CacheEngine<String, Object> engine = new CacheEngine<>();
+            long engineOps = run(threads, engine::put, engine::get);
+            engine.close();
+
+            System.out.printf("%-8d %16d %16d%n", threads, legacyOps, engineOps);
+        }
+    }
+
+    /**
+     * 用指定线程数压测一轮。
+     *
+     * @param threads 线程数
+     * @param put     写入操作
+     * @param get     读取操作
+     * @return 每秒操作数
+     * @throws InterruptedException 线程被中断
+     */
+    private static long run(int threads, PutOp put, GetOp get) throws InterruptedException {
+        // 预热，填满键空间
+        for (String key : KEYS) {
+            put.put(key, key, EXPIRE);
+        }
+        LongAdder ops = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        long deadline = System.currentTimeMillis() + DURATION;
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    start.await();
+                    long count = 0;
+                    while ((count & 1023) != 0 || System.currentTimeMillis() < deadline) {
+                        String key = KEYS[random.nextInt(KEY_SPACE)];
+                        if (random.nextInt(10) == 0) {
+                            put.put(key, key, EXPIRE);
+                        } else {
+                            get.get(key);
+                        }
+                        count++;
+                    }
+                    ops.add(count);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        long begin = System.currentTimeMillis();
+        start.countDown();
+        done.await();
+        long elapsed = Math.max(1, System.currentTimeMillis() - begin);
+        return ops.sum() * 1000 / elapsed;
+    }
+
+    /**
+     * 写入操作
+     */
+    private interface PutOp {
+        /**
+         * 写入缓存
+         *
+         * @param key    键
+         * @param value  值
+         * @param expire 过期时间，单位：毫秒
+         */
+        void put(String key, Object value, long expire);
+    }
+
+    /**
+     * 读取操作
+     */
+    private interface GetOp {
+        /**
+         * 读取缓存
+         *
+         * @param key 键
+         * @return 值
+         */
+        Object get(String key);
+    }
+
+    /**
+     * 旧版 MemoryCache 实现的副本：全局锁 + HashMap，每个带过期时间的键调度一个 Future。
+     */
+    private static class LegacyCache {
+        /**
+         * 键值对集合
+         */
+        private final Map<String, Object[]> map = new HashMap<>();
+        /**
+         * 定时器线程池
+         */
+        private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+        /**
+         * 添加缓存
+         *
+         * @param key    键
+         * @param data   值
+         * @param expire 过期时间，单位：毫秒
+         */
+        synchronized void put(String key, Object data, long expire) {
+            Object[] old = map.remove(key);
+            if (old != null && old[1] != null) {
+                ((Future<?>) old[1]).cancel(true);
+            }
+            Future<?> future = expire > 0 ? executor.schedule(() -> {
+                synchronized (LegacyCache.this) {
+                    map.remove(key);
+                }
+            }, expire, TimeUnit.MILLISECONDS) : null;
+            map.put(key, new Object[]{data, future});
+        }
+
+        /**
+         * 读取缓存
+         *
+         * @param key 键
+         * @return 值
+         */
+        synchronized Object get(String key) {
+            Object[] entity = map.get(key);
+            return entity == null ? null : entity[0];
+        }
+
+        /**
+         * 关闭定时器线程池
+         */
+        void shutdown() {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package org.mmc.util.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * 检查值经过堆外溢出层后类型不变。
+ * <p>
+ * 运行 main 方法即可：容量为 1 的 {@link CacheEngine} 挂上使用 {@link ValueSerializer#typed()} 的 {@link OffHeapCache}，
+ * 依次写入整数、列表和普通对象，前面的值被淘汰到堆外，再逐个读回比较类型和内容，不一致时以非 0 状态退出。
+ */
+public class OverflowTierCheck {
+
+    /**
+     * 主方法。
+     *
+     * @param args 命令行参数
+     */
+    public static void main(String[] args) {
+        Object[] values = {
+                42,
+                new ArrayList<>(Arrays.asList(1L, 2L, 3L)),
+                new Point(3, 4, "p"),
+                "text"
+        };
+        CacheEngine<String, Object> engine = new CacheEngine<>(1);
+        engine.setOverflowTier(new OffHeapCache<>(8L * 1024 * 1024, 1024 * 1024, ValueSerializer.typed()));
+        try {
+            for (int i = 0; i < values.length; i++) {
+                engine.put("k" + i, values[i], 0);
+            }
+            boolean ok = true;
+            for (int i = 0; i < values.length; i++) {
+                Object back = engine.get("k" + i);
+                boolean same = back != null && back.getClass() == values[i].getClass() && back.equals(values[i]);
+                System.out.println(values[i].getClass().getSimpleName() + " -> "
+                        + (back == null ? "null" : back.getClass().getSimpleName()) + (same ? " 一致" : " 不一致"));
+                ok &= same;
+            }
+            if (!ok) {
+                System.out.println("检查失败");
+                System.exit(1);
+            }
+            System.out.println("检查通过");
+        } finally {
+            engine.close();
+        }
+    }
+
+    /**
+     * 没有实现 Serializable 的普通对象，按类名加 JSON 序列化。
+     */
+    static final class Point {
+        // 坐标
+        int x;
+        int y;
+        // 名称
+        String name;
+
+        /**
+         * 构造函数。
+         *
+         * @param x    横坐标
+         * @param y    纵坐标
+         * @param name 名称
+         */
+        Point(int x, int y, String name) {
+            this.x = x;
+            this.y = y;
+            this.name = name;
+        }
+
+        /**
+         * 按字段比较
+         *
+         * @param o 另一个对象
+         * @return 字段都相同返回 true
+         */
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Point)) {
+                return false;
+            }
+            Point other = (Point) o;
+            return x == other.x && y == other.y && Objects.equals(name, other.name);
+        }
+
+        /**
+         * 哈希值
+         *
+         * @return 哈希值
+         */
+        @Override
+        public int hashCode() {
+            return Objects.hash(x, y, name);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package org.mmc.util.file;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * 检查 {@link FileWalker#walk} 的并行流确实由多个线程遍历。
+ * <p>
+ * 运行 main 方法即可：建立 64 个目录、每个目录 50 个文件的临时目录树，并行遍历并统计参与的线程，
+ * 只有一个线程或文件数不对时以非 0 状态退出。单核机器上可加 -Djava.util.concurrent.ForkJoinPool.common.parallelism=8。
+ */
+public class FileWalkerParallelCheck {
+    /**
+     * 目录数
+     */
+    private static final int DIRS = 64;
+    /**
+     * 每个目录的文件数
+     */
+    private static final int FILES = 50;
+
+    /**
+     * 主方法。
+     *
+     * @param args 命令行参数
+     * @throws IOException 创建临时文件失败
+     */
+    public static void main(String[] args) throws IOException {
+        Path root = Files.createTempDirectory("mmc-walk");
+        try {
+            for (int d = 0; d < DIRS; d++) {
+                Path dir = Files.createDirectory(root.resolve("dir" + d));
+                for (int f = 0; f < FILES; f++) {
+                    Files.write(dir.resolve("file" + f), new byte[]{1});
+                }
+            }
+            Set<String> threads = ConcurrentHashMap.newKeySet();
+            long files;
+            try (Stream<FileWalker.Entry> stream = FileWalker.walk(root, null, true)) {
+                files = stream.filter(entry -> entry.attributes().isRegularFile())
+                        .peek(entry -> {
+                            threads.add(Thread.currentThread().getName());
+                            // 模拟每个文件的处理耗时，给其他线程取到任务的机会
+                            sleep();
+                        })
+                        .count();
+            }
+            System.out.println("文件数 " + files + "，线程数 " + threads.size() + "：" + threads);
+            if (files != (long) DIRS * FILES || threads.size() < 2) {
+                System.out.println("检查失败");
+                System.exit(1);
+            }
+            System.out.println("检查通过");
+        } finally {
+            try (Stream<Path> paths = Files.walk(root)) {
+                paths.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    /**
+     * 休眠 1 毫秒
+     */
+    private static void sleep() {
+        try {
+            Thread.sleep(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}